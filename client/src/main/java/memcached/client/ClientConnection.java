@@ -0,0 +1,171 @@
+package memcached.client;
+
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.net.NetClient;
+import io.vertx.core.net.NetSocket;
+import io.vertx.core.net.SocketAddress;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/***
+ * ClientConnection pipelines the requests of a MemcacheClient over one connection: requests
+ * are written without waiting for the responses to the previous ones, and the responses,
+ * which arrive in the same order, complete them one after the other.
+ *
+ * The requests made during one turn of the event loop are written together, in a single
+ * socket write. Concurrent GETs of the same key made during that turn share a single request,
+ * unless another command was made in between.
+ *
+ * The connection is opened on the first request, and again on the next request after it has
+ * been closed: the requests waiting for a response when it closes fail. All its state is
+ * only accessed from its context.
+ */
+class ClientConnection {
+  private final Context context;              // Context all the work is done on
+  private final NetClient client;
+  private final SocketAddress address;
+  private NetSocket socket;                   // Open connection, or null
+  private boolean connecting;
+  private final ArrayDeque<Request<?>> awaiting = new ArrayDeque<>();  // Requests waiting for their response, in order
+  private Buffer batch = Buffer.buffer();     // Requests made during this turn, not written yet
+  private boolean flushScheduled;             // Whether the batch will be written at the end of this turn
+  private final Map<String, Request.Get> batchedGets = new HashMap<>();  // GETs of the batch, by key
+  private Buffer received = Buffer.buffer();  // Bytes of the responses not parsed yet
+
+  /***
+   * @param vertx is the vertx instance
+   * @param client makes the connection
+   * @param address is the address of the server
+   */
+  ClientConnection(Vertx vertx, NetClient client, SocketAddress address) {
+    this.context = vertx.getOrCreateContext();
+    this.client = client;
+    this.address = address;
+  }
+
+  /***
+   * Send a GET, or share the GET of the same key already in the batch.
+   * @param key is the key
+   * @return the value, or null on a miss
+   */
+  Future<Buffer> get(String key) {
+    Promise<Buffer> result = Promise.promise();
+    run(() -> {
+      Request.Get get = batchedGets.get(key);
+      if (get == null) {
+        get = new Request.Get();
+        batchedGets.put(key, get);
+        enqueue(get, Buffer.buffer("get " + key + "\r\n"));
+      }
+      get.promise.future().setHandler(result);
+    });
+    return result.future();
+  }
+
+  /***
+   * Send any other command.
+   * @param request parses the response
+   * @param bytes are the bytes of the command
+   * @return the result of the request
+   */
+  <T> Future<T> send(Request<T> request, Buffer bytes) {
+    run(() -> {
+      batchedGets.clear();      // Later GETs must see the effect of this command
+      enqueue(request, bytes);
+    });
+    return request.promise.future();
+  }
+
+  /***
+   * Close the connection. The requests waiting for a response fail.
+   */
+  void close() {
+    run(() -> {
+      if (socket != null) {
+        socket.close();
+      }
+    });
+  }
+
+  private void run(Runnable action) {
+    if (Vertx.currentContext() == context) {
+      action.run();
+    } else {
+      context.runOnContext(v -> action.run());
+    }
+  }
+
+  private void enqueue(Request<?> request, Buffer bytes) {
+    awaiting.add(request);
+    batch.appendBuffer(bytes);
+    if (socket == null) {
+      connect();
+    } else if (!flushScheduled) {
+      flushScheduled = true;
+      context.runOnContext(v -> flush());
+    }
+  }
+
+  private void flush() {
+    flushScheduled = false;
+    batchedGets.clear();
+    if (socket != null && batch.length() > 0) {
+      socket.write(batch);
+      batch = Buffer.buffer();
+    }
+  }
+
+  private void connect() {
+    if (connecting) {
+      return;
+    }
+    connecting = true;
+    client.connect(address, connected -> {
+      connecting = false;
+      if (connected.failed()) {
+        fail(connected.cause());
+        return;
+      }
+      socket = connected.result();
+      socket.handler(this::receive);
+      socket.closeHandler(v -> {
+        socket = null;
+        fail(new IllegalStateException("Connection closed"));
+      });
+      flush();
+    });
+  }
+
+  /***
+   * Complete the requests whose responses have arrived.
+   */
+  private void receive(Buffer bytes) {
+    received.appendBuffer(bytes);
+    int position = 0;
+    while (!awaiting.isEmpty()) {
+      int next = awaiting.peek().parse(received, position);
+      if (next < 0) {
+        break;
+      }
+      awaiting.poll();
+      position = next;
+    }
+    received = position == received.length() ? Buffer.buffer() : received.getBuffer(position, received.length());
+  }
+
+  private void fail(Throwable cause) {
+    Request<?> request;
+    while ((request = awaiting.poll()) != null) {
+      request.promise.tryFail(cause);
+    }
+    batch = Buffer.buffer();
+    batchedGets.clear();
+    received = Buffer.buffer();
+  }
+}
@@ -0,0 +1,147 @@
+package memcached.client;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.net.NetClient;
+import io.vertx.core.net.NetClientOptions;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/***
+ * MemcacheClient is an asynchronous client of the server. Requests are spread over a few
+ * connections by key, so that the requests on a key are answered in the order they were made,
+ * and pipelined on each connection: see ClientConnection.
+ *
+ * <pre>
+ *   MemcacheClient client = MemcacheClient.create(vertx, new MemcacheClientOptions().setConnections(4));
+ *   client.set("key", Buffer.buffer("value"))
+ *     .compose(stored -> client.get("key"))
+ *     .onSuccess(value -> ...);
+ * </pre>
+ */
+public class MemcacheClient {
+  public static final int MAX_KEY_LENGTH = 250;
+
+  private final NetClient client;
+  private final ClientConnection[] connections;
+
+  private MemcacheClient(Vertx vertx, MemcacheClientOptions options) {
+    client = vertx.createNetClient(new NetClientOptions()
+      .setTcpNoDelay(true)
+      .setConnectTimeout(options.getConnectTimeout()));
+    connections = new ClientConnection[options.getConnections()];
+    for (int i = 0; i < connections.length; i++) {
+      connections[i] = new ClientConnection(vertx, client, options.getAddress());
+    }
+  }
+
+  /***
+   * Create a client. The connections are opened on the first requests.
+   * @param vertx is the vertx instance
+   * @param options are the options of the client
+   * @return the client
+   */
+  public static MemcacheClient create(Vertx vertx, MemcacheClientOptions options) {
+    return new MemcacheClient(vertx, options);
+  }
+
+  /***
+   * @param key is the key
+   * @return the value of the key, or null if it is not cached
+   */
+  public Future<Buffer> get(String key) {
+    String error = validate(key);
+    if (error != null) {
+      return Future.failedFuture(new IllegalArgumentException(error));
+    }
+    return connection(key).get(key);
+  }
+
+  /***
+   * Store a value which does not expire.
+   * @param key is the key
+   * @param value is the value
+   * @return whether the value was stored
+   */
+  public Future<Boolean> set(String key, Buffer value) {
+    return set(key, value, 0, 0);
+  }
+
+  /***
+   * @param key is the key
+   * @param value is the value
+   * @param flags are the flags stored with the value
+   * @param exptime is the expiry of the value: seconds from now, a unix time, or 0 to never expire
+   * @return whether the value was stored
+   */
+  public Future<Boolean> set(String key, Buffer value, int flags, long exptime) {
+    String error = validate(key);
+    if (error != null) {
+      return Future.failedFuture(new IllegalArgumentException(error));
+    }
+    Buffer command = Buffer.buffer(key.length() + value.length() + 32)
+      .appendString("set " + key + " " + flags + " " + exptime + " " + value.length() + "\r\n")
+      .appendBuffer(value)
+      .appendString("\r\n");
+    return connection(key).send(new Request.Line<>(line ->
+      line.startsWith("STORED") ? Boolean.TRUE : line.equals("NOT_STORED") ? Boolean.FALSE : null), command);
+  }
+
+  /***
+   * Change the expiry of a key without fetching its value.
+   * @param key is the key
+   * @param exptime is the new expiry
+   * @return whether the key was found
+   */
+  public Future<Boolean> touch(String key, long exptime) {
+    String error = validate(key);
+    if (error != null) {
+      return Future.failedFuture(new IllegalArgumentException(error));
+    }
+    return connection(key).send(new Request.Line<>(line ->
+      line.equals("TOUCHED") ? Boolean.TRUE : line.equals("NOT_FOUND") ? Boolean.FALSE : null),
+      Buffer.buffer("touch " + key + " " + exptime + "\r\n"));
+  }
+
+  /***
+   * @param group is the group of statistics, or null for the general ones
+   * @return the statistics by name
+   */
+  public Future<Map<String, String>> stats(String group) {
+    return connections[0].send(new Request.Stats(), Buffer.buffer(group == null ? "stats\r\n" : "stats " + group + "\r\n"));
+  }
+
+  /***
+   * Close the connections. The requests waiting for a response fail.
+   */
+  public void close() {
+    for (ClientConnection connection : connections) {
+      connection.close();
+    }
+    client.close();
+  }
+
+  private ClientConnection connection(String key) {
+    return connections[(key.hashCode() & Integer.MAX_VALUE) % connections.length];
+  }
+
+  /***
+   * @return the reason the key cannot be sent, or null if it can
+   */
+  static String validate(String key) {
+    if (key == null || key.isEmpty()) {
+      return "Empty key";
+    }
+    if (key.getBytes(StandardCharsets.UTF_8).length > MAX_KEY_LENGTH) {
+      return "Key longer than " + MAX_KEY_LENGTH + " bytes";
+    }
+    for (int i = 0; i < key.length(); i++) {
+      if (Character.isWhitespace(key.charAt(i)) || Character.isISOControl(key.charAt(i))) {
+        return "Key with a space or a control character";
+      }
+    }
+    return null;
+  }
+}
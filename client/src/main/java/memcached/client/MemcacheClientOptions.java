@@ -0,0 +1,61 @@
+package memcached.client;
+
+import io.vertx.core.net.SocketAddress;
+
+/***
+ * MemcacheClientOptions configures a MemcacheClient: the address of the server, and the
+ * number of connections the requests are spread over.
+ */
+public class MemcacheClientOptions {
+  public static final int DEFAULT_PORT = 11211;
+  public static final int DEFAULT_CONNECTIONS = 2;
+  public static final int DEFAULT_CONNECT_TIMEOUT_MS = 5000;
+
+  private SocketAddress address = SocketAddress.inetSocketAddress(DEFAULT_PORT, "localhost");
+  private int connections = DEFAULT_CONNECTIONS;
+  private int connectTimeout = DEFAULT_CONNECT_TIMEOUT_MS;
+
+  public SocketAddress getAddress() {
+    return address;
+  }
+
+  /***
+   * @param address is the TCP address of the server, or the path of its Unix domain socket
+   *                (which requires the native transport)
+   * @return these options
+   */
+  public MemcacheClientOptions setAddress(SocketAddress address) {
+    this.address = address;
+    return this;
+  }
+
+  public int getConnections() {
+    return connections;
+  }
+
+  /***
+   * @param connections is the number of connections to the server; each key always goes
+   *                    through the same one
+   * @return these options
+   */
+  public MemcacheClientOptions setConnections(int connections) {
+    if (connections < 1) {
+      throw new IllegalArgumentException("At least one connection is needed");
+    }
+    this.connections = connections;
+    return this;
+  }
+
+  public int getConnectTimeout() {
+    return connectTimeout;
+  }
+
+  /***
+   * @param connectTimeout is the time allowed to connect to the server, in milliseconds
+   * @return these options
+   */
+  public MemcacheClientOptions setConnectTimeout(int connectTimeout) {
+    this.connectTimeout = connectTimeout;
+    return this;
+  }
+}
@@ -0,0 +1,143 @@
+package memcached.client;
+
+import io.vertx.core.Promise;
+import io.vertx.core.buffer.Buffer;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/***
+ * A request sent to the server, waiting for its response. Responses arrive in the order of
+ * the requests, so each request parses the next response from the bytes received.
+ * @param <T> is the type of the result
+ */
+abstract class Request<T> {
+  final Promise<T> promise = Promise.promise();
+
+  /***
+   * Parse the response to the request, and complete the promise with it.
+   * @param in holds the bytes received
+   * @param from is the position of the response in the bytes
+   * @return the position after the response, or -1 if the response has not fully arrived
+   */
+  abstract int parse(Buffer in, int from);
+
+  /***
+   * Returns the position of the CRLF which ends the line starting at a position.
+   * @return the position of the CR, or -1 if the line has not fully arrived
+   */
+  static int lineEnd(Buffer in, int from) {
+    for (int i = from; i + 1 < in.length(); i++) {
+      if (in.getByte(i) == '\r' && in.getByte(i + 1) == '\n') {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /***
+   * Fail the request with an error line sent by the server (CLIENT_ERROR or SERVER_ERROR).
+   */
+  void error(String line) {
+    promise.fail(new IllegalStateException(line));
+  }
+
+  /***
+   * The response to a GET: VALUE <key> <flags> <bytes>\r\n<data block>\r\nEND\r\n on a hit.
+   * The server answers a miss with a single CR (END\r\n is also accepted).
+   */
+  static class Get extends Request<Buffer> {
+    private static final int TRAILER = "\r\nEND\r\n".length();
+
+    @Override
+    int parse(Buffer in, int from) {
+      if (from >= in.length()) {
+        return -1;
+      }
+      if (in.getByte(from) == '\r' && (from + 1 == in.length() || in.getByte(from + 1) != '\n')) {
+        promise.complete(null);
+        return from + 1;
+      }
+      int end = lineEnd(in, from);
+      if (end < 0) {
+        return -1;
+      }
+      String line = in.getString(from, end);
+      if (line.equals("END")) {
+        promise.complete(null);
+        return end + 2;
+      }
+      if (!line.startsWith("VALUE ")) {
+        error(line);
+        return end + 2;
+      }
+      int length = Integer.parseInt(line.split(" ")[3]);
+      int data = end + 2;
+      if (in.length() < data + length + TRAILER) {
+        return -1;
+      }
+      promise.complete(in.getBuffer(data, data + length));
+      return data + length + TRAILER;
+    }
+  }
+
+  /***
+   * A response made of a single line, such as the response to a SET or a TOUCH.
+   */
+  static class Line<T> extends Request<T> {
+    private final Function<String, T> result;   // Result of a line, or null if the line is an error
+
+    /***
+     * @param result maps the line to the result, or to null if the line is an error
+     */
+    Line(Function<String, T> result) {
+      this.result = result;
+    }
+
+    @Override
+    int parse(Buffer in, int from) {
+      int end = lineEnd(in, from);
+      if (end < 0) {
+        return -1;
+      }
+      String line = in.getString(from, end);
+      T value = result.apply(line);
+      if (value == null) {
+        error(line);
+      } else {
+        promise.complete(value);
+      }
+      return end + 2;
+    }
+  }
+
+  /***
+   * The response to a STATS command: STAT <name> <value>\r\n lines, then END\r\n.
+   */
+  static class Stats extends Request<Map<String, String>> {
+    @Override
+    int parse(Buffer in, int from) {
+      Map<String, String> stats = new LinkedHashMap<>();
+      int position = from;
+      while (true) {
+        int end = lineEnd(in, position);
+        if (end < 0) {
+          return -1;
+        }
+        String line = in.getString(position, end);
+        position = end + 2;
+        if (line.equals("END")) {
+          promise.complete(stats);
+          return position;
+        }
+        if (!line.startsWith("STAT ")) {
+          error(line);
+          return position;
+        }
+        int space = line.indexOf(' ', 5);
+        stats.put(line.substring(5, space < 0 ? line.length() : space), space < 0 ? "" : line.substring(space + 1));
+      }
+    }
+  }
+}
@@ -0,0 +1,62 @@
+package memcached;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.json.JsonObject;
+import memcached.cache.CacheEngine;
+import memcached.command.Decoder;
+import memcached.common.MemcacheMessage;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+/***
+ * Measures the request path of a GET hit, without the network and the event bus: the
+ * command line is decoded, processed by the cache engine and translated into the response,
+ * which is then released as if it had been written.
+ *
+ * Run with the GC profiler (enabled in build.gradle), the `gc.alloc.rate.norm` result is
+ * the number of bytes allocated on the heap per GET.
+ *
+ * Run with: ./gradlew jmh
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GetPathBenchmark {
+
+  @Param({"16", "4096"})
+  int valueSize;
+
+  private Decoder decoder;
+  private CacheEngine engine;
+  private ByteBuf line;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    decoder = new Decoder(valueSize + 1);
+    engine = new CacheEngine(new JsonObject().put("hotkeys.sample.rate", 0.0));
+    line = Unpooled.copiedBuffer("get key:1\r\n", Charset.defaultCharset());
+
+    MemcacheMessage set = decoder.decode(Unpooled.copiedBuffer("set key:1 0 0 " + valueSize + "\r\n", Charset.defaultCharset()));
+    ByteBuf value = PooledByteBufAllocator.DEFAULT.heapBuffer(valueSize).writeZero(valueSize);
+    set.setValueBuf(value);
+    engine.process(set).release();
+  }
+
+  @Benchmark
+  public int getHit() {
+    line.readerIndex(0);
+    MemcacheMessage response = engine.process(decoder.decode(line));
+    ByteBuf b = decoder.translate(response);
+    response.release();
+    int length = b.readableBytes();
+    b.release();
+    return length;
+  }
+}
@@ -0,0 +1,76 @@
+package memcached;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import memcached.cache.ConfinedLRUCache;
+import memcached.cache.LRUCache;
+import memcached.cache.MemCache;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+/***
+ * Compares the MemCache implementations, keyed by ByteBuf like in the cache verticle.
+ *
+ * The key space is larger than the cache, so GETs are a mix of hits and misses, and SETs
+ * a mix of updates and evictions. The setup also prints the heap taken by the cache
+ * structure per entry (keys and values are allocated beforehand and not counted).
+ *
+ * Run with: ./gradlew jmh
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MemCacheBenchmark {
+  private static final int KEY_SPACE = 32768;   // Number of distinct keys, must be a power of 2
+
+  @Param({"lru", "confined"})
+  String impl;
+
+  @Param({"10000"})
+  int entries;
+
+  private MemCache<ByteBuf, ByteBuf> cache;
+  private ByteBuf[] keys;
+  private ByteBuf value;
+  private int index;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    keys = new ByteBuf[KEY_SPACE];
+    for (int i = 0; i < KEY_SPACE; i++) {
+      keys[i] = Unpooled.copiedBuffer("key:" + i, Charset.defaultCharset());
+    }
+    value = Unpooled.copiedBuffer("hello", Charset.defaultCharset());
+
+    long before = usedHeap();
+    cache = "confined".equals(impl) ? new ConfinedLRUCache<>(entries) : new LRUCache<>(entries);
+    for (int i = 0; i < entries; i++) {
+      cache.set(keys[i], value);
+    }
+    long after = usedHeap();
+    System.out.println(impl + ": " + (after - before) / entries + " bytes per entry");
+  }
+
+  @Benchmark
+  public ByteBuf get() {
+    return cache.get(keys[index++ & (KEY_SPACE - 1)]);
+  }
+
+  @Benchmark
+  public void set() {
+    cache.set(keys[index++ & (KEY_SPACE - 1)], value);
+  }
+
+  private static long usedHeap() {
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    Runtime runtime = Runtime.getRuntime();
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
@@ -1,85 +1,176 @@
 package memcached;
 
-import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
 import io.vertx.core.AbstractVerticle;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
 import io.vertx.core.eventbus.EventBus;
 import io.vertx.core.json.Json;
 import io.vertx.core.json.JsonObject;
-import memcached.cache.LRUCache;
+import memcached.admin.AdminShell;
+import memcached.cache.CacheEngine;
+import memcached.cache.ItemCrawler;
+import memcached.cache.KeyScanner;
+import memcached.common.ConnectionLimiter;
+import memcached.common.MemcacheBatch;
+import memcached.common.MemcacheBatchCodec;
 import memcached.common.MemcacheMessage;
+import memcached.common.MemcacheMessage.CommandType;
+import memcached.common.MemcacheMessageCodec;
+import memcached.common.Workers;
+import memcached.dump.CacheDumper;
+import memcached.stats.LoopMonitor;
+import memcached.stats.SlowLog;
+import memcached.util.Log;
 import memcached.util.Constants;
 
-import java.nio.charset.Charset;
-
-import static memcached.util.Constants.NUM_CACHE_ENTRIES;
+import java.util.Arrays;
+import java.util.List;
 
 /***
  * It is important to learn about Vert.x: https://vertx.io/ - this is a great
  * resource for learning about it.
  * Cache verticle picks up messages from the event bus and processes them.
  * The message is a MemcacheMessage which contains the following:
- * - CommandType: Indicating if it is a GET or SET
+ * - CommandType: Indicating if it is a GET, SET or STATS
  * - Key: Key for the cache
  * - Value: Value to be associated with the key.
  *
- * The cache verticle interacts with the cache to store/retrieve data and
- * passes the response back in the form of another MemcacheMessage.
- *
- * Note that the cache verticle contains an instance of the LRU cache which
- * is sized by the number of entries. This can be extended in the future
- * to be sized by the total memory size.
+ * The cache verticle hands the message to its cache engine, which interacts with the
+ * cache to store/retrieve data, and passes the response back in the form of another
+ * MemcacheMessage.
  *
  * Keeping a cache verticle separated from the command verticle simplifies
  * the coding logic. All the command processing tasks and the response
  * formatting tasks which are protocol specific are handled by the Command
  * verticle, whereas all the basic protocol agnostic set/get operations are
  * performed by this verticle.
+ *
+ * With "cache.direct", the engine is shared with the command verticles, which call it
+ * directly instead of going through the event bus. The cache verticle still serves the
+ * messages sent on the event bus, from the same engine.
+ *
+ * The cache verticle also runs the exports and loads of the cache (see CacheDumper), and
+ * accepts dumps to load on the bulk load port ("load.port"), if one is configured. Its
+ * crawler reclaims the dead items in the background (see ItemCrawler), and its scanner
+ * answers the SCAN commands (see KeyScanner).
+ *
+ * GETs of values in the ext store (see ExtStore) are answered once the value has been read
+ * on a worker thread, while the next messages are processed.
+ *
+ * The command verticles send the commands of each socket read as one MemcacheBatch, which is
+ * answered with one MemcacheBatch holding the responses in the same order.
+ *
+ * It also reports the lag of the event loops (`stats loops`, see LoopMonitor), including its
+ * own, the work of the worker pool (`stats workers`, see Workers), and the slow requests
+ * recorded by the command verticles (`stats slowlog`, see SlowLog).
+ *
+ * With "shell.port", it serves an admin shell to inspect and tune the cache while it runs
+ * (see AdminShell).
  */
 public class CacheVerticle extends AbstractVerticle {
+  private CacheEngine engine;
+  private AdminShell shell;
 
   @Override
-  public void start() {
+  public void start(Promise<Void> promise) {
     final EventBus eventBus = vertx.eventBus();
-    LRUCache<ByteBuf, ByteBuf> cache = new LRUCache<>(NUM_CACHE_ENTRIES); // allow 10k entries.
+    MemcacheMessageCodec.register(eventBus);
+    MemcacheBatchCodec.register(eventBus);
+
+    if (config().getBoolean("cache.direct", false)) {
+      engine = CacheEngine.shared(vertx, config());
+    } else {
+      engine = new CacheEngine(vertx, config(), ConnectionLimiter.shared(vertx, config()));
+    }
+    CacheDumper dumper = new CacheDumper(vertx, engine, config());
+    engine.addHandler(CommandType.DUMP, dumper::dump);
+    engine.addHandler(CommandType.LOAD, dumper::load);
+    engine.addStats("dump", dumper::addStats);
+    ItemCrawler crawler = new ItemCrawler(vertx, engine, config());
+    engine.addStats("crawler", crawler::addStats);
+    crawler.start();
+    KeyScanner scanner = new KeyScanner(engine, config());
+    engine.addHandler(CommandType.SCAN, scanner::scan);
+    engine.addStats("scan", scanner::addStats);
+    LoopMonitor loops = LoopMonitor.shared(vertx, config());
+    loops.probe(vertx);
+    engine.addStats("loops", loops::addStats);
+    engine.addStats("workers", Workers.shared(vertx, config())::addStats);
+    engine.addStats("slowlog", SlowLog.shared(vertx, config())::addStats);
 
-    // For each received message, extract the memcachemessage object and process it
+    // For each received message, extract the memcachemessage object and process it.
+    // Messages sent with the local codec are processed as is, JSON messages are decoded first
+    // and answered in JSON. A batch is answered once all of its messages have been processed.
     eventBus.consumer(Constants.ADDRESS, receivedMessage -> {
-      MemcacheMessage memcacheMessage = Json.decodeValue(receivedMessage.body().toString(), MemcacheMessage.class);
-      receivedMessage.reply(JsonObject.mapFrom(process(memcacheMessage, cache)));
+      Object body = receivedMessage.body();
+      if (body instanceof MemcacheBatch) {
+        List<MemcacheMessage> messages = ((MemcacheBatch) body).getMessages();
+        MemcacheMessage[] answered = new MemcacheMessage[messages.size()];
+        int[] pending = {answered.length};
+        for (int i = 0; i < answered.length; i++) {
+          int index = i;
+          engine.process(messages.get(i), response -> {
+            answered[index] = response;
+            if (--pending[0] == 0) {
+              receivedMessage.reply(new MemcacheBatch(Arrays.asList(answered)));
+            }
+          });
+        }
+      } else if (body instanceof MemcacheMessage) {
+        engine.process((MemcacheMessage) body, receivedMessage::reply);
+      } else {
+        engine.process(Json.decodeValue(body.toString(), MemcacheMessage.class), response -> {
+          receivedMessage.reply(JsonObject.mapFrom(response));
+          response.release();
+        });
+      }
+    });
+
+    Future<Void> shellStarted = Future.succeededFuture();
+    Integer shellPort = config().getInteger("shell.port");
+    if (shellPort != null) {
+      shell = new AdminShell(vertx, engine, crawler, config());
+      shellStarted = shell.start(shellPort);
+    }
+
+    CompositeFuture.all(shellStarted, listenLoad(dumper)).setHandler(result -> {
+      if (result.succeeded()) {
+        promise.complete();
+      } else {
+        promise.fail(result.cause());
+      }
     });
   }
 
   /***
-   * Depending on the memcache message object, this method will either store content
-   * in the LRU cache or will retrieve content from the cache.
-   * @param input is the incoming memcache message
-   * @param cache is the cache instance
-   * @return response memcache object which contains the kv pair
+   * Each connection to the bulk load port sends a dump, which is stored as it arrives.
+   * @return completed once the port listens, or right away if there is no bulk load port
    */
-  private MemcacheMessage process(MemcacheMessage input, LRUCache<ByteBuf, ByteBuf> cache) {
-    MemcacheMessage output = new MemcacheMessage();
-    ByteBuf key = Unpooled.copiedBuffer(input.getKey());
-
-    output.setCommandType(input.getCommandType());
-    output.setKey(input.getKey().clone());
-
-    // For a set command, perform a cache put. This will internally evict entries from the cache
-    // if size is exceeded.
-    if (input.getCommandType().equals(MemcacheMessage.CommandType.SET)) {
-      ByteBuf value = Unpooled.copiedBuffer(input.getValue());
-      cache.set(key, value);
-      output.setValue(input.getValue().clone());
-      System.out.println("SET: Key: " + key.toString(Charset.defaultCharset()) + ", Value: " + value.toString(Charset.defaultCharset()));
-    } else {
-      // Obtain the value corresponding to the key if it is available
-      System.out.println("GET: Key: " + key.toString(Charset.defaultCharset()));
-      if (cache.containsKey(key)) {
-        ByteBuf value = cache.get(key).copy();
-        output.setValue(value.array().clone());
-      }
+  private Future<Void> listenLoad(CacheDumper dumper) {
+    Integer loadPort = config().getInteger("load.port");
+    if (loadPort == null) {
+      return Future.succeededFuture();
     }
-    return output;
+    Promise<Void> promise = Promise.promise();
+    vertx.createNetServer()
+      .connectHandler(dumper::load)
+      .listen(loadPort, "localhost", listening -> {
+        if (listening.succeeded()) {
+          Log.info("Bulk load listening on port " + loadPort);
+          promise.complete();
+        } else {
+          promise.fail(listening.cause());
+        }
+      });
+    return promise.future();
   }
 
+  @Override
+  public void stop() {
+    if (shell != null) {
+      shell.close();
+    }
+    engine.close();
+  }
 }
@@ -1,155 +1,531 @@
 package memcached;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
 import io.vertx.core.AbstractVerticle;
 import io.vertx.core.AsyncResult;
+import io.vertx.core.CompositeFuture;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
+import io.vertx.core.Promise;
 import io.vertx.core.buffer.Buffer;
+import io.vertx.core.datagram.DatagramPacket;
+import io.vertx.core.datagram.DatagramSocket;
 import io.vertx.core.eventbus.EventBus;
 import io.vertx.core.eventbus.Message;
-import io.vertx.core.json.Json;
-import io.vertx.core.json.JsonObject;
+import io.vertx.core.eventbus.MessageConsumer;
+import io.vertx.core.eventbus.ReplyException;
+import io.vertx.core.eventbus.ReplyFailure;
 import io.vertx.core.net.NetServer;
+import io.vertx.core.net.NetSocket;
+import io.vertx.core.net.SocketAddress;
+import memcached.cache.CacheEngine;
+import memcached.command.ChunkedValueReader;
 import memcached.command.Decoder;
+import memcached.command.ResponseQueue;
+import memcached.command.TrackingCommandParser;
+import memcached.command.UdpFrame;
+import memcached.common.ConnectionLimiter;
+import memcached.common.InvalidationTracker;
+import memcached.common.MemcacheBatch;
+import memcached.common.MemcacheBatchCodec;
 import memcached.common.MemcacheMessage;
 import memcached.common.MemcacheMessage.CommandType;
+import memcached.common.MemcacheMessageCodec;
+import memcached.stats.LoopMonitor;
+import memcached.stats.SlowLog;
 import memcached.util.ByteBufHelper;
+import memcached.util.Log;
 import memcached.util.Constants;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.List;
 
 import static memcached.command.CommandParser.*;
-import static memcached.util.Constants.DEFAULT_PORT;
+import static memcached.util.Constants.*;
 
 /**
  * CommandVerticle processes the incoming requests (from different clients, such as telnet, etc.)
  * The main job of this verticle is to decode the incoming commands of the protocol:
- * GET or SET for now and post the information via event bus to CacheVerticle.
+ * GET, SET or STATS for now and post the information via event bus to CacheVerticle.
  * This verticle is responsible for input validation and preparing and posting the response.
  *
+ * The data block of a SET command is received into a chain of chunks as its bytes arrive,
+ * and handed over to the CacheVerticle without further copies. This allows values much
+ * larger than a socket read, up to the configured "item.size.max". A larger value is
+ * answered with SERVER_ERROR, and its data block is discarded as it arrives.
+ * With "item.wire", the data block is received between the header and the trailer of the
+ * response to a GET of the value, so that GETs send the stored response as is.
+ * The chunks come from Netty's pooled allocator, and are returned to the pool when the cache
+ * drops the value. Responses hold references to the values they send, which are released
+ * once the responses have been written.
+ *
  * Cache verticle performs the operation of storing and retrieving entries from the cache
  * instance. One advantage of keeping the two verticles separate is that they can scale
  * independently. If we need more command processing logic, we can have multiple instances
  * of the command verticles which post to the event bus for a single instance of cache verticle
  * to consume.
+ *
+ * With "cache.direct", the command verticle calls the cache engine shared with the cache
+ * verticle directly, and writes the response from its own event loop. This saves the event
+ * bus round trip (queueing, reply handler registration and two context switches) of each
+ * request.
+ *
+ * Responses are written in the order of the requests (see ResponseQueue), even when a GET
+ * of a value in the ext store is answered after the next requests.
+ *
+ * A connection may track the keys it reads (see InvalidationTracker): their changes are then
+ * pushed to it, between the responses.
+ *
+ * Through the event bus, the commands decoded from one socket read are sent to the cache
+ * verticle as a single MemcacheBatch (of at most "eventbus.batch.max" commands), which is
+ * answered with a single reply. A pipelining client thus costs one event bus round trip per
+ * read rather than per command.
+ *
+ * Each connection is paused (stops being read) while it has too many requests waiting for
+ * the cache ("conn.inflight.max") or too many response bytes waiting to be sent
+ * ("conn.write.queue.max"), and resumed once the responses have been handled and sent.
+ * A client which sends requests faster than it reads responses is thus slowed down instead
+ * of filling the heap. The number of connections open at once is capped by "conn.max".
+ *
+ * With "uds.path", the same connections are also served on a Unix domain socket, which saves
+ * the clients running on the same host the loopback TCP stack. It requires the native
+ * transport of Vert.x (preferNativeTransport, with the netty epoll or kqueue library).
+ *
+ * With "udp.port", GETs are also served over UDP, with the frame header of the memcached
+ * UDP protocol (see UdpFrame), for clients which fan small reads out to many servers without
+ * keeping connections. Responses larger than "udp.datagram.size" are split across datagrams.
+ *
+ * The verticle probes the responsiveness of its event loop (see LoopMonitor), records its
+ * slow requests (see SlowLog), and logs through Log, which never blocks the loop.
  */
 public class CommandVerticle extends AbstractVerticle {
   private NetServer server;
+  private NetServer udsServer;      // Listens on the Unix domain socket "uds.path", or null
+  private DatagramSocket udpSocket; // Serves GETs on "udp.port", or null
 
   @Override
   public void start(Future<Void> startFuture) {
-    Decoder decoder = new Decoder();            // Used for decoding input streams into set(s) of command(s).
+    int maxValueSize = config().getInteger("item.size.max", MAX_VALUE_SIZE_IN_BYTES);
+    int chunkSize = config().getInteger("item.chunk.size", DEFAULT_CHUNK_SIZE_IN_BYTES);
+    boolean wire = config().getBoolean("item.wire", false); // Store values within their GET response
+    Decoder decoder = new Decoder(maxValueSize); // Used for decoding input streams into set(s) of command(s).
     ByteBufHelper helper = ByteBufHelper.getInstance(); // Helper method for ByteBuf streams
     final EventBus eventBus = vertx.eventBus(); // Event bus to post/pick messages to/from.
+    MemcacheMessageCodec.register(eventBus);    // Messages are passed to the cache verticle without copies
+    MemcacheBatchCodec.register(eventBus);
+    // Shared cache engine, called directly instead of the cache verticle (null if disabled)
+    CacheEngine engine = config().getBoolean("cache.direct", false) ? CacheEngine.shared(vertx, config()) : null;
+    ConnectionLimiter connections = ConnectionLimiter.shared(vertx, config()); // Caps and counts connections
+    InvalidationTracker tracker = InvalidationTracker.shared(vertx, config()); // Pushes key changes to tracking connections
+    // Allocator of the SET data blocks. A shared engine does not release the values it drops
+    // (see CacheEngine), so they are left to the garbage collector rather than taken from a pool.
+    ByteBufAllocator allocator = engine == null ? PooledByteBufAllocator.DEFAULT : UnpooledByteBufAllocator.DEFAULT;
+    int maxInFlight = config().getInteger("conn.inflight.max", DEFAULT_MAX_INFLIGHT_REQUESTS);
+    int writeQueueMaxSize = config().getInteger("conn.write.queue.max", DEFAULT_WRITE_QUEUE_MAX_SIZE_IN_BYTES);
+    int maxBatch = config().getInteger("eventbus.batch.max", DEFAULT_EVENTBUS_BATCH_MAX); // Commands per event bus message
+    String udsPath = config().getString("uds.path");    // Path of the Unix domain socket, or null
+    if (udsPath != null && !vertx.isNativeTransportEnabled()) {
+      startFuture.fail(new IllegalStateException("uds.path requires the native transport (preferNativeTransport)"));
+      return;
+    }
 
-    // Create a TCP server
-    server = vertx.createNetServer();
-    System.out.println("TC: Started Server!");
-    server.connectHandler(netSocket -> {
+    LoopMonitor.shared(vertx, config()).probe(vertx);  // Measures the lag of this event loop
+    SlowLog.Ring slowLog = SlowLog.shared(vertx, config()).ring(); // Slow requests of this event loop, or null
+
+    // Serve the connections accepted by the TCP server, and by the Unix domain socket server
+    // if there is one
+    Handler<NetSocket> connectHandler = netSocket -> {
 
       // Process each incoming connection and maintain some state per connection
-      System.out.println("Incoming connection");
-      final boolean[] expectData = {false};         // Flags to indicate if we're expecting data in a subsequent stream
-      final MemcacheMessage[] oldCommand = {null};  // Cached old SET message
-
-      // Incoming stream of bytes may contain multiple CRLF-separated buffers.
-      // One option is to process the entire stream together, but given that different clients (such as telnet)
-      // may split the stream (at CRLF boundaries) and send multiple CRLF-ended streams to netSocket,
-      // we have to allow for a single or multiple CRLF-separated buffers in a stream, and also,
-      // multiple streams to process a single command (such as SET).
+      Log.info("Incoming connection");
+      if (!connections.open()) {
+        Log.info("Too many open connections, closing the incoming connection");
+        netSocket.end(Buffer.buffer(SERVER_ERROR).appendString(" too many open connections").appendBytes(CRLF));
+        return;
+      }
+      final MemcacheMessage[] oldCommand = {null};  // Cached old SET message, waiting for its data block
+      final ByteBuf[] partialLine = {null};         // Start of a command line whose CRLF has not arrived yet
+      final long[] discarding = {0};                // Bytes left of the data block of a rejected SET
+      final ChunkedValueReader valueReader = new ChunkedValueReader(chunkSize, allocator); // Reads SET data blocks
+      final ResponseQueue responses = new ResponseQueue(netSocket, decoder, slowLog, connections.nextId()); // Writes the responses in order
+      final boolean[] paused = {false};             // Whether the socket is paused
+      final List<MemcacheMessage> batched = new ArrayList<>();         // Commands of this read, not sent yet
+      final List<ResponseQueue.Slot> batchedSlots = new ArrayList<>(); // Slots of their responses
+      final long[] subscription = {0};              // Id of the connection in the tracker while it tracks, 0 otherwise
+      final long[] tracked = {0};                   // Same id if the keys read are tracked (not in broadcast mode)
+      final MessageConsumer<?>[] invalidations = {null}; // Receives the invalidations pushed to the connection
+
+      // Stop pushing invalidations to the connection
+      Runnable stopTracking = () -> {
+        if (subscription[0] != 0) {
+          tracker.unsubscribe(subscription[0]);
+          invalidations[0].unregister();
+          subscription[0] = 0;
+          tracked[0] = 0;
+          invalidations[0] = null;
+        }
+      };
+
+      // Pause the socket while the connection has too many requests or responses pending, and
+      // resume it once they have been handled. This is checked after each socket read, each
+      // response from the cache, and when the write queue has drained.
+      netSocket.setWriteQueueMaxSize(writeQueueMaxSize);
+      Runnable flowControl = () -> {
+        boolean overloaded = responses.pending() >= maxInFlight || netSocket.writeQueueFull();
+        if (overloaded != paused[0]) {
+          paused[0] = overloaded;
+          if (overloaded) {
+            netSocket.pause();
+            connections.pause();
+          } else {
+            connections.resume();
+            netSocket.resume();
+          }
+        }
+      };
+      netSocket.drainHandler(v -> flowControl.run());
+      netSocket.closeHandler(v -> {
+        valueReader.release();   // Data block of a SET command cut short by the client
+        responses.release();
+        stopTracking.run();
+        connections.close();
+        if (paused[0]) {
+          connections.resume();
+        }
+      });
+
+      // Send the commands batched so far to the cache verticle in one message. Its reply holds
+      // their responses, in the same order (a failed batch answers each of them with CR). A batch
+      // nobody received is released here; after a timeout the cache verticle may still use it.
+      Runnable sendBatch = () -> {
+        if (batched.isEmpty()) {
+          return;
+        }
+        List<ResponseQueue.Slot> slots = new ArrayList<>(batchedSlots);
+        MemcacheBatch batch = new MemcacheBatch(new ArrayList<>(batched));
+        batched.clear();
+        batchedSlots.clear();
+        eventBus.send(Constants.ADDRESS, batch, (AsyncResult<Message<Object>> reply) -> {
+          MemcacheBatch answered = reply.succeeded() ? (MemcacheBatch) reply.result().body() : null;
+          if (reply.failed() && reply.cause() instanceof ReplyException
+            && ((ReplyException) reply.cause()).failureType() == ReplyFailure.NO_HANDLERS) {
+            batch.release();
+          }
+          for (int i = 0; i < slots.size(); i++) {
+            responses.complete(slots.get(i), answered == null ? null : answered.getMessages().get(i));
+          }
+          flowControl.run();
+        });
+      };
+
+      // Pass a decoded command to the cache: either directly to the shared engine, or to the
+      // batch of the current read, sent on the event bus. Its response is written once it and the
+      // earlier ones are ready (a failed request is answered with CR).
+      Handler<MemcacheMessage> dispatcher;
+      if (engine != null) {
+        dispatcher = command -> {
+          command.setDispatched(System.nanoTime());
+          ResponseQueue.Slot slot = responses.reserve();
+          engine.process(command, response -> {
+            responses.complete(slot, response);
+            flowControl.run();
+          });
+        };
+      } else {
+        dispatcher = command -> {
+          command.setDispatched(System.nanoTime());
+          batched.add(command);
+          batchedSlots.add(responses.reserve());
+          if (batched.size() >= maxBatch) {
+            sendBatch.run();
+          }
+        };
+      }
+
+      // Incoming stream of bytes may contain multiple CRLF-separated command lines, and a command
+      // (or the data block of a SET command) may be split over multiple streams, since clients
+      // (such as telnet) may split the stream, and large values span many socket reads.
       // For example: we may get a buffer: set abc 0 0 5\r\nhello\r\n as a single request to the socket
       //              or we may get two requests to the socket:
       //              - set abc 0 0 5\r\n
       //              - hello\r\n
-      // Our code should be able to handle both.
-      netSocket.handler(buffer -> {
-        // Extract all the input lines split by CRLF (i.e. '\r\n') separators.
-        // Each such line will be processed separately. This is to support different clients, such as telnet
-        // which have different ways of sending commands.
-        ArrayList<ByteBuf> lines = helper.extractCrlfSplitBufs(buffer.getByteBuf());
-
-        // Asynchronous event bus response handler. This processes responses obtained from
-        // the event bus.
-        Handler<AsyncResult<Message<Object>>> eventBusResponseHandler = eventBusResponse -> {
-          if (eventBusResponse.succeeded()) {
-            // Extract the response from event bus and write output to socket
-            MemcacheMessage response = Json.decodeValue(eventBusResponse.result().body().toString(), MemcacheMessage.class);
-            ByteBuf b = decoder.translate(response);
-            netSocket.write(Buffer.buffer(b));
-          } else {
-            netSocket.write(Buffer.buffer(CR));
+      // Our code should be able to handle both. Command lines are split at CRLF, while the data
+      // block of a SET command is read by its length (it may itself contain CRLF).
+      Handler<Buffer> reader = buffer -> {
+        long received = System.nanoTime();    // Start of the requests of this read (see SlowLog)
+        ByteBuf in = buffer.getByteBuf();
+        if (partialLine[0] != null) {
+          in = Unpooled.wrappedBuffer(partialLine[0], in);
+          partialLine[0] = null;
+        }
+
+        while (in.isReadable()) {
+          // The data block of a SET whose value is too large is skipped, along with its CRLF
+          if (discarding[0] > 0) {
+            int skipped = (int) Math.min(discarding[0], in.readableBytes());
+            in.skipBytes(skipped);
+            discarding[0] -= skipped;
+            continue;
           }
-        };
 
-        // Process each line
-        for (ByteBuf byteBuf : lines) {
-          // Do not process a line if it is empty and no input is expected
-          if (helper.isCRLFOnly(byteBuf) && !expectData[0]) {
-            netSocket.write(Buffer.buffer(CR));
+          // A SET command expects input meta information (such as keys, length, etc.) in one CRLF ended line
+          // and actual value in the following data block. Hence, maintain state in the verticle
+          // which keeps track of the SET command whose data block is being received.
+          if (oldCommand[0] != null) {
+            ChunkedValueReader.State state = valueReader.read(in);
+            if (state == ChunkedValueReader.State.INCOMPLETE) {
+              return;
+            }
+            MemcacheMessage command = oldCommand[0];
+            oldCommand[0] = null;
+            if (state == ChunkedValueReader.State.ERROR) {
+              // The data block is not followed by CRLF: its length does not match the length in the command
+              Log.info("SET: Length of data does not match length in the command: " + command.getLen());
+              responses.write(Buffer.buffer(CLIENT_ERROR).appendBytes(CRLF));
+              return;
+            }
+            // Pass the message to the cache
+            ByteBuf data = valueReader.value();
+            if (wire) {
+              // The value sits between the header and the trailer of the response
+              int trailerLength = decoder.getResponseTrailer().readableBytes();
+              command.setResponseBuf(data);
+              command.setValueBuf(data.slice(data.readableBytes() - trailerLength - command.getLen(), command.getLen()));
+            } else {
+              command.setValueBuf(data);
+            }
+            dispatcher.handle(command);
+            continue;
+          }
+
+          // Extract the next CRLF ended command line. If it is not complete yet, keep it until
+          // the next stream arrives.
+          int lineLength = helper.bytesBeforeCRLF(in);
+          if (lineLength < 0) {
+            if (in.readableBytes() > MAX_LINE_SIZE_IN_BYTES) {
+              responses.write(Buffer.buffer(CLIENT_ERROR).appendBytes(CRLF));
+              return;
+            }
+            partialLine[0] = Unpooled.copiedBuffer(in);
+            return;
+          }
+          ByteBuf line = in.readSlice(lineLength + CRLF.length);
+
+          // Do not process a line if it is empty
+          if (helper.isCRLFOnly(line)) {
+            responses.write(Buffer.buffer(CR));
             return;
           }
           // Decode the input buffer and extract a message to process
-          MemcacheMessage command = decoder.decode(byteBuf, expectData[0]);
+          MemcacheMessage command = decoder.decode(line);
           if (command == null) {
-            netSocket.write(Buffer.buffer(CLIENT_ERROR));
-            netSocket.write(Buffer.buffer(CRLF));
+            responses.write(Buffer.buffer(CLIENT_ERROR).appendBytes(CRLF));
             return;
           }
+          command.setReceived(received);
 
-          // A SET command expects input meta information (such as keys, length, etc.) in one CRLF ended byteBuf
-          // and actual value in the following CRLF ended bytebuf. Hence, maintain state in the verticle
-          // which keeps track of expectData, i.e. the state machine expects the next incoming bytes to be
-          // the data which corresponds to the previously sent SET command.
-          // This is useful when clients such as telnet will send SET command in two separate requests
-          // as discussed above
-          if (command.getCommandType().equals(CommandType.SET)) {
-            // Capture key and length from first SET command issued
-            if (!expectData[0]) {
-              expectData[0] = true;
-              oldCommand[0] = command;
-            } else {
-              // Capture value associated with the key in the previous SET cmd.
-              MemcacheMessage prevCommand = oldCommand[0];
-              command.setKey(prevCommand.getKey().clone());
-              expectData[0] = false;
-
-              // Compare the length of data of current buffer with previous command's length. They should match
-              if (command.getLen() != prevCommand.getLen()) {
-                System.out.println("SET: Length of data does not match length in the command: " +
-                        "data's length: " + command.getLen() + ", expected length: " + prevCommand.getLen());
-                netSocket.write(Buffer.buffer(CLIENT_ERROR));
-                netSocket.write(Buffer.buffer(CRLF));
-                return;
-              }
+          if (command.getCommandType() == CommandType.TRACKING) {
+            // Tracking concerns the connection itself: it is set up here rather than by the cache.
+            // The invalidations are written between the responses.
+            TrackingCommandParser.Options options = TrackingCommandParser.options(command.getKey());
+            stopTracking.run();
+            if (options.isOn()) {
+              subscription[0] = tracker.subscribe(options.getPrefixes());
+              tracked[0] = options.getPrefixes() == null ? subscription[0] : 0;
+              invalidations[0] = eventBus.<Buffer>localConsumer(InvalidationTracker.address(subscription[0]),
+                push -> responses.write(push.body()));
             }
+            responses.write(Buffer.buffer(decoder.translate(command)));
+            continue;
+          }
+          CommandType type = command.getCommandType();
+          if (tracked[0] != 0 && (type == CommandType.GET || type == CommandType.LGET || type == CommandType.GAT || type == CommandType.GATS)) {
+            command.setClient(tracked[0]);
           }
 
-          // Pass the message to event bus
-          if (!expectData[0]) {
-            // Note that event bus only accepts JsonObject, so JSON-ify the message
-            eventBus.send(Constants.ADDRESS, JsonObject.mapFrom(command), eventBusResponseHandler);
+          if (command.getError() != null &&
+              (command.getCommandType() == CommandType.SET || command.getCommandType() == CommandType.LSET)) {
+            // The value is over "item.size.max": reject it, and skip its data block
+            responses.write(Buffer.buffer(SERVER_ERROR).appendString(" " + command.getError()).appendBytes(CRLF));
+            discarding[0] = (long) command.getLen() + CRLF.length;
+            continue;
+          }
+          if (command.getCommandType() == CommandType.SET || command.getCommandType() == CommandType.LSET) {
+            // Capture key and length from the SET command, and wait for its data block
+            oldCommand[0] = command;
+            if (wire) {
+              ByteBuf header = decoder.getResponseHeader(command);
+              valueReader.start(command.getLen(), header, decoder.getResponseTrailer());
+              header.release();
+            } else {
+              valueReader.start(command.getLen());
+            }
+            continue;
           }
+
+          // Pass the message to the cache
+          dispatcher.handle(command);
         }
+      };
+      netSocket.handler(buffer -> {
+        reader.handle(buffer);
+        sendBatch.run();
+        flowControl.run();
       });
-    });
+    };
+
+    // Create a TCP server
+    server = vertx.createNetServer().connectHandler(connectHandler);
+    Log.info("TC: Started Server!");
+    Promise<Void> tcpListening = Promise.promise();
     server.listen(config().getInteger("tcp.port", DEFAULT_PORT), "localhost", tcp -> {
       if (tcp.succeeded()) {
+        Log.info("Listening on port " + config().getInteger("tcp.port", DEFAULT_PORT));
+        tcpListening.complete();
+      } else {
+        tcpListening.fail(tcp.cause());
+      }
+    });
+
+    // Create a Unix domain socket server, for the clients of the same host
+    Promise<Void> udsListening = Promise.promise();
+    if (udsPath == null) {
+      udsListening.complete();
+    } else {
+      removeStaleSocket(udsPath);
+      udsServer = vertx.createNetServer().connectHandler(connectHandler);
+      udsServer.listen(SocketAddress.domainSocketAddress(udsPath), uds -> {
+        if (uds.succeeded()) {
+          Log.info("Listening on " + udsPath);
+          udsListening.complete();
+        } else {
+          udsListening.fail(uds.cause());
+        }
+      });
+    }
+    // Serve GETs over UDP, if "udp.port" is set
+    Promise<Void> udpListening = Promise.promise();
+    Integer udpPort = config().getInteger("udp.port");
+    if (udpPort == null) {
+      udpListening.complete();
+    } else {
+      int datagramSize = config().getInteger("udp.datagram.size", DEFAULT_UDP_DATAGRAM_SIZE);
+      udpSocket = vertx.createDatagramSocket();
+      udpSocket.handler(packet -> serveDatagram(packet, decoder, engine, datagramSize));
+      udpSocket.listen(udpPort, "localhost", udp -> {
+        if (udp.succeeded()) {
+          Log.info("Listening on UDP port " + udpPort);
+          udpListening.complete();
+        } else {
+          udpListening.fail(udp.cause());
+        }
+      });
+    }
+    CompositeFuture.all(tcpListening.future(), udsListening.future(), udpListening.future()).setHandler(listening -> {
+      if (listening.succeeded()) {
         startFuture.complete();
-        System.out.println("Listening on port " + config().getInteger("tcp.port", DEFAULT_PORT));
       } else {
-        startFuture.fail(tcp.cause());
+        startFuture.fail(listening.cause());
       }
     });
   }
 
+  /***
+   * Answer a GET received over UDP (see UdpFrame). The command line is decoded and the
+   * response translated as over TCP; the response is then sent back in as many datagrams as
+   * needed. Datagrams which are not valid requests are dropped, other commands are answered
+   * with CLIENT_ERROR, a response needing more than 65535 datagrams is answered with
+   * SERVER_ERROR, and a request which fails in the cache is not answered.
+   * @param packet is the datagram received
+   * @param decoder decodes the command and translates the response
+   * @param engine is the shared cache engine, or null to go through the event bus
+   * @param datagramSize is the largest size of a response datagram
+   */
+  private void serveDatagram(DatagramPacket packet, Decoder decoder, CacheEngine engine, int datagramSize) {
+    ByteBuf datagram = packet.data().getByteBuf();
+    ByteBuf line = UdpFrame.request(datagram);
+    if (line == null) {
+      return;
+    }
+    int requestId = UdpFrame.requestId(datagram);
+    SocketAddress sender = packet.sender();
+    Handler<ByteBuf> reply = response -> {
+      List<Buffer> datagrams;
+      try {
+        datagrams = UdpFrame.split(requestId, response, datagramSize);
+      } catch (IllegalArgumentException e) {
+        // More datagrams than the header can number
+        Buffer error = Buffer.buffer(SERVER_ERROR).appendString(" response too large for UDP").appendBytes(CRLF);
+        datagrams = UdpFrame.split(requestId, error.getByteBuf(), datagramSize);
+      } finally {
+        response.release();
+      }
+      for (Buffer d : datagrams) {
+        udpSocket.send(d, sender.port(), sender.host(), null);
+      }
+    };
+    MemcacheMessage command = decoder.decode(line);
+    if (command == null || command.getCommandType() != CommandType.GET) {
+      reply.handle(Unpooled.buffer().writeBytes(CLIENT_ERROR).writeBytes(CRLF));
+      return;
+    }
+    Handler<MemcacheMessage> respond = response -> {
+      ByteBuf b = decoder.translate(response);
+      response.release();
+      reply.handle(b);
+    };
+    if (engine != null) {
+      engine.process(command, respond);
+    } else {
+      vertx.eventBus().send(Constants.ADDRESS, command, (AsyncResult<Message<Object>> answer) -> {
+        if (answer.succeeded()) {
+          respond.handle((MemcacheMessage) answer.result().body());
+        }
+      });
+    }
+  }
+
+  /***
+   * Remove the socket file left by a previous server at the path of the Unix domain socket,
+   * which would prevent the listener from binding. Other files are left alone (the bind
+   * then fails).
+   * @param path is the path of the socket
+   */
+  private static void removeStaleSocket(String path) {
+    Path socket = Paths.get(path);
+    if (Files.exists(socket, LinkOption.NOFOLLOW_LINKS) && !Files.isRegularFile(socket, LinkOption.NOFOLLOW_LINKS)
+        && !Files.isDirectory(socket, LinkOption.NOFOLLOW_LINKS)) {
+      try {
+        Files.delete(socket);
+      } catch (IOException e) {
+        Log.info("Failed to remove the stale socket " + path + ": " + e.getMessage());
+      }
+    }
+  }
+
   @Override
   public void stop() {
     server.close(res -> {
       if (res.succeeded()) {
-        System.out.println("Server is now closed");
+        Log.info("Server is now closed");
       } else {
-        System.out.println("close failed");
+        Log.info("close failed");
       }
     });
+    if (udsServer != null) {
+      udsServer.close();
+    }
+    if (udpSocket != null) {
+      udpSocket.close();
+    }
   }
 }
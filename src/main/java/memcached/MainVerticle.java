@@ -2,17 +2,21 @@ package memcached;
 
 import io.vertx.core.*;
 import io.vertx.core.json.JsonObject;
+import memcached.util.Log;
+
+import static memcached.util.Constants.DEFAULT_PORT;
 
 public class MainVerticle extends AbstractVerticle {
 
   /***
-   * Deploy an instance each of CommandVerticle and CacheVerticle
+   * Deploy an instance each of CommandVerticle and CacheVerticle. The configuration passed
+   * to this verticle (if any) is forwarded to both of them.
    */
   @Override
   public void start(Promise<Void> promise){
 
     DeploymentOptions options = new DeploymentOptions()
-            .setConfig(new JsonObject().put("tcp.port", 11211));
+            .setConfig(new JsonObject().put("tcp.port", DEFAULT_PORT).mergeIn(config()));
 
     CompositeFuture.all(
       deployHelper(CommandVerticle.class.getName(), options),  // Command processor
@@ -30,10 +34,10 @@ public class MainVerticle extends AbstractVerticle {
     final Promise<Void> promise = Promise.promise();
     vertx.deployVerticle(name, options, res -> {
       if (res.failed()){
-        System.out.println("Failed to deploy verticle! " + name);
+        Log.info("Failed to deploy verticle! " + name);
         promise.fail(res.cause());
       } else {
-        System.out.println(name + " verticle deployed!");
+        Log.info(name + " verticle deployed!");
         promise.complete();
       }
     });
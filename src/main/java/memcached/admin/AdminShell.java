@@ -0,0 +1,265 @@
+package memcached.admin;
+
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.shell.ShellService;
+import io.vertx.ext.shell.ShellServiceOptions;
+import io.vertx.ext.shell.command.Command;
+import io.vertx.ext.shell.command.CommandBuilder;
+import io.vertx.ext.shell.command.CommandProcess;
+import io.vertx.ext.shell.command.CommandRegistry;
+import io.vertx.ext.shell.term.TelnetTermOptions;
+import memcached.cache.CacheEngine;
+import memcached.cache.ItemCrawler;
+import memcached.common.MemcacheMessage;
+import memcached.common.MemcacheMessage.CommandType;
+import memcached.stats.SlowLog;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import static memcached.util.Constants.DEFAULT_SHELL_HOST;
+
+/***
+ * AdminShell serves a telnet shell (see vertx-shell) on "shell.port", bound to "shell.host"
+ * (localhost by default), to inspect and tune a running server:
+ * - cache-stats [group]: the statistics of a group, as `stats <group>`
+ * - cache-shards: items, bytes and evictions of each tenant cache, or of the whole cache
+ * - cache-rates [seconds]: the counters of `stats` per second, over an interval (1 s)
+ * - cache-loops: the lag of the event loops
+ * - cache-hotkeys: the most accessed keys, with their estimated QPS
+ * - cache-connections: the open, paused and refused client connections
+ * - cache-tune [name [value]]: list, show or change a setting, without a restart
+ *
+ * The shell reads the cache engine directly, on the context of the cache verticle, rather
+ * than through the memcached protocol: admin traffic never goes through the command
+ * verticles. Only the settings read at each use can be tuned: the crawler budget, and the
+ * thresholds and sample rates of the slow log and of the hot key tracker.
+ */
+public class AdminShell {
+  private static final List<String> RATES = Arrays.asList("cmd_get", "cmd_set", "cmd_touch", "get_hits",
+    "get_misses", "evictions", "total_connections", "rejected_connections");   // Counters reported by cache-rates
+
+  private final Vertx vertx;
+  private final Context context;          // Context of the cache verticle
+  private final CacheEngine engine;
+  private final JsonObject config;
+  private final Map<String, Tunable> tunables = new LinkedHashMap<>();
+  private ShellService service;
+
+  /***
+   * A setting which can be changed while the server runs.
+   */
+  private static class Tunable {
+    private final Supplier<Object> getter;
+    private final Consumer<String> setter;   // Parses and applies a value, throws IllegalArgumentException if it is invalid
+
+    Tunable(Supplier<Object> getter, Consumer<String> setter) {
+      this.getter = getter;
+      this.setter = setter;
+    }
+  }
+
+  /***
+   * Create the shell of the cache verticle. It must be created on the context of the cache
+   * verticle.
+   * @param vertx is the vertx instance
+   * @param engine is the cache engine
+   * @param crawler is the crawler of the cache verticle
+   * @param config is the verticle configuration
+   */
+  public AdminShell(Vertx vertx, CacheEngine engine, ItemCrawler crawler, JsonObject config) {
+    this.vertx = vertx;
+    this.context = vertx.getOrCreateContext();
+    this.engine = engine;
+    this.config = config;
+    SlowLog slowLog = SlowLog.shared(vertx, config);
+    tunables.put("crawler.interval.ms", new Tunable(crawler::getInterval, v -> crawler.setInterval(Long.parseLong(v))));
+    tunables.put("crawler.step.items", new Tunable(crawler::getStepItems, v -> crawler.setStepItems(Integer.parseInt(v))));
+    tunables.put("slowlog.threshold.us", new Tunable(slowLog::getThreshold, v -> slowLog.setThreshold(Long.parseLong(v))));
+    tunables.put("slowlog.sample.rate", new Tunable(slowLog::getSampleRate, v -> slowLog.setSampleRate(Double.parseDouble(v))));
+    tunables.put("hotkeys.sample.rate", new Tunable(engine.hotKeys()::getSampleRate,
+      v -> engine.hotKeys().setSampleRate(Double.parseDouble(v))));
+  }
+
+  /***
+   * Register the commands and start listening.
+   * @param port is the port of the shell
+   * @return completed once the shell listens
+   */
+  public Future<Void> start(int port) {
+    CommandRegistry registry = CommandRegistry.create(vertx);
+    registry.registerCommand(command("cache-stats", this::stats));
+    registry.registerCommand(command("cache-shards", this::shards));
+    registry.registerCommand(command("cache-rates", this::rates));
+    registry.registerCommand(command("cache-loops", process -> print(process, "loops")));
+    registry.registerCommand(command("cache-hotkeys", process -> print(process, "hotkeys")));
+    registry.registerCommand(command("cache-connections", this::connections));
+    registry.registerCommand(command("cache-tune", this::tune));
+
+    service = ShellService.create(vertx, new ShellServiceOptions()
+      .setWelcomeMessage("memcached admin shell, type help for the commands\n")
+      .setTelnetOptions(new TelnetTermOptions()
+        .setHost(config.getString("shell.host", DEFAULT_SHELL_HOST))
+        .setPort(port)));
+    service.server().registerCommandResolver(registry);
+    Promise<Void> started = Promise.promise();
+    service.start(started);
+    return started.future();
+  }
+
+  /***
+   * Stop listening, and close the open sessions.
+   */
+  public void close() {
+    if (service != null) {
+      service.stop();
+    }
+  }
+
+  private Command command(String name, Handler<CommandProcess> handler) {
+    return CommandBuilder.command(name).processHandler(handler).build(vertx);
+  }
+
+  /***
+   * Collect a group of statistics on the context of the cache verticle.
+   * @param group is the group, empty for the general statistics
+   * @return the statistics, or null if the group is unknown
+   */
+  private Future<Map<String, String>> collect(String group) {
+    Promise<Map<String, String>> stats = Promise.promise();
+    context.runOnContext(v -> {
+      MemcacheMessage request = new MemcacheMessage(CommandType.STATS, group.getBytes(StandardCharsets.UTF_8), null, 0);
+      stats.complete(engine.process(request).getStats());
+    });
+    return stats.future();
+  }
+
+  private void stats(CommandProcess process) {
+    print(process, String.join(" ", process.args()));
+  }
+
+  private void print(CommandProcess process, String group) {
+    collect(group).onComplete(collected -> {
+      if (collected.failed() || collected.result() == null) {
+        process.write("Unknown group of statistics: " + group + "\n");
+        process.end(1);
+        return;
+      }
+      write(process, collected.result());
+      process.end();
+    });
+  }
+
+  private void shards(CommandProcess process) {
+    collect("tenants").onComplete(tenants -> {
+      Map<String, String> stats = tenants.succeeded() ? tenants.result() : null;
+      if (stats != null) {
+        write(process, stats);
+        process.end();
+        return;
+      }
+      // Without tenants, the cache is a single shard
+      collect("").onComplete(general -> {
+        Map<String, String> shard = new LinkedHashMap<>();
+        for (String name : Arrays.asList("curr_items", "bytes", "evictions")) {
+          String value = general.result().get(name);
+          if (value != null) {
+            shard.put(name, value);
+          }
+        }
+        write(process, shard);
+        process.end();
+      });
+    });
+  }
+
+  private void rates(CommandProcess process) {
+    long seconds;
+    try {
+      seconds = process.args().isEmpty() ? 1 : Long.parseLong(process.args().get(0));
+    } catch (NumberFormatException e) {
+      process.write("Usage: cache-rates [seconds]\n");
+      process.end(1);
+      return;
+    }
+    collect("").onComplete(before -> vertx.setTimer(Math.max(1, seconds) * 1000, timer ->
+      collect("").onComplete(after -> {
+        Map<String, String> rates = new LinkedHashMap<>();
+        for (String name : RATES) {
+          String from = before.result().get(name);
+          String to = after.result().get(name);
+          if (from != null && to != null) {
+            double rate = (Long.parseLong(to) - Long.parseLong(from)) / (double) Math.max(1, seconds);
+            rates.put(name + "_per_sec", String.format(Locale.ROOT, "%.1f", rate));
+          }
+        }
+        write(process, rates);
+        process.end();
+      })));
+  }
+
+  private void connections(CommandProcess process) {
+    collect("").onComplete(general -> {
+      Map<String, String> connections = new LinkedHashMap<>();
+      general.result().forEach((name, value) -> {
+        if (name.contains("conn")) {
+          connections.put(name, value);
+        }
+      });
+      write(process, connections);
+      process.end();
+    });
+  }
+
+  private void tune(CommandProcess process) {
+    List<String> args = process.args();
+    if (args.isEmpty()) {
+      tunables.forEach((name, tunable) -> process.write(name + " " + tunable.getter.get() + "\n"));
+      process.end();
+      return;
+    }
+    Tunable tunable = tunables.get(args.get(0));
+    if (tunable == null || args.size() > 2) {
+      process.write("Usage: cache-tune [name [value]], the names are " + String.join(", ", tunables.keySet()) + "\n");
+      process.end(1);
+      return;
+    }
+    if (args.size() == 2) {
+      try {
+        tunable.setter.accept(args.get(1));
+      } catch (IllegalArgumentException e) {
+        process.write("Invalid value: " + e.getMessage() + "\n");
+        process.end(1);
+        return;
+      }
+    }
+    process.write(args.get(0) + " " + tunable.getter.get() + "\n");
+    process.end();
+  }
+
+  /***
+   * Write statistics as aligned columns: <name> <value>
+   */
+  private static void write(CommandProcess process, Map<String, String> stats) {
+    int width = 0;
+    for (String name : stats.keySet()) {
+      width = Math.max(width, name.length());
+    }
+    StringBuilder lines = new StringBuilder();
+    for (Map.Entry<String, String> stat : stats.entrySet()) {
+      lines.append(String.format(Locale.ROOT, "%-" + width + "s %s\n", stat.getKey(), stat.getValue()));
+    }
+    process.write(lines.toString());
+  }
+}
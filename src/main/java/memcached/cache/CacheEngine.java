@@ -0,0 +1,817 @@
+package memcached.cache;
+
+import com.googlecode.concurrentlinkedhashmap.EntryWeigher;
+import com.googlecode.concurrentlinkedhashmap.EvictionListener;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.Shareable;
+import memcached.common.ConnectionLimiter;
+import memcached.common.InvalidationTracker;
+import memcached.common.MemcacheMessage;
+import memcached.common.MemcacheMessage.CommandType;
+import memcached.common.Workers;
+import memcached.stats.HotKeyTracker;
+import memcached.stats.MissRatioCurve;
+import memcached.util.Log;
+import memcached.util.Shared;
+
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import static memcached.util.Constants.*;
+
+/***
+ * CacheEngine performs the protocol agnostic cache operations: it stores and retrieves
+ * items, feeds the hot key tracker and the compressor, and collects the statistics.
+ *
+ * It is normally owned by the cache verticle, which calls it for each message received
+ * on the event bus. With "cache.direct", a single engine (see Shared) is shared by the cache
+ * verticle and the command verticles, which call it directly from their own event loop,
+ * saving the event bus round trip of each request. The engine is then accessed concurrently,
+ * which is why its counters are LongAdders and why its cache must be the concurrent LRUCache.
+ *
+ * Stored values are reference counted: the cache holds one reference to the bytes of each
+ * item, and each GET response holds another one until it has been written. When the engine
+ * is owned by the cache verticle, the bytes of the items dropped by the cache are released
+ * (returning pooled buffers to their pool). Shared engines leave them to the garbage
+ * collector instead, since a GET on another event loop may be about to retain them.
+ *
+ * Items are dead once they have expired, or once a `flush_all` takes effect after they were
+ * stored. Dead items are dropped when a GET finds them, or by the crawler (see ItemCrawler),
+ * and are never returned, except as the stale value of a key being refilled under a lease.
+ *
+ * LGET and LSET are the lease variants of GET and SET (see LeaseTable): on a miss, LGET
+ * hands a lease token to the first client only, and LSET only stores a value along with
+ * the token of the current lease.
+ *
+ * With "ext.path", the values evicted from memory are written to a second tier on a local
+ * file (see ExtStore), which keeps their keys in memory. A GET missing in memory which finds
+ * its key there reads the value back, asynchronously when the engine is called with a
+ * response handler, and moves it back to memory.
+ *
+ * When called with a response handler, the engine also hands the decompression of large
+ * values ("worker.offload.size") to the worker pool (see Workers), off the event loop.
+ *
+ * Clients tracking their reads are told when the keys they read change (see
+ * InvalidationTracker): the engine reports the keys read by their GETs, and the keys set,
+ * dropped from memory or flushed.
+ *
+ * A sample of the keys feeds an estimate of the miss ratio the cache would have at other
+ * sizes (`stats mrc`, see MissRatioCurve), in items or in bytes like the cache capacity.
+ */
+public class CacheEngine implements Shareable {
+  private static final long MAX_RELATIVE_EXPTIME = 60 * 60 * 24 * 30;  // Larger expiration times are Unix times
+
+  private final MemCache<ByteBuf, Item> cache;
+  private final HotKeyTracker hotKeys;            // Tracks the most accessed keys
+  private final MissRatioCurve mrc;               // Estimates the miss ratio at other cache sizes
+  private final boolean weighBytes;               // Whether the cache is bounded in bytes rather than items
+  private final ValueCompressor compressor;       // Compresses large values
+  private final ConnectionLimiter connections;    // Counts client connections (null if there is no server)
+  private final LeaseTable leases;                // Leases granted on misses by LGET
+  private final ExtStore ext;                     // Tier of the values evicted from memory (null if disabled)
+  private final boolean direct;                   // Whether the engine is shared with the command verticles
+  private final Workers workers;                  // Runs heavy work off the event loops (null without a Vert.x instance)
+  private final InvalidationTracker tracker;      // Pushes the changes of keys to the clients (null without a Vert.x instance)
+  private final int offloadSize;                  // Compressed values of at least this size are decompressed by the workers
+  private final LongAdder getHits = new LongAdder();    // Number of GET commands which found the key
+  private final LongAdder getMisses = new LongAdder();  // Number of GET commands which did not find the key
+  private final LongAdder setCount = new LongAdder();   // Number of SET commands
+  private final LongAdder flushCount = new LongAdder(); // Number of FLUSH_ALL commands
+  private final LongAdder touchHits = new LongAdder();  // Number of TOUCH commands which found the key
+  private final LongAdder touchMisses = new LongAdder(); // Number of TOUCH commands which did not find the key
+  private final LongAdder leaseGrants = new LongAdder();   // Number of leases granted by LGET
+  private final LongAdder hotMisses = new LongAdder();     // Number of LGET misses on a leased key
+  private final LongAdder staleHits = new LongAdder();     // Number of LGET misses answered with a stale value
+  private final LongAdder staleSets = new LongAdder();     // Number of LSET rejected for a stale token
+  private final LongAdder dropCount = new LongAdder();     // Number of items evicted or removed
+  private final LongAdder removeCount = new LongAdder();   // Number of items removed by the engine (dead or leased)
+  private volatile long flushTime;                      // Items stored up to this time are dead once it has passed (ms)
+  // Providers of the groups of statistics reported by other components, such as `stats dump`
+  private final Map<String, Consumer<Map<String, String>>> statsGroups = new ConcurrentHashMap<>();
+  // Handlers of the commands served by other components, such as DUMP and LOAD
+  private final Map<CommandType, Consumer<MemcacheMessage>> handlers = new ConcurrentHashMap<>();
+
+  /***
+   * Create an engine from the configuration of the verticles, which does not report
+   * connection statistics.
+   * @param config is the verticle configuration
+   */
+  public CacheEngine(JsonObject config) {
+    this(config, null);
+  }
+
+  /***
+   * Create an engine from the configuration of the verticles.
+   * @param config is the verticle configuration
+   * @param connections is the limiter of the client connections, whose counters are reported in `stats`
+   */
+  public CacheEngine(JsonObject config, ConnectionLimiter connections) {
+    this(null, config, connections);
+  }
+
+  /***
+   * Create an engine from the configuration of the verticles, which may use the ext store
+   * (whose threads are provided by the Vert.x instance).
+   * @param vertx is the vertx instance, or null if the ext store is not used
+   * @param config is the verticle configuration
+   * @param connections is the limiter of the client connections, whose counters are reported in `stats`
+   */
+  public CacheEngine(Vertx vertx, JsonObject config, ConnectionLimiter connections) {
+    this.connections = connections;
+    direct = config.getBoolean("cache.direct", false);
+    cache = createCache(config);
+    compressor = new ValueCompressor(
+      config.getInteger("compression.min.size", 0),
+      config.getBoolean("compression.passthrough", false),
+      config.getInteger("compression.flag", DEFAULT_COMPRESSION_FLAG));
+    hotKeys = new HotKeyTracker(
+      config.getInteger("hotkeys.count", DEFAULT_HOTKEYS_COUNT),
+      config.getDouble("hotkeys.sample.rate", DEFAULT_HOTKEYS_SAMPLE_RATE),
+      config.getLong("hotkeys.window.ms", DEFAULT_HOTKEYS_WINDOW_MS));
+    // The curve is in the unit of the cache capacity, up to twice the capacity by default
+    Long maxMemory = config.getLong("cache.memory.max");
+    weighBytes = maxMemory != null;
+    mrc = new MissRatioCurve(
+      config.getDouble("mrc.sample.rate", DEFAULT_MRC_SAMPLE_RATE),
+      config.getInteger("mrc.samples", DEFAULT_MRC_SAMPLES),
+      config.getLong("mrc.max.size", 2 * (weighBytes ? maxMemory : NUM_CACHE_ENTRIES)),
+      config.getInteger("mrc.buckets", DEFAULT_MRC_BUCKETS));
+    leases = new LeaseTable(
+      config.getInteger("lease.max", DEFAULT_MAX_LEASES),
+      config.getLong("lease.ttl.ms", DEFAULT_LEASE_TTL_MS));
+    workers = vertx != null ? Workers.shared(vertx, config) : null;
+    tracker = vertx != null ? InvalidationTracker.shared(vertx, config) : null;
+    offloadSize = config.getInteger("worker.offload.size", DEFAULT_WORKER_OFFLOAD_SIZE_IN_BYTES);
+    if (config.getString("ext.path") == null) {
+      ext = null;
+    } else if (vertx == null) {
+      throw new IllegalArgumentException("ext.path needs an engine created with a Vert.x instance");
+    } else {
+      ext = new ExtStore(vertx, config);
+    }
+  }
+
+  /***
+   * Returns the engine shared by the verticles of a Vert.x instance, creating it if needed.
+   * The first configuration to ask for it wins (see Shared).
+   * @param vertx is the vertx instance
+   * @param config is the verticle configuration
+   * @return the shared engine
+   */
+  public static CacheEngine shared(Vertx vertx, JsonObject config) {
+    return Shared.get(vertx, "cache", () ->
+      new CacheEngine(vertx, config, ConnectionLimiter.shared(vertx, config)));
+  }
+
+  /***
+   * Create the cache instance. The cache is bounded by number of entries, unless a memory limit
+   * (in bytes of keys and values) is given with "cache.memory.max".
+   * "cache.impl" selects the implementation:
+   * - "lru" (default): LRUCache, a concurrent LRU cache.
+   * - "confined": ConfinedLRUCache, which is faster and smaller, but must only be accessed
+   *   from the cache verticle's event loop. It cannot be used with "cache.direct".
+   * With "tenants", the keyspace is split between tenants, each with a cache of the chosen
+   * implementation bounded by its quota (see TenantCache).
+   * @param config is the verticle configuration
+   * @return the cache instance
+   */
+  private MemCache<ByteBuf, Item> createCache(JsonObject config) {
+    Long maxMemory = config.getLong("cache.memory.max");
+    boolean confined = "confined".equals(config.getString("cache.impl", "lru"));
+    if (confined && direct) {
+      throw new IllegalArgumentException("cache.impl confined cannot be used with cache.direct");
+    }
+    long capacity;
+    EntryWeigher<ByteBuf, Item> weigher;
+    if (maxMemory == null) {
+      capacity = NUM_CACHE_ENTRIES; // allow 10k entries.
+      weigher = (k, v) -> 1;
+    } else {
+      capacity = maxMemory;
+      weigher = (k, v) -> Math.max(1, k.readableBytes() + v.size());
+    }
+    EvictionListener<ByteBuf, Item> listener = this::dropped;
+    JsonObject quotas = config.getJsonObject("tenants");
+    if (quotas != null) {
+      // One cache per tenant, each with its own LRU order and quota
+      Map<String, Long> tenantQuotas = new LinkedHashMap<>();
+      for (String tenant : quotas.fieldNames()) {
+        tenantQuotas.put(tenant, quotas.getLong(tenant));
+      }
+      byte separator = (byte) config.getString("tenant.separator", DEFAULT_TENANT_SEPARATOR).charAt(0);
+      TenantCache<Item> tenants = new TenantCache<>(separator, tenantQuotas, capacity,
+        config.getBoolean("tenant.borrow", false),
+        (tenantCapacity, tenantListener) -> confined
+          ? new ConfinedLRUCache<>(tenantCapacity, weigher, tenantListener)
+          : new LRUCache<>(tenantCapacity, weigher, tenantListener),
+        listener);
+      statsGroups.put("tenants", tenants::addStats);
+      return tenants;
+    }
+    if (confined) {
+      return new ConfinedLRUCache<>(capacity, weigher, listener);
+    }
+    return new LRUCache<>(capacity, weigher, listener);
+  }
+
+  /***
+   * Called with each item dropped by the cache: evicted, replaced, or removed. The value of
+   * an evicted item which is still alive is written to the ext store (if any). The bytes are
+   * then released, unless the engine is shared.
+   * @param key is the key
+   * @param item is the item dropped
+   */
+  private void dropped(ByteBuf key, Item item) {
+    // A replaced item leaves its key in the cache
+    boolean replaced = cache.containsKey(key);
+    if (ext != null && !replaced && !isDead(item, System.currentTimeMillis())) {
+      ext.spill(key, item);
+    }
+    if (!replaced) {
+      dropCount.increment();
+    }
+    if (tracker != null && !replaced) {
+      tracker.invalidate(key);
+    }
+    if (!direct) {
+      item.getData().release();
+    }
+  }
+
+  /***
+   * Depending on the memcache message object, this method will either store content
+   * in the LRU cache, retrieve content from the cache, or report statistics.
+   * The response is written into the incoming message, which is returned: the caller owns
+   * the response and the value it holds, and must release it once it has been sent.
+   * Values in the ext store are read by the calling thread, which blocks meanwhile.
+   * @param message is the incoming memcache message
+   * @return response memcache object which contains the kv pair
+   */
+  public MemcacheMessage process(MemcacheMessage message) {
+    Object pending = execute(message, false);
+    if (pending != null) {
+      ExtStore.ExtItem cold = (ExtStore.ExtItem) pending;
+      warm(message, cold, ext.readBlocking(cold));
+    }
+    return message;
+  }
+
+  /***
+   * Process a message like process(message), except that values in the ext store are read,
+   * and large values decompressed, on worker threads: the handler is then called later, on
+   * the caller's context. Otherwise, it is called before this method returns.
+   * @param message is the incoming memcache message
+   * @param handler is called with the response, owned by the handler
+   */
+  public void process(MemcacheMessage message, Handler<MemcacheMessage> handler) {
+    message.setProcessing(System.nanoTime());
+    Object pending = execute(message, true);
+    if (pending == null) {
+      respond(message, handler);
+    } else if (pending instanceof ExtStore.ExtItem) {
+      ExtStore.ExtItem cold = (ExtStore.ExtItem) pending;
+      ext.read(cold, bytes -> {
+        warm(message, cold, bytes);
+        respond(message, handler);
+      });
+    } else {
+      decompress(message, (Item) pending, handler);
+    }
+  }
+
+  /***
+   * Process a message, unless its response needs work which may be done off the event loop.
+   * @param message is the incoming memcache message, which receives the response
+   * @param async indicates if the caller accepts a response completed asynchronously, in
+   *              which case large values are left to decompress
+   * @return null if the response is complete, or the work left: the pointer to a value in the
+   *         ext store to read back, or the item of a large value to decompress (retained)
+   */
+  private Object execute(MemcacheMessage message, boolean async) {
+    // The key bytes belong to the message and are never modified: wrap them rather than copy them
+    ByteBuf key = Unpooled.wrappedBuffer(message.getKey());
+
+    switch (message.getCommandType()) {
+      case SET:
+        // A value stored without a lease makes the value the lease holder is fetching stale
+        leases.invalidate(key);
+        set(key, message);
+        break;
+      case LSET:
+        // Only the holder of the current lease may fill the key. A rejected value is dropped,
+        // which the response reports.
+        if (!leases.complete(key, message.getToken())) {
+          message.release();
+          staleSets.increment();
+          break;
+        }
+        set(key, message);
+        break;
+      case GET:
+      case GAT:
+      case GATS: {
+        // Obtain the value corresponding to the key if it is available. GAT also replaces the
+        // expiration time of the item, in place: the value is neither copied nor stored again.
+        hotKeys.record(key);
+        track(key, message);
+        long now = System.currentTimeMillis();
+        Item item = cache.get(key);
+        mrc.record(key, weight(key, item), true);
+        if (item != null && isDead(item, now)) {
+          remove(key, item);
+          item = null;
+        }
+        boolean touch = message.getCommandType() != CommandType.GET;
+        if (item != null) {
+          if (touch) {
+            item.setExpiry(expiry(message.getExptime(), now));
+          }
+          if (async && offload(item)) {
+            item.getData().retain();
+            return item;
+          }
+          hit(message, item);
+          break;
+        }
+        ExtStore.ExtItem cold = cold(key, now);
+        if (cold != null) {
+          if (touch) {
+            cold.setExpiry(expiry(message.getExptime(), now));
+          }
+          return cold;
+        }
+        getMisses.increment();
+        break;
+      }
+      case TOUCH: {
+        // Replace the expiration time of the item, wherever it is, without reading its value
+        long now = System.currentTimeMillis();
+        long expiry = expiry(message.getExptime(), now);
+        Item item = cache.get(key);
+        if (item != null && isDead(item, now)) {
+          remove(key, item);
+          item = null;
+        }
+        if (item != null) {
+          item.setExpiry(expiry);
+          message.setFound(true);
+        } else {
+          ExtStore.ExtItem cold = cold(key, now);
+          if (cold != null) {
+            cold.setExpiry(expiry);
+            message.setFound(true);
+          }
+        }
+        (message.isFound() ? touchHits : touchMisses).increment();
+        break;
+      }
+      case LGET: {
+        hotKeys.record(key);
+        track(key, message);
+        long now = System.currentTimeMillis();
+        Item item = cache.get(key);
+        mrc.record(key, weight(key, item), true);
+        if (item != null && !isDead(item, now)) {
+          if (async && offload(item)) {
+            item.getData().retain();
+            return item;
+          }
+          hit(message, item);
+          break;
+        }
+        ExtStore.ExtItem cold = cold(key, now);
+        if (cold != null) {
+          return cold;
+        }
+        // On a miss, the first client gets a lease. An expired item is kept by the lease, and
+        // served as a stale value to the other clients until the key is filled.
+        getMisses.increment();
+        LeaseTable.Lease lease = leases.acquire(key, now, item);
+        if (item != null) {
+          remove(key, item);
+        }
+        if (lease != null) {
+          message.setToken(lease.getToken());
+          leaseGrants.increment();
+          break;
+        }
+        LeaseTable.Lease held = leases.held(key, now);
+        if (held != null && held.getStale() != null) {
+          message.setValueBuf(compressor.value(held.getStale()));
+          message.setFlags(compressor.flags(held.getStale()));
+          message.setStale(true);
+          staleHits.increment();
+        } else {
+          hotMisses.increment();
+        }
+        break;
+      }
+      case STATS:
+        message.setStats(stats(key.toString(Charset.defaultCharset())));
+        break;
+      case FLUSH_ALL:
+        // The items stored so far (including during this millisecond, as memcached does with
+        // its own cutoff) die once the delay (if any) has passed
+        flushTime = System.currentTimeMillis() + Math.max(0, message.getExptime()) * 1000;
+        flushCount.increment();
+        if (tracker != null) {
+          tracker.invalidateAll();
+        }
+        break;
+      default: {
+        Consumer<MemcacheMessage> handler = handlers.get(message.getCommandType());
+        if (handler != null) {
+          handler.accept(message);
+        } else {
+          message.setError("not supported");
+        }
+        break;
+      }
+    }
+    return null;
+  }
+
+  /***
+   * Store the value of a SET command. This will internally evict entries from the cache if
+   * size is exceeded. The value received is stored as is (unless it is compressed): it is not
+   * modified afterwards. The cache takes its own reference to the stored bytes, and the value
+   * is left in the response.
+   * @param key is the key
+   * @param message is the SET command
+   */
+  private void set(ByteBuf key, MemcacheMessage message) {
+    ByteBuf value = message.getValueBuf();
+    Item item = compressor.compress(value, message.getFlags());
+    if (item.getData() == value) {
+      // Stored as is: keep the pre-serialized GET response along with it, if there is one
+      if (message.getResponseBuf() != null) {
+        item = new Item(value, message.getFlags(), message.getResponseBuf());
+      }
+      value.retain();
+    }
+    long now = System.currentTimeMillis();
+    item.setTime(now);
+    item.setExpiry(expiry(message.getExptime(), now));
+    hotKeys.record(key);
+    mrc.record(key, weight(key, item), false);
+    cache.set(key, item);
+    if (ext != null) {
+      ext.remove(key);      // Older value, evicted from memory
+    }
+    if (tracker != null) {
+      tracker.invalidate(key);
+    }
+    setCount.increment();
+  }
+
+  /***
+   * Remember that the client of a GET read its key, if it tracks its reads, so that the
+   * changes of the key are pushed to it. This is done before the read, so that a change made
+   * meanwhile is pushed.
+   * @param key is the key
+   * @param message is the GET command
+   */
+  private void track(ByteBuf key, MemcacheMessage message) {
+    if (tracker != null && message.getClient() != 0) {
+      tracker.track(key, message.getClient());
+    }
+  }
+
+  /***
+   * Returns the weight of an item in the miss ratio curve: as in the cache, its bytes if the
+   * cache is bounded in bytes, 1 otherwise.
+   * @param key is the key
+   * @param item is the item, or null if it is not in memory
+   * @return the weight, 0 if unknown
+   */
+  private long weight(ByteBuf key, Item item) {
+    if (item == null) {
+      return 0;
+    }
+    return weighBytes ? Math.max(1, key.readableBytes() + item.size()) : 1;
+  }
+
+  /***
+   * Answer a GET with a stored item.
+   * @param message is the GET command, which receives the value
+   * @param item is the item found
+   */
+  private void hit(MemcacheMessage message, Item item) {
+    if (item.getResponse() != null) {
+      // The response was serialized when the item was stored: share it as is
+      message.setResponseBuf(item.getResponse().retainedDuplicate());
+      message.setValueBuf(item.getData().duplicate());
+    } else {
+      // Share the stored bytes with the response (unless they have to be decompressed)
+      message.setValueBuf(compressor.value(item));
+    }
+    message.setFlags(compressor.flags(item));
+    getHits.increment();
+  }
+
+  /***
+   * Returns whether the value of an item is worth decompressing on a worker thread.
+   */
+  private boolean offload(Item item) {
+    return workers != null && item.isCompressed() && !compressor.isPassThrough() && item.getLength() >= offloadSize;
+  }
+
+  /***
+   * Answer a GET with a large compressed value, decompressed by the workers. If their queue
+   * is full, the value is decompressed by the calling thread instead.
+   * @param message is the GET command, which receives the value
+   * @param item is the item found, whose bytes were retained for the workers
+   * @param handler is called with the response
+   */
+  private void decompress(MemcacheMessage message, Item item, Handler<MemcacheMessage> handler) {
+    boolean queued = workers.<ByteBuf>execute(promise -> promise.complete(compressor.value(item)), decompressed -> {
+      if (decompressed.succeeded()) {
+        message.setValueBuf(decompressed.result());
+        message.setFlags(compressor.flags(item));
+        getHits.increment();
+      } else {
+        Log.info("Failed to decompress a value: " + decompressed.cause().getMessage());
+        getMisses.increment();
+      }
+      item.getData().release();
+      respond(message, handler);
+    });
+    if (!queued) {
+      hit(message, item);
+      item.getData().release();
+      respond(message, handler);
+    }
+  }
+
+  /***
+   * Hand a response to its handler, noting the time it was ready (see SlowLog).
+   */
+  private static void respond(MemcacheMessage message, Handler<MemcacheMessage> handler) {
+    message.setProcessed(System.nanoTime());
+    handler.handle(message);
+  }
+
+  /***
+   * Returns the value of a key missing in memory from the ext store, unless it is dead.
+   * @param key is the key
+   * @param now is the current time in milliseconds
+   * @return the pointer to the value, or null if there is none
+   */
+  private ExtStore.ExtItem cold(ByteBuf key, long now) {
+    if (ext == null) {
+      return null;
+    }
+    ExtStore.ExtItem cold = ext.get(key);
+    if (cold != null && isDead(cold.getTime(), cold.getExpiry(), now)) {
+      ext.remove(key, cold);
+      return null;
+    }
+    return cold;
+  }
+
+  /***
+   * Answer a GET with a value read back from the ext store, and move it back to memory,
+   * unless the key has been stored again meanwhile.
+   * @param message is the GET command, which receives the value
+   * @param cold is the pointer to the value
+   * @param bytes are the bytes read, or null if the value has been dropped from the store
+   */
+  private void warm(MemcacheMessage message, ExtStore.ExtItem cold, byte[] bytes) {
+    if (bytes == null) {
+      getMisses.increment();
+      return;
+    }
+    ByteBuf key = Unpooled.wrappedBuffer(message.getKey());
+    Item item = cold.toItem(bytes);
+    hit(message, item);
+    if (!ext.remove(key, cold) || !cache.add(key, item)) {
+      item.getData().release();
+    }
+  }
+
+  /***
+   * Store a value, as a SET does, but without a response: used to load items in bulk.
+   * The cache takes ownership of the value. Values which have already expired are dropped.
+   * @param key is the key
+   * @param flags are the flags given by the client
+   * @param expiry is the time the item expires in milliseconds, 0 if it does not expire
+   * @param value is the value
+   */
+  public void store(byte[] key, int flags, long expiry, ByteBuf value) {
+    long now = System.currentTimeMillis();
+    if (expiry != 0 && expiry <= now) {
+      value.release();
+      return;
+    }
+    Item item = compressor.compress(value, flags);
+    if (item.getData() != value) {
+      value.release();    // The compressed copy is stored instead
+    }
+    item.setTime(now);
+    item.setExpiry(expiry);
+    ByteBuf k = Unpooled.wrappedBuffer(key);
+    leases.invalidate(k);
+    cache.set(k, item);
+    if (ext != null) {
+      ext.remove(k);
+    }
+    if (tracker != null) {
+      tracker.invalidate(k);
+    }
+  }
+
+  /***
+   * Returns whether an item has expired, or has been flushed.
+   * @param item is the item
+   * @param now is the current time in milliseconds
+   * @return true if the item must not be returned anymore
+   */
+  public boolean isDead(Item item, long now) {
+    return isDead(item.getTime(), item.getExpiry(), now);
+  }
+
+  private boolean isDead(long time, long expiry, long now) {
+    return (expiry != 0 && now >= expiry) || (time <= flushTime && now >= flushTime);
+  }
+
+  /***
+   * Drop an item if it is dead, and if it is still the item stored under its key.
+   * @param key is the key
+   * @param item is the item
+   * @param now is the current time in milliseconds
+   * @return true if the item was dropped
+   */
+  public boolean reclaim(ByteBuf key, Item item, long now) {
+    return isDead(item, now) && remove(key, item);
+  }
+
+  /***
+   * Remove an item from the cache, unless it has been replaced meanwhile.
+   * @return true if the item was removed
+   */
+  private boolean remove(ByteBuf key, Item item) {
+    if (cache.remove(key, item)) {
+      removeCount.increment();
+      return true;
+    }
+    return false;
+  }
+
+  /***
+   * Returns an iterator over the items of the cache, from the least recently used one as
+   * far as the cache allows (see MemCache.lruIterator). A confined cache must only be
+   * walked from the cache verticle's event loop.
+   * @return iterator over the keys and items
+   */
+  public Iterator<Map.Entry<ByteBuf, Item>> lruIterator() {
+    return cache.lruIterator();
+  }
+
+  /***
+   * Convert the expiration time given by a client into the time the item expires, as
+   * memcached does: 0 never expires, negative values have already expired, values up to
+   * 30 days are offsets from now in seconds, and larger values are Unix times.
+   * @param exptime is the expiration time given by the client
+   * @param now is the current time in milliseconds
+   * @return the time the item expires in milliseconds, 0 if it does not expire
+   */
+  private static long expiry(long exptime, long now) {
+    if (exptime == 0) {
+      return 0;
+    }
+    if (exptime < 0) {
+      return now;
+    }
+    if (exptime <= MAX_RELATIVE_EXPTIME) {
+      return now + exptime * 1000;
+    }
+    return exptime * 1000;
+  }
+
+  /***
+   * Returns an iterator over the items of the cache, which does not change their LRU order.
+   * It is weakly consistent (see MemCache): a confined cache must only be walked from the
+   * cache verticle's event loop.
+   * @return iterator over the keys and items
+   */
+  public Iterator<Map.Entry<ByteBuf, Item>> iterator() {
+    return cache.iterator();
+  }
+
+  /***
+   * Returns the value of an item as sent by the client, decompressing it if needed (even
+   * in pass-through mode).
+   * @param item is the item
+   * @return the value, owned by the caller
+   */
+  public ByteBuf value(Item item) {
+    return compressor.original(item);
+  }
+
+  /***
+   * Close the ext store, if any.
+   */
+  public void close() {
+    if (ext != null) {
+      ext.close();
+    }
+  }
+
+  /***
+   * Register the handler of a command served by another component. The handler is called
+   * from the thread processing the command, and writes the response into the message.
+   * @param type is the type of the command
+   * @param handler handles the command
+   */
+  public void addHandler(CommandType type, Consumer<MemcacheMessage> handler) {
+    handlers.put(type, handler);
+  }
+
+  /***
+   * Register a group of statistics, reported by `stats <group>`.
+   * @param group is the name of the group
+   * @param provider adds the statistics of the group to the given map
+   */
+  public void addStats(String group, Consumer<Map<String, String>> provider) {
+    statsGroups.put(group, provider);
+  }
+
+  /***
+   * @return the tracker of the most accessed keys, whose sample rate can be changed
+   */
+  public HotKeyTracker hotKeys() {
+    return hotKeys;
+  }
+
+  /***
+   * Collect the statistics requested by a STATS command.
+   * @param group is the group of statistics requested (the arguments of the command)
+   * @return statistics in display order, or null if the group is unknown
+   */
+  private Map<String, String> stats(String group) {
+    Map<String, String> stats = new LinkedHashMap<>();
+    switch (group.trim()) {
+      case "":
+        long hits = getHits.sum();
+        long misses = getMisses.sum();
+        stats.put("curr_items", String.valueOf(cache.size()));
+        if (weighBytes) {
+          stats.put("bytes", String.valueOf(cache.weightedSize()));
+        }
+        stats.put("evictions", String.valueOf(Math.max(0, dropCount.sum() - removeCount.sum())));
+        stats.put("cmd_get", String.valueOf(hits + misses));
+        stats.put("cmd_set", String.valueOf(setCount.sum()));
+        stats.put("cmd_flush", String.valueOf(flushCount.sum()));
+        stats.put("cmd_touch", String.valueOf(touchHits.sum() + touchMisses.sum()));
+        stats.put("curr_leases", String.valueOf(leases.size()));
+        stats.put("lease_grants", String.valueOf(leaseGrants.sum()));
+        stats.put("lease_hot_misses", String.valueOf(hotMisses.sum()));
+        stats.put("lease_stale_hits", String.valueOf(staleHits.sum()));
+        stats.put("lease_stale_sets", String.valueOf(staleSets.sum()));
+        stats.put("get_hits", String.valueOf(hits));
+        stats.put("get_misses", String.valueOf(misses));
+        stats.put("touch_hits", String.valueOf(touchHits.sum()));
+        stats.put("touch_misses", String.valueOf(touchMisses.sum()));
+        if (connections != null) {
+          connections.addStats(stats);
+        }
+        if (compressor.isEnabled()) {
+          compressor.addStats(stats);
+        }
+        if (ext != null) {
+          ext.addStats(stats);
+        }
+        if (tracker != null) {
+          tracker.addStats(stats);
+        }
+        stats.put("log_dropped", String.valueOf(Log.dropped()));
+        return stats;
+      case "hotkeys":
+        // One line per hot key, hottest first: STAT <key> <estimated QPS>
+        for (HotKeyTracker.HotKey hotKey : hotKeys.getHotKeys()) {
+          stats.put(hotKey.getKey(), String.valueOf(Math.round(hotKey.getQps())));
+        }
+        return stats;
+      case "mrc":
+        // Estimated miss ratio at each cache size: STAT mrc_<size> <miss ratio>
+        mrc.addStats(stats);
+        return stats;
+      default:
+        Consumer<Map<String, String>> provider = statsGroups.get(group.trim());
+        if (provider == null) {
+          return null;
+        }
+        provider.accept(stats);
+        return stats;
+    }
+  }
+}
@@ -0,0 +1,426 @@
+package memcached.cache;
+
+import com.googlecode.concurrentlinkedhashmap.EntryWeigher;
+import com.googlecode.concurrentlinkedhashmap.EvictionListener;
+
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/***
+ * ConfinedLRUCache is an LRU cache meant to be owned by a single thread, such as the event
+ * loop of a cache verticle. It is not thread safe: all calls must come from the same thread.
+ *
+ * Since it does not have to deal with concurrent access, it avoids the costs which
+ * ConcurrentLinkedHashMap pays for it (read/write buffers, atomics, and several objects per
+ * entry). Entries are stored in parallel arrays, indexed by a slot number:
+ * - keys[], values[]: the key and value of each entry
+ * - hashes[]: the cached hash code of each key, so that lookups and table moves compare
+ *   (and recompute) hashes of keys such as ByteBuf, which scan their bytes, as little as possible
+ * - prev[], next[]: an intrusive doubly linked list in LRU order. `head` is the most
+ *   recently used slot and `tail` the least recently used one. Free slots are chained
+ *   through next[].
+ * The hash table itself is an int array with open addressing (linear probing), holding
+ * slot numbers (plus one, 0 meaning empty). Deletions shift the following entries back, so
+ * no tombstones are needed.
+ *
+ * There is no wrapper object per entry: an entry costs its key and value references, four
+ * ints, and two or so ints in the hash table.
+ *
+ * Like LRUCache, the cache is bounded either by number of entries, or by the total weight
+ * of its entries. In the latter case the arrays grow as needed. It also takes the same
+ * (optional) eviction listener, called with each entry evicted or replaced.
+ *
+ * @param <K> is the key type
+ * @param <V> is the value type
+ */
+public class ConfinedLRUCache<K, V> implements MemCache<K, V> {
+  private static final int NONE = -1;
+  private static final int INITIAL_SLOTS = 1024;
+
+  private final long maxEntries;                      // Maximum number of entries
+  private long maxWeight;                             // Maximum total weight of the entries
+  private final EntryWeigher<? super K, ? super V> weigher;
+  private final EvictionListener<K, V> listener;      // Called with each entry evicted or replaced
+
+  private Object[] keys;
+  private Object[] values;
+  private int[] hashes;
+  private int[] weights;
+  private int[] prev;
+  private int[] next;
+  private int[] table;          // Hash table of slot numbers plus one; 0 is an empty bucket
+  private int mask;             // table.length - 1
+
+  private int head = NONE;      // Most recently used slot
+  private int tail = NONE;      // Least recently used slot
+  private int free = NONE;      // First free slot, free slots are chained through next[]
+  private int used;             // Number of slots ever used (slots from `used` on are free too)
+  private int size;             // Number of entries
+  private long weight;          // Total weight of the entries
+
+  /***
+   * Create a cache bounded by number of entries.
+   * @param size is the maximum number of entries
+   */
+  public ConfinedLRUCache(int size) {
+    this(size, Long.MAX_VALUE, (k, v) -> 1, (k, v) -> {}, size);
+  }
+
+  /***
+   * Create a cache bounded by the total weight of its entries.
+   * @param capacity is the maximum total weight of the entries
+   * @param weigher computes the weight of an entry
+   */
+  public ConfinedLRUCache(long capacity, EntryWeigher<? super K, ? super V> weigher) {
+    this(capacity, weigher, (k, v) -> {});
+  }
+
+  /***
+   * Create a cache bounded by the total weight of its entries, which notifies a listener
+   * of the entries it drops.
+   * @param capacity is the maximum total weight of the entries
+   * @param weigher computes the weight of an entry
+   * @param listener is called with each entry evicted or replaced
+   */
+  public ConfinedLRUCache(long capacity, EntryWeigher<? super K, ? super V> weigher, EvictionListener<K, V> listener) {
+    this(Integer.MAX_VALUE, capacity, weigher, listener, INITIAL_SLOTS);
+  }
+
+  private ConfinedLRUCache(long maxEntries, long maxWeight, EntryWeigher<? super K, ? super V> weigher,
+                           EvictionListener<K, V> listener, int slots) {
+    this.maxEntries = maxEntries;
+    this.maxWeight = maxWeight;
+    this.weigher = weigher;
+    this.listener = listener;
+    allocate(Math.max(slots, 1));
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public V get(K k) {
+    int slot = find(k, hash(k));
+    if (slot == NONE) {
+      return null;
+    }
+    moveToHead(slot);
+    return (V) values[slot];
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public void set(K k, V v) {
+    int hash = hash(k);
+    int w = weigher.weightOf(k, v);
+    int slot = find(k, hash);
+    if (slot != NONE) {
+      V old = (V) values[slot];
+      values[slot] = v;
+      weight += w - weights[slot];
+      weights[slot] = w;
+      moveToHead(slot);
+      if (old != v) {
+        listener.onEviction(k, old);
+      }
+    } else {
+      if (size >= maxEntries && tail != NONE) {
+        evict();
+      }
+      slot = allocateSlot();
+      keys[slot] = k;
+      values[slot] = v;
+      hashes[slot] = hash;
+      weights[slot] = w;
+      weight += w;
+      size++;
+      insert(slot);
+      linkHead(slot);
+    }
+    // Evict the least recently used entries until the cache fits in its capacity
+    while (weight > maxWeight && tail != NONE) {
+      evict();
+    }
+  }
+
+  /***
+   * Evict the least recently used entry, and notify the listener.
+   */
+  @SuppressWarnings("unchecked")
+  private void evict() {
+    K k = (K) keys[tail];
+    V v = (V) values[tail];
+    remove(tail);
+    listener.onEviction(k, v);
+  }
+
+  @Override
+  public boolean containsKey(K k) {
+    return find(k, hash(k)) != NONE;
+  }
+
+  @Override
+  public long size() {
+    return size;
+  }
+
+  /***
+   * Returns an iterator over the entries, in slot order. It must be used from the thread
+   * which owns the cache, but the cache may be modified between calls: slots are checked
+   * when the iterator reaches them.
+   * @return iterator over the entries
+   */
+  @Override
+  public Iterator<Map.Entry<K, V>> iterator() {
+    return new Iterator<Map.Entry<K, V>>() {
+      private int slot;           // Next slot to check
+
+      @Override
+      public boolean hasNext() {
+        while (slot < used && keys[slot] == null) {
+          slot++;
+        }
+        return slot < used;
+      }
+
+      @Override
+      @SuppressWarnings("unchecked")
+      public Map.Entry<K, V> next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        Map.Entry<K, V> entry = new AbstractMap.SimpleImmutableEntry<>((K) keys[slot], (V) values[slot]);
+        slot++;
+        return entry;
+      }
+    };
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public boolean remove(K k, V v) {
+    int slot = find(k, hash(k));
+    if (slot == NONE || values[slot] != v) {
+      return false;
+    }
+    K key = (K) keys[slot];
+    remove(slot);
+    listener.onEviction(key, v);
+    return true;
+  }
+
+  @Override
+  public boolean add(K k, V v) {
+    if (find(k, hash(k)) != NONE) {
+      return false;
+    }
+    set(k, v);
+    return true;
+  }
+
+  /***
+   * Returns an iterator which follows the LRU list from its tail. It must be used from the
+   * thread which owns the cache, but the cache may be modified between calls: the entries
+   * already returned may be removed. The iterator remembers the next entry and the one
+   * before it, so that when the next entry is removed or used meanwhile (moving it towards
+   * the head, its predecessor then differs from the remembered one), the walk resumes from
+   * the entry before it, and may return the entries used meanwhile again when it reaches
+   * the head. The walk only
+   * ends early when both were removed or used; the crawler then starts its next pass from
+   * the tail again.
+   * @return iterator over the entries, least recently used first
+   */
+  @Override
+  public Iterator<Map.Entry<K, V>> lruIterator() {
+    return new Iterator<Map.Entry<K, V>>() {
+      private int slot;           // Next slot to return
+      private Object key;         // Key expected in that slot
+      private int older;          // Slot before it in the list, when it was reached
+      private Object olderKey;    // Key expected in that slot
+
+      {
+        moveTo(tail);
+      }
+
+      private void moveTo(int to) {
+        slot = to;
+        key = to == NONE ? null : keys[to];
+        older = to == NONE ? NONE : prev[to];
+        olderKey = older == NONE ? null : keys[older];
+      }
+
+      private boolean olderValid() {
+        return older != NONE && keys[older] == olderKey;
+      }
+
+      @Override
+      public boolean hasNext() {
+        if (slot != NONE && keys[slot] != key) {
+          // Removed (and possibly reused) since the last call
+          moveTo(olderValid() ? older : NONE);
+        }
+        return slot != NONE;
+      }
+
+      @Override
+      @SuppressWarnings("unchecked")
+      public Map.Entry<K, V> next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        Map.Entry<K, V> entry = new AbstractMap.SimpleImmutableEntry<>((K) keys[slot], (V) values[slot]);
+        int p = prev[slot];
+        // Moved since it was reached (its predecessor changed): continue from its former
+        // predecessor. If that one was removed instead, the entry is still in place.
+        moveTo(p != older && olderValid() ? older : p);
+        return entry;
+      }
+    };
+  }
+
+  @Override
+  public long weightedSize() {
+    return weight;
+  }
+
+  @Override
+  public void setCapacity(long capacity) {
+    maxWeight = capacity;
+    while (weight > maxWeight && tail != NONE) {
+      evict();
+    }
+  }
+
+  /***
+   * Spread the hash code of a key, so that keys with similar hash codes do not cluster
+   * in the table.
+   */
+  private static int hash(Object k) {
+    int h = k.hashCode() * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  /***
+   * Find the slot of a key.
+   * @return slot number, or NONE if the key is not in the cache
+   */
+  private int find(Object k, int hash) {
+    for (int i = hash & mask; table[i] != 0; i = (i + 1) & mask) {
+      int slot = table[i] - 1;
+      if (hashes[slot] == hash && keys[slot].equals(k)) {
+        return slot;
+      }
+    }
+    return NONE;
+  }
+
+  /***
+   * Add a slot to the hash table.
+   */
+  private void insert(int slot) {
+    int i = hashes[slot] & mask;
+    while (table[i] != 0) {
+      i = (i + 1) & mask;
+    }
+    table[i] = slot + 1;
+  }
+
+  /***
+   * Remove an entry from the cache, and free its slot.
+   */
+  private void remove(int slot) {
+    // Find the bucket of the slot, and shift back the entries following it
+    // which would not be found anymore once the bucket is emptied.
+    int i = hashes[slot] & mask;
+    while (table[i] != slot + 1) {
+      i = (i + 1) & mask;
+    }
+    for (int j = (i + 1) & mask; table[j] != 0; j = (j + 1) & mask) {
+      int ideal = hashes[table[j] - 1] & mask;
+      boolean stays = (i <= j) ? (i < ideal && ideal <= j) : (i < ideal || ideal <= j);
+      if (!stays) {
+        table[i] = table[j];
+        i = j;
+      }
+    }
+    table[i] = 0;
+
+    unlink(slot);
+    keys[slot] = null;
+    values[slot] = null;
+    weight -= weights[slot];
+    size--;
+    next[slot] = free;
+    free = slot;
+  }
+
+  private int allocateSlot() {
+    if (free != NONE) {
+      int slot = free;
+      free = next[slot];
+      return slot;
+    }
+    if (used == keys.length) {
+      allocate(keys.length * 2);
+    }
+    return used++;
+  }
+
+  private void linkHead(int slot) {
+    prev[slot] = NONE;
+    next[slot] = head;
+    if (head != NONE) {
+      prev[head] = slot;
+    }
+    head = slot;
+    if (tail == NONE) {
+      tail = slot;
+    }
+  }
+
+  private void unlink(int slot) {
+    int p = prev[slot];
+    int n = next[slot];
+    if (p != NONE) {
+      next[p] = n;
+    } else {
+      head = n;
+    }
+    if (n != NONE) {
+      prev[n] = p;
+    } else {
+      tail = p;
+    }
+  }
+
+  private void moveToHead(int slot) {
+    if (slot != head) {
+      unlink(slot);
+      linkHead(slot);
+    }
+  }
+
+  /***
+   * Allocate (or grow) the arrays to the given number of slots, and rebuild the hash table
+   * so that it is at most half full.
+   */
+  private void allocate(int slots) {
+    int length = keys == null ? 0 : keys.length;
+    keys = keys == null ? new Object[slots] : Arrays.copyOf(keys, slots);
+    values = values == null ? new Object[slots] : Arrays.copyOf(values, slots);
+    hashes = hashes == null ? new int[slots] : Arrays.copyOf(hashes, slots);
+    weights = weights == null ? new int[slots] : Arrays.copyOf(weights, slots);
+    prev = prev == null ? new int[slots] : Arrays.copyOf(prev, slots);
+    next = next == null ? new int[slots] : Arrays.copyOf(next, slots);
+
+    int buckets = Integer.highestOneBit(Math.max(slots, 2) * 2 - 1) << 1;
+    table = new int[buckets];
+    mask = buckets - 1;
+    for (int slot = 0; slot < length; slot++) {
+      if (keys[slot] != null) {
+        insert(slot);
+      }
+    }
+  }
+}
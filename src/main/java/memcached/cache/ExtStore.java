@@ -0,0 +1,506 @@
+package memcached.cache;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.WorkerExecutor;
+import io.vertx.core.json.JsonObject;
+import memcached.util.Log;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static memcached.util.Constants.*;
+
+/***
+ * ExtStore is a second tier of the cache, on a local file (ideally on an SSD): the values
+ * evicted from memory are written to it instead of being thrown away, while their keys
+ * stay in memory along with a small pointer (ExtItem) to their bytes in the file.
+ *
+ * The file is divided into "ext.pages" pages of "ext.page.size" bytes. Evicted values are
+ * copied into a batch of "ext.batch.size" bytes, and each full batch is written to the
+ * current page with a single sequential write, by a dedicated writer thread. Until then,
+ * its values are read from memory. Once all the pages are used, the oldest page is reused,
+ * dropping the values it holds (like the memory tier, the file tier is a cache). Each page
+ * has a generation, incremented when it is reused, which invalidates the pointers to it.
+ * Each page also lists the keys written to it, whose pointers are dropped from the index
+ * when the page is reused, whether or not they were ever read.
+ *
+ * Values are read back with positional reads on a pool of "ext.io.threads" worker threads,
+ * off the event loops. A value read back is moved to the memory tier again by the engine.
+ *
+ * Values overwritten or read back leave garbage in their page. Every
+ * "ext.compact.interval.ms", the full page with the smallest fraction of live bytes (below
+ * "ext.compact.ratio") is compacted in the background: its live values are copied to the
+ * current batch, and the page is freed. The same pass drops the pointers to reused pages.
+ *
+ * The store is shared by the threads of the engine: the batch being filled and the pages
+ * are guarded by the store's lock, while the pointers are in a concurrent map.
+ */
+public class ExtStore {
+  private final FileChannel channel;
+  private final WorkerExecutor writer;          // Writes the batches, one at a time, in order
+  private final WorkerExecutor readers;         // Reads values back, and compacts pages
+  private final int pageSize;
+  private final int batchSize;
+  private final double compactRatio;            // Pages with fewer live bytes than this fraction are compacted
+  private final ArrayDeque<Page> freePages = new ArrayDeque<>();
+  private final ArrayDeque<Page> usedPages = new ArrayDeque<>();    // Pages holding values, oldest first
+  private final Map<ByteBuf, ExtItem> index = new ConcurrentHashMap<>();
+  private Batch batch;                          // Batch being filled
+  private volatile boolean compacting;
+
+  private final LongAdder spilled = new LongAdder();        // Number of values written to the store
+  private final LongAdder spilledBytes = new LongAdder();   // Bytes of the values written to the store
+  private final LongAdder skipped = new LongAdder();        // Number of values too large for a batch
+  private final LongAdder reads = new LongAdder();          // Number of values read back
+  private final LongAdder readErrors = new LongAdder();     // Number of values which could not be read back
+  private final LongAdder evictedPages = new LongAdder();   // Number of pages reused while holding values
+  private final LongAdder compactedPages = new LongAdder(); // Number of pages freed by compaction
+  private final LongAdder relocated = new LongAdder();      // Number of values moved by compaction
+
+  /***
+   * A page of the file.
+   */
+  private static class Page {
+    private final long position;                      // Position of the page in the file
+    private final AtomicLong live = new AtomicLong(); // Bytes of the values of the page still referenced
+    private volatile int generation;                  // Incremented each time the page is reused
+    private final List<ByteBuf> keys = new ArrayList<>();   // Keys of the values written to the page, guarded by the store lock
+
+    Page(long position) {
+      this.position = position;
+    }
+  }
+
+  /***
+   * A batch of values, written to a page at once.
+   */
+  private static class Batch {
+    private final Page page;
+    private final int offset;               // Position of the batch in the page
+    private final int generation;           // Generation of the page when the batch was filled
+    private volatile byte[] data;           // Bytes of the batch, until they have been written
+    private volatile boolean failed;        // Whether the batch could not be written
+    private int size;                       // Number of bytes in the batch
+
+    Batch(Page page, int offset, int capacity) {
+      this.page = page;
+      this.offset = offset;
+      this.generation = page.generation;
+      this.data = new byte[capacity];
+    }
+  }
+
+  /***
+   * The pointer to a value in the store, along with the metadata of its item.
+   */
+  public static class ExtItem {
+    private final Batch batch;
+    private final int offset;               // Position of the value in the batch
+    private final int length;               // Number of stored bytes
+    private final int flags;
+    private final int valueLength;          // Length of the value sent by the client
+    private final boolean compressed;
+    private final long time;
+    private volatile long expiry;           // Replaced in place by `touch` and `gat`
+
+    ExtItem(Batch batch, int offset, int length, int flags, int valueLength, boolean compressed, long time, long expiry) {
+      this.batch = batch;
+      this.offset = offset;
+      this.length = length;
+      this.flags = flags;
+      this.valueLength = valueLength;
+      this.compressed = compressed;
+      this.time = time;
+      this.expiry = expiry;
+    }
+
+    public long getTime() {
+      return time;
+    }
+
+    public long getExpiry() {
+      return expiry;
+    }
+
+    public void setExpiry(long expiry) {
+      this.expiry = expiry;
+    }
+
+    /***
+     * Create the item of the value read back.
+     * @param bytes are the stored bytes
+     * @return the item
+     */
+    public Item toItem(byte[] bytes) {
+      Item item = new Item(Unpooled.wrappedBuffer(bytes), flags, valueLength, compressed);
+      item.setTime(time);
+      item.setExpiry(expiry);
+      return item;
+    }
+
+    /***
+     * Returns whether the bytes of the value are still in the store.
+     */
+    private boolean isValid() {
+      return batch.generation == batch.page.generation && !batch.failed;
+    }
+  }
+
+  /***
+   * Open the store on the file given by "ext.path", which is truncated.
+   * @param vertx is the vertx instance, providing the worker threads
+   * @param config is the verticle configuration
+   */
+  public ExtStore(Vertx vertx, JsonObject config) {
+    String path = config.getString("ext.path");
+    pageSize = config.getInteger("ext.page.size", DEFAULT_EXT_PAGE_SIZE_IN_BYTES);
+    batchSize = config.getInteger("ext.batch.size", DEFAULT_EXT_BATCH_SIZE_IN_BYTES);
+    compactRatio = config.getDouble("ext.compact.ratio", DEFAULT_EXT_COMPACT_RATIO);
+    int pageCount = config.getInteger("ext.pages", DEFAULT_EXT_PAGES);
+    if (batchSize > pageSize) {
+      throw new IllegalArgumentException("ext.batch.size must not be larger than ext.page.size");
+    }
+    try {
+      channel = FileChannel.open(Paths.get(path),
+        StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Cannot open " + path, e);
+    }
+    for (int i = 0; i < pageCount; i++) {
+      freePages.add(new Page((long) i * pageSize));
+    }
+    batch = new Batch(nextPage(), 0, batchSize);
+    writer = vertx.createSharedWorkerExecutor("memcached-ext-writer", 1);
+    readers = vertx.createSharedWorkerExecutor("memcached-ext-io", config.getInteger("ext.io.threads", DEFAULT_EXT_IO_THREADS));
+    long interval = config.getLong("ext.compact.interval.ms", DEFAULT_EXT_COMPACT_INTERVAL_MS);
+    if (interval > 0) {
+      vertx.setPeriodic(interval, timer -> compact());
+    }
+  }
+
+  /***
+   * Write the value of an item evicted from memory to the store. Values larger than a batch
+   * are dropped.
+   * @param key is the key of the item
+   * @param item is the item, whose bytes are copied
+   */
+  public synchronized void spill(ByteBuf key, Item item) {
+    ByteBuf data = item.getData();
+    int length = data.readableBytes();
+    if (length > batchSize) {
+      skipped.increment();
+      return;
+    }
+    Batch b = reserve(length);
+    data.getBytes(data.readerIndex(), b.data, b.size, length);
+    ExtItem spilledItem = new ExtItem(b, b.size, length, item.getFlags(), item.getLength(), item.isCompressed(),
+      item.getTime(), item.getExpiry());
+    b.size += length;
+    b.page.live.addAndGet(length);
+    b.page.keys.add(key);
+    drop(index.put(key, spilledItem));
+    spilled.increment();
+    spilledBytes.add(length);
+  }
+
+  /***
+   * Returns the pointer to the value of a key, if it is in the store.
+   * @param key is the key
+   * @return the pointer, or null
+   */
+  public ExtItem get(ByteBuf key) {
+    ExtItem item = index.get(key);
+    if (item != null && !item.isValid()) {
+      index.remove(key, item);
+      return null;
+    }
+    return item;
+  }
+
+  /***
+   * Drop the value of a key from the store, if it is still the given one (for example,
+   * once it has been moved back to memory).
+   * @param key is the key
+   * @param item is the pointer expected
+   * @return true if the value was dropped
+   */
+  public boolean remove(ByteBuf key, ExtItem item) {
+    if (index.remove(key, item)) {
+      drop(item);
+      return true;
+    }
+    return false;
+  }
+
+  /***
+   * Drop the value of a key from the store, if any (for example, when the key is SET).
+   * @param key is the key
+   */
+  public void remove(ByteBuf key) {
+    if (!index.isEmpty()) {
+      drop(index.remove(key));
+    }
+  }
+
+  /***
+   * Read the bytes of a value on a worker thread (unless its batch is still in memory).
+   * @param item is the pointer to the value
+   * @param handler is called on the caller's context with the bytes, or null if the value
+   *                is not in the store anymore
+   */
+  public void read(ExtItem item, Handler<byte[]> handler) {
+    byte[] data = item.batch.data;
+    if (data != null) {
+      handler.handle(copy(item, data));
+      return;
+    }
+    readers.<byte[]>executeBlocking(promise -> promise.complete(readBlocking(item)), false,
+      read -> handler.handle(read.succeeded() ? read.result() : null));
+  }
+
+  /***
+   * Read the bytes of a value, blocking the calling thread.
+   * @param item is the pointer to the value
+   * @return the bytes, or null if the value is not in the store anymore
+   */
+  public byte[] readBlocking(ExtItem item) {
+    byte[] data = item.batch.data;
+    if (data != null) {
+      return copy(item, data);
+    }
+    if (!item.isValid()) {
+      return null;
+    }
+    ByteBuffer buffer = ByteBuffer.allocate(item.length);
+    long position = item.batch.page.position + item.batch.offset + item.offset;
+    try {
+      while (buffer.hasRemaining()) {
+        if (channel.read(buffer, position + buffer.position()) < 0) {
+          readErrors.increment();
+          return null;
+        }
+      }
+    } catch (IOException e) {
+      readErrors.increment();
+      return null;
+    }
+    // The page may have been reused while it was read
+    if (!item.isValid()) {
+      return null;
+    }
+    reads.increment();
+    return buffer.array();
+  }
+
+  /***
+   * Returns a copy of the bytes of a value whose batch is still in memory.
+   */
+  private byte[] copy(ExtItem item, byte[] data) {
+    reads.increment();
+    return Arrays.copyOfRange(data, item.offset, item.offset + item.length);
+  }
+
+  /***
+   * Compact the full page with the smallest fraction of live bytes, if it is below the
+   * threshold, on a worker thread. Does nothing if a compaction is running.
+   */
+  public void compact() {
+    if (compacting) {
+      return;
+    }
+    Page victim;
+    int generation;
+    synchronized (this) {
+      victim = null;
+      for (Page page : usedPages) {
+        if (page != batch.page && page.live.get() < compactRatio * pageSize
+          && (victim == null || page.live.get() < victim.live.get())) {
+          victim = page;
+        }
+      }
+      if (victim == null) {
+        return;
+      }
+      generation = victim.generation;
+      compacting = true;
+    }
+    Page page = victim;
+    readers.executeBlocking(promise -> {
+      relocate(page, generation);
+      promise.complete();
+    }, false, done -> compacting = false);
+  }
+
+  /***
+   * Add the statistics of the store to the statistics reported by `stats`.
+   * @param stats is the map of statistics
+   */
+  public void addStats(Map<String, String> stats) {
+    stats.put("ext_items", String.valueOf(index.size()));
+    stats.put("ext_spilled", String.valueOf(spilled.sum()));
+    stats.put("ext_spilled_bytes", String.valueOf(spilledBytes.sum()));
+    stats.put("ext_skipped", String.valueOf(skipped.sum()));
+    stats.put("ext_reads", String.valueOf(reads.sum()));
+    stats.put("ext_read_errors", String.valueOf(readErrors.sum()));
+    synchronized (this) {
+      stats.put("ext_pages_free", String.valueOf(freePages.size()));
+    }
+    stats.put("ext_pages_evicted", String.valueOf(evictedPages.sum()));
+    stats.put("ext_pages_compacted", String.valueOf(compactedPages.sum()));
+    stats.put("ext_relocated", String.valueOf(relocated.sum()));
+  }
+
+  /***
+   * Close the file and the worker threads.
+   */
+  public void close() {
+    writer.close();
+    readers.close();
+    try {
+      channel.close();
+    } catch (IOException e) {
+      Log.info("Failed to close the ext store: " + e.getMessage());
+    }
+  }
+
+  /***
+   * Move the live values of a page to the current batch, and free the page.
+   * @param page is the page
+   * @param generation is the generation of the page when it was chosen
+   */
+  private void relocate(Page page, int generation) {
+    for (Map.Entry<ByteBuf, ExtItem> entry : index.entrySet()) {
+      ExtItem item = entry.getValue();
+      if (!item.isValid()) {
+        index.remove(entry.getKey(), item);
+        continue;
+      }
+      if (item.batch.page != page) {
+        continue;
+      }
+      byte[] bytes = readBlocking(item);
+      if (bytes == null) {
+        continue;
+      }
+      synchronized (this) {
+        if (page.generation != generation) {
+          return;     // Reused meanwhile: its values were dropped
+        }
+        Batch b = reserve(bytes.length);
+        System.arraycopy(bytes, 0, b.data, b.size, bytes.length);
+        ExtItem moved = new ExtItem(b, b.size, bytes.length, item.flags, item.valueLength, item.compressed,
+          item.time, item.expiry);
+        b.size += bytes.length;
+        if (index.replace(entry.getKey(), item, moved)) {
+          b.page.live.addAndGet(bytes.length);
+          b.page.keys.add(entry.getKey());
+          relocated.increment();
+        }
+      }
+    }
+    synchronized (this) {
+      if (page.generation == generation && page != batch.page) {
+        page.generation++;
+        page.live.set(0);
+        page.keys.clear();
+        usedPages.remove(page);
+        freePages.add(page);
+        compactedPages.increment();
+      }
+    }
+  }
+
+  /***
+   * Returns the batch in which a value of the given length fits, writing the current batch
+   * and starting a new one if needed. Called with the lock held.
+   */
+  private Batch reserve(int length) {
+    if (batch.size + length <= batchSize) {
+      return batch;
+    }
+    write(batch);
+    Page page = batch.page;
+    int offset = batch.offset + batch.size;
+    if (offset + batchSize > pageSize) {
+      page = nextPage();
+      offset = 0;
+    }
+    batch = new Batch(page, offset, batchSize);
+    return batch;
+  }
+
+  /***
+   * Returns a free page, or the oldest page once they are all used. Called with the lock held.
+   */
+  private Page nextPage() {
+    Page page = freePages.poll();
+    if (page == null) {
+      page = usedPages.poll();
+      page.generation++;      // Drops the values of the page
+      page.live.set(0);
+      // Unread values would otherwise keep their pointers in the index
+      for (ByteBuf key : page.keys) {
+        ExtItem item = index.get(key);
+        if (item != null && item.batch.page == page) {
+          index.remove(key, item);
+        }
+      }
+      page.keys.clear();
+      evictedPages.increment();
+    }
+    usedPages.add(page);
+    return page;
+  }
+
+  /***
+   * Write a batch to its page, on the writer thread. Batches are written in the order they
+   * are filled, so that a reused page is never overwritten by an older batch.
+   */
+  private void write(Batch b) {
+    if (b.size == 0) {
+      return;
+    }
+    writer.executeBlocking(promise -> {
+      ByteBuffer buffer = ByteBuffer.wrap(b.data, 0, b.size);
+      long position = b.page.position + b.offset;
+      try {
+        while (buffer.hasRemaining()) {
+          channel.write(buffer, position + buffer.position());
+        }
+        promise.complete();
+      } catch (IOException e) {
+        promise.fail(e);
+      }
+    }, false, written -> {
+      if (written.failed()) {
+        Log.info("Failed to write to the ext store: " + written.cause().getMessage());
+        b.failed = true;
+      }
+      b.data = null;    // Read from the file from now on
+    });
+  }
+
+  /***
+   * Drop the pointer to a value, accounting for the garbage it leaves in its page.
+   */
+  private static void drop(ExtItem item) {
+    if (item != null && item.isValid()) {
+      item.batch.page.live.addAndGet(-item.length);
+    }
+  }
+}
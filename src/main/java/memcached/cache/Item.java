@@ -0,0 +1,109 @@
+package memcached.cache;
+
+import io.netty.buffer.ByteBuf;
+
+/***
+ * Item is a value stored in the cache, along with the metadata which the server keeps
+ * for it.
+ *
+ * The stored bytes may differ from the value sent by the client: large values may be
+ * compressed by the server (see ValueCompressor). The length of the value as sent by the
+ * client is kept, so that it can be reported without decompressing.
+ *
+ * The stored bytes are never modified once the item is created, so they can be shared
+ * with any number of responses. They are reference counted: each response retains them
+ * until it has been written, and the cache releases them when the item is dropped.
+ *
+ * An item may hold the whole response to a GET of its value, serialized when it was
+ * stored (see "item.wire"). The stored bytes are then a view of the response, and share
+ * its reference count.
+ *
+ * The time the item was stored and its expiration time are set by the cache engine, before
+ * the item is handed to the cache (which publishes it to the other threads). The expiration
+ * time may then be replaced in place, by `touch` and `gat`.
+ */
+public class Item {
+  private final ByteBuf data;           // Stored bytes, compressed if `compressed` is set
+  private final int flags;              // Opaque flags given by the client
+  private final int length;             // Length of the value sent by the client
+  private final boolean compressed;     // Whether the server compressed the value
+  private final ByteBuf response;       // Pre-serialized GET response holding `data`, or null
+  private long time;                    // Time the item was stored, in milliseconds
+  private volatile long expiry;         // Time the item expires, in milliseconds; 0 if it does not expire
+
+  public Item(ByteBuf data, int flags, int length, boolean compressed) {
+    this.data = data;
+    this.flags = flags;
+    this.length = length;
+    this.compressed = compressed;
+    this.response = null;
+  }
+
+  /***
+   * Create an item which stores the value as sent by the client, within the response to a
+   * GET of the value.
+   * @param value is the value, a view of the response
+   * @param flags are the flags given by the client
+   * @param response is the serialized response
+   */
+  public Item(ByteBuf value, int flags, ByteBuf response) {
+    this.data = value;
+    this.flags = flags;
+    this.length = value.readableBytes();
+    this.compressed = false;
+    this.response = response;
+  }
+
+  /***
+   * Create an item which stores the value as sent by the client.
+   * @param value is the value
+   * @param flags are the flags given by the client
+   */
+  public Item(ByteBuf value, int flags) {
+    this(value, flags, value.readableBytes(), false);
+  }
+
+  public ByteBuf getData() {
+    return data;
+  }
+
+  public int getFlags() {
+    return flags;
+  }
+
+  public int getLength() {
+    return length;
+  }
+
+  public boolean isCompressed() {
+    return compressed;
+  }
+
+  public ByteBuf getResponse() {
+    return response;
+  }
+
+  public long getTime() {
+    return time;
+  }
+
+  public void setTime(long time) {
+    this.time = time;
+  }
+
+  public long getExpiry() {
+    return expiry;
+  }
+
+  public void setExpiry(long expiry) {
+    this.expiry = expiry;
+  }
+
+  /***
+   * Returns the number of bytes the item takes in the cache, not counting its key.
+   * @return the number of stored bytes
+   */
+  public int size() {
+    return response != null ? response.readableBytes() : data.readableBytes();
+  }
+}
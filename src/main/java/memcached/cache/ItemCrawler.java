@@ -0,0 +1,137 @@
+package memcached.cache;
+
+import io.netty.buffer.ByteBuf;
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+
+import java.util.Iterator;
+import java.util.Map;
+
+import static memcached.util.Constants.DEFAULT_CRAWLER_INTERVAL_MS;
+import static memcached.util.Constants.DEFAULT_CRAWLER_STEP_ITEMS;
+
+/***
+ * ItemCrawler reclaims the dead items (expired or flushed) which nobody asks for anymore,
+ * so that they stop taking memory before eviction reaches them.
+ *
+ * It runs in the background on the event loop of the cache verticle. Every
+ * "crawler.interval.ms" (0 disables it), it walks the cache from its least recently used
+ * end, where such items gather (see MemCache.lruIterator), in steps of at most
+ * "crawler.step.items" items. Each step is followed by a turn of the event loop, so that
+ * the requests which arrived meanwhile are served: a step is all the crawler ever adds to
+ * the latency of a request.
+ *
+ * `stats crawler` reports the passes made, and the items checked and reclaimed.
+ */
+public class ItemCrawler {
+  private final Vertx vertx;
+  private final Context context;          // Context of the cache verticle
+  private final CacheEngine engine;
+  private volatile long interval;         // Time between two passes, in milliseconds, 0 stops the crawler
+  private volatile int stepItems;         // Maximum number of items checked per step
+  private boolean scheduled;              // Whether a pass is scheduled or running
+  private volatile long passes;           // Number of passes completed
+  private volatile long checked;          // Number of items checked
+  private volatile long reclaimed;        // Number of items reclaimed
+  private volatile long reclaimedBytes;   // Bytes of the items reclaimed (keys and stored values)
+
+  /***
+   * Create a crawler for the engine of the cache verticle. It must be created on the
+   * context of the cache verticle.
+   * @param vertx is the vertx instance
+   * @param engine is the cache engine
+   * @param config is the verticle configuration
+   */
+  public ItemCrawler(Vertx vertx, CacheEngine engine, JsonObject config) {
+    this.vertx = vertx;
+    this.context = vertx.getOrCreateContext();
+    this.engine = engine;
+    this.interval = config.getLong("crawler.interval.ms", DEFAULT_CRAWLER_INTERVAL_MS);
+    this.stepItems = config.getInteger("crawler.step.items", DEFAULT_CRAWLER_STEP_ITEMS);
+  }
+
+  /***
+   * Schedule the first pass, unless the crawler is disabled.
+   */
+  public void start() {
+    schedule();
+  }
+
+  /***
+   * Change the time between two passes. A stopped crawler starts again, and a crawler set to
+   * 0 stops once its current pass is done.
+   * @param interval is the time in milliseconds, 0 to stop the crawler
+   */
+  public void setInterval(long interval) {
+    this.interval = interval;
+    context.runOnContext(v -> schedule());
+  }
+
+  /***
+   * Change the maximum number of items checked per step, from the next step.
+   * @param stepItems is the number of items
+   */
+  public void setStepItems(int stepItems) {
+    if (stepItems < 1) {
+      throw new IllegalArgumentException("A step checks at least one item");
+    }
+    this.stepItems = stepItems;
+  }
+
+  public long getInterval() {
+    return interval;
+  }
+
+  public int getStepItems() {
+    return stepItems;
+  }
+
+  /***
+   * Add the statistics of the crawler, reported by `stats crawler`.
+   * @param stats is the map of statistics
+   */
+  public void addStats(Map<String, String> stats) {
+    stats.put("crawler_passes", String.valueOf(passes));
+    stats.put("crawler_items_checked", String.valueOf(checked));
+    stats.put("crawler_reclaimed", String.valueOf(reclaimed));
+    stats.put("crawler_reclaimed_bytes", String.valueOf(reclaimedBytes));
+  }
+
+  /***
+   * Schedule the next pass, unless one is already scheduled or the crawler is stopped.
+   */
+  private void schedule() {
+    if (scheduled || interval <= 0) {
+      return;
+    }
+    scheduled = true;
+    vertx.setTimer(interval, timer -> step(engine.lruIterator()));
+  }
+
+  /***
+   * Check the next items of a pass, and schedule the next step (or the next pass).
+   * @param items walks the cache
+   */
+  private void step(Iterator<Map.Entry<ByteBuf, Item>> items) {
+    long now = System.currentTimeMillis();
+    int count = 0;
+    while (count < stepItems && items.hasNext()) {
+      Map.Entry<ByteBuf, Item> entry = items.next();
+      int size = entry.getKey().readableBytes() + entry.getValue().size();
+      if (engine.reclaim(entry.getKey(), entry.getValue(), now)) {
+        reclaimed++;
+        reclaimedBytes += size;
+      }
+      count++;
+    }
+    checked += count;
+    if (items.hasNext()) {
+      context.runOnContext(v -> step(items));
+    } else {
+      passes++;
+      scheduled = false;
+      schedule();
+    }
+  }
+}
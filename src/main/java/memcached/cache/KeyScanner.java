@@ -0,0 +1,189 @@
+package memcached.cache;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.vertx.core.json.JsonObject;
+import memcached.common.MemcacheMessage;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static memcached.util.Constants.DEFAULT_SCAN_COUNT;
+import static memcached.util.Constants.DEFAULT_SCAN_COUNT_MAX;
+import static memcached.util.Constants.DEFAULT_SCAN_CURSORS_MAX;
+import static memcached.util.Constants.DEFAULT_SCAN_CURSOR_TTL_MS;
+
+/***
+ * KeyScanner answers the SCAN commands, which enumerate the keys of the cache a batch at a
+ * time, for example to audit them or to invalidate those with a given prefix.
+ *
+ * A scan walks the cache with its weakly consistent iterator (see MemCache.iterator), which is
+ * kept between batches under a cursor: the keys present during the whole scan are returned
+ * once, while those stored or dropped meanwhile may or may not be. Dead items are skipped.
+ * Only the keys in memory are returned, not those of the values spilled to the ext store.
+ *
+ * Each batch examines at most the count given by the client ("scan.count.max" at most, 1000
+ * by default), and returns those which match the pattern: a batch is all a scan adds to the
+ * latency of the other requests on the event loop of the cache, and it allocates nothing for
+ * the keys which do not match.
+ *
+ * At most "scan.cursors.max" scans are open at once, beyond which the least recently used is
+ * dropped, as are the scans left unused for "scan.cursor.ttl.ms". Resuming a dropped scan is
+ * answered with an error.
+ *
+ * `stats scan` reports the scans started, completed and dropped, and the keys examined.
+ */
+public class KeyScanner {
+  private final CacheEngine engine;
+  private final int defaultCount;         // Keys examined by a batch which gives no count
+  private final int maxCount;             // Limit on the keys examined by a batch
+  private final int maxCursors;           // Scans open at once
+  private final long cursorTtl;           // Time after which an unused scan is dropped (ms)
+  private final LinkedHashMap<Long, Scan> scans = new LinkedHashMap<>(16, 0.75f, true); // Open scans, least recently used first
+  private long lastCursor;                // Last cursor given
+  private long started;                   // Number of scans started
+  private long completed;                 // Number of scans which reached the end of the cache
+  private long dropped;                   // Number of scans dropped before the end
+  private long examined;                  // Number of keys examined
+
+  /***
+   * A scan in progress.
+   */
+  private static class Scan {
+    private final Iterator<Map.Entry<ByteBuf, Item>> entries;
+    private long used;                    // Time of the last batch (ms)
+
+    Scan(Iterator<Map.Entry<ByteBuf, Item>> entries) {
+      this.entries = entries;
+    }
+  }
+
+  /***
+   * @param engine is the cache engine
+   * @param config is the verticle configuration
+   */
+  public KeyScanner(CacheEngine engine, JsonObject config) {
+    this.engine = engine;
+    this.defaultCount = config.getInteger("scan.count", DEFAULT_SCAN_COUNT);
+    this.maxCount = config.getInteger("scan.count.max", DEFAULT_SCAN_COUNT_MAX);
+    this.maxCursors = config.getInteger("scan.cursors.max", DEFAULT_SCAN_CURSORS_MAX);
+    this.cursorTtl = config.getLong("scan.cursor.ttl.ms", DEFAULT_SCAN_CURSOR_TTL_MS);
+  }
+
+  /***
+   * Answer a SCAN command with the next batch of keys. The cursor is given as the token of
+   * the message (0 starts a scan), the pattern as its key (empty for all keys) and the count
+   * as its length (0 for the default). The keys and the next cursor (0 once the scan is
+   * complete) are set on the message, or an error if the cursor is unknown.
+   * @param message is the SCAN command
+   */
+  public synchronized void scan(MemcacheMessage message) {
+    long now = System.currentTimeMillis();
+    expire(now);
+    long cursor = message.getToken();
+    Scan scan;
+    if (cursor == 0) {
+      scan = new Scan(engine.iterator());
+      cursor = ++lastCursor;
+      started++;
+    } else {
+      scan = scans.remove(cursor);
+      if (scan == null) {
+        message.setError("unknown cursor");
+        return;
+      }
+    }
+    byte[] pattern = message.getKey();
+    int count = Math.min(message.getLen() > 0 ? message.getLen() : defaultCount, maxCount);
+    List<byte[]> keys = new ArrayList<>();
+    int n = 0;
+    while (n < count && scan.entries.hasNext()) {
+      Map.Entry<ByteBuf, Item> entry = scan.entries.next();
+      n++;
+      ByteBuf key = entry.getKey();
+      if ((pattern.length == 0 || matches(pattern, key)) && !engine.isDead(entry.getValue(), now)) {
+        keys.add(ByteBufUtil.getBytes(key));
+      }
+    }
+    examined += n;
+    if (scan.entries.hasNext()) {
+      scan.used = now;
+      scans.put(cursor, scan);
+      if (scans.size() > maxCursors) {
+        drop(scans.keySet().iterator().next());
+      }
+    } else {
+      cursor = 0;
+      completed++;
+    }
+    message.setKeys(keys);
+    message.setToken(cursor);
+    message.setKey(new byte[0]);
+  }
+
+  /***
+   * Drop the scans left unused for too long. They are dropped from the least recently used.
+   */
+  private void expire(long now) {
+    Iterator<Map.Entry<Long, Scan>> open = scans.entrySet().iterator();
+    while (open.hasNext() && now - open.next().getValue().used >= cursorTtl) {
+      open.remove();
+      dropped++;
+    }
+  }
+
+  private void drop(long cursor) {
+    scans.remove(cursor);
+    dropped++;
+  }
+
+  /***
+   * Returns whether a key matches a pattern, where `*` matches any bytes (including none) and
+   * `?` any single byte. The key is read in place.
+   * @param pattern is the pattern
+   * @param key is the key
+   * @return true if the whole key matches the pattern
+   */
+  static boolean matches(byte[] pattern, ByteBuf key) {
+    int base = key.readerIndex();
+    int length = key.readableBytes();
+    int p = 0;
+    int k = 0;
+    int star = -1;              // Position of the last `*` in the pattern, -1 if none
+    int resume = 0;             // Position in the key matched by that `*` so far
+    while (k < length) {
+      if (p < pattern.length && (pattern[p] == '?' || (pattern[p] != '*' && pattern[p] == key.getByte(base + k)))) {
+        p++;
+        k++;
+      } else if (p < pattern.length && pattern[p] == '*') {
+        star = p++;
+        resume = k;
+      } else if (star >= 0) {
+        // Let the last `*` match one more byte
+        p = star + 1;
+        k = ++resume;
+      } else {
+        return false;
+      }
+    }
+    while (p < pattern.length && pattern[p] == '*') {
+      p++;
+    }
+    return p == pattern.length;
+  }
+
+  /***
+   * Add the statistics of the scans, reported by `stats scan`.
+   * @param stats is the map of statistics
+   */
+  public synchronized void addStats(Map<String, String> stats) {
+    stats.put("scan_open", String.valueOf(scans.size()));
+    stats.put("scan_started", String.valueOf(started));
+    stats.put("scan_completed", String.valueOf(completed));
+    stats.put("scan_dropped", String.valueOf(dropped));
+    stats.put("scan_keys_examined", String.valueOf(examined));
+  }
+}
@@ -1,8 +1,11 @@
 package memcached.cache;
 
 import com.googlecode.concurrentlinkedhashmap.ConcurrentLinkedHashMap;
+import com.googlecode.concurrentlinkedhashmap.EntryWeigher;
+import com.googlecode.concurrentlinkedhashmap.EvictionListener;
 
-import java.util.concurrent.ConcurrentMap;
+import java.util.Iterator;
+import java.util.Map;
 
 /***
  * LRU cache or Least Recently Used cache is an in-memory cache initialized with a size.
@@ -21,6 +24,11 @@ import java.util.concurrent.ConcurrentMap;
  *   overcomes this by separating the synchronous update of the hashmap, from the
  *   asynchronous update for the linked list.
  *
+ * The cache can also be bounded by weight instead of by number of entries, for example
+ * by the number of bytes in the keys and values, when entries vary widely in size.
+ * An eviction listener can be given, which is called with each entry evicted or replaced
+ * by a newer value for its key, for example to release the resources held by values.
+ *
  * Details of the implementation and design choices:
  * https://github.com/ben-manes/concurrentlinkedhashmap/wiki/Design
  *
@@ -29,14 +37,41 @@ import java.util.concurrent.ConcurrentMap;
  */
 public class LRUCache<K, V> implements MemCache<K, V> {
 
-  private ConcurrentMap<K, V> cache;
+  private ConcurrentLinkedHashMap<K, V> cache;
+  private final EvictionListener<K, V> listener;   // Called with each entry evicted or replaced
 
   public LRUCache(int size) {
+    listener = (k, v) -> {};
     cache = new ConcurrentLinkedHashMap.Builder<K, V>()
       .maximumWeightedCapacity(size)
       .build();
   }
 
+  /***
+   * Create a cache bounded by the total weight of its entries.
+   * @param capacity is the maximum total weight of the entries
+   * @param weigher computes the weight of an entry
+   */
+  public LRUCache(long capacity, EntryWeigher<? super K, ? super V> weigher) {
+    this(capacity, weigher, (k, v) -> {});
+  }
+
+  /***
+   * Create a cache bounded by the total weight of its entries, which notifies a listener
+   * of the entries it drops.
+   * @param capacity is the maximum total weight of the entries
+   * @param weigher computes the weight of an entry
+   * @param listener is called with each entry evicted or replaced
+   */
+  public LRUCache(long capacity, EntryWeigher<? super K, ? super V> weigher, EvictionListener<K, V> listener) {
+    this.listener = listener;
+    cache = new ConcurrentLinkedHashMap.Builder<K, V>()
+      .maximumWeightedCapacity(capacity)
+      .weigher(weigher)
+      .listener(listener)
+      .build();
+  }
+
   @Override
   public V get(K k) {
     return cache.get(k);
@@ -44,7 +79,10 @@ public class LRUCache<K, V> implements MemCache<K, V> {
 
   @Override
   public void set(K k, V v) {
-    cache.put(k, v);
+    V old = cache.put(k, v);
+    if (old != null && old != v) {
+      listener.onEviction(k, old);
+    }
   }
 
   @Override
@@ -56,4 +94,44 @@ public class LRUCache<K, V> implements MemCache<K, V> {
   public long size() {
     return cache.size();
   }
+
+  @Override
+  public Iterator<Map.Entry<K, V>> iterator() {
+    return cache.entrySet().iterator();
+  }
+
+  @Override
+  public boolean remove(K k, V v) {
+    if (cache.remove(k, v)) {
+      listener.onEviction(k, v);
+      return true;
+    }
+    return false;
+  }
+
+  @Override
+  public boolean add(K k, V v) {
+    return cache.putIfAbsent(k, v) == null;
+  }
+
+  /***
+   * ConcurrentLinkedHashMap only walks its LRU order under its eviction lock, copying the
+   * keys, so the entries are returned in no particular order by the weakly consistent
+   * iterator instead.
+   * @return iterator over the entries
+   */
+  @Override
+  public Iterator<Map.Entry<K, V>> lruIterator() {
+    return iterator();
+  }
+
+  @Override
+  public long weightedSize() {
+    return cache.weightedSize();
+  }
+
+  @Override
+  public void setCapacity(long capacity) {
+    cache.setCapacity(capacity);
+  }
 }
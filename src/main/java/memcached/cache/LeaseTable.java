@@ -0,0 +1,154 @@
+package memcached.cache;
+
+import io.netty.buffer.ByteBuf;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/***
+ * LeaseTable tracks the leases handed out on cache misses, to protect the backing store
+ * from a thundering herd when a hot key goes missing (memcache-style leases).
+ *
+ * The first client which misses a key gets a lease: a token which entitles it to fill
+ * the key with LSET. The clients which miss the key while the lease is held are told to
+ * retry shortly, or given the stale value if the key had just expired. A lease ends when
+ * its holder fills the key, or when the key is SET without a lease: the holder's LSET is
+ * then rejected, since the value it read from the store may be older than the value SET
+ * meanwhile. A lease which is not used within `ttl` milliseconds can be taken by another
+ * client, whose token replaces it.
+ *
+ * The table holds at most `maxLeases` leases: when it is full, the oldest lease is dropped
+ * (its holder's LSET is rejected). A lease keeps a reference to the stale item it serves,
+ * which is released when the lease ends.
+ *
+ * All operations are synchronized, so that a table can be shared by several event loops
+ * (see "cache.direct"). SETs only take the lock when some lease is held.
+ */
+public class LeaseTable {
+  private final int maxLeases;        // Maximum number of leases held
+  private final long ttl;             // Time after which a lease can be taken over, in milliseconds
+  private final Map<ByteBuf, Lease> leases = new LinkedHashMap<>();  // Oldest lease first
+  private volatile int count;         // Number of leases held, read without the lock
+  private long nextToken = 1;
+
+  /***
+   * A lease on a key.
+   */
+  public static class Lease {
+    private final long token;         // Token given to the holder
+    private final long time;          // Time the lease was granted, in milliseconds
+    private final Item stale;         // Expired item served while the lease is held, or null
+
+    Lease(long token, long time, Item stale) {
+      this.token = token;
+      this.time = time;
+      this.stale = stale;
+    }
+
+    public long getToken() {
+      return token;
+    }
+
+    public Item getStale() {
+      return stale;
+    }
+  }
+
+  /***
+   * @param maxLeases is the maximum number of leases held at once
+   * @param ttl is the time after which an unused lease can be taken over, in milliseconds
+   */
+  public LeaseTable(int maxLeases, long ttl) {
+    this.maxLeases = maxLeases;
+    this.ttl = ttl;
+  }
+
+  /***
+   * Grant a lease on a key, unless another client holds one.
+   * @param key is the key missed
+   * @param now is the current time in milliseconds
+   * @param stale is the expired item of the key, served to the other clients while the lease
+   *              is held, or null. The lease takes its own reference to the item's bytes.
+   * @return the lease granted, or null if the key is already leased
+   */
+  public synchronized Lease acquire(ByteBuf key, long now, Item stale) {
+    Lease held = leases.get(key);
+    if (held != null && now - held.time < ttl) {
+      return null;
+    }
+    if (held != null) {
+      end(leases.remove(key));
+    } else if (leases.size() >= maxLeases) {
+      Iterator<Lease> oldest = leases.values().iterator();
+      end(oldest.next());
+      oldest.remove();
+    }
+    if (stale != null) {
+      stale.getData().retain();
+    }
+    Lease lease = new Lease(nextToken++, now, stale);
+    leases.put(key, lease);
+    count = leases.size();
+    return lease;
+  }
+
+  /***
+   * Returns the lease held on a key.
+   * @param key is the key
+   * @param now is the current time in milliseconds
+   * @return the lease, or null if there is none or if it can be taken over
+   */
+  public synchronized Lease held(ByteBuf key, long now) {
+    Lease lease = leases.get(key);
+    return lease != null && now - lease.time < ttl ? lease : null;
+  }
+
+  /***
+   * End the lease of a key if it was granted with the given token, so that its holder may
+   * fill the key.
+   * @param key is the key
+   * @param token is the token given by the client
+   * @return true if the token is the one of the current lease
+   */
+  public synchronized boolean complete(ByteBuf key, long token) {
+    Lease lease = leases.get(key);
+    if (lease == null || lease.token != token) {
+      return false;
+    }
+    end(leases.remove(key));
+    count = leases.size();
+    return true;
+  }
+
+  /***
+   * End the lease of a key, if there is one, since the key was SET without a lease.
+   * @param key is the key
+   */
+  public void invalidate(ByteBuf key) {
+    if (count == 0) {
+      return;
+    }
+    synchronized (this) {
+      Lease lease = leases.remove(key);
+      if (lease != null) {
+        end(lease);
+        count = leases.size();
+      }
+    }
+  }
+
+  /***
+   * Returns the number of leases held.
+   * @return as above
+   */
+  public int size() {
+    return count;
+  }
+
+  private static void end(Lease lease) {
+    if (lease.stale != null) {
+      lease.stale.getData().release();
+    }
+  }
+}
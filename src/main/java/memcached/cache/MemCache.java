@@ -1,5 +1,8 @@
 package memcached.cache;
 
+import java.util.Iterator;
+import java.util.Map;
+
 /**
  * Cache interface - exposes the APIs which can be implemented by different
  * caching schemes: LRU, LFU, LFRU, etc.
@@ -11,4 +14,50 @@ public interface MemCache<K, V> {
   void set(K k, V v);
   boolean containsKey(K k);
   long size();
+
+  /***
+   * Returns an iterator over the entries of the cache, which does not count as an access to
+   * them. The iterator is weakly consistent: it can be used while the cache is modified, and
+   * returns the entries present when it reaches them, without locking the cache.
+   * @return iterator over the entries
+   */
+  Iterator<Map.Entry<K, V>> iterator();
+
+  /***
+   * Remove the entry of a key, if it is still mapped to the given value, and notify the
+   * eviction listener.
+   * @param k is the key
+   * @param v is the value expected
+   * @return true if the entry was removed
+   */
+  boolean remove(K k, V v);
+
+  /***
+   * Add an entry, unless the key is already mapped to a value.
+   * @param k is the key
+   * @param v is the value
+   * @return true if the entry was added
+   */
+  boolean add(K k, V v);
+
+  /***
+   * Returns an iterator over the entries, starting from the least recently used one as far
+   * as the implementation can walk its LRU order without locking the cache. Like iterator(),
+   * it does not count as an access, and can be used while the cache is modified.
+   * @return iterator over the entries, coldest first
+   */
+  Iterator<Map.Entry<K, V>> lruIterator();
+
+  /***
+   * Returns the total weight of the entries (their number, if the cache is not weighted).
+   * @return the weighted size
+   */
+  long weightedSize();
+
+  /***
+   * Change the capacity of the cache, evicting the least recently used entries at once if
+   * they do not fit anymore.
+   * @param capacity is the maximum total weight of the entries
+   */
+  void setCapacity(long capacity);
 }
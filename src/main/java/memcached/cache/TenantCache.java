@@ -0,0 +1,296 @@
+package memcached.cache;
+
+import com.googlecode.concurrentlinkedhashmap.EvictionListener;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/***
+ * TenantCache partitions the keyspace between tenants, so that the traffic of one
+ * application does not evict the data of the others. The tenant of a key is the part of the
+ * key before a separator (for example "app1" in "app1:user:42"); keys of unknown tenants, or
+ * without the separator, belong to the default tenant.
+ *
+ * Each tenant has its own cache, and thus its own LRU order, bounded by its quota. With
+ * borrowing, a tenant may grow beyond its quota while other tenants leave memory unused:
+ * its cache is then bounded by the total capacity only. Once the tenants together exceed the
+ * total capacity, the tenant furthest over its quota gives memory back by evicting its least
+ * recently used entries, so that a tenant within its quota is never evicted by another.
+ *
+ * Each tenant counts its hits, misses and evictions, reported by `stats tenants`.
+ *
+ * Changing the total capacity rescales the quotas of all the tenants in proportion.
+ *
+ * @param <V> is the value type
+ */
+public class TenantCache<V> implements MemCache<ByteBuf, V> {
+  public static final String DEFAULT_TENANT = "default";
+
+  private final byte separator;
+  private volatile long capacity;             // Total capacity of the tenants
+  private final boolean borrow;               // Whether tenants may use the memory the others leave unused
+  private final Map<ByteBuf, Tenant> tenants = new LinkedHashMap<>();
+  private final List<Tenant> all = new ArrayList<>();
+  private final Tenant fallback;              // Tenant of the keys of no other tenant
+
+  /***
+   * A tenant: its cache, quota and counters.
+   */
+  private class Tenant {
+    final String name;
+    volatile long quota;                          // Rescaled along with the total capacity
+    final MemCache<ByteBuf, V> cache;
+    final LongAdder hits = new LongAdder();
+    final LongAdder misses = new LongAdder();
+    final LongAdder dropped = new LongAdder();    // Entries evicted or removed
+    final LongAdder removed = new LongAdder();    // Entries removed by remove()
+
+    Tenant(String name, long quota, BiFunction<Long, EvictionListener<ByteBuf, V>, MemCache<ByteBuf, V>> factory,
+           EvictionListener<ByteBuf, V> listener) {
+      this.name = name;
+      this.quota = quota;
+      this.cache = factory.apply(borrow ? capacity : quota, (k, v) -> {
+        dropped(k);
+        listener.onEviction(k, v);
+      });
+    }
+
+    void dropped(ByteBuf key) {
+      // A replaced value leaves its key in the cache
+      if (!cache.containsKey(key)) {
+        dropped.increment();
+      }
+    }
+  }
+
+  /***
+   * @param separator ends the tenant prefix of the keys
+   * @param quotas is the quota of each tenant. The default tenant gets the capacity left,
+   *               unless it is given a quota.
+   * @param capacity is the total capacity
+   * @param borrow is whether tenants may exceed their quota while memory is unused
+   * @param factory creates the cache of a tenant, given its capacity and eviction listener
+   * @param listener is called with each entry dropped by a tenant cache
+   */
+  public TenantCache(byte separator, Map<String, Long> quotas, long capacity, boolean borrow,
+                     BiFunction<Long, EvictionListener<ByteBuf, V>, MemCache<ByteBuf, V>> factory,
+                     EvictionListener<ByteBuf, V> listener) {
+    this.separator = separator;
+    this.capacity = capacity;
+    this.borrow = borrow;
+    long assigned = 0;
+    for (Map.Entry<String, Long> quota : quotas.entrySet()) {
+      if (!quota.getKey().equals(DEFAULT_TENANT)) {
+        Tenant tenant = new Tenant(quota.getKey(), quota.getValue(), factory, listener);
+        tenants.put(Unpooled.wrappedBuffer(quota.getKey().getBytes(StandardCharsets.UTF_8)), tenant);
+        all.add(tenant);
+        assigned += quota.getValue();
+      }
+    }
+    long defaultQuota = quotas.getOrDefault(DEFAULT_TENANT, capacity - assigned);
+    if (defaultQuota <= 0 || assigned + defaultQuota > capacity) {
+      throw new IllegalArgumentException("The tenant quotas exceed the cache capacity of " + capacity);
+    }
+    fallback = new Tenant(DEFAULT_TENANT, defaultQuota, factory, listener);
+    all.add(fallback);
+  }
+
+  /***
+   * Returns the tenant of a key.
+   */
+  private Tenant tenant(ByteBuf key) {
+    int end = key.indexOf(key.readerIndex(), key.writerIndex(), separator);
+    if (end < 0) {
+      return fallback;
+    }
+    Tenant tenant = tenants.get(key.slice(key.readerIndex(), end - key.readerIndex()));
+    return tenant != null ? tenant : fallback;
+  }
+
+  @Override
+  public V get(ByteBuf k) {
+    Tenant tenant = tenant(k);
+    V v = tenant.cache.get(k);
+    if (v != null) {
+      tenant.hits.increment();
+    } else {
+      tenant.misses.increment();
+    }
+    return v;
+  }
+
+  @Override
+  public void set(ByteBuf k, V v) {
+    tenant(k).cache.set(k, v);
+    if (borrow) {
+      reclaim();
+    }
+  }
+
+  @Override
+  public boolean containsKey(ByteBuf k) {
+    return tenant(k).cache.containsKey(k);
+  }
+
+  @Override
+  public long size() {
+    long size = 0;
+    for (Tenant tenant : all) {
+      size += tenant.cache.size();
+    }
+    return size;
+  }
+
+  @Override
+  public Iterator<Map.Entry<ByteBuf, V>> iterator() {
+    return concat(tenant -> tenant.cache.iterator());
+  }
+
+  @Override
+  public boolean remove(ByteBuf k, V v) {
+    Tenant tenant = tenant(k);
+    if (tenant.cache.remove(k, v)) {
+      tenant.removed.increment();
+      return true;
+    }
+    return false;
+  }
+
+  @Override
+  public boolean add(ByteBuf k, V v) {
+    if (!tenant(k).cache.add(k, v)) {
+      return false;
+    }
+    if (borrow) {
+      reclaim();
+    }
+    return true;
+  }
+
+  /***
+   * Returns the entries of each tenant in turn, least recently used first within a tenant.
+   * @return iterator over the entries
+   */
+  @Override
+  public Iterator<Map.Entry<ByteBuf, V>> lruIterator() {
+    return concat(tenant -> tenant.cache.lruIterator());
+  }
+
+  @Override
+  public long weightedSize() {
+    long size = 0;
+    for (Tenant tenant : all) {
+      size += tenant.cache.weightedSize();
+    }
+    return size;
+  }
+
+  /***
+   * Change the total capacity, scaling the quota of each tenant by the same ratio. Tenants
+   * over their new bound evict their least recently used entries.
+   * @param capacity is the new total capacity
+   */
+  @Override
+  public synchronized void setCapacity(long capacity) {
+    if (capacity < all.size()) {
+      throw new IllegalArgumentException("The capacity must leave room for each of the " + all.size() + " tenants");
+    }
+    double ratio = (double) capacity / this.capacity;
+    this.capacity = capacity;
+    for (Tenant tenant : all) {
+      // Rounded down, so that the quotas still fit in the capacity
+      tenant.quota = Math.max(1, (long) (tenant.quota * ratio));
+      tenant.cache.setCapacity(borrow ? capacity : tenant.quota);
+    }
+    if (borrow) {
+      reclaim();
+    }
+  }
+
+  /***
+   * Once the tenants exceed the total capacity, make the tenants furthest over their quota
+   * evict entries until the tenants fit again.
+   */
+  private void reclaim() {
+    if (weightedSize() <= capacity) {
+      return;
+    }
+    synchronized (this) {
+      long excess = weightedSize() - capacity;
+      while (excess > 0) {
+        Tenant borrower = null;
+        long over = 0;
+        for (Tenant tenant : all) {
+          long o = tenant.cache.weightedSize() - tenant.quota;
+          if (o > over) {
+            over = o;
+            borrower = tenant;
+          }
+        }
+        if (borrower == null) {
+          return;
+        }
+        borrower.cache.setCapacity(borrower.cache.weightedSize() - Math.min(over, excess));
+        borrower.cache.setCapacity(capacity);
+        long left = weightedSize() - capacity;
+        if (left >= excess) {
+          return;   // No progress, such as entries being added concurrently
+        }
+        excess = left;
+      }
+    }
+  }
+
+  /***
+   * Add the statistics of each tenant to the statistics reported by `stats tenants`.
+   * @param stats is the map of statistics
+   */
+  public void addStats(Map<String, String> stats) {
+    for (Tenant tenant : all) {
+      String prefix = "tenant_" + tenant.name + "_";
+      stats.put(prefix + "quota", String.valueOf(tenant.quota));
+      stats.put(prefix + "used", String.valueOf(tenant.cache.weightedSize()));
+      stats.put(prefix + "items", String.valueOf(tenant.cache.size()));
+      stats.put(prefix + "get_hits", String.valueOf(tenant.hits.sum()));
+      stats.put(prefix + "get_misses", String.valueOf(tenant.misses.sum()));
+      stats.put(prefix + "evictions", String.valueOf(Math.max(0, tenant.dropped.sum() - tenant.removed.sum())));
+    }
+  }
+
+  /***
+   * Chain the iterators of the tenants.
+   */
+  private Iterator<Map.Entry<ByteBuf, V>> concat(Function<Tenant, Iterator<Map.Entry<ByteBuf, V>>> iterators) {
+    Iterator<Tenant> remaining = all.iterator();
+    return new Iterator<Map.Entry<ByteBuf, V>>() {
+      private Iterator<Map.Entry<ByteBuf, V>> current = Collections.emptyIterator();
+
+      @Override
+      public boolean hasNext() {
+        while (!current.hasNext() && remaining.hasNext()) {
+          current = iterators.apply(remaining.next());
+        }
+        return current.hasNext();
+      }
+
+      @Override
+      public Map.Entry<ByteBuf, V> next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        return current.next();
+      }
+    };
+  }
+}
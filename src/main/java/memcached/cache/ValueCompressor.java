@@ -0,0 +1,189 @@
+package memcached.cache;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/***
+ * ValueCompressor compresses large values when they are stored, to trade CPU for memory.
+ *
+ * Values of at least `minSize` bytes are compressed with LZ4, which is fast enough to be
+ * used inline, and decompressed when they are read. A value is kept as is if compressing
+ * it does not save space, and values whose flags already carry the compression flag bit
+ * (i.e. compressed by the client) are never compressed again.
+ *
+ * Compressed values are stored in the following format:
+ * <length of the value: 4 bytes, big endian><LZ4 block>
+ *
+ * In pass-through mode, compressed values are not decompressed on reads: they are sent to
+ * clients in the format above, with the compression flag bit set in their flags, so that
+ * clients which know about it decompress the values themselves.
+ *
+ * The number of bytes compressed, the compression ratio and the time spent compressing and
+ * decompressing are reported in the statistics, so that the memory/CPU tradeoff can be
+ * judged for each workload.
+ *
+ * A compressor may be called from several threads: LZ4 compressors are stateless, the
+ * scratch buffer is per thread, and the statistics are LongAdders.
+ */
+public class ValueCompressor {
+  private static final LZ4Factory LZ4 = LZ4Factory.fastestInstance();
+  private static final int HEADER_SIZE = 4;   // Length of the value, before the LZ4 block
+
+  private final LZ4Compressor compressor = LZ4.fastCompressor();
+  private final LZ4SafeDecompressor decompressor = LZ4.safeDecompressor();
+  private final ThreadLocal<byte[]> scratch = ThreadLocal.withInitial(() -> new byte[0]);
+  private final int minSize;          // Values smaller than this are not compressed; 0 disables compression
+  private final boolean passThrough;  // Whether compressed values are sent to clients as is
+  private final int flag;             // Flag bit marking compressed values
+
+  private final LongAdder compressedCount = new LongAdder();   // Number of values compressed
+  private final LongAdder skippedCount = new LongAdder();      // Number of values which did not shrink when compressed
+  private final LongAdder bytesIn = new LongAdder();           // Bytes of the values compressed
+  private final LongAdder bytesOut = new LongAdder();          // Bytes of the values once compressed
+  private final LongAdder compressNanos = new LongAdder();     // Time spent compressing
+  private final LongAdder decompressedCount = new LongAdder(); // Number of values decompressed
+  private final LongAdder decompressNanos = new LongAdder();   // Time spent decompressing
+
+  /***
+   * @param minSize is the size from which values are compressed; 0 disables compression
+   * @param passThrough indicates if compressed values are sent to clients without being decompressed
+   * @param flag is the flag bit which marks compressed values
+   */
+  public ValueCompressor(int minSize, boolean passThrough, int flag) {
+    this.minSize = minSize;
+    this.passThrough = passThrough;
+    this.flag = flag;
+  }
+
+  public boolean isEnabled() {
+    return minSize > 0;
+  }
+
+  public boolean isPassThrough() {
+    return passThrough;
+  }
+
+  /***
+   * Create the item to store for a value, compressing the value if it is worth it.
+   * @param value is the value sent by the client
+   * @param flags are the flags sent by the client
+   * @return the item to store
+   */
+  public Item compress(ByteBuf value, int flags) {
+    int length = value.readableBytes();
+    if (!isEnabled() || length < minSize || (flags & flag) != 0) {
+      return new Item(value, flags);
+    }
+
+    long start = System.nanoTime();
+    byte[] src;
+    int srcOffset;
+    if (value.hasArray()) {
+      src = value.array();
+      srcOffset = value.arrayOffset() + value.readerIndex();
+    } else {
+      src = ByteBufUtil.getBytes(value);
+      srcOffset = 0;
+    }
+    byte[] dest = scratch(HEADER_SIZE + compressor.maxCompressedLength(length));
+    int compressedLength = compressor.compress(src, srcOffset, length, dest, HEADER_SIZE, dest.length - HEADER_SIZE);
+
+    if (HEADER_SIZE + compressedLength >= length) {
+      skippedCount.increment();
+      compressNanos.add(System.nanoTime() - start);
+      return new Item(value, flags);
+    }
+    ByteBuf data = Unpooled.buffer(HEADER_SIZE + compressedLength)
+      .writeInt(length)
+      .writeBytes(dest, HEADER_SIZE, compressedLength);
+    compressedCount.increment();
+    bytesIn.add(length);
+    bytesOut.add(data.readableBytes());
+    compressNanos.add(System.nanoTime() - start);
+    return new Item(data, flags, length, true);
+  }
+
+  /***
+   * Returns the value of an item, as it should be sent to the client.
+   * @param item is the stored item
+   * @return the value, owned by the caller: a retained duplicate of the stored bytes unless
+   *         it had to be decompressed
+   */
+  public ByteBuf value(Item item) {
+    if (passThrough) {
+      return item.getData().retainedDuplicate();
+    }
+    return original(item);
+  }
+
+  /***
+   * Returns the value of an item as sent by the client, decompressing it even in
+   * pass-through mode.
+   * @param item is the stored item
+   * @return the value, owned by the caller: a retained duplicate of the stored bytes unless
+   *         it had to be decompressed
+   */
+  public ByteBuf original(Item item) {
+    if (!item.isCompressed()) {
+      return item.getData().retainedDuplicate();
+    }
+
+    long start = System.nanoTime();
+    ByteBuf data = item.getData();
+    byte[] src = data.array();
+    int srcOffset = data.arrayOffset() + data.readerIndex() + HEADER_SIZE;
+    byte[] value = new byte[item.getLength()];
+    decompressor.decompress(src, srcOffset, data.readableBytes() - HEADER_SIZE, value, 0, value.length);
+    decompressedCount.increment();
+    decompressNanos.add(System.nanoTime() - start);
+    return Unpooled.wrappedBuffer(value);
+  }
+
+  /***
+   * Returns the flags of an item, as they should be sent to the client. In pass-through
+   * mode, the compression flag bit is set for compressed values.
+   * @param item is the stored item
+   * @return the flags
+   */
+  public int flags(Item item) {
+    return (item.isCompressed() && passThrough) ? (item.getFlags() | flag) : item.getFlags();
+  }
+
+  /***
+   * Add the compression statistics to the statistics reported by `stats`.
+   * @param stats is the map of statistics
+   */
+  public void addStats(Map<String, String> stats) {
+    long in = bytesIn.sum();
+    long out = bytesOut.sum();
+    stats.put("compress_items", String.valueOf(compressedCount.sum()));
+    stats.put("compress_skipped", String.valueOf(skippedCount.sum()));
+    stats.put("compress_bytes_in", String.valueOf(in));
+    stats.put("compress_bytes_out", String.valueOf(out));
+    stats.put("compress_ratio", out == 0 ? "0" : String.format("%.2f", (double) in / out));
+    stats.put("compress_time_us", String.valueOf(compressNanos.sum() / 1000));
+    stats.put("decompress_items", String.valueOf(decompressedCount.sum()));
+    stats.put("decompress_time_us", String.valueOf(decompressNanos.sum() / 1000));
+  }
+
+  /***
+   * Returns a scratch buffer of at least the given size, owned by the calling thread.
+   * @param size is the minimum size
+   * @return scratch buffer
+   */
+  private byte[] scratch(int size) {
+    byte[] buffer = scratch.get();
+    if (buffer.length < size) {
+      buffer = new byte[size];
+      scratch.set(buffer);
+    }
+    return buffer;
+  }
+}
@@ -0,0 +1,211 @@
+package memcached.command;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+
+import static memcached.command.CommandParser.CRLF;
+
+/***
+ * ChunkedValueReader reads the data block of a SET command as its bytes arrive from the
+ * client, possibly spread over many socket reads:
+ * <data block>\r\n
+ *
+ * The bytes are copied once, into a chain of chunks allocated as the data arrives. Each
+ * chunk holds at most `chunkSize` bytes and the last one is sized to the bytes left, so
+ * a value takes its own length plus a small fixed overhead per chunk, however the client
+ * splits its writes. Small values fit in a single chunk. Larger values are exposed as a
+ * composite buffer over the chunks, which can be stored and written back to clients
+ * without being copied again.
+ *
+ * The value can be framed: given bytes are then written before it (in the first chunk)
+ * and after it (in the last chunk), so that, for instance, the whole response to a GET of
+ * the value can be stored without further copies.
+ *
+ * The chunks come from the given allocator (a pooled allocator on the request path). The
+ * value returned by value() is owned by the caller, who must release it. Chunks of a data
+ * block which is not completed are released by release(), or by read() on error.
+ *
+ * One reader is used per connection, for one data block at a time.
+ */
+public class ChunkedValueReader {
+
+  public enum State {
+    INCOMPLETE,   // More bytes are needed
+    COMPLETE,     // The data block and its CRLF were read
+    ERROR,        // The data block is not followed by CRLF
+  }
+
+  private final int chunkSize;
+  private final ByteBufAllocator allocator;
+  private ByteBuf firstChunk;         // First chunk of the value
+  private CompositeByteBuf chunks;    // Chain of chunks, when the value spans more than one chunk
+  private ByteBuf chunk;              // Chunk being filled
+  private int length;                 // Length of the data block
+  private int remaining;              // Bytes of the data block still expected
+  private int chunkLeft;              // Bytes of the data block still expected in the current chunk
+  private int trailer;                // Bytes of the CRLF trailer still expected
+  private ByteBuf prefix;             // Bytes written before the value, or null
+  private ByteBuf suffix;             // Bytes written after the value, or null
+
+  /***
+   * Create a reader which allocates unpooled chunks.
+   * @param chunkSize is the maximum number of bytes in a chunk
+   */
+  public ChunkedValueReader(int chunkSize) {
+    this(chunkSize, UnpooledByteBufAllocator.DEFAULT);
+  }
+
+  /***
+   * @param chunkSize is the maximum number of bytes in a chunk
+   * @param allocator allocates the chunks
+   */
+  public ChunkedValueReader(int chunkSize, ByteBufAllocator allocator) {
+    this.chunkSize = chunkSize;
+    this.allocator = allocator;
+  }
+
+  /***
+   * Start reading a new data block.
+   * @param len is the length of the data block, as given in the SET command
+   */
+  public void start(int len) {
+    start(len, null, null);
+  }
+
+  /***
+   * Start reading a new data block, framed by the given bytes. The frame is copied: the
+   * caller keeps ownership of the buffers given. The prefix is copied right away, while
+   * the suffix must stay valid until the data block is complete.
+   * @param len is the length of the data block, as given in the SET command
+   * @param prefix are the bytes to write before the value
+   * @param suffix are the bytes to write after the value
+   */
+  public void start(int len, ByteBuf prefix, ByteBuf suffix) {
+    length = len;
+    remaining = len;
+    trailer = CRLF.length;
+    this.prefix = prefix;
+    this.suffix = suffix;
+    firstChunk = null;
+    chunks = len > chunkSize ? allocator.compositeHeapBuffer((len + chunkSize - 1) / chunkSize) : null;
+    chunk = null;
+    if (prefix != null || suffix != null) {
+      // Copy the prefix into the first chunk. If there is no data to wait for, the frame
+      // is the whole value.
+      chunk = newChunk();
+      if (chunkLeft == 0) {
+        addChunk(chunk);
+        chunk = null;
+      }
+    }
+    this.prefix = null;
+  }
+
+  /***
+   * Read as many bytes of the data block (and its trailing CRLF) as are available.
+   * Bytes after the data block are left in the input buffer.
+   * @param in is the input buffer
+   * @return the state of the data block
+   */
+  public State read(ByteBuf in) {
+    while (remaining > 0 && in.isReadable()) {
+      if (chunk == null) {
+        chunk = newChunk();
+      }
+      int n = Math.min(in.readableBytes(), chunkLeft);
+      chunk.writeBytes(in, n);
+      remaining -= n;
+      chunkLeft -= n;
+      if (chunkLeft == 0) {
+        if (remaining == 0 && suffix != null) {
+          chunk.writeBytes(suffix, suffix.readerIndex(), suffix.readableBytes());
+        }
+        addChunk(chunk);
+        chunk = null;
+      }
+    }
+    while (remaining == 0 && trailer > 0 && in.isReadable()) {
+      if (in.readByte() != CRLF[CRLF.length - trailer]) {
+        release();
+        return State.ERROR;
+      }
+      trailer--;
+    }
+    return (remaining == 0 && trailer == 0) ? State.COMPLETE : State.INCOMPLETE;
+  }
+
+  /***
+   * Returns the value read, once the data block is complete. The reader gives up the
+   * value: it is owned by the caller.
+   * @return the value (with its frame, if any): a single chunk, or a composite buffer over
+   *         the chain of chunks.
+   */
+  public ByteBuf value() {
+    ByteBuf value;
+    if (chunks != null) {
+      value = chunks;
+    } else {
+      value = firstChunk != null ? firstChunk : Unpooled.EMPTY_BUFFER;
+    }
+    firstChunk = null;
+    chunks = null;
+    return value;
+  }
+
+  /***
+   * Release the chunks of the data block being read, if any. This is used when the data
+   * block is abandoned, for example when the connection is closed.
+   */
+  public void release() {
+    if (chunk != null) {
+      chunk.release();
+      chunk = null;
+    }
+    if (chunks != null) {
+      chunks.release();   // Releases the chunks added to it
+      chunks = null;
+    }
+    if (firstChunk != null) {
+      firstChunk.release();
+      firstChunk = null;
+    }
+    remaining = 0;
+    trailer = 0;
+  }
+
+  /***
+   * Allocate the next chunk, sized to the bytes of the data block it will receive, plus the
+   * frame if it is the first or the last chunk. The prefix is written right away.
+   */
+  private ByteBuf newChunk() {
+    chunkLeft = Math.min(remaining, chunkSize);
+    boolean first = remaining == length;
+    boolean last = remaining == chunkLeft;
+    int capacity = chunkLeft;
+    if (first && prefix != null) {
+      capacity += prefix.readableBytes();
+    }
+    if (last && suffix != null) {
+      capacity += suffix.readableBytes();
+    }
+    ByteBuf newChunk = allocator.heapBuffer(capacity);
+    if (first && prefix != null) {
+      newChunk.writeBytes(prefix, prefix.readerIndex(), prefix.readableBytes());
+    }
+    if (last && remaining == 0 && suffix != null) {
+      newChunk.writeBytes(suffix, suffix.readerIndex(), suffix.readableBytes());
+    }
+    return newChunk;
+  }
+
+  private void addChunk(ByteBuf chunk) {
+    if (chunks != null) {
+      chunks.addComponent(true, chunk);
+    } else {
+      firstChunk = chunk;
+    }
+  }
+}
@@ -18,7 +18,16 @@ public interface CommandParser {
   byte[] VALUE = "VALUE".getBytes(Charset.defaultCharset());
   byte[] END = "END".getBytes(Charset.defaultCharset());
   byte[] STORED = "STORED".getBytes(Charset.defaultCharset());
+  byte[] OK = "OK".getBytes(Charset.defaultCharset());
+  byte[] NOT_STORED = "NOT_STORED".getBytes(Charset.defaultCharset());
+  byte[] TOUCHED = "TOUCHED".getBytes(Charset.defaultCharset());
+  byte[] NOT_FOUND = "NOT_FOUND".getBytes(Charset.defaultCharset());
+  byte[] STALE = "STALE".getBytes(Charset.defaultCharset());
+  byte[] LEASE = "LEASE".getBytes(Charset.defaultCharset());
+  byte[] HOT_MISS = "HOT_MISS".getBytes(Charset.defaultCharset());
+  byte[] STAT = "STAT".getBytes(Charset.defaultCharset());
   byte[] CLIENT_ERROR = "CLIENT_ERROR".getBytes(Charset.defaultCharset());
+  byte[] SERVER_ERROR = "SERVER_ERROR".getBytes(Charset.defaultCharset());
   byte[] NO_REPLY = "noreply".getBytes(Charset.defaultCharset());
 
   /***
@@ -35,7 +44,7 @@ public interface CommandParser {
   MemcacheMessage parse(ByteBuf in, boolean expectData);
 
   /***
-   * Returns the name of the command parser (GET or SET)
+   * Returns the name of the command parser (GET, SET, LGET, LSET, STATS, FLUSH_ALL, DUMP, LOAD, TRACKING, TOUCH, GAT, GATS or SCAN)
    * @return as above.
    */
   ByteBuf getCommandName();
@@ -2,10 +2,13 @@ package memcached.command;
 
 import io.netty.buffer.ByteBuf;
 import memcached.common.MemcacheMessage;
+import memcached.common.MemcacheMessage.CommandType;
 import memcached.util.ByteBufHelper;
 
 import java.util.ArrayList;
 
+import static memcached.util.Constants.MAX_VALUE_SIZE_IN_BYTES;
+
 /***
  * Decoder is the entry point for the commands issued by clients. Based on the
  * first few bytes, the decoder will either forward the command to appropriate
@@ -14,16 +17,46 @@ import java.util.ArrayList;
  */
 public class Decoder {
   private ArrayList<CommandParser> commands = new ArrayList<>();      // List of command parsers.
-  private SetCommandParser setCommandParser = new SetCommandParser(); // Set command parser
+  private SetCommandParser setCommandParser;                          // Set command parser
+  private SetCommandParser leaseSetCommandParser;                     // Lset command parser
   private GetCommandParser getCommandParser = new GetCommandParser(); // Get command parser
+  private GetCommandParser leaseGetCommandParser = new GetCommandParser(true); // Lget command parser
+  private StatsCommandParser statsCommandParser = new StatsCommandParser(); // Stats command parser
+  private FlushCommandParser flushCommandParser = new FlushCommandParser(); // Flush command parser
+  private DumpCommandParser dumpCommandParser = new DumpCommandParser("dump", CommandType.DUMP); // Dump command parser
+  private DumpCommandParser loadCommandParser = new DumpCommandParser("load", CommandType.LOAD); // Load command parser
+  private TrackingCommandParser trackingCommandParser = new TrackingCommandParser(); // Tracking command parser
+  private TouchCommandParser touchCommandParser = new TouchCommandParser(); // Touch command parser
+  private GatCommandParser gatCommandParser = new GatCommandParser(false); // Gat command parser
+  private GatCommandParser gatsCommandParser = new GatCommandParser(true); // Gats command parser
+  private ScanCommandParser scanCommandParser = new ScanCommandParser(); // Scan command parser
   private ByteBufHelper helper = ByteBufHelper.getInstance();
 
+  public Decoder() {
+    this(MAX_VALUE_SIZE_IN_BYTES);
+  }
+
   /***
-   * Add new command parsers here. For now, it supports GET and SET parsers.
+   * Add new command parsers here. For now, it supports GET, SET, LGET, LSET, STATS, FLUSH_ALL, DUMP,
+   * LOAD, TRACKING, TOUCH, GAT, GATS and SCAN parsers.
+   * @param maxValueSize is the (inclusive) limit on the size of values accepted by SET
    */
-  public Decoder() {
+  public Decoder(int maxValueSize) {
+    setCommandParser = new SetCommandParser(maxValueSize);
+    leaseSetCommandParser = new SetCommandParser(maxValueSize, true);
     commands.add(setCommandParser);
     commands.add(getCommandParser);
+    commands.add(leaseSetCommandParser);
+    commands.add(leaseGetCommandParser);
+    commands.add(statsCommandParser);
+    commands.add(flushCommandParser);
+    commands.add(dumpCommandParser);
+    commands.add(loadCommandParser);
+    commands.add(trackingCommandParser);
+    commands.add(touchCommandParser);
+    commands.add(gatCommandParser);
+    commands.add(gatsCommandParser);
+    commands.add(scanCommandParser);
   }
 
   /***
@@ -37,25 +70,52 @@ public class Decoder {
     switch (m.getCommandType()) {
       case SET: return setCommandParser.translate(m);
       case GET: return getCommandParser.translate(m);
+      case LSET: return leaseSetCommandParser.translate(m);
+      case LGET: return leaseGetCommandParser.translate(m);
+      case STATS: return statsCommandParser.translate(m);
+      case FLUSH_ALL: return flushCommandParser.translate(m);
+      case DUMP: return dumpCommandParser.translate(m);
+      case LOAD: return loadCommandParser.translate(m);
+      case TRACKING: return trackingCommandParser.translate(m);
+      case TOUCH: return touchCommandParser.translate(m);
+      case GAT: return gatCommandParser.translate(m);
+      case GATS: return gatsCommandParser.translate(m);
+      case SCAN: return scanCommandParser.translate(m);
       default: return null;
     }
   }
 
   /***
-   * Decode the input command. If isData is set, the incoming buffer is treated as data for
-   * a previously issued SET command.
-   * @param in is the input buffer stream for processing
-   * @param isData implies if the input buffer is command or if it is data.
-   * @return memcache message which can be sent over the event bus.
+   * Returns the header of the response to a GET of the value of a SET command, so that the
+   * whole response can be serialized when the value is stored (see "item.wire").
+   * @param m is the SET command
+   * @return the header, owned by the caller
    */
-  public MemcacheMessage decode(ByteBuf in, boolean isData) {
-    // Only SET command parser can parse the data stream
-    if (isData) {
-      return setCommandParser.parse(in, true);
-    }
+  public ByteBuf getResponseHeader(MemcacheMessage m) {
+    return getCommandParser.header(m.getKey(), m.getFlags(), m.getLen());
+  }
 
+  /***
+   * Returns the end of the response to a GET, which follows the value.
+   * @return shared trailer
+   */
+  public ByteBuf getResponseTrailer() {
+    return getCommandParser.trailer();
+  }
+
+  /***
+   * Decode the input command line. The data block of a SET command is not part of the
+   * command line: it is read separately by a ChunkedValueReader.
+   * @param in is the CRLF ended command line
+   * @return memcache message which can be sent over the event bus.
+   */
+  public MemcacheMessage decode(ByteBuf in) {
     // Find the first word in the input stream and check which command it is.
+    // Commands without arguments (such as `stats`) are followed by CRLF instead of a space.
     ByteBuf command = helper.tokenize(in, (byte) ' ', 1);
+    if (command == null) {
+      command = helper.tokenize(in, (byte) '\r', 0);
+    }
     for (CommandParser c : commands) {
       if (c.getCommandName().equals(command)) {
         return c.parse(in, false);
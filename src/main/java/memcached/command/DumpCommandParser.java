@@ -0,0 +1,84 @@
+package memcached.command;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import memcached.common.MemcacheMessage;
+import memcached.util.ByteBufHelper;
+
+import java.nio.charset.Charset;
+
+/***
+ * DUMP and LOAD command parser is responsible for parsing the admin commands which export
+ * the cache to a file, and load a file into the cache.
+ *
+ * DUMP / LOAD command format:
+ * ---------------------------
+ * dump <file>\r\n
+ * load <file>\r\n
+ * - <file> is the name of a file in the dump directory ("dump.dir").
+ *
+ * DUMP / LOAD response format:
+ * ----------------------------
+ * OK\r\n once the export or load has been started: it runs in the background, and its
+ * progress is reported by `stats dump`.
+ * SERVER_ERROR <reason>\r\n if it could not be started.
+ *
+ * If the file name is missing, CLIENT_ERROR\r\n is returned.
+ */
+public class DumpCommandParser implements CommandParser {
+  private final ByteBuf name;
+  private final MemcacheMessage.CommandType type;
+  private ByteBufHelper helper = ByteBufHelper.getInstance();
+
+  /***
+   * @param name is the name of the command
+   * @param type is the type of the messages created for the command
+   */
+  public DumpCommandParser(String name, MemcacheMessage.CommandType type) {
+    this.name = Unpooled.copiedBuffer(name, Charset.defaultCharset());
+    this.type = type;
+  }
+
+  /***
+   * This method parses the incoming command. The file name is passed as the key of the
+   * memcache message.
+   * @param in is the input stream of bytes
+   * @param unused - not currently used
+   * @return the memcache message which encapsulates the command, or null if there is no file name
+   */
+  @Override
+  public MemcacheMessage parse(ByteBuf in, boolean unused) {
+    ByteBuf file = helper.tokenize(in, (byte) '\r', 0);
+    if (file == null || !file.isReadable()) {
+      return null;
+    }
+    return new MemcacheMessage(type, ByteBufUtil.getBytes(file), null, 0);
+  }
+
+  /***
+   * This method returns the command name.
+   * @return command name
+   */
+  @Override
+  public ByteBuf getCommandName() {
+    return name;
+  }
+
+  /***
+   * This method translates the answer of the cache verticle.
+   * @param input is the input mem cache message
+   * @return stream of bytes which are sent back to the client.
+   */
+  @Override
+  public ByteBuf translate(MemcacheMessage input) {
+    if (input.getError() == null) {
+      return Unpooled.buffer().writeBytes(OK).writeBytes(CRLF);
+    }
+    return Unpooled.buffer()
+      .writeBytes(SERVER_ERROR)
+      .writeByte(' ')
+      .writeBytes(input.getError().getBytes(Charset.defaultCharset()))
+      .writeBytes(CRLF);
+  }
+}
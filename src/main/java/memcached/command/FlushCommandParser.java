@@ -0,0 +1,76 @@
+package memcached.command;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import memcached.common.MemcacheMessage;
+import memcached.util.ByteBufHelper;
+
+import java.nio.charset.Charset;
+
+/***
+ * FLUSH_ALL command parser is responsible for parsing the flush_all commands in accordance with
+ * memcached protocol listed: https://github.com/memcached/memcached/blob/master/doc/protocol.txt
+ *
+ * FLUSH_ALL command format:
+ * -------------------------
+ * flush_all [<delay>] [noreply]\r\n
+ * - All the items stored so far are invalidated, right away or once <delay> seconds
+ *   have passed. Their memory is reclaimed by GETs and by the crawler.
+ * - Like for SET, noreply is accepted but a response is sent anyway.
+ *
+ * FLUSH_ALL response format:
+ * --------------------------
+ * OK\r\n
+ */
+public class FlushCommandParser implements CommandParser {
+  private static final ByteBuf FLUSH_ALL = Unpooled.copiedBuffer("flush_all", Charset.defaultCharset());
+  private static final ByteBuf OK_RESPONSE = Unpooled.unreleasableBuffer(
+    Unpooled.wrappedBuffer(OK, CRLF));                                      // Shared by all FLUSH_ALL responses
+  private ByteBufHelper helper = ByteBufHelper.getInstance();
+
+  /***
+   * This method parses the incoming FLUSH_ALL command. The delay is passed as the
+   * expiration time of the memcache message.
+   * @param in is the input stream of bytes
+   * @param unused - not currently used
+   * @return the memcache message which encapsulates the command, or null if the arguments are invalid
+   */
+  @Override
+  public MemcacheMessage parse(ByteBuf in, boolean unused) {
+    ByteBuf args = helper.tokenize(in, (byte) '\r', 0);
+    if (args == null) {
+      return null;
+    }
+    MemcacheMessage message = new MemcacheMessage(MemcacheMessage.CommandType.FLUSH_ALL, new byte[0], null, 0);
+    for (String arg : args.toString(Charset.defaultCharset()).trim().split(" +")) {
+      if (arg.isEmpty() || arg.equals("noreply")) {
+        continue;
+      }
+      try {
+        message.setExptime(Long.parseLong(arg));
+      } catch (NumberFormatException e) {
+        return null;
+      }
+    }
+    return message;
+  }
+
+  /***
+   * This method returns the command name for FLUSH_ALL command parser.
+   * @return command name
+   */
+  @Override
+  public ByteBuf getCommandName() {
+    return FLUSH_ALL;
+  }
+
+  /***
+   * This method translates the answer of the cache verticle.
+   * @param input is the input mem cache message
+   * @return stream of bytes which are sent back to the client.
+   */
+  @Override
+  public ByteBuf translate(MemcacheMessage input) {
+    return OK_RESPONSE.duplicate();
+  }
+}
@@ -0,0 +1,97 @@
+package memcached.command;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import memcached.common.MemcacheMessage;
+import memcached.util.ByteBufHelper;
+
+import java.nio.charset.Charset;
+
+import static memcached.util.Constants.MAX_KEY_SIZE_IN_BYTES;
+
+/***
+ * GAT and GATS command parser is responsible for parsing the get-and-touch commands in
+ * accordance with memcached protocol listed: https://github.com/memcached/memcached/blob/master/doc/protocol.txt
+ *
+ * GAT / GATS command format:
+ * --------------------------
+ * gat <exptime> <key>\r\n
+ * gats <exptime> <key>\r\n
+ * - The value is returned like by GET, and the expiration time of the item is replaced.
+ *   NOTE: like GET, we support a single key.
+ *
+ * GAT / GATS response format:
+ * ---------------------------
+ * Like GET. GATS adds the <cas unique> field to the VALUE line; since the server does not
+ * implement CAS, it is always 0.
+ */
+public class GatCommandParser implements CommandParser {
+  private static final int HEADER_SIZE = 48;      // Size of the header, not counting the key
+  private static final byte[] NO_CAS = " 0".getBytes(Charset.defaultCharset());
+  private final ByteBuf name;
+  private final boolean cas;                      // Whether this parser handles GATS rather than GAT
+  private final GetCommandParser get = new GetCommandParser();
+  private ByteBufHelper helper = ByteBufHelper.getInstance();
+
+  /***
+   * @param cas indicates if the parser handles GATS rather than GAT
+   */
+  public GatCommandParser(boolean cas) {
+    this.cas = cas;
+    this.name = Unpooled.copiedBuffer(cas ? "gats" : "gat", Charset.defaultCharset());
+  }
+
+  /***
+   * This method parses the incoming GAT command. The new expiration time is passed as the
+   * expiration time of the memcache message.
+   * @param in is the input stream of bytes
+   * @param unused - not currently used
+   * @return the memcache message which encapsulates the command, or null if the arguments are invalid
+   */
+  @Override
+  public MemcacheMessage parse(ByteBuf in, boolean unused) {
+    ByteBuf exptime = helper.tokenize(in, (byte) ' ', 1);
+    ByteBuf key = helper.tokenize(in, (byte) '\r', 0);
+    if (exptime == null || key == null || key.readableBytes() == 0 || key.readableBytes() > MAX_KEY_SIZE_IN_BYTES) {
+      return null;
+    }
+    MemcacheMessage.CommandType type = cas ? MemcacheMessage.CommandType.GATS : MemcacheMessage.CommandType.GAT;
+    MemcacheMessage message = new MemcacheMessage(type, ByteBufUtil.getBytes(key), null, 0);
+    try {
+      message.setExptime(Long.parseLong(exptime.toString(Charset.defaultCharset())));
+    } catch (NumberFormatException e) {
+      return null;
+    }
+    return message;
+  }
+
+  /***
+   * This method returns the command name.
+   * @return command name
+   */
+  @Override
+  public ByteBuf getCommandName() {
+    return name;
+  }
+
+  /***
+   * This method translates the answer of the cache verticle, like a GET response. The value
+   * is not copied: the response holds its own reference to it.
+   * @param input is the input mem cache message
+   * @return stream of bytes which are sent back to the client.
+   */
+  @Override
+  public ByteBuf translate(MemcacheMessage input) {
+    ByteBuf value = input.getValueBuf();
+    if (!cas || value == null) {
+      return get.translate(input);
+    }
+    ByteBuf header = PooledByteBufAllocator.DEFAULT.heapBuffer(HEADER_SIZE + input.getKey().length);
+    header.writeBytes(VALUE).writeByte(' ').writeBytes(input.getKey()).writeByte(' ');
+    helper.writeDecimal(header, Integer.toUnsignedLong(input.getFlags())).writeByte(' ');
+    helper.writeDecimal(header, value.readableBytes()).writeBytes(NO_CAS).writeBytes(CRLF);
+    return Unpooled.wrappedBuffer(header, value.retainedDuplicate(), get.trailer());
+  }
+}
@@ -1,6 +1,8 @@
 package memcached.command;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.buffer.Unpooled;
 import memcached.common.MemcacheMessage;
 import memcached.util.ByteBufHelper;
@@ -25,17 +27,44 @@ import java.nio.charset.Charset;
  *
  * - <key> is the key for the item being sent
  * - <flags> is the flags value set by the storage command.
- *   NOTE: We return 0 for now, we do not support storing or retrieving flags.
  * - <bytes> is the length of the data block to follow, *not* including
  *   its delimiting \r\n
  * - <cas unique> is a unique 64-bit integer that uniquely identifies
  *   this specific item. NOTE: We do not send back this field.
  * - <data block> is the data for this item.
  *
+ * LGET command format:
+ * --------------------
+ * lget <key>\r\n
+ * The lease variant of GET (see LeaseTable). A hit is answered like a GET, while a miss
+ * is answered with one of:
+ * - LEASE <key> <token>\r\nEND\r\n: the client holds the lease on the key, and should fill
+ *   it with `lset`, giving the token.
+ * - HOT_MISS <key>\r\nEND\r\n: another client holds the lease; retry shortly.
+ * - STALE <key> <flags> <bytes>\r\n<data block>\r\nEND\r\n: another client holds the lease,
+ *   and this is the value which expired meanwhile.
+ *
  */
 public class GetCommandParser implements CommandParser {
   private static final ByteBuf GET = Unpooled.copiedBuffer("get", Charset.defaultCharset());
+  private static final ByteBuf LGET = Unpooled.copiedBuffer("lget", Charset.defaultCharset());
+  private static final ByteBuf TRAILER = Unpooled.unreleasableBuffer(
+    Unpooled.wrappedBuffer(CRLF, END, CRLF));                                 // Ends the data block and the response
+  private static final ByteBuf MISS = Unpooled.unreleasableBuffer(Unpooled.wrappedBuffer(CR)); // Response to a miss
+  private static final int HEADER_SIZE = 32;                                  // Size of the header, not counting the key
   private ByteBufHelper helper = ByteBufHelper.getInstance();
+  private final boolean lease;        // Whether this parser handles LGET rather than GET
+
+  public GetCommandParser() {
+    this(false);
+  }
+
+  /***
+   * @param lease indicates if the parser handles LGET rather than GET
+   */
+  public GetCommandParser(boolean lease) {
+    this.lease = lease;
+  }
 
   /***
    * This method parses the incoming GET command. Note that for now, we support getting a
@@ -49,7 +78,11 @@ public class GetCommandParser implements CommandParser {
   @Override
   public MemcacheMessage parse(ByteBuf payload, boolean unused) {
     ByteBuf key = helper.tokenize(payload, (byte) '\r', 0);
-    return new MemcacheMessage(MemcacheMessage.CommandType.GET, key.array().clone(), null, 0);
+    if (key == null || key.readableBytes() == 0) {
+      return null;
+    }
+    MemcacheMessage.CommandType type = lease ? MemcacheMessage.CommandType.LGET : MemcacheMessage.CommandType.GET;
+    return new MemcacheMessage(type, ByteBufUtil.getBytes(key), null, 0);
   }
 
   /***
@@ -58,39 +91,85 @@ public class GetCommandParser implements CommandParser {
    */
   @Override
   public ByteBuf getCommandName() {
-    return GET;
+    return lease ? LGET : GET;
   }
 
   /***
    * This method processes the input memcache message and translates it into a response
    * which can be forwarded to the client. This response is in line with what the protocol
-   * expects
+   * expects.
+   * The response is a composite of a header written into a pooled buffer, the value and a
+   * shared trailer, so the value (which may be large) is not copied. If the whole response was
+   * serialized when the item was stored, it is sent as is. The response holds its own
+   * reference to the value: the caller still owns the message, and must release the response
+   * once it is written.
    * @param input is the input mem cache message
    * @return stream of bytes which are sent back to the client.
    */
   @Override
   public ByteBuf translate(MemcacheMessage input) {
-    ByteBuf response = Unpooled.buffer();
-    byte[] valueBytes = input.getValue();
-    // If the value is missing, our implementation returns nothing.
-    if (valueBytes != null) {
-      ByteBuf value = Unpooled.copiedBuffer(input.getValue());
-      response.writeBytes(VALUE)
-        .writeByte(' ')
-        .writeBytes(Unpooled.copiedBuffer(input.getKey()))  // key
-        .writeByte(' ')
-        .writeBytes("0".getBytes(Charset.defaultCharset())) // flags
-        .writeByte(' ')
-        .writeBytes(String.valueOf(value.readableBytes())   // num bytes
-          .getBytes(Charset.defaultCharset()))
-        .writeBytes(CRLF)
-        .writeBytes(value.slice().readerIndex(0))           // value
-        .writeBytes(CRLF)
-        .writeBytes(END)
-        .writeBytes(CRLF);
+    if (input.getResponseBuf() != null) {
+      return input.getResponseBuf().retainedDuplicate();
+    }
+    ByteBuf value = input.getValueBuf();
+    // If the value is missing, our implementation returns nothing (LGET tells about the lease).
+    if (value == null) {
+      return lease ? leaseResponse(input) : MISS.duplicate();
+    }
+    ByteBuf header = header(input.isStale() ? STALE : VALUE, input.getKey(), input.getFlags(), value.readableBytes());
+    return Unpooled.wrappedBuffer(header, value.retainedDuplicate(), TRAILER.duplicate());
+  }
+
+  /***
+   * Write the response to an LGET miss: LEASE <key> <token>\r\nEND\r\n if the client got the
+   * lease, HOT_MISS <key>\r\nEND\r\n otherwise.
+   * @param input is the LGET command, answered
+   * @return the response, in a pooled buffer owned by the caller
+   */
+  private ByteBuf leaseResponse(MemcacheMessage input) {
+    ByteBuf response = PooledByteBufAllocator.DEFAULT.heapBuffer(HEADER_SIZE + input.getKey().length);
+    if (input.getToken() != 0) {
+      response.writeBytes(LEASE).writeByte(' ').writeBytes(input.getKey()).writeByte(' ');
+      helper.writeDecimal(response, input.getToken()).writeBytes(CRLF);
     } else {
-      response.writeBytes(CR);
+      response.writeBytes(HOT_MISS).writeByte(' ').writeBytes(input.getKey()).writeBytes(CRLF);
     }
-    return response;
+    return response.writeBytes(END).writeBytes(CRLF);
+  }
+
+  /***
+   * Write the header of the response to a GET: VALUE <key> <flags> <bytes>\r\n
+   * @param key is the key
+   * @param flags are the flags of the value
+   * @param length is the length of the value
+   * @return the header, in a pooled buffer owned by the caller
+   */
+  public ByteBuf header(byte[] key, int flags, int length) {
+    return header(VALUE, key, flags, length);
+  }
+
+  /***
+   * Write the header of a response holding a value: <kind> <key> <flags> <bytes>\r\n
+   * @param kind is VALUE, or STALE for a stale value
+   */
+  private ByteBuf header(byte[] kind, byte[] key, int flags, int length) {
+    ByteBuf header = PooledByteBufAllocator.DEFAULT.heapBuffer(HEADER_SIZE + key.length);
+    header.writeBytes(kind)
+      .writeByte(' ')
+      .writeBytes(key)                                    // key
+      .writeByte(' ');
+    helper.writeDecimal(header, Integer.toUnsignedLong(flags)) // flags
+      .writeByte(' ');
+    helper.writeDecimal(header, length)                   // num bytes
+      .writeBytes(CRLF);
+    return header;
+  }
+
+  /***
+   * Returns the end of the response to a GET, which follows the value: \r\nEND\r\n
+   * @return shared, unreleasable trailer
+   */
+  public ByteBuf trailer() {
+    return TRAILER.duplicate();
   }
 }
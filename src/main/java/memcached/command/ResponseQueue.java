@@ -0,0 +1,163 @@
+package memcached.command;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.net.NetSocket;
+import memcached.common.MemcacheMessage;
+import memcached.stats.SlowLog;
+
+import java.util.ArrayDeque;
+
+import static memcached.command.CommandParser.CR;
+
+/***
+ * ResponseQueue writes the responses of a connection in the order of its requests.
+ *
+ * Responses are usually ready in order, and written right away. But a GET of a value in the
+ * ext store is answered once the value has been read from the file, possibly after the
+ * responses of the next requests: these wait in the queue until the earlier ones have been
+ * written.
+ *
+ * A slot is reserved for each request when it is passed to the cache, and completed with
+ * its response. Errors detected by the command verticle itself are written through the
+ * queue as well, after the responses of the earlier requests.
+ *
+ * Once a response has been written, its request is passed to the slow log of the event loop
+ * (see SlowLog), if there is one.
+ *
+ * One queue is used per connection, from the connection's event loop.
+ */
+public class ResponseQueue {
+  private final NetSocket socket;
+  private final Decoder decoder;            // Translates the responses
+  private final ArrayDeque<Slot> slots = new ArrayDeque<>();   // Responses not written yet, in request order
+  private final SlowLog.Ring slowLog;       // Records the slow requests, or null
+  private final long connection;            // Id of the connection in the slow log
+  private boolean closed;                   // Whether the connection is closed
+
+  /***
+   * The response to a request, once it is ready.
+   */
+  public static class Slot {
+    private boolean ready;
+    private MemcacheMessage response;       // The response message, or null
+    private Buffer buffer;                  // The response bytes, if there is no message
+  }
+
+  /***
+   * @param socket is the client connection
+   * @param decoder translates the responses
+   */
+  public ResponseQueue(NetSocket socket, Decoder decoder) {
+    this(socket, decoder, null, 0);
+  }
+
+  /***
+   * @param socket is the client connection
+   * @param decoder translates the responses
+   * @param slowLog records the slow requests of the event loop, or null
+   * @param connection is the id of the connection
+   */
+  public ResponseQueue(NetSocket socket, Decoder decoder, SlowLog.Ring slowLog, long connection) {
+    this.socket = socket;
+    this.decoder = decoder;
+    this.slowLog = slowLog;
+    this.connection = connection;
+  }
+
+  /***
+   * Reserve the slot of the response to a request passed to the cache.
+   * @return the slot, to complete with the response
+   */
+  public Slot reserve() {
+    Slot slot = new Slot();
+    slots.add(slot);
+    return slot;
+  }
+
+  /***
+   * Complete a slot with the response to its request, and write the responses which are
+   * ready in order.
+   * @param slot is the slot of the request
+   * @param response is the response, owned by the queue, or null if the request failed
+   */
+  public void complete(Slot slot, MemcacheMessage response) {
+    if (closed) {
+      if (response != null) {
+        response.release();
+      }
+      return;
+    }
+    slot.response = response;
+    slot.ready = true;
+    drain();
+  }
+
+  /***
+   * Write bytes after the responses of the requests received so far.
+   * @param buffer are the bytes to write
+   */
+  public void write(Buffer buffer) {
+    if (slots.isEmpty()) {
+      socket.write(buffer);
+      return;
+    }
+    Slot slot = reserve();
+    slot.buffer = buffer;
+    slot.ready = true;
+  }
+
+  /***
+   * Returns the number of requests whose response has not been written yet.
+   */
+  public int pending() {
+    return slots.size();
+  }
+
+  /***
+   * Release the responses which have not been written, once the connection is closed.
+   */
+  public void release() {
+    for (Slot slot : slots) {
+      if (slot.response != null) {
+        slot.response.release();
+      }
+    }
+    slots.clear();
+    closed = true;
+  }
+
+  private void drain() {
+    while (!slots.isEmpty() && slots.peek().ready) {
+      Slot slot = slots.poll();
+      if (slot.buffer != null) {
+        socket.write(slot.buffer);
+      } else if (slot.response != null) {
+        respond(slot.response);
+      } else {
+        socket.write(Buffer.buffer(CR));
+      }
+    }
+  }
+
+  /***
+   * Write the response to a command. The translated response holds its own references to
+   * the bytes it shares with the message, so the message is released right away, and the
+   * response once it has been written. Vert.x is given an unreleasable view of the response,
+   * so that it is released exactly once, by the write completion handler, which also records
+   * the request in the slow log.
+   * @param response is the response message
+   */
+  private void respond(MemcacheMessage response) {
+    ByteBuf b = decoder.translate(response);
+    int valueSize = response.getValueBuf() != null ? response.getValueBuf().readableBytes() : response.getLen();
+    response.release();
+    socket.write(Buffer.buffer(Unpooled.unreleasableBuffer(b)), written -> {
+      b.release();
+      if (slowLog != null) {
+        slowLog.record(response, connection, valueSize, System.nanoTime());
+      }
+    });
+  }
+}
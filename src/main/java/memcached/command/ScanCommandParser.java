@@ -0,0 +1,106 @@
+package memcached.command;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import memcached.common.MemcacheMessage;
+import memcached.util.ByteBufHelper;
+
+import java.nio.charset.Charset;
+
+/***
+ * SCAN command parser is responsible for parsing the command which enumerates the keys of
+ * the cache, a batch at a time (see KeyScanner).
+ *
+ * SCAN command format:
+ * --------------------
+ * scan <cursor> [match <pattern>] [count <count>]\r\n
+ * - <cursor> is 0 to start a scan, or the cursor returned by the previous batch.
+ * - <pattern> restricts the keys returned to those matching it: `*` matches any bytes, and
+ *   `?` any single byte (`user:*` returns the keys starting with `user:`).
+ * - <count> is the number of keys examined by the batch (not all of them may match).
+ *
+ * SCAN response format:
+ * ---------------------
+ * KEY <key>\r\n for each key of the batch, then
+ * CURSOR <cursor>\r\n
+ * END\r\n
+ * - <cursor> resumes the scan, 0 once it is complete.
+ *
+ * If the arguments are invalid, CLIENT_ERROR\r\n is returned, and CLIENT_ERROR <reason>\r\n if
+ * the cursor is unknown (it expired, or the scan is complete).
+ */
+public class ScanCommandParser implements CommandParser {
+  private static final ByteBuf SCAN = Unpooled.copiedBuffer("scan", Charset.defaultCharset());
+  private static final byte[] KEY = "KEY".getBytes(Charset.defaultCharset());
+  private static final byte[] CURSOR = "CURSOR".getBytes(Charset.defaultCharset());
+  private ByteBufHelper helper = ByteBufHelper.getInstance();
+
+  /***
+   * This method parses the incoming SCAN command. The cursor is passed as the token of the
+   * memcache message, the pattern as its key (empty if there is none), and the count as its
+   * length (0 for the default count).
+   * @param in is the input stream of bytes
+   * @param unused - not currently used
+   * @return the memcache message which encapsulates the command, or null if the arguments are invalid
+   */
+  @Override
+  public MemcacheMessage parse(ByteBuf in, boolean unused) {
+    ByteBuf args = helper.tokenize(in, (byte) '\r', 0);
+    if (args == null) {
+      return null;
+    }
+    String[] fields = args.toString(Charset.defaultCharset()).trim().split(" +");
+    if (fields.length % 2 == 0) {
+      return null;
+    }
+    MemcacheMessage message = new MemcacheMessage(MemcacheMessage.CommandType.SCAN, new byte[0], null, 0);
+    try {
+      message.setToken(Long.parseLong(fields[0]));
+      for (int i = 1; i < fields.length; i += 2) {
+        if (fields[i].equals("match")) {
+          message.setKey(fields[i + 1].getBytes(Charset.defaultCharset()));
+        } else if (fields[i].equals("count")) {
+          message.setLen(Integer.parseInt(fields[i + 1]));
+        } else {
+          return null;
+        }
+      }
+    } catch (NumberFormatException e) {
+      return null;
+    }
+    return message.getToken() >= 0 && message.getLen() >= 0 ? message : null;
+  }
+
+  /***
+   * This method returns the command name for SCAN command parser.
+   * @return command name
+   */
+  @Override
+  public ByteBuf getCommandName() {
+    return SCAN;
+  }
+
+  /***
+   * This method translates the batch of keys found by the cache verticle.
+   * @param input is the input mem cache message
+   * @return stream of bytes which are sent back to the client.
+   */
+  @Override
+  public ByteBuf translate(MemcacheMessage input) {
+    ByteBuf response = Unpooled.buffer();
+    if (input.getError() != null) {
+      return response.writeBytes(CLIENT_ERROR)
+        .writeByte(' ')
+        .writeBytes(input.getError().getBytes(Charset.defaultCharset()))
+        .writeBytes(CRLF);
+    }
+    if (input.getKeys() != null) {
+      for (byte[] key : input.getKeys()) {
+        response.writeBytes(KEY).writeByte(' ').writeBytes(key).writeBytes(CRLF);
+      }
+    }
+    response.writeBytes(CURSOR).writeByte(' ');
+    helper.writeDecimal(response, input.getToken()).writeBytes(CRLF);
+    return response.writeBytes(END).writeBytes(CRLF);
+  }
+}
@@ -1,6 +1,7 @@
 package memcached.command;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
 import io.netty.buffer.Unpooled;
 import io.vertx.core.buffer.Buffer;
 import memcached.common.MemcacheMessage;
@@ -9,7 +10,6 @@ import memcached.util.ByteBufHelper;
 import java.nio.charset.Charset;
 
 import static memcached.util.Constants.MAX_KEY_SIZE_IN_BYTES;
-import static memcached.util.Constants.MAX_VALUE_SIZE_IN_BYTES;
 
 /***
  * SET command parser is responsible for parsing the set commands in accordance with
@@ -23,36 +23,73 @@ import static memcached.util.Constants.MAX_VALUE_SIZE_IN_BYTES;
  * - <key> is the key under which the client asks to store the data
  * - <flags> is an arbitrary 16-bit unsigned integer (written out in
  *   decimal) that the server stores along with the data and sends back
- *   when the item is retrieved. NOTE: We're disregarding this field.
+ *   when the item is retrieved.
  * - <exptime> is expiration time. If it's 0, the item never expires
  *   (although it may be deleted from the cache to make place for other
  *   items). If it's non-zero (either Unix time or offset in seconds from
  *   current time), it is guaranteed that clients will not be able to
  *   retrieve this item after the expiration time arrives (measured by
- *   server time). If a negative value is given the item is immediately
- *   expired. NOTE: We're disregarding this field.
+ *   server time). Values up to 30 days (2592000 seconds) are offsets, larger
+ *   values are Unix times. If a negative value is given the item is immediately
+ *   expired.
  * - <bytes> is the number of bytes in the data block to follow, *not*
  *   including the delimiting \r\n. <bytes> may be zero (in which case
  *   it's followed by an empty data block).
  * - <data block> is a chunk of arbitrary 8-bit data of length <bytes>
- *   from the previous line.
+ *   from the previous line. The data block is not parsed here: it is read by a
+ *   ChunkedValueReader as its bytes arrive, since it may span many socket reads.
  *
  * SET response format
  * -------------------
  * STORED\r\n to indicate success.
+ * A value larger than the limit is answered with SERVER_ERROR object too large for cache\r\n,
+ * as memcached does: the command is returned with that error, so that its data block is
+ * still read, and discarded.
+ *
+ * LSET command format
+ * -------------------
+ * lset <key> <flags> <exptime> <bytes> <token> [noreply]\r\n
+ * <data block>\r\n
+ * The lease variant of SET (see LeaseTable): <token> is the lease token given by `lget`.
+ * The value is only stored if the token is the one of the current lease on the key:
+ * STORED\r\n is returned then, NOT_STORED\r\n otherwise.
  *
  */
 public class SetCommandParser implements CommandParser {
   private static final ByteBuf SET = Unpooled.copiedBuffer("set", Charset.defaultCharset());
+  private static final ByteBuf LSET = Unpooled.copiedBuffer("lset", Charset.defaultCharset());
+  private static final ByteBuf STORED_RESPONSE = Unpooled.unreleasableBuffer(
+    Unpooled.wrappedBuffer(STORED, new byte[]{' '}, CRLF));                 // Shared by all SET responses
+  private static final ByteBuf NOT_STORED_RESPONSE = Unpooled.unreleasableBuffer(
+    Unpooled.wrappedBuffer(NOT_STORED, CRLF));                              // Shared by all rejected LSET responses
+  public static final String TOO_LARGE = "object too large for cache";   // Error of a value over the limit
   private ByteBufHelper helper = ByteBufHelper.getInstance();
+  private final int maxValueSize;     // Values larger than this are rejected
+  private final boolean lease;        // Whether this parser handles LSET rather than SET
+
+  /***
+   * @param maxValueSize is the (inclusive) limit on the size of values
+   */
+  public SetCommandParser(int maxValueSize) {
+    this(maxValueSize, false);
+  }
 
   /***
-   * Given a SET command, this method is used to extract the size from the input
-   * stream of bytes.
+   * @param maxValueSize is the (inclusive) limit on the size of values
+   * @param lease indicates if the parser handles LSET rather than SET
+   */
+  public SetCommandParser(int maxValueSize, boolean lease) {
+    this.maxValueSize = maxValueSize;
+    this.lease = lease;
+  }
+
+  /***
+   * Given a SET command, this method is used to extract the last field (the size, or the
+   * token of an LSET command) from the input stream of bytes.
    * @param in is the input stream of bytes
-   * @return size field of the SET command statement.
+   * @return last field of the SET command statement.
    */
-  private Integer getSize(ByteBuf in) {
+  private Long getLastField(ByteBuf in) {
     ByteBuf sizeInByteBuf;
     ByteBuf noReply;
 
@@ -72,13 +109,13 @@ public class SetCommandParser implements CommandParser {
       // Check that the slice is 'noreply'
       if (noReply != null &&
           !noReply.toString(Charset.defaultCharset()).equals(Buffer.buffer(NO_REPLY).toString())) {
-        return -1;
+        return -1L;
       }
     } else {
       // No other field but size is present. Read the size value
-      sizeInByteBuf = in.readBytes(in.readableBytes());
+      sizeInByteBuf = in.readSlice(in.readableBytes());
     }
-    return Integer.valueOf(sizeInByteBuf.toString(Charset.defaultCharset()));
+    return Long.valueOf(sizeInByteBuf.toString(Charset.defaultCharset()));
   }
 
   /***
@@ -91,8 +128,7 @@ public class SetCommandParser implements CommandParser {
    */
   private MemcacheMessage parseSetCommand(ByteBuf in) {
     try {
-      // Extract key, flags and expiration time. We ignore flags and expiration time
-      // in our current implementation.
+      // Extract key, flags and expiration time.
       ByteBuf payloadMeta = in.readSlice(in.bytesBefore((byte) '\r'));
       ByteBuf key = helper.tokenize(payloadMeta, (byte) ' ', 1);
       ByteBuf flags = helper.tokenize(payloadMeta, (byte) ' ', 1);
@@ -100,42 +136,54 @@ public class SetCommandParser implements CommandParser {
       if (expTime == null) {
         payloadMeta.skipBytes(1);
       }
-      // Extract the len of the data which will follow this command
-      Integer size = getSize(payloadMeta);
+      // Extract the len of the data which will follow this command (and the lease token of LSET)
+      long token = 0;
+      Long size;
+      if (lease) {
+        ByteBuf sizeField = helper.tokenize(payloadMeta, (byte) ' ', 1);
+        if (sizeField == null) {
+          return null;
+        }
+        size = Long.valueOf(sizeField.toString(Charset.defaultCharset()));
+        token = getLastField(payloadMeta);
+        if (token <= 0) {
+          return null;
+        }
+      } else {
+        size = getLastField(payloadMeta);
+      }
 
-      if (size == null || size < 0 || size >= MAX_VALUE_SIZE_IN_BYTES ||
-              Buffer.buffer(key).length() > MAX_KEY_SIZE_IN_BYTES) {
+      if (size == null || size < 0 || size > Integer.MAX_VALUE - CRLF.length ||
+              key.readableBytes() > MAX_KEY_SIZE_IN_BYTES) {
         return null;
       }
-      return new MemcacheMessage(MemcacheMessage.CommandType.SET, key.array().clone(), null, size);
+      MemcacheMessage.CommandType type = lease ? MemcacheMessage.CommandType.LSET : MemcacheMessage.CommandType.SET;
+      MemcacheMessage message = new MemcacheMessage(type, ByteBufUtil.getBytes(key), null, size.intValue());
+      if (size > maxValueSize) {
+        message.setError(TOO_LARGE);
+        return message;
+      }
+      message.setToken(token);
+      message.setFlags(Integer.parseUnsignedInt(flags.toString(Charset.defaultCharset())));
+      if (expTime != null) {
+        message.setExptime(Long.parseLong(expTime.toString(Charset.defaultCharset())));
+      }
+      return message;
     } catch (Exception e) {
       return null;
     }
   }
 
   /***
-   * This method is used to parse the data blob received by the parser. Validation
-   * of this blob is done on the side of the caller.
-   * @param in is the input stream of bytes
-   * @return a mem cache message which will be pushed to the event bus
-   */
-  private MemcacheMessage parseSetData(ByteBuf in) {
-    int bytesBeforeCRLF = helper.bytesBeforeCRLF(in.copy());
-    ByteBuf payload = in.readBytes(bytesBeforeCRLF);
-    return new MemcacheMessage(MemcacheMessage.CommandType.SET, null, payload.array().clone(), bytesBeforeCRLF);
-  }
-
-  /***
-   * This is used to parse the input stream of bytes as either a SET command
-   * or SET data.
+   * This is used to parse the input stream of bytes as a SET command. The data block
+   * which follows it is read by the caller.
    * @param in is the input buffer stream
-   * @param parseIncomingStreamAsData indicates if the incoming stream should be
-   *                                  treated as data or cmd.
-   * @return memcache message to push to event bus
+   * @param unused - not currently used
+   * @return memcache message which is pushed to event bus once its data block is read
    */
   @Override
-  public MemcacheMessage parse(ByteBuf in, boolean parseIncomingStreamAsData) {
-    return parseIncomingStreamAsData ? parseSetData(in) : parseSetCommand(in);
+  public MemcacheMessage parse(ByteBuf in, boolean unused) {
+    return parseSetCommand(in);
   }
 
   /***
@@ -144,7 +192,7 @@ public class SetCommandParser implements CommandParser {
    */
   @Override
   public ByteBuf getCommandName() {
-    return SET;
+    return lease ? LSET : SET;
   }
 
   /***
@@ -156,13 +204,10 @@ public class SetCommandParser implements CommandParser {
    */
   @Override
   public ByteBuf translate(MemcacheMessage input) {
-    ByteBuf response = Unpooled.buffer();
-    byte[] valueBytes = input.getValue();
-    if (valueBytes != null) {
-      response.writeBytes(STORED)
-        .writeByte(' ')
-        .writeBytes(CRLF);
+    if (input.getValueBuf() != null) {
+      return STORED_RESPONSE.duplicate();
     }
-    return response;
+    // The value of an LSET is dropped when its token is stale
+    return lease ? NOT_STORED_RESPONSE.duplicate() : Unpooled.EMPTY_BUFFER;
   }
 }
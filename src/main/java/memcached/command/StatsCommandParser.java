@@ -0,0 +1,83 @@
+package memcached.command;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import memcached.common.MemcacheMessage;
+import memcached.util.ByteBufHelper;
+
+import java.nio.charset.Charset;
+import java.util.Map;
+
+/***
+ * STATS command parser is responsible for parsing the stats commands in accordance with
+ * memcached protocol listed: https://github.com/memcached/memcached/blob/master/doc/protocol.txt
+ *
+ * STATS command format:
+ * ---------------------
+ * stats [<args>]\r\n
+ * - Without arguments, general purpose statistics are returned.
+ * - With arguments, a specific group of statistics is returned, for example:
+ *   `stats hotkeys` returns the most accessed keys along with their estimated QPS.
+ *
+ * STATS response format:
+ * ----------------------
+ * STAT <name> <value>\r\n
+ * ...
+ * END\r\n
+ *
+ * If the arguments are not recognized, CLIENT_ERROR\r\n is returned.
+ */
+public class StatsCommandParser implements CommandParser {
+  private static final ByteBuf STATS = Unpooled.copiedBuffer("stats", Charset.defaultCharset());
+  private ByteBufHelper helper = ByteBufHelper.getInstance();
+
+  /***
+   * This method parses the incoming STATS command. The arguments (if any) are passed
+   * as the key of the memcache message.
+   * @param in is the input stream of bytes
+   * @param unused - not currently used
+   * @return the memcache message which encapsulates the command to send over to the cache verticle
+   */
+  @Override
+  public MemcacheMessage parse(ByteBuf in, boolean unused) {
+    ByteBuf args = helper.tokenize(in, (byte) '\r', 0);
+    if (args == null) {
+      return null;
+    }
+    return new MemcacheMessage(MemcacheMessage.CommandType.STATS, ByteBufUtil.getBytes(args), null, 0);
+  }
+
+  /***
+   * This method returns the command name for STATS command parser.
+   * @return command name
+   */
+  @Override
+  public ByteBuf getCommandName() {
+    return STATS;
+  }
+
+  /***
+   * This method translates the statistics received from the cache verticle into
+   * STAT lines, terminated by END.
+   * @param input is the input mem cache message
+   * @return stream of bytes which are sent back to the client.
+   */
+  @Override
+  public ByteBuf translate(MemcacheMessage input) {
+    ByteBuf response = Unpooled.buffer();
+    Map<String, String> stats = input.getStats();
+    if (stats == null) {
+      return response.writeBytes(CLIENT_ERROR).writeBytes(CRLF);
+    }
+    for (Map.Entry<String, String> stat : stats.entrySet()) {
+      response.writeBytes(STAT)
+        .writeByte(' ')
+        .writeBytes(stat.getKey().getBytes(Charset.defaultCharset()))
+        .writeByte(' ')
+        .writeBytes(stat.getValue().getBytes(Charset.defaultCharset()))
+        .writeBytes(CRLF);
+    }
+    return response.writeBytes(END).writeBytes(CRLF);
+  }
+}
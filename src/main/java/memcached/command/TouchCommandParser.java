@@ -0,0 +1,83 @@
+package memcached.command;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import memcached.common.MemcacheMessage;
+import memcached.util.ByteBufHelper;
+
+import java.nio.charset.Charset;
+
+import static memcached.util.Constants.MAX_KEY_SIZE_IN_BYTES;
+
+/***
+ * TOUCH command parser is responsible for parsing the touch commands in accordance with
+ * memcached protocol listed: https://github.com/memcached/memcached/blob/master/doc/protocol.txt
+ *
+ * TOUCH command format:
+ * ---------------------
+ * touch <key> <exptime> [noreply]\r\n
+ * - The expiration time of the item is replaced, without sending its value again.
+ * - Like for SET, noreply is accepted but a response is sent anyway.
+ *
+ * TOUCH response format:
+ * ----------------------
+ * TOUCHED\r\n if the item was found, NOT_FOUND\r\n otherwise.
+ */
+public class TouchCommandParser implements CommandParser {
+  private static final ByteBuf TOUCH = Unpooled.copiedBuffer("touch", Charset.defaultCharset());
+  private static final ByteBuf TOUCHED_RESPONSE = Unpooled.unreleasableBuffer(
+    Unpooled.wrappedBuffer(TOUCHED, CRLF));                                 // Shared by all found responses
+  private static final ByteBuf NOT_FOUND_RESPONSE = Unpooled.unreleasableBuffer(
+    Unpooled.wrappedBuffer(NOT_FOUND, CRLF));                               // Shared by all not found responses
+  private static final String NO_REPLY_STRING = new String(NO_REPLY, Charset.defaultCharset());
+  private ByteBufHelper helper = ByteBufHelper.getInstance();
+
+  /***
+   * This method parses the incoming TOUCH command. The new expiration time is passed as the
+   * expiration time of the memcache message.
+   * @param in is the input stream of bytes
+   * @param unused - not currently used
+   * @return the memcache message which encapsulates the command, or null if the arguments are invalid
+   */
+  @Override
+  public MemcacheMessage parse(ByteBuf in, boolean unused) {
+    try {
+      ByteBuf args = helper.tokenize(in, (byte) '\r', 0);
+      ByteBuf key = helper.tokenize(args, (byte) ' ', 1);
+      if (key == null || key.readableBytes() == 0 || key.readableBytes() > MAX_KEY_SIZE_IN_BYTES) {
+        return null;
+      }
+      ByteBuf expTime = helper.tokenize(args, (byte) ' ', 1);
+      if (expTime == null) {
+        expTime = args.readSlice(args.readableBytes());
+      } else if (!args.toString(Charset.defaultCharset()).equals(NO_REPLY_STRING)) {
+        return null;
+      }
+      MemcacheMessage message = new MemcacheMessage(MemcacheMessage.CommandType.TOUCH, ByteBufUtil.getBytes(key), null, 0);
+      message.setExptime(Long.parseLong(expTime.toString(Charset.defaultCharset())));
+      return message;
+    } catch (Exception e) {
+      return null;
+    }
+  }
+
+  /***
+   * This method returns the command name for TOUCH command parser.
+   * @return command name
+   */
+  @Override
+  public ByteBuf getCommandName() {
+    return TOUCH;
+  }
+
+  /***
+   * This method translates the answer of the cache verticle.
+   * @param input is the input mem cache message
+   * @return stream of bytes which are sent back to the client.
+   */
+  @Override
+  public ByteBuf translate(MemcacheMessage input) {
+    return input.isFound() ? TOUCHED_RESPONSE.duplicate() : NOT_FOUND_RESPONSE.duplicate();
+  }
+}
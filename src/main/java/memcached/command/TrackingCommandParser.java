@@ -0,0 +1,133 @@
+package memcached.command;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import memcached.common.MemcacheMessage;
+import memcached.util.ByteBufHelper;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/***
+ * TRACKING command parser is responsible for parsing the command with which a connection
+ * subscribes to the invalidations of the keys it reads (see InvalidationTracker).
+ *
+ * TRACKING command format:
+ * ------------------------
+ * tracking on\r\n
+ * tracking on bcast [prefix <prefix>]...\r\n
+ * tracking off\r\n
+ * - on: the changes of the keys read by the connection are pushed to it.
+ * - bcast: the changes of all the keys, or of the keys starting with one of the prefixes, are
+ *   pushed instead, whether the connection read them or not.
+ * - off: no more changes are pushed.
+ *
+ * TRACKING response format:
+ * -------------------------
+ * OK\r\n
+ * Then, on the connection, between responses:
+ * INVALIDATE <key>\r\n when a key changes, INVALIDATE_ALL\r\n when the cache is flushed.
+ *
+ * If the arguments are invalid, CLIENT_ERROR\r\n is returned.
+ */
+public class TrackingCommandParser implements CommandParser {
+  private static final ByteBuf TRACKING = Unpooled.copiedBuffer("tracking", Charset.defaultCharset());
+  private static final ByteBuf OK_RESPONSE = Unpooled.unreleasableBuffer(
+    Unpooled.wrappedBuffer(OK, CRLF));                                      // Shared by all TRACKING responses
+  private ByteBufHelper helper = ByteBufHelper.getInstance();
+
+  /***
+   * The options of a TRACKING command.
+   */
+  public static class Options {
+    private final boolean on;
+    private final List<byte[]> prefixes;    // Prefixes in broadcast mode, or null in default mode
+
+    Options(boolean on, List<byte[]> prefixes) {
+      this.on = on;
+      this.prefixes = prefixes;
+    }
+
+    public boolean isOn() {
+      return on;
+    }
+
+    /***
+     * @return the prefixes of the keys to push in broadcast mode (all keys if it is empty),
+     *         or null in default mode
+     */
+    public List<byte[]> getPrefixes() {
+      return prefixes;
+    }
+  }
+
+  /***
+   * This method parses the incoming TRACKING command. The arguments are passed as the key of
+   * the memcache message, and read with options().
+   * @param in is the input stream of bytes
+   * @param unused - not currently used
+   * @return the memcache message which encapsulates the command, or null if the arguments are invalid
+   */
+  @Override
+  public MemcacheMessage parse(ByteBuf in, boolean unused) {
+    ByteBuf args = helper.tokenize(in, (byte) '\r', 0);
+    if (args == null) {
+      return null;
+    }
+    byte[] arguments = ByteBufUtil.getBytes(args);
+    if (options(arguments) == null) {
+      return null;
+    }
+    return new MemcacheMessage(MemcacheMessage.CommandType.TRACKING, arguments, null, 0);
+  }
+
+  /***
+   * Read the options of a TRACKING command.
+   * @param arguments are the arguments of the command
+   * @return the options, or null if the arguments are invalid
+   */
+  public static Options options(byte[] arguments) {
+    String[] args = new String(arguments, Charset.defaultCharset()).trim().split(" +");
+    if (args[0].equals("off") && args.length == 1) {
+      return new Options(false, null);
+    }
+    if (!args[0].equals("on")) {
+      return null;
+    }
+    if (args.length == 1) {
+      return new Options(true, null);
+    }
+    if (!args[1].equals("bcast")) {
+      return null;
+    }
+    List<byte[]> prefixes = new ArrayList<>();
+    for (int i = 2; i < args.length; i += 2) {
+      if (!args[i].equals("prefix") || i + 1 >= args.length) {
+        return null;
+      }
+      prefixes.add(args[i + 1].getBytes(Charset.defaultCharset()));
+    }
+    return new Options(true, prefixes);
+  }
+
+  /***
+   * This method returns the command name for TRACKING command parser.
+   * @return command name
+   */
+  @Override
+  public ByteBuf getCommandName() {
+    return TRACKING;
+  }
+
+  /***
+   * This method translates the answer to the command.
+   * @param input is the input mem cache message
+   * @return stream of bytes which are sent back to the client.
+   */
+  @Override
+  public ByteBuf translate(MemcacheMessage input) {
+    return OK_RESPONSE.duplicate();
+  }
+}
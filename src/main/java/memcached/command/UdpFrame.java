@@ -0,0 +1,92 @@
+package memcached.command;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.buffer.Buffer;
+import memcached.util.ByteBufHelper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/***
+ * UdpFrame implements the frame header of the memcached UDP protocol
+ * (https://github.com/memcached/memcached/blob/master/doc/protocol.txt, "UDP protocol").
+ *
+ * Each datagram starts with an 8 byte header:
+ * - 0-1: request ID, chosen by the client and sent back with the response
+ * - 2-3: sequence number of the datagram in its message
+ * - 4-5: total number of datagrams in the message
+ * - 6-7: reserved, must be 0
+ * followed by the bytes of the message.
+ *
+ * A request must fit in a single datagram. A response larger than a datagram is split
+ * across as many datagrams as needed, which the client reassembles by sequence number.
+ */
+public class UdpFrame {
+  public static final int HEADER_SIZE = 8;
+  private static final ByteBufHelper helper = ByteBufHelper.getInstance();
+
+  private UdpFrame() {}
+
+  /***
+   * Returns the request ID of a request datagram.
+   * @param datagram is the datagram, starting with its header
+   * @return the request ID
+   */
+  public static int requestId(ByteBuf datagram) {
+    return datagram.getUnsignedShort(datagram.readerIndex());
+  }
+
+  /***
+   * Returns the command line of a request datagram, unless the datagram is not a valid
+   * request: shorter than the header, part of a message of several datagrams, with a
+   * reserved field which is not 0, or not holding a single CRLF ended line.
+   * @param datagram is the datagram, starting with its header
+   * @return the command line (with its CRLF), a slice of the datagram, or null
+   */
+  public static ByteBuf request(ByteBuf datagram) {
+    int start = datagram.readerIndex();
+    if (datagram.readableBytes() <= HEADER_SIZE
+        || datagram.getUnsignedShort(start + 2) != 0         // sequence number
+        || datagram.getUnsignedShort(start + 4) != 1         // total number of datagrams
+        || datagram.getUnsignedShort(start + 6) != 0) {      // reserved
+      return null;
+    }
+    ByteBuf line = datagram.slice(start + HEADER_SIZE, datagram.readableBytes() - HEADER_SIZE);
+    int length = helper.bytesBeforeCRLF(line);
+    if (length < 0 || length + 2 != line.readableBytes()) {
+      return null;
+    }
+    return line;
+  }
+
+  /***
+   * Split a response into datagrams, each starting with its header. The bytes are copied
+   * into the datagrams: the response is left to the caller.
+   * @param requestId is the request ID of the request answered
+   * @param response is the response
+   * @param datagramSize is the largest size of a datagram, header included
+   * @return the datagrams, in sequence order
+   */
+  public static List<Buffer> split(int requestId, ByteBuf response, int datagramSize) {
+    int payload = datagramSize - HEADER_SIZE;
+    int length = response.readableBytes();
+    int total = Math.max(1, (length + payload - 1) / payload);
+    if (total > 0xFFFF) {
+      throw new IllegalArgumentException("Response too large for UDP: " + length + " bytes");
+    }
+    List<Buffer> datagrams = new ArrayList<>(total);
+    for (int i = 0; i < total; i++) {
+      int offset = i * payload;
+      int size = Math.min(payload, length - offset);
+      ByteBuf datagram = Unpooled.buffer(HEADER_SIZE + size)
+        .writeShort(requestId)
+        .writeShort(i)
+        .writeShort(total)
+        .writeShort(0)
+        .writeBytes(response, response.readerIndex() + offset, size);
+      datagrams.add(Buffer.buffer(datagram));
+    }
+    return datagrams;
+  }
+}
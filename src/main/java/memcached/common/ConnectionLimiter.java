@@ -0,0 +1,110 @@
+package memcached.common;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.Shareable;
+import memcached.util.Shared;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static memcached.util.Constants.DEFAULT_MAX_CONNECTIONS;
+
+/***
+ * ConnectionLimiter caps the number of client connections open at once, across all the
+ * command verticles of a Vert.x instance, and counts the connections which are paused
+ * because they send requests faster than they read the responses.
+ *
+ * A single limiter (see Shared) is shared by the command verticles, which open and pause
+ * connections, and the cache engine, which reports the counters in `stats`.
+ */
+public class ConnectionLimiter implements Shareable {
+  private final int maxConnections;                          // Maximum number of open connections
+  private final AtomicInteger current = new AtomicInteger(); // Number of open connections
+  private final AtomicInteger paused = new AtomicInteger();  // Number of connections currently paused
+  private final LongAdder total = new LongAdder();           // Number of connections accepted
+  private final LongAdder rejected = new LongAdder();        // Number of connections refused because of the limit
+  private final LongAdder pauses = new LongAdder();          // Number of times connections were paused
+  private final AtomicLong ids = new AtomicLong();           // Last connection id given
+
+  /***
+   * @param maxConnections is the maximum number of connections open at once
+   */
+  public ConnectionLimiter(int maxConnections) {
+    this.maxConnections = maxConnections;
+  }
+
+  /***
+   * Returns the limiter shared by the verticles of a Vert.x instance, creating it if needed.
+   * The limit is read from "conn.max".
+   * @param vertx is the vertx instance
+   * @param config is the verticle configuration
+   * @return the shared limiter
+   */
+  public static ConnectionLimiter shared(Vertx vertx, JsonObject config) {
+    return Shared.get(vertx, "connections", () ->
+      new ConnectionLimiter(config.getInteger("conn.max", DEFAULT_MAX_CONNECTIONS)));
+  }
+
+  /***
+   * Account for a new connection, if the limit allows it.
+   * @return true if the connection may be served, false if it must be closed
+   */
+  public boolean open() {
+    while (true) {
+      int count = current.get();
+      if (count >= maxConnections) {
+        rejected.increment();
+        return false;
+      }
+      if (current.compareAndSet(count, count + 1)) {
+        total.increment();
+        return true;
+      }
+    }
+  }
+
+  /***
+   * Returns a new connection id, unique within the Vert.x instance.
+   */
+  public long nextId() {
+    return ids.incrementAndGet();
+  }
+
+  /***
+   * Account for the closing of a connection accepted by open().
+   */
+  public void close() {
+    current.decrementAndGet();
+  }
+
+  /***
+   * Account for a connection being paused.
+   */
+  public void pause() {
+    paused.incrementAndGet();
+    pauses.increment();
+  }
+
+  /***
+   * Account for a paused connection being resumed (or closed while paused).
+   */
+  public void resume() {
+    paused.decrementAndGet();
+  }
+
+  /***
+   * Add the connection statistics to the statistics reported by `stats`.
+   * @param stats is the map of statistics
+   */
+  public void addStats(Map<String, String> stats) {
+    stats.put("curr_connections", String.valueOf(current.get()));
+    stats.put("total_connections", String.valueOf(total.sum()));
+    stats.put("rejected_connections", String.valueOf(rejected.sum()));
+    stats.put("max_connections", String.valueOf(maxConnections));
+    stats.put("conn_paused", String.valueOf(paused.get()));
+    stats.put("conn_pauses", String.valueOf(pauses.sum()));
+  }
+}
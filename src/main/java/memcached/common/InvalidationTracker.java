@@ -0,0 +1,224 @@
+package memcached.common;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.EventBus;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.Shareable;
+import memcached.util.Shared;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static memcached.util.Constants.DEFAULT_TRACKING_KEYS_MAX;
+
+/***
+ * InvalidationTracker lets clients keep a local copy of the values they read (a near cache),
+ * by telling them when the keys they read change: the server pushes an INVALIDATE <key> line
+ * on their connection when a key is set, evicted, removed or reclaimed once expired, and
+ * INVALIDATE_ALL when the cache is flushed.
+ *
+ * A connection subscribes with `tracking on`, in one of two modes:
+ * - default: the keys the connection reads with GET are remembered, and only their changes
+ *   are pushed, once (the connection reads the key again to track it again). At most
+ *   "tracking.keys.max" keys are remembered: beyond, the oldest key is forgotten, and pushed
+ *   to its readers as if it had changed.
+ * - broadcast (`tracking on bcast [prefix <prefix>]...`): the changes of all the keys, or of
+ *   the keys starting with one of the prefixes, are pushed, without remembering any key.
+ *
+ * Invalidations are sent on the event bus to the address of each connection, so that they
+ * are written from the connection's event loop, after the responses already sent.
+ *
+ * A single tracker (see Shared) is shared by the command verticles, which subscribe
+ * connections, and the cache engine, which reports the reads and changes. Changes cost a
+ * volatile read while no connection is subscribed.
+ */
+public class InvalidationTracker implements Shareable {
+  private static final String ADDRESS = "memcached.invalidate.";   // Prefix of the addresses of the connections
+  private static final Buffer INVALIDATE_ALL = Buffer.buffer("INVALIDATE_ALL\r\n");
+
+  private final EventBus eventBus;
+  private final int maxKeys;                                        // Maximum number of keys remembered
+  private final AtomicLong ids = new AtomicLong();
+  private final Set<Long> clients = new HashSet<>();                // Subscribed connections in default mode
+  private final Map<Long, List<byte[]>> broadcast = new HashMap<>(); // Subscribed connections in broadcast mode -> prefixes
+  private final LinkedHashMap<ByteBuf, Set<Long>> readers = new LinkedHashMap<>(); // Key -> connections which read it, oldest first
+  private volatile boolean active;                                  // Whether any connection is subscribed
+  private final LongAdder pushed = new LongAdder();                 // Number of invalidations sent
+  private final LongAdder forgotten = new LongAdder();              // Number of keys forgotten because of the limit
+
+  /***
+   * @param vertx is the vertx instance, whose event bus delivers the invalidations
+   * @param maxKeys is the maximum number of keys remembered for the connections in default mode
+   */
+  public InvalidationTracker(Vertx vertx, int maxKeys) {
+    this.eventBus = vertx.eventBus();
+    this.maxKeys = maxKeys;
+  }
+
+  /***
+   * Returns the tracker shared by the verticles of a Vert.x instance, creating it if needed.
+   * @param vertx is the vertx instance
+   * @param config is the verticle configuration
+   * @return the shared tracker
+   */
+  public static InvalidationTracker shared(Vertx vertx, JsonObject config) {
+    return Shared.get(vertx, "tracking", () -> new InvalidationTracker(vertx,
+      config.getInteger("tracking.keys.max", DEFAULT_TRACKING_KEYS_MAX)));
+  }
+
+  /***
+   * Returns the event bus address on which a connection receives its invalidations, as
+   * lines to write to the client.
+   * @param client is the id of the connection
+   * @return the address
+   */
+  public static String address(long client) {
+    return ADDRESS + client;
+  }
+
+  /***
+   * Subscribe a connection.
+   * @param prefixes are the prefixes of the keys to push in broadcast mode (all keys if it is
+   *                 empty), or null for the default mode
+   * @return the id of the connection, to pass along its GETs, and to unsubscribe
+   */
+  public synchronized long subscribe(List<byte[]> prefixes) {
+    long client = ids.incrementAndGet();
+    if (prefixes == null) {
+      clients.add(client);
+    } else {
+      broadcast.put(client, prefixes);
+    }
+    active = true;
+    return client;
+  }
+
+  /***
+   * Unsubscribe a connection. The keys it read are forgotten lazily.
+   * @param client is the id of the connection
+   */
+  public synchronized void unsubscribe(long client) {
+    clients.remove(client);
+    broadcast.remove(client);
+    if (clients.isEmpty() && broadcast.isEmpty()) {
+      readers.clear();
+      active = false;
+    }
+  }
+
+  /***
+   * Remember that a connection read a key.
+   * @param key is the key read. It is copied if it was not remembered yet.
+   * @param client is the id of the connection
+   */
+  public synchronized void track(ByteBuf key, long client) {
+    if (!clients.contains(client)) {
+      return;
+    }
+    Set<Long> keyReaders = readers.get(key);
+    if (keyReaders == null) {
+      keyReaders = new HashSet<>(2);
+      readers.put(Unpooled.copiedBuffer(key), keyReaders);
+      if (readers.size() > maxKeys) {
+        Iterator<Map.Entry<ByteBuf, Set<Long>>> oldest = readers.entrySet().iterator();
+        Map.Entry<ByteBuf, Set<Long>> entry = oldest.next();
+        oldest.remove();
+        forgotten.increment();
+        push(line(entry.getKey()), entry.getValue());
+      }
+    }
+    keyReaders.add(client);
+  }
+
+  /***
+   * Push the change of a key to the connections which read it or watch it.
+   * @param key is the key which changed
+   */
+  public void invalidate(ByteBuf key) {
+    if (!active) {
+      return;
+    }
+    List<Long> targets = new ArrayList<>();
+    synchronized (this) {
+      Set<Long> keyReaders = readers.remove(key);
+      if (keyReaders != null) {
+        for (long client : keyReaders) {
+          if (clients.contains(client)) {
+            targets.add(client);    // Still subscribed
+          }
+        }
+      }
+      for (Map.Entry<Long, List<byte[]>> subscriber : broadcast.entrySet()) {
+        if (matches(key, subscriber.getValue())) {
+          targets.add(subscriber.getKey());
+        }
+      }
+    }
+    if (!targets.isEmpty()) {
+      push(line(key), targets);
+    }
+  }
+
+  /***
+   * Push the flush of the cache to all the subscribed connections.
+   */
+  public void invalidateAll() {
+    if (!active) {
+      return;
+    }
+    List<Long> targets;
+    synchronized (this) {
+      readers.clear();
+      targets = new ArrayList<>(clients);
+      targets.addAll(broadcast.keySet());
+    }
+    push(INVALIDATE_ALL, targets);
+  }
+
+  /***
+   * Add the tracking statistics to the statistics reported by `stats`.
+   * @param stats is the map of statistics
+   */
+  public synchronized void addStats(Map<String, String> stats) {
+    stats.put("tracking_clients", String.valueOf(clients.size() + broadcast.size()));
+    stats.put("tracking_keys", String.valueOf(readers.size()));
+    stats.put("tracking_invalidations", String.valueOf(pushed.sum()));
+    stats.put("tracking_forgotten", String.valueOf(forgotten.sum()));
+  }
+
+  private void push(Buffer line, Iterable<Long> targets) {
+    for (long client : targets) {
+      eventBus.send(address(client), line);
+      pushed.increment();
+    }
+  }
+
+  private static Buffer line(ByteBuf key) {
+    return Buffer.buffer("INVALIDATE ").appendBytes(ByteBufUtil.getBytes(key)).appendString("\r\n");
+  }
+
+  private static boolean matches(ByteBuf key, List<byte[]> prefixes) {
+    if (prefixes.isEmpty()) {
+      return true;
+    }
+    for (byte[] prefix : prefixes) {
+      if (key.readableBytes() >= prefix.length
+        && ByteBufUtil.equals(key, key.readerIndex(), Unpooled.wrappedBuffer(prefix), 0, prefix.length)) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
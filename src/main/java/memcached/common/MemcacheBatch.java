@@ -0,0 +1,45 @@
+package memcached.common;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/***
+ * MemcacheBatch groups the commands decoded from one read of a connection into a single
+ * event bus message, so that pipelined commands pay one send, one reply handler and one
+ * queue hop rather than one each.
+ *
+ * The cache verticle writes the response of each command into its message, and replies with
+ * the batch itself once all of them are complete: the responses are in the order of the
+ * commands.
+ */
+public class MemcacheBatch {
+  private List<MemcacheMessage> messages;
+
+  public MemcacheBatch() {
+    this(new ArrayList<>());
+  }
+
+  /***
+   * @param messages are the commands, in the order they were received
+   */
+  public MemcacheBatch(List<MemcacheMessage> messages) {
+    this.messages = messages;
+  }
+
+  public List<MemcacheMessage> getMessages() {
+    return messages;
+  }
+
+  public void setMessages(List<MemcacheMessage> messages) {
+    this.messages = messages;
+  }
+
+  /***
+   * Release the values held by the messages of the batch.
+   */
+  public void release() {
+    for (MemcacheMessage message : messages) {
+      message.release();
+    }
+  }
+}
@@ -0,0 +1,54 @@
+package memcached.common;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.EventBus;
+import io.vertx.core.eventbus.MessageCodec;
+import io.vertx.core.json.Json;
+
+/***
+ * Event bus codec for MemcacheBatch. Like MemcacheMessageCodec, it hands the batch itself
+ * over within the JVM, and encodes it as length-prefixed JSON over the wire.
+ */
+public class MemcacheBatchCodec implements MessageCodec<MemcacheBatch, MemcacheBatch> {
+  private static final String NAME = "memcache-batch";
+
+  /***
+   * Register this codec as the default codec for MemcacheBatch. Each verticle exchanging
+   * batches calls this; only the first call registers the codec.
+   * @param eventBus is the event bus to register the codec with
+   */
+  public static void register(EventBus eventBus) {
+    try {
+      eventBus.registerDefaultCodec(MemcacheBatch.class, new MemcacheBatchCodec());
+    } catch (IllegalStateException e) {
+      // Already registered by another verticle
+    }
+  }
+
+  @Override
+  public void encodeToWire(Buffer buffer, MemcacheBatch batch) {
+    Buffer encoded = Json.encodeToBuffer(batch);
+    buffer.appendInt(encoded.length()).appendBuffer(encoded);
+  }
+
+  @Override
+  public MemcacheBatch decodeFromWire(int pos, Buffer buffer) {
+    int length = buffer.getInt(pos);
+    return Json.decodeValue(buffer.getBuffer(pos + 4, pos + 4 + length), MemcacheBatch.class);
+  }
+
+  @Override
+  public MemcacheBatch transform(MemcacheBatch batch) {
+    return batch;
+  }
+
+  @Override
+  public String name() {
+    return NAME;
+  }
+
+  @Override
+  public byte systemCodecID() {
+    return -1;
+  }
+}
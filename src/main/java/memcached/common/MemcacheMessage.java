@@ -1,21 +1,63 @@
 package memcached.common;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+
+import java.util.List;
+import java.util.Map;
+
 /***
  * MemcacheMessage is the message exchanged between the verticles on the event bus.
  * It is posted by CommandVerticle after decoding the input command, and is consumed
  * by the CacheVerticle to perform get / set operations on memcache.
+ *
+ * The value is held as a ByteBuf, so that it can be passed along without copies when
+ * the message is sent with the local MemcacheMessageCodec. When the message is mapped
+ * to JSON, the value is exposed as a byte array.
+ *
+ * A message may also carry a pre-serialized GET response, holding the value: the value
+ * buffer is then a view of the response buffer, and they are released together.
  */
 public class MemcacheMessage {
 
-  // For now, we support GET and SET command types. Extend this to support more in the future
+  // For now, we support GET, SET, STATS and FLUSH_ALL command types, their lease variants LGET and
+  // LSET, and the DUMP and LOAD admin commands. Extend this to support more in the future
   public enum CommandType {
     GET,
     SET,
+    LGET,
+    LSET,
+    STATS,
+    FLUSH_ALL,
+    DUMP,
+    LOAD,
+    TRACKING,
+    TOUCH,
+    GAT,
+    GATS,
+    SCAN,
   }
   private CommandType commandType;    // Command type issued
   private byte[] key;                 // Key
-  private byte[] value;               // Value
+  private ByteBuf valueBuf;           // Value
+  private ByteBuf responseBuf;        // Pre-serialized GET response holding the value, or null
   private int len;                    // Length of the value
+  private int flags;                  // Opaque flags stored along with the value
+  private long exptime;               // Expiration time given by SET, or delay given by FLUSH_ALL (seconds)
+  private long token;                 // Lease token granted by LGET or given to LSET, 0 if none
+  private boolean stale;              // Whether the value returned by LGET is stale
+  private Map<String, String> stats;  // Statistics returned for a STATS command, in display order
+  private String error;               // Reason why the command failed, or null
+  private long client;                // Connection tracking the keys it reads (see InvalidationTracker), 0 if none
+  private boolean found;              // Whether the item of a TOUCH was found
+  private List<byte[]> keys;          // Keys returned by a SCAN
+  // Times of the stages of the request, from System.nanoTime() (see SlowLog), 0 if not reached
+  private long received;              // Socket read holding the command line
+  private long dispatched;            // Command passed to the cache
+  private long processing;            // Command taken by the cache engine
+  private long processed;             // Response ready
 
   /***
    * Default constructor for MemcacheMessage object
@@ -27,7 +69,7 @@ public class MemcacheMessage {
   public MemcacheMessage(CommandType commandType, byte[] key, byte[] value, int len) {
     this.commandType = commandType;
     this.key = key;
-    this.value = value;
+    setValue(value);
     this.len = len;
   }
 
@@ -50,11 +92,31 @@ public class MemcacheMessage {
   }
 
   public byte[] getValue() {
-    return value;
+    return valueBuf == null ? null : ByteBufUtil.getBytes(valueBuf);
   }
 
   public void setValue(byte[] value) {
-    this.value = value;
+    this.valueBuf = value == null ? null : Unpooled.wrappedBuffer(value);
+  }
+
+  @JsonIgnore
+  public ByteBuf getValueBuf() {
+    return valueBuf;
+  }
+
+  @JsonIgnore
+  public void setValueBuf(ByteBuf valueBuf) {
+    this.valueBuf = valueBuf;
+  }
+
+  @JsonIgnore
+  public ByteBuf getResponseBuf() {
+    return responseBuf;
+  }
+
+  @JsonIgnore
+  public void setResponseBuf(ByteBuf responseBuf) {
+    this.responseBuf = responseBuf;
   }
 
   public int getLen() {
@@ -64,4 +126,129 @@ public class MemcacheMessage {
   public void setLen(int len) {
     this.len = len;
   }
+
+  public int getFlags() {
+    return flags;
+  }
+
+  public void setFlags(int flags) {
+    this.flags = flags;
+  }
+
+  public long getExptime() {
+    return exptime;
+  }
+
+  public void setExptime(long exptime) {
+    this.exptime = exptime;
+  }
+
+  public long getToken() {
+    return token;
+  }
+
+  public void setToken(long token) {
+    this.token = token;
+  }
+
+  public boolean isStale() {
+    return stale;
+  }
+
+  public void setStale(boolean stale) {
+    this.stale = stale;
+  }
+
+  public Map<String, String> getStats() {
+    return stats;
+  }
+
+  public void setStats(Map<String, String> stats) {
+    this.stats = stats;
+  }
+
+  public String getError() {
+    return error;
+  }
+
+  public void setError(String error) {
+    this.error = error;
+  }
+
+  public long getClient() {
+    return client;
+  }
+
+  public void setClient(long client) {
+    this.client = client;
+  }
+
+  public boolean isFound() {
+    return found;
+  }
+
+  public void setFound(boolean found) {
+    this.found = found;
+  }
+
+  public List<byte[]> getKeys() {
+    return keys;
+  }
+
+  public void setKeys(List<byte[]> keys) {
+    this.keys = keys;
+  }
+
+  @JsonIgnore
+  public long getReceived() {
+    return received;
+  }
+
+  @JsonIgnore
+  public void setReceived(long received) {
+    this.received = received;
+  }
+
+  @JsonIgnore
+  public long getDispatched() {
+    return dispatched;
+  }
+
+  @JsonIgnore
+  public void setDispatched(long dispatched) {
+    this.dispatched = dispatched;
+  }
+
+  @JsonIgnore
+  public long getProcessing() {
+    return processing;
+  }
+
+  @JsonIgnore
+  public void setProcessing(long processing) {
+    this.processing = processing;
+  }
+
+  @JsonIgnore
+  public long getProcessed() {
+    return processed;
+  }
+
+  @JsonIgnore
+  public void setProcessed(long processed) {
+    this.processed = processed;
+  }
+
+  /***
+   * Release the value held by the message, once the message has been handled.
+   */
+  public void release() {
+    if (responseBuf != null) {
+      responseBuf.release();    // The value is a view of it
+    } else if (valueBuf != null) {
+      valueBuf.release();
+    }
+    responseBuf = null;
+    valueBuf = null;
+  }
 }
@@ -0,0 +1,59 @@
+package memcached.common;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.EventBus;
+import io.vertx.core.eventbus.MessageCodec;
+import io.vertx.core.json.Json;
+
+/***
+ * Event bus codec for MemcacheMessage.
+ *
+ * When the sender and the receiver are in the same JVM (which is the case for the
+ * command and cache verticles), the message object itself is handed over, without
+ * JSON encoding or copying the value. The receiver takes ownership of the message.
+ *
+ * Over the wire (clustered event bus), the message is encoded as length-prefixed JSON.
+ */
+public class MemcacheMessageCodec implements MessageCodec<MemcacheMessage, MemcacheMessage> {
+  private static final String NAME = "memcache-message";
+
+  /***
+   * Register this codec as the default codec for MemcacheMessage. Each verticle
+   * exchanging MemcacheMessages calls this; only the first call registers the codec.
+   * @param eventBus is the event bus to register the codec with
+   */
+  public static void register(EventBus eventBus) {
+    try {
+      eventBus.registerDefaultCodec(MemcacheMessage.class, new MemcacheMessageCodec());
+    } catch (IllegalStateException e) {
+      // Already registered by another verticle
+    }
+  }
+
+  @Override
+  public void encodeToWire(Buffer buffer, MemcacheMessage message) {
+    Buffer encoded = Json.encodeToBuffer(message);
+    buffer.appendInt(encoded.length()).appendBuffer(encoded);
+  }
+
+  @Override
+  public MemcacheMessage decodeFromWire(int pos, Buffer buffer) {
+    int length = buffer.getInt(pos);
+    return Json.decodeValue(buffer.getBuffer(pos + 4, pos + 4 + length), MemcacheMessage.class);
+  }
+
+  @Override
+  public MemcacheMessage transform(MemcacheMessage message) {
+    return message;
+  }
+
+  @Override
+  public String name() {
+    return NAME;
+  }
+
+  @Override
+  public byte systemCodecID() {
+    return -1;
+  }
+}
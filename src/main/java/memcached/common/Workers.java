@@ -0,0 +1,105 @@
+package memcached.common;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.WorkerExecutor;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.Shareable;
+import memcached.stats.Histogram;
+import memcached.util.Shared;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static memcached.util.Constants.DEFAULT_WORKER_POOL_SIZE;
+import static memcached.util.Constants.DEFAULT_WORKER_QUEUE_MAX;
+
+/***
+ * Workers runs the heavy work of the verticles (such as decompressing large values) on a
+ * dedicated pool of "worker.pool.size" threads, off the event loops, so that it does not
+ * delay the other connections of a loop.
+ *
+ * The queue of the pool is bounded: at most "worker.queue.max" tasks wait or run at once.
+ * Beyond, tasks are rejected, and callers do the work themselves: the event loops are then
+ * slowed down rather than the queue growing without bounds.
+ *
+ * The verticles share one pool (see Shared).
+ * `stats workers` reports the tasks run and rejected, and the histograms of their wait and
+ * run times (in microseconds).
+ */
+public class Workers implements Shareable {
+  private final WorkerExecutor executor;
+  private final int maxQueued;                                // Maximum number of tasks waiting or running
+  private final AtomicInteger queued = new AtomicInteger();   // Number of tasks waiting or running
+  private final LongAdder completed = new LongAdder();        // Number of tasks run
+  private final LongAdder rejected = new LongAdder();         // Number of tasks rejected because the queue was full
+  private final Histogram waits = new Histogram(22);          // Time between the submission and the start of each task (us)
+  private final Histogram runs = new Histogram(22);           // Run time of each task (us)
+
+  /***
+   * @param vertx is the vertx instance
+   * @param size is the number of threads
+   * @param maxQueued is the maximum number of tasks waiting or running
+   */
+  public Workers(Vertx vertx, int size, int maxQueued) {
+    this.executor = vertx.createSharedWorkerExecutor("memcached-worker", size);
+    this.maxQueued = maxQueued;
+  }
+
+  /***
+   * Returns the pool shared by the verticles of a Vert.x instance, creating it if needed.
+   * @param vertx is the vertx instance
+   * @param config is the verticle configuration
+   * @return the shared pool
+   */
+  public static Workers shared(Vertx vertx, JsonObject config) {
+    return Shared.get(vertx, "workers", () -> new Workers(vertx,
+      config.getInteger("worker.pool.size", DEFAULT_WORKER_POOL_SIZE),
+      config.getInteger("worker.queue.max", DEFAULT_WORKER_QUEUE_MAX)));
+  }
+
+  /***
+   * Run a task on the pool, unless the queue is full.
+   * @param task is the task, run on a worker thread
+   * @param result is called with the result of the task, on the caller's context
+   * @return true if the task was queued, false if it was rejected (result is not called)
+   */
+  public <T> boolean execute(Handler<Promise<T>> task, Handler<AsyncResult<T>> result) {
+    if (queued.incrementAndGet() > maxQueued) {
+      queued.decrementAndGet();
+      rejected.increment();
+      return false;
+    }
+    long submitted = System.nanoTime();
+    executor.<T>executeBlocking(promise -> {
+      long start = System.nanoTime();
+      waits.record(TimeUnit.NANOSECONDS.toMicros(start - submitted));
+      try {
+        task.handle(promise);
+      } finally {
+        runs.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+      }
+    }, false, done -> {
+      queued.decrementAndGet();
+      completed.increment();
+      result.handle(done);
+    });
+    return true;
+  }
+
+  /***
+   * Add the statistics of the pool to the statistics reported by `stats workers`.
+   * @param stats is the map of statistics
+   */
+  public void addStats(Map<String, String> stats) {
+    stats.put("worker_queued", String.valueOf(queued.get()));
+    stats.put("worker_completed", String.valueOf(completed.sum()));
+    stats.put("worker_rejected", String.valueOf(rejected.sum()));
+    waits.addStats(stats, "worker_wait_us");
+    runs.addStats(stats, "worker_run_us");
+  }
+}
@@ -0,0 +1,303 @@
+package memcached.dump;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.file.AsyncFile;
+import io.vertx.core.file.OpenOptions;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.net.NetSocket;
+import io.vertx.core.streams.ReadStream;
+import memcached.cache.CacheEngine;
+import memcached.cache.Item;
+import memcached.common.MemcacheMessage;
+import memcached.util.Log;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static memcached.command.CommandParser.CRLF;
+import static memcached.command.CommandParser.SERVER_ERROR;
+import static memcached.util.Constants.*;
+
+/***
+ * CacheDumper exports the items of the cache to a file, and loads items from such files
+ * or from the bulk load port, in the binary format described in DumpFormat.
+ *
+ * Both run in the background on the event loop of the cache verticle, in small steps, so
+ * that the requests keep being served while they run:
+ * - An export walks the cache with its weakly consistent iterator, which neither locks the
+ *   cache nor changes its LRU order, and encodes at most "dump.batch.size" items (and about
+ *   DUMP_BATCH_SIZE_IN_BYTES) per step. The next step is scheduled once the previous batch
+ *   has been handed to the file, or once the file has drained if its write queue is full.
+ *   Items stored or dropped during the export may or may not be part of it. Dead (expired
+ *   or flushed) items are skipped.
+ * - A load stores the items as they are decoded from each buffer read from the file or the
+ *   socket, straight into the engine: the text protocol is not involved.
+ *
+ * Files are named by the client, and are created in (or read from) the directory given by
+ * "dump.dir". One export runs at a time. Progress is reported by `stats dump`.
+ */
+public class CacheDumper {
+  private static final String IDLE = "idle";
+  private static final String RUNNING = "running";
+  private static final String DONE = "done";
+  private static final String FAILED = "failed";
+
+  private final Vertx vertx;
+  private final Context context;                          // Context of the cache verticle
+  private final CacheEngine engine;
+  private final File dir;                                 // Directory of the dump files
+  private final int batchSize;                            // Maximum number of items encoded per step
+  private final ByteBufAllocator allocator;               // Allocator of the values loaded
+  private final int maxValueSize;                         // Limit on the size of the values loaded
+  private final AtomicBoolean dumping = new AtomicBoolean(); // Whether an export is running
+  private volatile String dumpState = IDLE;               // State of the last export
+  private volatile long dumpItems;                        // Number of items written by the last export
+  private volatile long dumpBytes;                        // Number of bytes written by the last export
+  private volatile long loadsRunning;                     // Number of loads running
+  private volatile long loadItems;                        // Number of items loaded
+  private volatile long loadErrors;                       // Number of loads which failed
+
+  /***
+   * Create a dumper for the engine of the cache verticle. It must be created on the
+   * context of the cache verticle.
+   * @param vertx is the vertx instance
+   * @param engine is the cache engine
+   * @param config is the verticle configuration
+   */
+  public CacheDumper(Vertx vertx, CacheEngine engine, JsonObject config) {
+    this.vertx = vertx;
+    this.context = vertx.getOrCreateContext();
+    this.engine = engine;
+    this.dir = new File(config.getString("dump.dir", DEFAULT_DUMP_DIR));
+    this.batchSize = config.getInteger("dump.batch.size", DEFAULT_DUMP_BATCH_SIZE);
+    this.maxValueSize = config.getInteger("item.size.max", MAX_VALUE_SIZE_IN_BYTES);
+    // Shared engines leave the values they drop to the garbage collector (see CacheEngine)
+    this.allocator = config.getBoolean("cache.direct", false)
+      ? UnpooledByteBufAllocator.DEFAULT : PooledByteBufAllocator.DEFAULT;
+  }
+
+  /***
+   * Start the export requested by a DUMP command. The export runs in the background: the
+   * command is answered right away, with an error if the export cannot be started.
+   * This may be called from any thread.
+   * @param message is the DUMP command, naming the file
+   */
+  public void dump(MemcacheMessage message) {
+    File file = resolve(message.getKey());
+    if (file == null) {
+      message.setError("invalid file name");
+      return;
+    }
+    if (!dumping.compareAndSet(false, true)) {
+      message.setError("dump in progress");
+      return;
+    }
+    context.runOnContext(v -> {
+      dumpState = RUNNING;
+      dumpItems = 0;
+      dumpBytes = 0;
+      OpenOptions options = new OpenOptions().setWrite(true).setCreate(true).setTruncateExisting(true);
+      vertx.fileSystem().open(file.getPath(), options, opened -> {
+        if (opened.failed()) {
+          finishDump(FAILED, opened.cause());
+          return;
+        }
+        AsyncFile out = opened.result();
+        out.exceptionHandler(e -> dumpState = FAILED);
+        ByteBuf header = Unpooled.buffer(DumpFormat.MAGIC.length);
+        DumpFormat.writeHeader(header);
+        out.write(Buffer.buffer(header));
+        dump(out, engine.iterator());
+      });
+    });
+  }
+
+  /***
+   * Start the load requested by a LOAD command. The load runs in the background: the
+   * command is answered right away, with an error if the file name is not valid.
+   * This may be called from any thread.
+   * @param message is the LOAD command, naming the file
+   */
+  public void load(MemcacheMessage message) {
+    File file = resolve(message.getKey());
+    if (file == null) {
+      message.setError("invalid file name");
+      return;
+    }
+    context.runOnContext(v -> {
+      vertx.fileSystem().open(file.getPath(), new OpenOptions().setRead(true).setWrite(false), opened -> {
+        if (opened.failed()) {
+          Log.info("Failed to load " + file + ": " + opened.cause().getMessage());
+          loadErrors++;
+          return;
+        }
+        AsyncFile in = opened.result();
+        in.setReadBufferSize(DUMP_BATCH_SIZE_IN_BYTES);
+        load(in, loaded -> {
+          in.close();
+          if (loaded.succeeded()) {
+            Log.info("Loaded " + loaded.result() + " items from " + file);
+          } else {
+            Log.info("Failed to load " + file + ": " + loaded.cause().getMessage());
+          }
+        });
+      });
+    });
+  }
+
+  /***
+   * Load the dump sent on a connection to the bulk load port, then answer with
+   * LOADED <items>\r\n (or SERVER_ERROR <reason>\r\n) and close the connection.
+   * It must be called on the context of the cache verticle.
+   * @param socket is the connection
+   */
+  public void load(NetSocket socket) {
+    load(socket, loaded -> {
+      Buffer response = loaded.succeeded()
+        ? Buffer.buffer("LOADED " + loaded.result())
+        : Buffer.buffer(SERVER_ERROR).appendString(" " + loaded.cause().getMessage());
+      socket.end(response.appendBytes(CRLF));
+    });
+  }
+
+  /***
+   * Add the statistics of the exports and loads, reported by `stats dump`.
+   * @param stats is the map of statistics
+   */
+  public void addStats(Map<String, String> stats) {
+    stats.put("dump_state", dumpState);
+    stats.put("dump_items", String.valueOf(dumpItems));
+    stats.put("dump_bytes", String.valueOf(dumpBytes));
+    stats.put("load_running", String.valueOf(loadsRunning));
+    stats.put("load_items", String.valueOf(loadItems));
+    stats.put("load_errors", String.valueOf(loadErrors));
+  }
+
+  /***
+   * Write the next batch of items to the dump file, and schedule the next step.
+   * @param out is the dump file
+   * @param entries walks the cache
+   */
+  private void dump(AsyncFile out, Iterator<Map.Entry<ByteBuf, Item>> entries) {
+    if (dumpState.equals(FAILED)) {
+      out.close();
+      finishDump(FAILED, null);
+      return;
+    }
+    // The records are copied into the batch: the file is written after this step returns,
+    // by when the cache may have released the values.
+    ByteBuf batch = Unpooled.buffer();
+    long now = System.currentTimeMillis();
+    int visited = 0;
+    int count = 0;
+    while (visited < batchSize && batch.readableBytes() < DUMP_BATCH_SIZE_IN_BYTES && entries.hasNext()) {
+      Map.Entry<ByteBuf, Item> entry = entries.next();
+      Item item = entry.getValue();
+      visited++;
+      if (engine.isDead(item, now)) {
+        continue;
+      }
+      long exptime = item.getExpiry() == 0 ? 0 : (item.getExpiry() + 999) / 1000;
+      ByteBuf value = engine.value(item);
+      DumpFormat.writeRecord(batch, entry.getKey(), item.getFlags(), exptime, value);
+      value.release();
+      count++;
+    }
+    boolean last = !entries.hasNext();
+    if (last) {
+      DumpFormat.writeEnd(batch);
+    }
+    dumpItems += count;
+    dumpBytes += batch.readableBytes();
+    out.write(Buffer.buffer(batch));
+
+    if (last) {
+      out.close(closed -> finishDump(closed.succeeded() ? DONE : FAILED, closed.cause()));
+    } else if (out.writeQueueFull()) {
+      out.drainHandler(v -> {
+        out.drainHandler(null);
+        dump(out, entries);
+      });
+    } else {
+      context.runOnContext(v -> dump(out, entries));
+    }
+  }
+
+  /***
+   * Record the end of an export.
+   * @param state is the final state
+   * @param cause is the cause of the failure, if known
+   */
+  private void finishDump(String state, Throwable cause) {
+    if (cause != null) {
+      Log.info("Dump failed: " + cause.getMessage());
+    }
+    dumpState = state;
+    dumping.set(false);
+  }
+
+  /***
+   * Store the items of a dump as they are read from a stream.
+   * @param stream is the stream of the dump
+   * @param done is called once, with the number of items loaded or the failure
+   */
+  private void load(ReadStream<Buffer> stream, Handler<AsyncResult<Long>> done) {
+    DumpReader reader = new DumpReader(allocator, maxValueSize, (key, flags, exptime, value) -> {
+      engine.store(key, flags, exptime * 1000, value);
+      loadItems++;
+    });
+    boolean[] finished = {false};
+    Handler<AsyncResult<Long>> finish = result -> {
+      if (!finished[0]) {
+        finished[0] = true;
+        reader.release();
+        loadsRunning--;
+        if (result.failed()) {
+          loadErrors++;
+        }
+        done.handle(result);
+      }
+    };
+    loadsRunning++;
+    stream.handler(buffer -> {
+      if (finished[0]) {
+        return;
+      }
+      DumpReader.State state = reader.read(buffer.getByteBuf());
+      if (state == DumpReader.State.COMPLETE) {
+        finish.handle(Future.succeededFuture(reader.getItems()));
+      } else if (state == DumpReader.State.ERROR) {
+        finish.handle(Future.failedFuture("invalid dump"));
+      }
+    });
+    stream.endHandler(v -> finish.handle(Future.failedFuture("truncated dump")));
+    stream.exceptionHandler(e -> finish.handle(Future.failedFuture(e)));
+  }
+
+  /***
+   * Resolve the name of a dump file within the dump directory.
+   * @param name is the name given by the client
+   * @return the file, or null if the name is not a plain file name
+   */
+  private File resolve(byte[] name) {
+    String fileName = new String(name, Charset.defaultCharset()).trim();
+    if (fileName.isEmpty() || fileName.equals(".") || fileName.equals("..")
+      || fileName.indexOf('/') >= 0 || fileName.indexOf('\\') >= 0) {
+      return null;
+    }
+    return new File(dir, fileName);
+  }
+}
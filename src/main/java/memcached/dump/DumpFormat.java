@@ -0,0 +1,60 @@
+package memcached.dump;
+
+import io.netty.buffer.ByteBuf;
+
+import java.nio.charset.Charset;
+
+/***
+ * DumpFormat is the binary format of the cache dumps written by `dump` and read by `load`
+ * (or sent to the bulk load port).
+ *
+ * A dump is a header, followed by one record per item and by an end marker:
+ * - header: the 4 bytes "MCD1"
+ * - record: key length (2 bytes), flags (4 bytes), expiration time (8 bytes, Unix time in
+ *   seconds, 0 if the item does not expire), value length (4 bytes), key, value
+ * - end marker: a key length of 0
+ *
+ * Numbers are big endian. The value is the value as sent by the client: values compressed
+ * by the server are dumped uncompressed, and compressed again when loaded (depending on
+ * the configuration of the server which loads them).
+ */
+public final class DumpFormat {
+  public static final byte[] MAGIC = "MCD1".getBytes(Charset.defaultCharset());
+  public static final int RECORD_HEADER_SIZE = 2 + 4 + 8 + 4;   // Bytes of a record before the key
+
+  private DumpFormat() {}
+
+  /***
+   * Write the header of a dump.
+   * @param out is the buffer written to
+   */
+  public static void writeHeader(ByteBuf out) {
+    out.writeBytes(MAGIC);
+  }
+
+  /***
+   * Write the record of an item. The key and the value are copied: their reader index is
+   * not modified.
+   * @param out is the buffer written to
+   * @param key is the key
+   * @param flags are the flags given by the client
+   * @param exptime is the expiration time (Unix time in seconds), 0 if the item does not expire
+   * @param value is the value as sent by the client
+   */
+  public static void writeRecord(ByteBuf out, ByteBuf key, int flags, long exptime, ByteBuf value) {
+    out.writeShort(key.readableBytes())
+      .writeInt(flags)
+      .writeLong(exptime)
+      .writeInt(value.readableBytes())
+      .writeBytes(key, key.readerIndex(), key.readableBytes())
+      .writeBytes(value, value.readerIndex(), value.readableBytes());
+  }
+
+  /***
+   * Write the end marker of a dump.
+   * @param out is the buffer written to
+   */
+  public static void writeEnd(ByteBuf out) {
+    out.writeShort(0);
+  }
+}
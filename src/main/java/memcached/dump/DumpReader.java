@@ -0,0 +1,156 @@
+package memcached.dump;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+
+import static memcached.util.Constants.MAX_KEY_SIZE_IN_BYTES;
+
+/***
+ * DumpReader decodes a dump (see DumpFormat) as its bytes arrive, however they are split,
+ * and hands each item to a handler as soon as it has been read.
+ *
+ * The record headers are gathered in a small buffer, while each value is copied once, into
+ * a buffer of its size taken from the given allocator. The values are owned by the handler.
+ * The value of a record which is not completed is released by release(). A record whose
+ * value is larger than the limit on the size of values (as for SET, see "item.size.max")
+ * makes the dump invalid, before anything is allocated for it.
+ */
+public class DumpReader {
+
+  public enum State {
+    INCOMPLETE,   // More bytes are needed
+    COMPLETE,     // The end marker was read
+    ERROR,        // The bytes are not a dump
+  }
+
+  /***
+   * Receives the items read.
+   */
+  public interface ItemHandler {
+    /***
+     * @param key is the key
+     * @param flags are the flags given by the client
+     * @param exptime is the expiration time (Unix time in seconds), 0 if the item does not expire
+     * @param value is the value, owned by the handler
+     */
+    void handle(byte[] key, int flags, long exptime, ByteBuf value);
+  }
+
+  private final ByteBufAllocator allocator;
+  private final int maxValueSize;   // Inclusive limit on the size of values
+  private final ItemHandler handler;
+  private final ByteBuf head = Unpooled.buffer(DumpFormat.RECORD_HEADER_SIZE + MAX_KEY_SIZE_IN_BYTES);
+  private State state = State.INCOMPLETE;
+  private boolean started;        // Whether the header of the dump was read
+  private byte[] key;             // Key of the record whose value is being read
+  private int flags;              // Flags of the record whose value is being read
+  private long exptime;           // Expiration time of the record whose value is being read
+  private ByteBuf value;          // Value being read, or null between records
+  private long items;             // Number of items read
+
+  /***
+   * @param allocator allocates the values
+   * @param maxValueSize is the (inclusive) limit on the size of values
+   * @param handler receives the items read
+   */
+  public DumpReader(ByteBufAllocator allocator, int maxValueSize, ItemHandler handler) {
+    this.allocator = allocator;
+    this.maxValueSize = maxValueSize;
+    this.handler = handler;
+  }
+
+  /***
+   * Read the bytes available. Bytes following the end marker are ignored.
+   * @param in is the input buffer, whose reader index is advanced past the bytes read
+   * @return state of the dump
+   */
+  public State read(ByteBuf in) {
+    while (state == State.INCOMPLETE && in.isReadable()) {
+      if (!started) {
+        if (!fill(in, DumpFormat.MAGIC.length)) {
+          return state;
+        }
+        if (!ByteBufUtil.equals(head, Unpooled.wrappedBuffer(DumpFormat.MAGIC))) {
+          state = State.ERROR;
+          return state;
+        }
+        head.clear();
+        started = true;
+        continue;
+      }
+
+      if (value == null) {
+        // Gather the record header and the key
+        if (!fill(in, 2)) {
+          return state;
+        }
+        int keyLength = head.getUnsignedShort(0);
+        if (keyLength == 0) {
+          state = State.COMPLETE;
+          return state;
+        }
+        if (keyLength > MAX_KEY_SIZE_IN_BYTES) {
+          state = State.ERROR;
+          return state;
+        }
+        if (!fill(in, DumpFormat.RECORD_HEADER_SIZE + keyLength)) {
+          return state;
+        }
+        int valueLength = head.getInt(14);
+        if (valueLength < 0 || valueLength > maxValueSize) {
+          state = State.ERROR;
+          return state;
+        }
+        flags = head.getInt(2);
+        exptime = head.getLong(6);
+        key = ByteBufUtil.getBytes(head, DumpFormat.RECORD_HEADER_SIZE, keyLength);
+        head.clear();
+        value = allocator.heapBuffer(valueLength, valueLength);
+      }
+
+      // Copy the bytes of the value
+      value.writeBytes(in, Math.min(in.readableBytes(), value.writableBytes()));
+      if (!value.isWritable()) {
+        ByteBuf item = value;
+        value = null;
+        items++;
+        handler.handle(key, flags, exptime, item);
+      }
+    }
+    return state;
+  }
+
+  /***
+   * Returns the number of items read so far.
+   * @return as above
+   */
+  public long getItems() {
+    return items;
+  }
+
+  /***
+   * Release the value of a record which is not completed, if any.
+   */
+  public void release() {
+    if (value != null) {
+      value.release();
+      value = null;
+    }
+  }
+
+  /***
+   * Gather bytes in the header buffer, up to the given size.
+   * @param in is the input buffer
+   * @param size is the number of bytes needed in the header buffer
+   * @return true if the header buffer holds the bytes needed
+   */
+  private boolean fill(ByteBuf in, int size) {
+    int missing = size - head.readableBytes();
+    if (missing > 0) {
+      head.writeBytes(in, Math.min(missing, in.readableBytes()));
+    }
+    return head.readableBytes() >= size;
+  }
+}
@@ -0,0 +1,74 @@
+package memcached.stats;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/***
+ * Histogram counts values (such as durations) in buckets whose upper bounds are the powers of
+ * two from 1 to 2^(buckets - 2), plus a last bucket for the larger values. It also keeps
+ * their count, sum and maximum.
+ *
+ * Values are recorded without locks, from any thread.
+ */
+public class Histogram {
+  private final LongAdder[] counts;
+  private final LongAdder sum = new LongAdder();
+  private final AtomicLong max = new AtomicLong();
+
+  /***
+   * @param buckets is the number of buckets, the last one counting values above 2^(buckets - 2)
+   */
+  public Histogram(int buckets) {
+    counts = new LongAdder[buckets];
+    for (int i = 0; i < buckets; i++) {
+      counts[i] = new LongAdder();
+    }
+  }
+
+  /***
+   * Record a value.
+   * @param value is the value, counted as 0 if negative
+   */
+  public void record(long value) {
+    value = Math.max(0, value);
+    // Smallest power of two which is not below the value
+    int bucket = value <= 1 ? 0 : 64 - Long.numberOfLeadingZeros(value - 1);
+    counts[Math.min(bucket, counts.length - 1)].increment();
+    sum.add(value);
+    long current;
+    while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+      // Retry until the maximum is at least the value
+    }
+  }
+
+  /***
+   * Returns the number of values recorded.
+   */
+  public long count() {
+    long count = 0;
+    for (LongAdder c : counts) {
+      count += c.sum();
+    }
+    return count;
+  }
+
+  /***
+   * Add the histogram to the statistics reported by `stats`: the count, sum and maximum of
+   * the values, then the cumulative count of each bucket, like "<name>_le_4" (values up to
+   * 4) and "<name>_le_inf".
+   * @param stats is the map of statistics
+   * @param name is the prefix of the statistics
+   */
+  public void addStats(Map<String, String> stats, String name) {
+    stats.put(name + "_count", String.valueOf(count()));
+    stats.put(name + "_sum", String.valueOf(sum.sum()));
+    stats.put(name + "_max", String.valueOf(max.get()));
+    long cumulative = 0;
+    for (int i = 0; i < counts.length; i++) {
+      cumulative += counts[i].sum();
+      String bound = i == counts.length - 1 ? "inf" : String.valueOf(1L << i);
+      stats.put(name + "_le_" + bound, String.valueOf(cumulative));
+    }
+  }
+}
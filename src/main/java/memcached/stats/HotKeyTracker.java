@@ -0,0 +1,224 @@
+package memcached.stats;
+
+import io.netty.buffer.ByteBuf;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/***
+ * HotKeyTracker finds the most frequently accessed keys (the heavy hitters) in the stream
+ * of keys seen by the cache, using a fixed amount of memory regardless of the number of
+ * distinct keys.
+ *
+ * It combines two structures:
+ * - A count-min sketch: a small matrix of counters (depth rows, width columns). Each key
+ *   increments one counter per row, picked by a different hash per row. The estimated
+ *   count of a key is the minimum of its counters. It never undercounts, and overcounts
+ *   only on hash collisions.
+ * - A top-K table: the K keys with the highest estimated counts in the current window.
+ *   A key enters the table when its estimate exceeds the smallest count in the table.
+ *
+ * To keep the overhead off the hot path, only a configurable fraction of accesses is
+ * sampled. The counts are scaled back up by the sample rate to estimate QPS.
+ *
+ * Counting is done over tumbling time windows. When a window ends, its top-K is kept as
+ * a snapshot and the counters are reset, so that keys which cooled down age out.
+ *
+ * Sampled accesses and reads of the hot keys are synchronized, so that a tracker can be
+ * shared by several event loops (see "cache.direct"). Only sampled accesses take the lock.
+ */
+public class HotKeyTracker {
+  private static final int SKETCH_DEPTH = 4;      // Number of hash functions (rows)
+  private static final int SKETCH_WIDTH = 2048;   // Counters per row, must be a power of 2
+
+  private final long[][] sketch = new long[SKETCH_DEPTH][SKETCH_WIDTH];
+  private final Map<ByteBuf, long[]> topKeys;     // Key -> estimated count in the window
+  private final int capacity;
+  private volatile double sampleRate;
+  private final long windowMillis;
+
+  private long windowStart;
+  private long minCount;                          // Lower bound of the counts in the top-K table
+  private List<HotKey> lastWindow = Collections.emptyList();
+
+  /***
+   * A hot key, along with its estimated number of accesses per second.
+   */
+  public static class HotKey {
+    private final String key;
+    private final long count;
+    private final double qps;
+
+    HotKey(String key, long count, double qps) {
+      this.key = key;
+      this.count = count;
+      this.qps = qps;
+    }
+
+    public String getKey() {
+      return key;
+    }
+
+    public long getCount() {
+      return count;
+    }
+
+    public double getQps() {
+      return qps;
+    }
+  }
+
+  /***
+   * @param capacity is the number of hot keys to track (K)
+   * @param sampleRate is the fraction of accesses to sample, between 0 (disabled) and 1 (all)
+   * @param windowMillis is the length of the counting window in milliseconds
+   */
+  public HotKeyTracker(int capacity, double sampleRate, long windowMillis) {
+    this.capacity = capacity;
+    this.sampleRate = sampleRate;
+    this.windowMillis = windowMillis;
+    this.topKeys = new HashMap<>(capacity * 2);
+    this.windowStart = System.currentTimeMillis();
+  }
+
+  /***
+   * Change the fraction of the accesses sampled. The QPS of the current window are
+   * estimated from the new fraction.
+   * @param sampleRate is the fraction, above 0 and at most 1
+   */
+  public void setSampleRate(double sampleRate) {
+    if (sampleRate <= 0 || sampleRate > 1) {
+      throw new IllegalArgumentException("The sample rate must be above 0 and at most 1");
+    }
+    this.sampleRate = sampleRate;
+  }
+
+  public double getSampleRate() {
+    return sampleRate;
+  }
+
+  /***
+   * Record an access to a key. Only a sample of the accesses is counted.
+   * @param key is the accessed key. It is copied if it enters the top-K table.
+   */
+  public void record(ByteBuf key) {
+    if (sampleRate <= 0 || (sampleRate < 1 && ThreadLocalRandom.current().nextDouble() >= sampleRate)) {
+      return;
+    }
+    count(key);
+  }
+
+  /***
+   * Count a sampled access to a key.
+   * @param key is the accessed key
+   */
+  private synchronized void count(ByteBuf key) {
+    long now = System.currentTimeMillis();
+    if (now - windowStart >= windowMillis) {
+      rotate(now);
+    }
+
+    long estimate = increment(key.hashCode());
+    long[] count = topKeys.get(key);
+    if (count != null) {
+      count[0] = estimate;
+      return;
+    }
+    if (topKeys.size() < capacity) {
+      topKeys.put(key.copy(), new long[]{estimate});
+      return;
+    }
+    if (estimate <= minCount) {
+      return;
+    }
+
+    // The key may be hotter than the coldest key in the table. minCount is only a lower
+    // bound (counts in the table keep growing), so find the actual coldest key.
+    ByteBuf coldestKey = null;
+    long coldest = Long.MAX_VALUE;
+    long secondColdest = Long.MAX_VALUE;
+    for (Map.Entry<ByteBuf, long[]> entry : topKeys.entrySet()) {
+      long c = entry.getValue()[0];
+      if (c < coldest) {
+        secondColdest = coldest;
+        coldest = c;
+        coldestKey = entry.getKey();
+      } else if (c < secondColdest) {
+        secondColdest = c;
+      }
+    }
+    if (estimate > coldest) {
+      topKeys.remove(coldestKey);
+      topKeys.put(key.copy(), new long[]{estimate});
+      minCount = Math.min(secondColdest, estimate);
+    } else {
+      minCount = coldest;
+    }
+  }
+
+  /***
+   * Returns the hot keys, hottest first. These are the keys of the last complete window,
+   * or of the current window if no window has completed yet.
+   * @return list of hot keys with their estimated QPS
+   */
+  public synchronized List<HotKey> getHotKeys() {
+    long now = System.currentTimeMillis();
+    if (now - windowStart >= windowMillis) {
+      rotate(now);
+    }
+    return lastWindow.isEmpty() ? snapshot(now - windowStart) : lastWindow;
+  }
+
+  /***
+   * Increment the counters of a key in the sketch.
+   * @param hash is the hash code of the key
+   * @return the estimated count of the key, i.e. the minimum of its counters
+   */
+  private long increment(int hash) {
+    // Derive the row hashes from a single hash (double hashing)
+    int h1 = hash * 0x9E3779B9;
+    int h2 = Integer.rotateLeft(h1, 16) | 1;
+    long estimate = Long.MAX_VALUE;
+    for (int i = 0; i < SKETCH_DEPTH; i++) {
+      int index = (h1 + i * h2) & (SKETCH_WIDTH - 1);
+      estimate = Math.min(estimate, ++sketch[i][index]);
+    }
+    return estimate;
+  }
+
+  /***
+   * End the current window: snapshot its hot keys and reset the counters.
+   * @param now is the current time in milliseconds
+   */
+  private void rotate(long now) {
+    lastWindow = snapshot(now - windowStart);
+    for (long[] row : sketch) {
+      Arrays.fill(row, 0);
+    }
+    topKeys.clear();
+    minCount = 0;
+    windowStart = now;
+  }
+
+  /***
+   * Build the list of hot keys of the current window, hottest first.
+   * @param elapsedMillis is the time elapsed in the current window
+   * @return list of hot keys
+   */
+  private List<HotKey> snapshot(long elapsedMillis) {
+    double seconds = Math.max(elapsedMillis, 1) / 1000.0;
+    List<HotKey> hotKeys = new ArrayList<>(topKeys.size());
+    for (Map.Entry<ByteBuf, long[]> entry : topKeys.entrySet()) {
+      long count = entry.getValue()[0];
+      hotKeys.add(new HotKey(entry.getKey().toString(Charset.defaultCharset()), count, count / sampleRate / seconds));
+    }
+    hotKeys.sort((a, b) -> Long.compare(b.getCount(), a.getCount()));
+    return hotKeys;
+  }
+}
@@ -0,0 +1,88 @@
+package memcached.stats;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.Shareable;
+import memcached.util.Shared;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static memcached.util.Constants.DEFAULT_PROBE_INTERVAL_MS;
+import static memcached.util.Constants.DEFAULT_PROBE_STALL_MS;
+
+/***
+ * LoopMonitor measures the responsiveness of the event loops, continuously: each verticle
+ * probes its own event loop with a timer set every "probe.interval.ms", and records how late
+ * the timer fires. A timer which fires late means that the loop was busy meanwhile: every
+ * connection served by the loop waited as long. A lag of at least "probe.stall.ms" counts as
+ * a stall.
+ *
+ * `stats loops` reports the histogram of the lags (in microseconds) and the histogram of the
+ * stalls (in milliseconds), across the loops probed.
+ *
+ * The verticles share one monitor (see Shared).
+ */
+public class LoopMonitor implements Shareable {
+  private final long interval;                      // Time between two probes of a loop (ms), 0 disables them
+  private final long stallNanos;                    // Lag from which a probe counts as a stall
+  private final Histogram lags = new Histogram(22);     // Lag of each probe (us), up to 1 s
+  private final Histogram stalls = new Histogram(16);   // Lag of each stall (ms), up to 16 s
+  private final AtomicInteger loops = new AtomicInteger();  // Number of loops probed
+
+  /***
+   * @param interval is the time between two probes of a loop in milliseconds, 0 disables them
+   * @param stallThreshold is the lag from which a probe counts as a stall in milliseconds
+   */
+  public LoopMonitor(long interval, long stallThreshold) {
+    this.interval = interval;
+    this.stallNanos = TimeUnit.MILLISECONDS.toNanos(stallThreshold);
+  }
+
+  /***
+   * Returns the monitor shared by the verticles of a Vert.x instance, creating it if needed.
+   * @param vertx is the vertx instance
+   * @param config is the verticle configuration
+   * @return the shared monitor
+   */
+  public static LoopMonitor shared(Vertx vertx, JsonObject config) {
+    return Shared.get(vertx, "loops", () -> new LoopMonitor(
+      config.getLong("probe.interval.ms", DEFAULT_PROBE_INTERVAL_MS),
+      config.getLong("probe.stall.ms", DEFAULT_PROBE_STALL_MS)));
+  }
+
+  /***
+   * Start probing the event loop of the calling verticle, until it is undeployed.
+   * @param vertx is the vertx instance
+   */
+  public void probe(Vertx vertx) {
+    if (interval <= 0) {
+      return;
+    }
+    loops.incrementAndGet();
+    schedule(vertx, System.nanoTime());
+  }
+
+  private void schedule(Vertx vertx, long start) {
+    vertx.setTimer(interval, timer -> {
+      long lag = System.nanoTime() - start - TimeUnit.MILLISECONDS.toNanos(interval);
+      lags.record(TimeUnit.NANOSECONDS.toMicros(lag));
+      if (lag >= stallNanos) {
+        stalls.record(TimeUnit.NANOSECONDS.toMillis(lag));
+      }
+      schedule(vertx, System.nanoTime());
+    });
+  }
+
+  /***
+   * Add the statistics of the probes to the statistics reported by `stats loops`.
+   * @param stats is the map of statistics
+   */
+  public void addStats(Map<String, String> stats) {
+    stats.put("loop_probed", String.valueOf(loops.get()));
+    stats.put("loop_stalls", String.valueOf(stalls.count()));
+    lags.addStats(stats, "loop_lag_us");
+    stalls.addStats(stats, "loop_stall_ms");
+  }
+}
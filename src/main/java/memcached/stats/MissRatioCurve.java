@@ -0,0 +1,232 @@
+package memcached.stats;
+
+import io.netty.buffer.ByteBuf;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/***
+ * MissRatioCurve estimates, from the live stream of keys, the miss ratio an LRU cache would
+ * have at a range of sizes, so that the memory of a node can be sized on measured data.
+ *
+ * It follows SHARDS (Waldspurger et al., FAST '15): the keys are sampled spatially, by hash,
+ * so that every access of a sampled key is seen. The reuse distance of an access (the size of
+ * the distinct keys accessed since the previous access of the same key, plus its own) is
+ * the smallest LRU cache size at which it hits. Distances among the sampled keys are scaled
+ * up by the sampling rate, and collected in a histogram from which the curve is read.
+ *
+ * Memory is fixed: at most "maxSamples" keys are tracked. When a new key would exceed this,
+ * the keys with the largest hash are dropped, and the sampling threshold is lowered below
+ * them (the fixed-size variant of SHARDS).
+ *
+ * Distances are computed with a Fenwick tree indexed by the time of the last access of each
+ * tracked key, holding its weight (1, or its bytes when the cache is bounded in bytes), so
+ * that each sampled access costs O(log n). The time slots are renumbered when they run out.
+ *
+ * The sampling test takes no lock; sampled accesses are synchronized, so that the estimator
+ * can be shared by several event loops (see "cache.direct").
+ */
+public class MissRatioCurve {
+  private static final int HASH_BITS = 24;                // Precision of the sampling threshold
+  private static final int HASH_MASK = (1 << HASH_BITS) - 1;
+
+  private final int maxSamples;           // Maximum number of keys tracked
+  private final long maxSize;             // Largest cache size of the curve
+  private final double[] buckets;         // Estimated accesses by reuse distance, in buckets of maxSize / buckets.length
+  private final Map<ByteBuf, Sample> samples = new HashMap<>();
+  private final TreeMap<Integer, List<Sample>> byHash = new TreeMap<>();
+  private final long[] tree;              // Fenwick tree of the weights, indexed by time slot (from 1)
+  private final Sample[] slots;           // Tracked key of each time slot
+  private volatile int threshold;         // Keys whose hash is below the threshold are sampled
+  private int nextSlot = 1;               // Time slot of the next access
+  private double infinite;                // Estimated accesses beyond maxSize, or first accesses
+  private double references;              // Estimated accesses counted in the curve
+
+  /***
+   * A tracked key: its hash, its weight and the time slot of its last access.
+   */
+  private static class Sample {
+    final ByteBuf key;
+    final int hash;
+    long weight;
+    int slot;
+
+    Sample(ByteBuf key, int hash) {
+      this.key = key;
+      this.hash = hash;
+    }
+  }
+
+  /***
+   * @param sampleRate is the initial fraction of keys to sample, between 0 (disabled) and 1 (all)
+   * @param maxSamples is the maximum number of keys tracked
+   * @param maxSize is the largest cache size of the curve, in the unit of the weights
+   * @param buckets is the number of cache sizes of the curve, evenly spaced up to maxSize
+   */
+  public MissRatioCurve(double sampleRate, int maxSamples, long maxSize, int buckets) {
+    this.maxSamples = maxSamples;
+    this.maxSize = Math.max(maxSize, buckets);
+    this.buckets = new double[buckets];
+    this.threshold = (int) Math.min(HASH_MASK + 1L, Math.round(sampleRate * (HASH_MASK + 1L)));
+    this.tree = new long[2 * maxSamples + 1];
+    this.slots = new Sample[tree.length];
+  }
+
+  /***
+   * Record an access to a key, if it is sampled.
+   * @param key is the accessed key. It is copied if it starts being tracked.
+   * @param weight is the size the key takes in the cache, 0 if unknown (a miss)
+   * @param reference is whether the access counts in the curve (a read), or only refreshes the
+   *                  recency of the key (a write)
+   */
+  public void record(ByteBuf key, long weight, boolean reference) {
+    int hash = mix(key.hashCode()) & HASH_MASK;
+    if (hash >= threshold) {
+      return;
+    }
+    sample(key, hash, weight, reference);
+  }
+
+  private synchronized void sample(ByteBuf key, int hash, long weight, boolean reference) {
+    if (hash >= threshold) {
+      return;     // Lowered meanwhile
+    }
+    double scale = (double) (HASH_MASK + 1) / threshold;
+    Sample sample = samples.get(key);
+    if (sample == null) {
+      if (reference) {
+        infinite += scale;    // First access: a miss at any size
+        references += scale;
+      }
+      sample = new Sample(key.copy(), hash);
+      sample.weight = Math.max(weight, 1);
+      samples.put(sample.key, sample);
+      byHash.computeIfAbsent(hash, h -> new ArrayList<>(1)).add(sample);
+      if (samples.size() > maxSamples) {
+        lower();
+        if (hash >= threshold) {
+          return;   // The key itself was dropped
+        }
+      }
+    } else {
+      if (reference) {
+        long distance = sum(nextSlot - 1) - sum(sample.slot) + sample.weight;
+        double scaled = distance * scale;
+        // Bucket i holds the distances up to the size (i + 1) * maxSize / buckets.length
+        int bucket = Math.max(0, (int) Math.ceil(scaled * buckets.length / maxSize) - 1);
+        if (bucket < buckets.length) {
+          buckets[bucket] += scale;
+        } else {
+          infinite += scale;
+        }
+        references += scale;
+      }
+      add(sample.slot, -sample.weight);
+      slots[sample.slot] = null;
+      if (weight > 0) {
+        sample.weight = weight;
+      }
+    }
+    if (nextSlot == tree.length) {
+      renumber();
+    }
+    sample.slot = nextSlot++;
+    slots[sample.slot] = sample;
+    add(sample.slot, sample.weight);
+  }
+
+  /***
+   * Drop the tracked keys with the largest hash, and lower the threshold to it.
+   */
+  private void lower() {
+    Map.Entry<Integer, List<Sample>> last = byHash.pollLastEntry();
+    threshold = last.getKey();
+    for (Sample dropped : last.getValue()) {
+      samples.remove(dropped.key);
+      if (dropped.slot > 0) {
+        add(dropped.slot, -dropped.weight);
+        slots[dropped.slot] = null;
+      }
+    }
+  }
+
+  /***
+   * Give the tracked keys consecutive time slots from 1, in the order of their last access.
+   */
+  private void renumber() {
+    Arrays.fill(tree, 0);
+    int slot = 1;
+    for (int i = 1; i < slots.length; i++) {
+      Sample sample = slots[i];
+      if (sample != null) {
+        slots[i] = null;
+        sample.slot = slot;
+        slots[slot] = sample;
+        add(slot, sample.weight);
+        slot++;
+      }
+    }
+    nextSlot = slot;
+  }
+
+  private void add(int slot, long delta) {
+    for (int i = slot; i < tree.length; i += i & -i) {
+      tree[i] += delta;
+    }
+  }
+
+  private long sum(int slot) {
+    long sum = 0;
+    for (int i = slot; i > 0; i -= i & -i) {
+      sum += tree[i];
+    }
+    return sum;
+  }
+
+  /***
+   * Returns the estimated miss ratio at each cache size of the curve.
+   * @return cache size -> miss ratio, by increasing size
+   */
+  public synchronized Map<Long, Double> curve() {
+    Map<Long, Double> curve = new LinkedHashMap<>();
+    double hits = 0;
+    for (int i = 0; i < buckets.length; i++) {
+      hits += buckets[i];
+      long size = maxSize * (i + 1) / buckets.length;
+      curve.put(size, references == 0 ? 1.0 : Math.max(0, 1 - hits / references));
+    }
+    return curve;
+  }
+
+  /***
+   * Add the curve, and how it was sampled, to the statistics reported by `stats mrc`.
+   * @param stats is the map of statistics
+   */
+  public synchronized void addStats(Map<String, String> stats) {
+    stats.put("mrc_sample_rate", String.format(Locale.ROOT, "%.6f", (double) threshold / (HASH_MASK + 1)));
+    stats.put("mrc_samples", String.valueOf(samples.size()));
+    stats.put("mrc_references", String.valueOf(Math.round(references)));
+    for (Map.Entry<Long, Double> point : curve().entrySet()) {
+      stats.put("mrc_" + point.getKey(), String.format(Locale.ROOT, "%.4f", point.getValue()));
+    }
+  }
+
+  /***
+   * Spread the bits of a hash code (the finalizer of MurmurHash3), so that keys are sampled
+   * uniformly whatever their hash codes.
+   */
+  private static int mix(int h) {
+    h ^= h >>> 16;
+    h *= 0x85EBCA6B;
+    h ^= h >>> 13;
+    h *= 0xC2B2AE35;
+    h ^= h >>> 16;
+    return h;
+  }
+}
@@ -0,0 +1,249 @@
+package memcached.stats;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.Shareable;
+import memcached.common.MemcacheMessage;
+import memcached.util.Shared;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import static memcached.util.Constants.DEFAULT_SLOWLOG_KEY_PREFIX;
+import static memcached.util.Constants.DEFAULT_SLOWLOG_SAMPLE_RATE;
+import static memcached.util.Constants.DEFAULT_SLOWLOG_SIZE;
+import static memcached.util.Constants.DEFAULT_SLOWLOG_THRESHOLD_US;
+
+/***
+ * SlowLog keeps the last requests which took at least "slowlog.threshold.us" to be answered,
+ * along with a random sample ("slowlog.sample.rate") of all the requests, so that the
+ * commands and keys behind a latency spike can be found.
+ *
+ * Each command verticle records into its own ring of "slowlog.size" entries, from its event
+ * loop only. An entry holds the time, the connection, the command, the first
+ * "slowlog.key.prefix" bytes of the key, the size of the value, and the time spent in each
+ * stage of the request:
+ * - decode: from the socket read holding the command line to the dispatch of the command
+ *   (for a SET, this includes receiving its data block),
+ * - bus: from the dispatch to the cache engine (the event bus hop, nearly 0 with "cache.direct"),
+ * - cache: the cache operation, including reads from the ext store and decompression,
+ * - write: from the end of the cache operation until the response has been written to the
+ *   socket (waiting for earlier responses, translating and flushing it).
+ *
+ * Recording does not allocate: the rings are preallocated arrays of longs, and the entries
+ * are overwritten in place. Each entry is guarded by a sequence number (odd while it is
+ * written), so that `stats slowlog` can read the rings from another thread, and skips the
+ * entries being overwritten.
+ *
+ * The verticles share one log (see Shared).
+ */
+public class SlowLog implements Shareable {
+  private static final MemcacheMessage.CommandType[] COMMANDS = MemcacheMessage.CommandType.values();
+
+  // Layout of an entry in a ring, in longs
+  private static final int SEQUENCE = 0;      // Odd while the entry is written
+  private static final int TIME = 1;          // Wall clock time the response was written (ms)
+  private static final int CONNECTION = 2;    // Id of the connection
+  private static final int META = 3;          // Value size << 32 | key length << 16 | slow << 8 | command
+  private static final int STAGES = 4;        // Duration of the 4 stages (ns)
+  private static final int PREFIX = 8;        // Key prefix, 8 bytes per long
+
+  private final int size;                     // Entries per ring, 0 disables the log
+  private volatile long thresholdNanos;       // Latency from which a request is slow
+  private volatile double sampleRate;         // Fraction of the other requests recorded
+  private final int prefixLength;             // Number of bytes of the key recorded
+  private final int fields;                   // Longs per entry
+  private final List<Ring> rings = new CopyOnWriteArrayList<>();
+  private final LongAdder slow = new LongAdder();       // Number of slow requests recorded
+  private final LongAdder sampled = new LongAdder();    // Number of sampled requests recorded
+
+  /***
+   * @param size is the number of entries kept per event loop, 0 disables the log
+   * @param thresholdMicros is the latency from which a request is slow, in microseconds
+   * @param sampleRate is the fraction of the other requests recorded, between 0 and 1
+   * @param prefixLength is the number of bytes of the key recorded
+   */
+  public SlowLog(int size, long thresholdMicros, double sampleRate, int prefixLength) {
+    this.size = Math.max(0, size);
+    this.thresholdNanos = TimeUnit.MICROSECONDS.toNanos(thresholdMicros);
+    this.sampleRate = sampleRate;
+    this.prefixLength = Math.max(0, Math.min(prefixLength, 0xFFFF));
+    this.fields = PREFIX + (this.prefixLength + 7) / 8;
+  }
+
+  /***
+   * Returns the log shared by the verticles of a Vert.x instance, creating it if needed.
+   * @param vertx is the vertx instance
+   * @param config is the verticle configuration
+   * @return the shared log
+   */
+  public static SlowLog shared(Vertx vertx, JsonObject config) {
+    return Shared.get(vertx, "slowlog", () -> new SlowLog(
+      config.getInteger("slowlog.size", DEFAULT_SLOWLOG_SIZE),
+      config.getLong("slowlog.threshold.us", DEFAULT_SLOWLOG_THRESHOLD_US),
+      config.getDouble("slowlog.sample.rate", DEFAULT_SLOWLOG_SAMPLE_RATE),
+      config.getInteger("slowlog.key.prefix", DEFAULT_SLOWLOG_KEY_PREFIX)));
+  }
+
+  /***
+   * Change the latency from which a request is slow, for the next requests.
+   * @param thresholdMicros is the latency in microseconds
+   */
+  public void setThreshold(long thresholdMicros) {
+    this.thresholdNanos = TimeUnit.MICROSECONDS.toNanos(thresholdMicros);
+  }
+
+  public long getThreshold() {
+    return TimeUnit.NANOSECONDS.toMicros(thresholdNanos);
+  }
+
+  /***
+   * Change the fraction of the other requests recorded, for the next requests.
+   * @param sampleRate is the fraction, between 0 and 1
+   */
+  public void setSampleRate(double sampleRate) {
+    if (sampleRate < 0 || sampleRate > 1) {
+      throw new IllegalArgumentException("The sample rate must be between 0 and 1");
+    }
+    this.sampleRate = sampleRate;
+  }
+
+  public double getSampleRate() {
+    return sampleRate;
+  }
+
+  /***
+   * Create the ring of an event loop, to record its requests from that loop only.
+   * @return the ring, or null if the log is disabled
+   */
+  public Ring ring() {
+    if (size == 0) {
+      return null;
+    }
+    Ring ring = new Ring();
+    rings.add(ring);
+    return ring;
+  }
+
+  /***
+   * The entries recorded by one event loop.
+   */
+  public class Ring {
+    private final AtomicLongArray entries = new AtomicLongArray(size * fields);
+    private long next;                        // Number of entries written so far
+
+    /***
+     * Record a request once its response has been written, if it was slow or is sampled.
+     * @param request is the request, answered, with the times of its stages (see MemcacheMessage)
+     * @param connection is the id of the connection
+     * @param valueSize is the size of the value stored or returned
+     * @param written is the time the response was written, from System.nanoTime()
+     */
+    public void record(MemcacheMessage request, long connection, int valueSize, long written) {
+      long total = written - request.getReceived();
+      boolean isSlow = total >= thresholdNanos;
+      if (!isSlow && (sampleRate <= 0 || ThreadLocalRandom.current().nextDouble() >= sampleRate)) {
+        return;
+      }
+      (isSlow ? slow : sampled).increment();
+      int base = (int) (next++ % size) * fields;
+      long sequence = entries.get(base + SEQUENCE) + 1;
+      entries.set(base + SEQUENCE, sequence);                     // Odd: being written
+      byte[] key = request.getKey();
+      int length = key == null ? 0 : Math.min(key.length, prefixLength);
+      entries.lazySet(base + TIME, System.currentTimeMillis());
+      entries.lazySet(base + CONNECTION, connection);
+      entries.lazySet(base + META, (long) valueSize << 32 | (long) length << 16 | (isSlow ? 1 << 8 : 0)
+        | request.getCommandType().ordinal());
+      long processing = request.getProcessing() != 0 ? request.getProcessing() : request.getDispatched();
+      long processed = request.getProcessed() != 0 ? request.getProcessed() : processing;
+      entries.lazySet(base + STAGES, request.getDispatched() - request.getReceived());
+      entries.lazySet(base + STAGES + 1, processing - request.getDispatched());
+      entries.lazySet(base + STAGES + 2, processed - processing);
+      entries.lazySet(base + STAGES + 3, written - processed);
+      for (int i = 0; i < length; i += 8) {
+        long packed = 0;
+        for (int j = 0; j < 8 && i + j < length; j++) {
+          packed |= (key[i + j] & 0xFFL) << (8 * j);
+        }
+        entries.lazySet(base + PREFIX + i / 8, packed);
+      }
+      entries.set(base + SEQUENCE, sequence + 1);                 // Even: complete
+    }
+
+    /***
+     * Copy the complete entries of the ring, skipping those being written.
+     * @param out receives the entries, as arrays of longs laid out like the ring
+     */
+    private void collect(List<long[]> out) {
+      for (int base = 0; base < entries.length(); base += fields) {
+        long sequence = entries.get(base + SEQUENCE);
+        if (sequence == 0 || (sequence & 1) != 0) {
+          continue;
+        }
+        long[] entry = new long[fields];
+        for (int i = 1; i < fields; i++) {
+          entry[i] = entries.get(base + i);
+        }
+        if (entries.get(base + SEQUENCE) == sequence) {
+          out.add(entry);
+        }
+      }
+    }
+  }
+
+  /***
+   * Add the log to the statistics reported by `stats slowlog`: the settings and counters,
+   * then one line per entry, the most recent first:
+   * STAT slowlog_<n> <time ms> conn=<id> cmd=<command> key=<prefix> size=<bytes>
+   *   decode_us=<us> bus_us=<us> cache_us=<us> write_us=<us> total_us=<us> <slow|sampled>
+   * Key bytes which are not printable are shown as '.'.
+   * @param stats is the map of statistics
+   */
+  public void addStats(Map<String, String> stats) {
+    stats.put("slowlog_size", String.valueOf(size));
+    stats.put("slowlog_threshold_us", String.valueOf(TimeUnit.NANOSECONDS.toMicros(thresholdNanos)));
+    stats.put("slowlog_sample_rate", String.valueOf(sampleRate));
+    stats.put("slowlog_slow", String.valueOf(slow.sum()));
+    stats.put("slowlog_sampled", String.valueOf(sampled.sum()));
+    List<long[]> entries = new ArrayList<>();
+    for (Ring ring : rings) {
+      ring.collect(entries);
+    }
+    entries.sort((a, b) -> Long.compare(b[TIME], a[TIME]));
+    for (int n = 0; n < entries.size(); n++) {
+      stats.put("slowlog_" + n, format(entries.get(n)));
+    }
+  }
+
+  private static String format(long[] entry) {
+    long meta = entry[META];
+    StringBuilder line = new StringBuilder()
+      .append(entry[TIME])
+      .append(" conn=").append(entry[CONNECTION])
+      .append(" cmd=").append(COMMANDS[(int) (meta & 0xFF)].name().toLowerCase())
+      .append(" key=");
+    int length = (int) (meta >>> 16 & 0xFFFF);
+    for (int i = 0; i < length; i++) {
+      int b = (int) (entry[PREFIX + i / 8] >>> (8 * (i % 8)) & 0xFF);
+      line.append(b > ' ' && b < 0x7F ? (char) b : '.');
+    }
+    line.append(" size=").append(meta >>> 32);
+    long total = 0;
+    String[] names = {"decode_us", "bus_us", "cache_us", "write_us"};
+    for (int i = 0; i < names.length; i++) {
+      long nanos = Math.max(0, entry[STAGES + i]);
+      total += nanos;
+      line.append(' ').append(names[i]).append('=').append(TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+    line.append(" total_us=").append(TimeUnit.NANOSECONDS.toMicros(total));
+    line.append((meta & 1 << 8) != 0 ? " slow" : " sampled");
+    return line.toString();
+  }
+}
@@ -0,0 +1,231 @@
+package memcached.trace;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.VertxOptions;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.net.SocketAddress;
+import memcached.client.MemcacheClient;
+import memcached.client.MemcacheClientOptions;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/***
+ * LoadGenerator measures the latency of the requests to a running server, over TCP and over
+ * its Unix domain socket ("uds.path"), so that the two transports can be compared. It prints a
+ * line of results per transport: the throughput and the percentiles of the latency.
+ *
+ * The requests go through a MemcacheClient, which pipelines them over its connections. Each
+ * sender sends one request at a time (GETs, and SETs in the given ratio, of random keys), and
+ * waits for its response: the latency is the round trip of a request, and the number of
+ * senders the number of requests in flight. The keys are stored first, so that the GETs hit.
+ *
+ * The Unix domain socket requires the native transport, which the generator prefers: the
+ * netty epoll (or kqueue) library must be on the class path.
+ *
+ * Usage: LoadGenerator [options]
+ *   --tcp host:port           TCP address of the server, localhost:11211 by default
+ *   --uds path                path of the Unix domain socket of the server, not measured by default
+ *   --connections 2           connections of the client
+ *   --concurrency 16          requests in flight at once
+ *   --requests 100000         requests sent over each transport
+ *   --keys 1000               number of keys
+ *   --value-size 100          size of the values in bytes
+ *   --set-ratio 0.1           fraction of the requests which are SETs
+ *
+ * Run with: ./gradlew loadgen --args="--uds /tmp/memcached.sock"
+ */
+public class LoadGenerator {
+  private final Vertx vertx;
+  private final int connections;
+  private final int concurrency;
+  private final int keys;
+  private final Buffer value;
+  private final double setRatio;
+
+  /***
+   * @param vertx is the vertx instance the connections are made from
+   * @param connections is the number of connections of the client
+   * @param concurrency is the number of requests in flight at once
+   * @param keys is the number of keys
+   * @param valueSize is the size of the values
+   * @param setRatio is the fraction of the requests which are SETs
+   */
+  public LoadGenerator(Vertx vertx, int connections, int concurrency, int keys, int valueSize, double setRatio) {
+    this.vertx = vertx;
+    this.connections = connections;
+    this.concurrency = concurrency;
+    this.keys = keys;
+    byte[] bytes = new byte[valueSize];
+    Arrays.fill(bytes, (byte) 'x');
+    this.value = Buffer.buffer(bytes);
+    this.setRatio = setRatio;
+  }
+
+  /***
+   * The latencies measured over one transport.
+   */
+  public static class Result {
+    private final String target;
+    private final long[] latencies;       // Latency of each request (ns), sorted
+    private final long nanos;             // Time taken by all the requests
+
+    Result(String target, long[] latencies, long nanos) {
+      this.target = target;
+      this.latencies = latencies;
+      this.nanos = nanos;
+      Arrays.sort(latencies);
+    }
+
+    /***
+     * @param percentile is the percentile, between 0 and 100
+     * @return the latency below which the given percentage of the requests completed, in microseconds
+     */
+    public double latency(double percentile) {
+      if (latencies.length == 0) {
+        return 0;
+      }
+      int index = (int) Math.ceil(percentile / 100 * latencies.length) - 1;
+      return latencies[Math.max(0, Math.min(index, latencies.length - 1))] / 1000.0;
+    }
+
+    public double throughput() {
+      return nanos == 0 ? 0 : latencies.length * 1e9 / nanos;
+    }
+
+    /***
+     * @return the header of the lines of toString()
+     */
+    public static String header() {
+      return String.format(Locale.ROOT, "%-24s %10s %12s %10s %10s %10s %10s %10s",
+        "target", "requests", "ops/s", "p50_us", "p90_us", "p99_us", "p999_us", "max_us");
+    }
+
+    @Override
+    public String toString() {
+      return String.format(Locale.ROOT, "%-24s %10d %12.0f %10.1f %10.1f %10.1f %10.1f %10.1f",
+        target, latencies.length, throughput(), latency(50), latency(90), latency(99), latency(99.9), latency(100));
+    }
+  }
+
+  /***
+   * Store the keys, then measure the latency of the requests to a server.
+   * @param address is the address of the server
+   * @param target is the name of the transport, for the results
+   * @param requests is the number of requests measured
+   * @return the result, once all the requests have been answered
+   */
+  public CompletableFuture<Result> run(SocketAddress address, String target, int requests) {
+    CompletableFuture<Result> result = new CompletableFuture<>();
+    MemcacheClient client = MemcacheClient.create(vertx, new MemcacheClientOptions()
+      .setAddress(address)
+      .setConnections(connections));
+    send(client, 1, keys, true).whenComplete((filled, failure) -> {
+      if (failure != null) {
+        client.close();
+        result.completeExceptionally(failure);
+        return;
+      }
+      long start = System.nanoTime();
+      send(client, concurrency, requests, false).whenComplete((latencies, failed) -> {
+        client.close();
+        if (failed != null) {
+          result.completeExceptionally(failed);
+        } else {
+          result.complete(new Result(target, latencies, System.nanoTime() - start));
+        }
+      });
+    });
+    return result;
+  }
+
+  /***
+   * Send requests from a number of senders, each waiting for the response to its last
+   * request before sending the next one.
+   * @param client sends the requests
+   * @param count is the number of senders
+   * @param requests is the number of requests, across the senders
+   * @param fill indicates if the requests are the SETs of all the keys, in order
+   * @return the latency of each request in nanoseconds, once they have all been answered
+   */
+  private CompletableFuture<long[]> send(MemcacheClient client, int count, int requests, boolean fill) {
+    CompletableFuture<long[]> done = new CompletableFuture<>();
+    long[] latencies = new long[requests];
+    AtomicInteger issued = new AtomicInteger();
+    AtomicInteger answered = new AtomicInteger();
+    AtomicInteger running = new AtomicInteger(count);
+    for (int c = 0; c < count; c++) {
+      new Runnable() {
+        @Override
+        public void run() {
+          int index = issued.getAndIncrement();
+          if (index >= requests) {
+            if (running.decrementAndGet() == 0) {
+              done.complete(latencies);
+            }
+            return;
+          }
+          ThreadLocalRandom random = ThreadLocalRandom.current();
+          String key = "key:" + (fill ? index : random.nextInt(keys));
+          long sent = System.nanoTime();
+          Future<?> response = fill || random.nextDouble() < setRatio ? client.set(key, value) : client.get(key);
+          response.onComplete(ar -> {
+            if (ar.failed()) {
+              done.completeExceptionally(ar.cause());
+              return;
+            }
+            latencies[answered.getAndIncrement()] = System.nanoTime() - sent;
+            run();
+          });
+        }
+      }.run();
+    }
+    return done;
+  }
+
+  public static void main(String[] args) throws Exception {
+    String tcp = "localhost:11211";
+    String uds = null;
+    int connections = MemcacheClientOptions.DEFAULT_CONNECTIONS;
+    int concurrency = 16;
+    int requests = 100000;
+    int keys = 1000;
+    int valueSize = 100;
+    double setRatio = 0.1;
+    for (int i = 0; i + 1 < args.length; i += 2) {
+      switch (args[i]) {
+        case "--tcp": tcp = args[i + 1]; break;
+        case "--uds": uds = args[i + 1]; break;
+        case "--connections": connections = Integer.parseInt(args[i + 1]); break;
+        case "--concurrency": concurrency = Integer.parseInt(args[i + 1]); break;
+        case "--requests": requests = Integer.parseInt(args[i + 1]); break;
+        case "--keys": keys = Integer.parseInt(args[i + 1]); break;
+        case "--value-size": valueSize = Integer.parseInt(args[i + 1]); break;
+        case "--set-ratio": setRatio = Double.parseDouble(args[i + 1]); break;
+        default: throw new IllegalArgumentException("Unknown option " + args[i]);
+      }
+    }
+
+    Vertx vertx = Vertx.vertx(new VertxOptions().setPreferNativeTransport(true));
+    try {
+      LoadGenerator generator = new LoadGenerator(vertx, connections, concurrency, keys, valueSize, setRatio);
+      System.out.println(Result.header());
+      int colon = tcp.lastIndexOf(':');
+      SocketAddress address = SocketAddress.inetSocketAddress(Integer.parseInt(tcp.substring(colon + 1)), tcp.substring(0, colon));
+      System.out.println(generator.run(address, "tcp " + tcp, requests).get());
+      if (uds != null) {
+        if (!vertx.isNativeTransportEnabled()) {
+          System.err.println("The Unix domain socket requires the native transport (netty epoll or kqueue)");
+          System.exit(1);
+        }
+        System.out.println(generator.run(SocketAddress.domainSocketAddress(uds), "uds " + uds, requests).get());
+      }
+    } finally {
+      vertx.close();
+    }
+  }
+}
@@ -0,0 +1,117 @@
+package memcached.trace;
+
+import java.util.Locale;
+
+/***
+ * ReplayResult holds what a replay of a trace measured: the hit ratio and byte hit ratio of
+ * its GETs, the throughput of the requests, and the heap taken by the cache.
+ */
+public class ReplayResult {
+  private final String target;      // Cache implementation, or address of the server
+  private final long capacity;      // Capacity of the cache in bytes, 0 if unknown
+  private long requests;            // Requests replayed
+  private long gets;                // GETs replayed
+  private long hits;                // GETs which found their key
+  private long bytesRequested;      // Bytes of the values read by GETs
+  private long bytesHit;            // Bytes of the values found by GETs
+  private long skipped;             // Records which could not be replayed
+  private long nanos;               // Time spent in the cache (or waiting for the server)
+  private long heapBytes = -1;      // Heap taken by the cache after the replay, -1 if unknown
+  private long entries = -1;        // Entries in the cache after the replay, -1 if unknown
+
+  /***
+   * @param target is the cache implementation or the server replayed against
+   * @param capacity is the capacity of the cache in bytes, 0 if unknown
+   */
+  public ReplayResult(String target, long capacity) {
+    this.target = target;
+    this.capacity = capacity;
+  }
+
+  /***
+   * Account for a GET.
+   * @param size is the size of the value
+   * @param hit is whether the value was found
+   */
+  void get(int size, boolean hit) {
+    requests++;
+    gets++;
+    bytesRequested += size;
+    if (hit) {
+      hits++;
+      bytesHit += size;
+    }
+  }
+
+  /***
+   * Account for a request other than GET.
+   */
+  void request() {
+    requests++;
+  }
+
+  /***
+   * Account for a record which could not be replayed.
+   */
+  void skip() {
+    skipped++;
+  }
+
+  void addNanos(long nanos) {
+    this.nanos += nanos;
+  }
+
+  void setMemory(long heapBytes, long entries) {
+    this.heapBytes = heapBytes;
+    this.entries = entries;
+  }
+
+  public long getRequests() {
+    return requests;
+  }
+
+  public long getGets() {
+    return gets;
+  }
+
+  public long getHits() {
+    return hits;
+  }
+
+  public long getSkipped() {
+    return skipped;
+  }
+
+  public long getHeapBytes() {
+    return heapBytes;
+  }
+
+  public double hitRatio() {
+    return gets == 0 ? 0 : (double) hits / gets;
+  }
+
+  public double byteHitRatio() {
+    return bytesRequested == 0 ? 0 : (double) bytesHit / bytesRequested;
+  }
+
+  /***
+   * @return requests replayed per second
+   */
+  public double throughput() {
+    return nanos == 0 ? 0 : requests * 1e9 / nanos;
+  }
+
+  /***
+   * @return the header of the lines of toString()
+   */
+  public static String header() {
+    return String.format(Locale.ROOT, "%-10s %14s %12s %8s %8s %12s %14s %10s %8s",
+      "target", "capacity", "requests", "hit", "bytehit", "ops/s", "heap", "entries", "skipped");
+  }
+
+  @Override
+  public String toString() {
+    return String.format(Locale.ROOT, "%-10s %14d %12d %8.4f %8.4f %12.0f %14d %10d %8d",
+      target, capacity, requests, hitRatio(), byteHitRatio(), throughput(), heapBytes, entries, skipped);
+  }
+}
@@ -0,0 +1,155 @@
+package memcached.trace;
+
+import memcached.trace.TraceRecord.Op;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import static memcached.util.Constants.MAX_KEY_SIZE_IN_BYTES;
+
+/***
+ * ServerReplayer replays a key trace against a running server, over one connection of the
+ * text protocol: a GET which misses is followed by a SET of the key, a SET stores the key,
+ * and DELETEs (which the server does not support) are skipped, as are the keys the protocol
+ * cannot carry.
+ *
+ * Each request waits for its response, so the throughput is the one of a single client.
+ * The values sent are at most "maxValueSize" bytes (the server refuses larger ones), while
+ * the byte hit ratio counts the sizes of the trace.
+ */
+public class ServerReplayer {
+  private static final byte[] CRLF = {'\r', '\n'};
+
+  private final String host;
+  private final int port;
+  private final int maxValueSize;
+
+  /***
+   * @param host is the host of the server
+   * @param port is the port of the server
+   * @param maxValueSize is the largest value sent, which must be below the "item.size.max" of the server
+   */
+  public ServerReplayer(String host, int port, int maxValueSize) {
+    this.host = host;
+    this.port = port;
+    this.maxValueSize = maxValueSize;
+  }
+
+  /***
+   * Replay a trace against the server.
+   * @param reader is the trace
+   * @return the result of the replay
+   * @throws IOException if the trace cannot be read, or the server fails to answer
+   */
+  public ReplayResult replay(TraceReader reader) throws IOException {
+    ReplayResult result = new ReplayResult(host + ":" + port, 0);
+    try (Socket socket = new Socket(host, port)) {
+      socket.setTcpNoDelay(true);
+      InputStream in = new BufferedInputStream(socket.getInputStream());
+      OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+      TraceRecord record;
+      while ((record = reader.next()) != null) {
+        if (record.getOp() == Op.DELETE || !isValidKey(record.getKey())) {
+          result.skip();
+          continue;
+        }
+        long start = System.nanoTime();
+        if (record.getOp() == Op.GET) {
+          boolean hit = get(in, out, record.getKey());
+          if (!hit) {
+            set(in, out, record);
+          }
+          result.addNanos(System.nanoTime() - start);
+          result.get(record.getSize(), hit);
+        } else {
+          set(in, out, record);
+          result.addNanos(System.nanoTime() - start);
+          result.request();
+        }
+      }
+    }
+    return result;
+  }
+
+  private boolean get(InputStream in, OutputStream out, byte[] key) throws IOException {
+    out.write("get ".getBytes(StandardCharsets.US_ASCII));
+    out.write(key);
+    out.write(CRLF);
+    out.flush();
+    // A miss is answered with a lone CR, a hit with VALUE <key> <flags> <bytes>, the value and END
+    int first = in.read();
+    if (first == '\r') {
+      return false;
+    }
+    String header = (char) first + readLine(in);
+    if (!header.startsWith("VALUE ")) {
+      throw new IOException("Unexpected response to get: " + header);
+    }
+    String[] fields = header.split(" ");
+    skip(in, Integer.parseInt(fields[3]) + CRLF.length);
+    readLine(in);   // END
+    return true;
+  }
+
+  private void set(InputStream in, OutputStream out, TraceRecord record) throws IOException {
+    int length = Math.min(record.getSize(), maxValueSize);
+    out.write("set ".getBytes(StandardCharsets.US_ASCII));
+    out.write(record.getKey());
+    out.write((" 0 0 " + length).getBytes(StandardCharsets.US_ASCII));
+    out.write(CRLF);
+    out.write(new byte[length]);
+    out.write(CRLF);
+    out.flush();
+    String response = readLine(in);
+    if (!response.startsWith("STORED")) {
+      throw new IOException("Unexpected response to set: " + response);
+    }
+  }
+
+  private static boolean isValidKey(byte[] key) {
+    if (key.length == 0 || key.length > MAX_KEY_SIZE_IN_BYTES) {
+      return false;
+    }
+    for (byte b : key) {
+      if (b <= ' ' || b == 0x7F) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /***
+   * Read a line, without its CRLF.
+   */
+  private static String readLine(InputStream in) throws IOException {
+    ByteArrayOutputStream line = new ByteArrayOutputStream();
+    int b;
+    while ((b = in.read()) != '\n') {
+      if (b < 0) {
+        throw new IOException("Connection closed by the server");
+      }
+      line.write(b);
+    }
+    String s = new String(line.toByteArray(), StandardCharsets.US_ASCII);
+    return s.endsWith("\r") ? s.substring(0, s.length() - 1) : s;
+  }
+
+  private static void skip(InputStream in, int length) throws IOException {
+    while (length > 0) {
+      long n = in.skip(length);
+      if (n <= 0) {
+        if (in.read() < 0) {
+          throw new IOException("Connection closed by the server");
+        }
+        n = 1;
+      }
+      length -= n;
+    }
+  }
+}
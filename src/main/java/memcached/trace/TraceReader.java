@@ -0,0 +1,223 @@
+package memcached.trace;
+
+import memcached.trace.TraceRecord.Op;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/***
+ * TraceReader reads the records of a key trace, one at a time, so that traces much larger
+ * than the heap can be replayed. The supported formats are:
+ * - csv: "timestamp,op,key,size" lines, op being get, set or delete (lines starting with #
+ *   are skipped)
+ * - bin: records of a big endian timestamp (long), op (byte: 0 get, 1 set, 2 delete),
+ *   key length (short), key and size (int)
+ * - twitter: the lines of the Twitter cache traces (timestamp, anonymized key, key size, value
+ *   size, client id, operation, TTL)
+ * - oracle: the records of the "oracleGeneral" traces of libCacheSim (little endian timestamp
+ *   (uint32), object id (uint64), size (uint32) and next access (int64)), which are all reads
+ */
+public abstract class TraceReader implements Closeable {
+
+  public enum Format {
+    CSV,
+    BIN,
+    TWITTER,
+    ORACLE,
+  }
+
+  /***
+   * Open a trace file.
+   * @param path is the trace file
+   * @param format is the format of the file
+   * @return reader of the trace
+   * @throws IOException if the file cannot be opened
+   */
+  public static TraceReader open(Path path, Format format) throws IOException {
+    return open(new BufferedInputStream(Files.newInputStream(path), 65536), format);
+  }
+
+  /***
+   * Read a trace from a stream, which is closed with the reader.
+   * @param in is the trace
+   * @param format is the format of the trace
+   * @return reader of the trace
+   */
+  public static TraceReader open(InputStream in, Format format) {
+    switch (format) {
+      case CSV: return new CsvReader(in);
+      case BIN: return new BinaryReader(in);
+      case TWITTER: return new TwitterReader(in);
+      case ORACLE: return new OracleReader(in);
+      default: throw new IllegalArgumentException("Unknown trace format " + format);
+    }
+  }
+
+  /***
+   * Read the next record.
+   * @return the record, or null at the end of the trace
+   * @throws IOException if the trace cannot be read or is malformed
+   */
+  public abstract TraceRecord next() throws IOException;
+
+  /***
+   * Base of the text formats, which skips the empty lines and comments.
+   */
+  private abstract static class LineReader extends TraceReader {
+    private final BufferedReader reader;
+    private long lineNumber;
+
+    LineReader(InputStream in) {
+      reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public TraceRecord next() throws IOException {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        lineNumber++;
+        if (line.isEmpty() || line.startsWith("#")) {
+          continue;
+        }
+        try {
+          TraceRecord record = parse(line.split(","));
+          if (record != null) {
+            return record;
+          }
+        } catch (RuntimeException e) {
+          throw new IOException("Malformed trace line " + lineNumber + ": " + line, e);
+        }
+      }
+      return null;
+    }
+
+    /***
+     * @param fields are the comma separated fields of a line
+     * @return the record, or null if the line has no operation to replay
+     */
+    abstract TraceRecord parse(String[] fields);
+
+    @Override
+    public void close() throws IOException {
+      reader.close();
+    }
+  }
+
+  private static class CsvReader extends LineReader {
+    CsvReader(InputStream in) {
+      super(in);
+    }
+
+    @Override
+    TraceRecord parse(String[] fields) {
+      Op op = Op.valueOf(fields[1].trim().toUpperCase());
+      return new TraceRecord(Long.parseLong(fields[0].trim()), op,
+        fields[2].trim().getBytes(StandardCharsets.UTF_8), Integer.parseInt(fields[3].trim()));
+    }
+  }
+
+  private static class TwitterReader extends LineReader {
+    TwitterReader(InputStream in) {
+      super(in);
+    }
+
+    @Override
+    TraceRecord parse(String[] fields) {
+      Op op;
+      switch (fields[5]) {
+        case "get":
+        case "gets":
+          op = Op.GET;
+          break;
+        case "set":
+        case "add":
+        case "replace":
+        case "cas":
+          op = Op.SET;
+          break;
+        case "delete":
+          op = Op.DELETE;
+          break;
+        default:
+          return null;  // incr, decr, append, prepend: no value size to replay
+      }
+      int size = Integer.parseInt(fields[3]);
+      return new TraceRecord(Long.parseLong(fields[0]), op, fields[1].getBytes(StandardCharsets.UTF_8), size);
+    }
+  }
+
+  private static class BinaryReader extends TraceReader {
+    private final DataInputStream in;
+
+    BinaryReader(InputStream in) {
+      this.in = new DataInputStream(in);
+    }
+
+    @Override
+    public TraceRecord next() throws IOException {
+      long timestamp;
+      try {
+        timestamp = in.readLong();
+      } catch (EOFException e) {
+        return null;
+      }
+      int op = in.readByte();
+      if (op < 0 || op >= Op.values().length) {
+        throw new IOException("Malformed trace record: unknown operation " + op);
+      }
+      byte[] key = new byte[in.readUnsignedShort()];
+      in.readFully(key);
+      return new TraceRecord(timestamp, Op.values()[op], key, in.readInt());
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+  }
+
+  private static class OracleReader extends TraceReader {
+    private static final int RECORD_SIZE = 24;
+    private final InputStream in;
+    private final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+    OracleReader(InputStream in) {
+      this.in = in;
+    }
+
+    @Override
+    public TraceRecord next() throws IOException {
+      int read = 0;
+      while (read < RECORD_SIZE) {
+        int n = in.read(record.array(), read, RECORD_SIZE - read);
+        if (n < 0) {
+          if (read == 0) {
+            return null;
+          }
+          throw new IOException("Malformed trace: truncated record");
+        }
+        read += n;
+      }
+      long timestamp = record.getInt(0) & 0xFFFFFFFFL;
+      String key = Long.toUnsignedString(record.getLong(4));
+      int size = record.getInt(12);
+      return new TraceRecord(timestamp, Op.GET, key.getBytes(StandardCharsets.UTF_8), size);
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+  }
+}
@@ -0,0 +1,48 @@
+package memcached.trace;
+
+/***
+ * TraceRecord is one request of a key trace: when it was made, what it did and on which key,
+ * and the size of the value involved.
+ */
+public class TraceRecord {
+
+  public enum Op {
+    GET,      // Read of the key, filled on a miss
+    SET,      // Write of the key
+    DELETE,   // Removal of the key
+  }
+
+  private final long timestamp;
+  private final Op op;
+  private final byte[] key;
+  private final int size;
+
+  /***
+   * @param timestamp is the time of the request, in the unit of the trace
+   * @param op is the operation
+   * @param key is the key
+   * @param size is the size of the value in bytes
+   */
+  public TraceRecord(long timestamp, Op op, byte[] key, int size) {
+    this.timestamp = timestamp;
+    this.op = op;
+    this.key = key;
+    this.size = size;
+  }
+
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  public Op getOp() {
+    return op;
+  }
+
+  public byte[] getKey() {
+    return key;
+  }
+
+  public int getSize() {
+    return size;
+  }
+}
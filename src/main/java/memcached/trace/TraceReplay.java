@@ -0,0 +1,90 @@
+package memcached.trace;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import static memcached.util.Constants.MAX_VALUE_SIZE_IN_BYTES;
+
+/***
+ * Command line entry point of the trace replay harness. It replays a trace against each
+ * cache implementation and cache size of a sweep, or against a running server, and prints a
+ * line of results (see ReplayResult) per replay.
+ *
+ * Usage: TraceReplay <trace> [options]
+ *   --format csv|bin|twitter|oracle   format of the trace (see TraceReader), csv by default
+ *   --impl lru,confined               cache implementations to replay against, lru by default
+ *   --sizes 1m,16m,256m               cache sizes in bytes (with an optional k, m or g suffix)
+ *   --server host:port                replay against a running server instead
+ *   --value-max 1023                  largest value sent to the server
+ *
+ * Run with: ./gradlew replay --args="<trace> --sizes 1m,16m,256m"
+ */
+public class TraceReplay {
+
+  public static void main(String[] args) throws IOException {
+    if (args.length == 0 || args[0].startsWith("--")) {
+      System.err.println("Usage: TraceReplay <trace> [--format csv|bin|twitter|oracle] [--impl lru,confined]"
+        + " [--sizes 1m,16m] [--server host:port] [--value-max bytes]");
+      System.exit(1);
+    }
+    Path trace = Paths.get(args[0]);
+    TraceReader.Format format = TraceReader.Format.CSV;
+    String[] impls = {"lru"};
+    List<Long> sizes = new ArrayList<>();
+    String server = null;
+    int maxValueSize = MAX_VALUE_SIZE_IN_BYTES - 1;
+    for (int i = 1; i + 1 < args.length; i += 2) {
+      switch (args[i]) {
+        case "--format": format = TraceReader.Format.valueOf(args[i + 1].toUpperCase()); break;
+        case "--impl": impls = args[i + 1].split(","); break;
+        case "--sizes":
+          for (String size : args[i + 1].split(",")) {
+            sizes.add(parseSize(size));
+          }
+          break;
+        case "--server": server = args[i + 1]; break;
+        case "--value-max": maxValueSize = Integer.parseInt(args[i + 1]); break;
+        default: throw new IllegalArgumentException("Unknown option " + args[i]);
+      }
+    }
+
+    System.out.println(ReplayResult.header());
+    if (server != null) {
+      int colon = server.lastIndexOf(':');
+      ServerReplayer replayer = new ServerReplayer(server.substring(0, colon), Integer.parseInt(server.substring(colon + 1)), maxValueSize);
+      try (TraceReader reader = TraceReader.open(trace, format)) {
+        System.out.println(replayer.replay(reader));
+      }
+      return;
+    }
+    if (sizes.isEmpty()) {
+      sizes.add(parseSize("64m"));
+    }
+    for (String impl : impls) {
+      for (long size : sizes) {
+        try (TraceReader reader = TraceReader.open(trace, format)) {
+          System.out.println(TraceReplayer.replay(reader, impl, size));
+        }
+      }
+    }
+  }
+
+  /***
+   * @param size is a number of bytes, with an optional k, m or g suffix
+   * @return the number of bytes
+   */
+  static long parseSize(String size) {
+    String s = size.trim().toLowerCase();
+    long unit = 1;
+    switch (s.charAt(s.length() - 1)) {
+      case 'k': unit = 1L << 10; break;
+      case 'm': unit = 1L << 20; break;
+      case 'g': unit = 1L << 30; break;
+      default: return Long.parseLong(s);
+    }
+    return Long.parseLong(s.substring(0, s.length() - 1)) * unit;
+  }
+}
@@ -0,0 +1,98 @@
+package memcached.trace;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import memcached.cache.ConfinedLRUCache;
+import memcached.cache.LRUCache;
+import memcached.cache.MemCache;
+import memcached.trace.TraceRecord.Op;
+
+import java.io.IOException;
+
+/***
+ * TraceReplayer replays a key trace against a MemCache implementation, as the cache engine
+ * would use it: keyed by ByteBuf, and bounded by the bytes of the keys and values (see
+ * "cache.memory.max"). Only the sizes of the values are stored, so that traces of large
+ * working sets can be replayed in a small heap.
+ *
+ * A GET which misses fills the key, as a client of a look-aside cache would, a SET stores
+ * the key and a DELETE removes it. The throughput counts the time spent in the cache only,
+ * not in reading the trace.
+ */
+public class TraceReplayer {
+
+  /***
+   * Create a cache bounded in bytes, weighted like the cache engine weighs its items.
+   * @param impl is the implementation, as in "cache.impl": lru or confined
+   * @param capacity is the capacity in bytes
+   * @return the cache
+   */
+  public static MemCache<ByteBuf, Integer> createCache(String impl, long capacity) {
+    switch (impl) {
+      case "lru": return new LRUCache<>(capacity, (k, v) -> Math.max(1, k.readableBytes() + v));
+      case "confined": return new ConfinedLRUCache<>(capacity, (k, v) -> Math.max(1, k.readableBytes() + v));
+      default: throw new IllegalArgumentException("Unknown cache implementation " + impl);
+    }
+  }
+
+  /***
+   * Replay a trace against a new cache, and measure the heap it takes at the end.
+   * @param reader is the trace
+   * @param impl is the cache implementation
+   * @param capacity is the capacity of the cache in bytes
+   * @return the result of the replay
+   * @throws IOException if the trace cannot be read
+   */
+  public static ReplayResult replay(TraceReader reader, String impl, long capacity) throws IOException {
+    long before = usedHeap();
+    MemCache<ByteBuf, Integer> cache = createCache(impl, capacity);
+    ReplayResult result = replay(reader, cache, new ReplayResult(impl, capacity));
+    result.setMemory(usedHeap() - before, cache.size());
+    return result;
+  }
+
+  /***
+   * Replay a trace against a cache.
+   * @param reader is the trace
+   * @param cache is the cache
+   * @param result accumulates the measures
+   * @return the result
+   * @throws IOException if the trace cannot be read
+   */
+  public static ReplayResult replay(TraceReader reader, MemCache<ByteBuf, Integer> cache, ReplayResult result) throws IOException {
+    TraceRecord record;
+    while ((record = reader.next()) != null) {
+      ByteBuf key = Unpooled.wrappedBuffer(record.getKey());
+      Integer size = record.getSize();
+      long start = System.nanoTime();
+      if (record.getOp() == Op.GET) {
+        boolean hit = cache.get(key) != null;
+        if (!hit) {
+          cache.set(key, size);
+        }
+        result.addNanos(System.nanoTime() - start);
+        result.get(size, hit);
+      } else {
+        if (record.getOp() == Op.SET) {
+          cache.set(key, size);
+        } else {
+          Integer stored = cache.get(key);
+          if (stored != null) {
+            cache.remove(key, stored);
+          }
+        }
+        result.addNanos(System.nanoTime() - start);
+        result.request();
+      }
+    }
+    return result;
+  }
+
+  private static long usedHeap() {
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    Runtime runtime = Runtime.getRuntime();
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
@@ -5,9 +5,53 @@ package memcached.util;
  */
 public class Constants {
   public static final int DEFAULT_PORT = 11211;     // Default port for memcached
+  public static final int DEFAULT_UDP_DATAGRAM_SIZE = 1400;       // Largest UDP response datagram, header included, as memcached
   public static final String ADDRESS = "memcache";  // Event bus address to which verticles subscribe/publish
   public static final int NUM_CACHE_ENTRIES = 10000;
   public static final int MAX_KEY_SIZE_IN_BYTES = 256;
-  public static final int MAX_VALUE_SIZE_IN_BYTES = 1024;
+  public static final int MAX_VALUE_SIZE_IN_BYTES = 1024;         // Default limit on value size, see "item.size.max"
+  public static final int DEFAULT_CHUNK_SIZE_IN_BYTES = 16384;    // Size of the chunks large values are received into
+  public static final int MAX_LINE_SIZE_IN_BYTES = 2048;          // Limit on the size of a command line
+  public static final int DEFAULT_COMPRESSION_FLAG = 0x8000;      // Flag bit of values compressed by the server
+  public static final int DEFAULT_HOTKEYS_COUNT = 10;             // Number of hot keys reported by `stats hotkeys`
+  public static final double DEFAULT_HOTKEYS_SAMPLE_RATE = 0.1;   // Fraction of accesses fed to the hot key tracker
+  public static final long DEFAULT_HOTKEYS_WINDOW_MS = 10000;     // Window over which hot key QPS is estimated
+  public static final double DEFAULT_MRC_SAMPLE_RATE = 0.01;      // Initial fraction of keys sampled for `stats mrc`
+  public static final int DEFAULT_MRC_SAMPLES = 8192;             // Maximum number of keys tracked for `stats mrc`
+  public static final int DEFAULT_MRC_BUCKETS = 20;               // Number of cache sizes reported by `stats mrc`
+  public static final String DEFAULT_TENANT_SEPARATOR = ":";      // Ends the tenant prefix of the keys, see "tenants"
+  public static final int DEFAULT_TRACKING_KEYS_MAX = 65536;      // Keys remembered for the connections tracking their reads
+  public static final int DEFAULT_MAX_CONNECTIONS = 1024;         // Limit on open client connections, see "conn.max"
+  public static final int DEFAULT_MAX_INFLIGHT_REQUESTS = 128;    // Limit on requests of a connection waiting for the cache
+  public static final int DEFAULT_WRITE_QUEUE_MAX_SIZE_IN_BYTES = 1048576; // Limit on responses of a connection not yet sent
+  public static final int DEFAULT_EVENTBUS_BATCH_MAX = 64;        // Commands of a socket read sent in one event bus message
+  public static final String DEFAULT_DUMP_DIR = ".";              // Directory of the dump files, see "dump.dir"
+  public static final int DEFAULT_DUMP_BATCH_SIZE = 1000;         // Items written per event loop turn by a dump
+  public static final int DUMP_BATCH_SIZE_IN_BYTES = 65536;       // Bytes written per event loop turn by a dump
+  public static final long DEFAULT_CRAWLER_INTERVAL_MS = 10000;   // Time between two passes of the crawler
+  public static final int DEFAULT_CRAWLER_STEP_ITEMS = 100;       // Items checked per event loop turn by the crawler
+  public static final int DEFAULT_SCAN_COUNT = 100;               // Keys examined by a SCAN batch, unless it gives a count
+  public static final int DEFAULT_SCAN_COUNT_MAX = 1000;          // Limit on the keys examined by a SCAN batch
+  public static final int DEFAULT_SCAN_CURSORS_MAX = 64;          // Scans open at once, the least recently used is dropped beyond
+  public static final long DEFAULT_SCAN_CURSOR_TTL_MS = 60000;    // Time after which an unused scan cursor is dropped
+  public static final int DEFAULT_MAX_LEASES = 10000;             // Limit on leases held at once, see "lease.max"
+  public static final long DEFAULT_LEASE_TTL_MS = 5000;           // Time after which an unused lease can be taken over
+  public static final int DEFAULT_EXT_PAGE_SIZE_IN_BYTES = 67108864;  // Size of the pages of the ext store file
+  public static final int DEFAULT_EXT_PAGES = 16;                 // Number of pages of the ext store file
+  public static final int DEFAULT_EXT_BATCH_SIZE_IN_BYTES = 1048576;  // Bytes written at once to the ext store
+  public static final int DEFAULT_EXT_IO_THREADS = 4;             // Threads reading the ext store
+  public static final long DEFAULT_EXT_COMPACT_INTERVAL_MS = 10000;   // Time between two compactions of the ext store
+  public static final double DEFAULT_EXT_COMPACT_RATIO = 0.5;     // Fraction of live bytes under which a page is compacted
+  public static final int DEFAULT_WORKER_POOL_SIZE = 4;           // Threads running the heavy work, see "worker.pool.size"
+  public static final int DEFAULT_WORKER_QUEUE_MAX = 256;         // Limit on tasks waiting or running on the worker pool
+  public static final int DEFAULT_WORKER_OFFLOAD_SIZE_IN_BYTES = 65536;  // Size from which values are decompressed by the workers
+  public static final long DEFAULT_PROBE_INTERVAL_MS = 100;       // Time between two probes of an event loop
+  public static final long DEFAULT_PROBE_STALL_MS = 20;           // Lag from which an event loop probe counts as a stall
+  public static final int DEFAULT_SLOWLOG_SIZE = 128;             // Requests kept per event loop by the slow log, 0 disables it
+  public static final long DEFAULT_SLOWLOG_THRESHOLD_US = 10000;  // Latency from which a request is logged as slow
+  public static final double DEFAULT_SLOWLOG_SAMPLE_RATE = 0.001; // Fraction of the other requests logged
+  public static final int DEFAULT_SLOWLOG_KEY_PREFIX = 16;        // Bytes of the key kept by the slow log
+  public static final String DEFAULT_SHELL_HOST = "localhost";    // Interface of the admin shell, only local clients by default
+  public static final int LOG_QUEUE_SIZE = 1024;                  // Limit on log messages waiting to be printed
   private Constants() {}
 }
@@ -0,0 +1,54 @@
+package memcached.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+import static memcached.util.Constants.LOG_QUEUE_SIZE;
+
+/***
+ * Log prints messages to the standard output from a background thread, so that the event
+ * loops never block on the console (which may be slow, or a full pipe).
+ *
+ * Messages wait in a bounded queue of LOG_QUEUE_SIZE messages. Messages logged while the
+ * queue is full are dropped and counted, rather than blocking the caller.
+ */
+public final class Log {
+  private static final BlockingQueue<String> queue = new ArrayBlockingQueue<>(LOG_QUEUE_SIZE);
+  private static final LongAdder dropped = new LongAdder();   // Number of messages dropped because the queue was full
+
+  static {
+    Thread printer = new Thread(Log::print, "memcached-log");
+    printer.setDaemon(true);
+    printer.start();
+  }
+
+  private Log() {}
+
+  /***
+   * Log a message, without waiting for it to be printed.
+   * @param message is the message
+   */
+  public static void info(String message) {
+    if (!queue.offer(message)) {
+      dropped.increment();
+    }
+  }
+
+  /***
+   * Returns the number of messages dropped because the queue was full.
+   */
+  public static long dropped() {
+    return dropped.sum();
+  }
+
+  private static void print() {
+    try {
+      while (true) {
+        System.out.println(queue.take());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
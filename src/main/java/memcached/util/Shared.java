@@ -0,0 +1,46 @@
+package memcached.util;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+
+import java.util.function.Supplier;
+
+/***
+ * Shared holds the components shared by the verticles of a Vert.x instance (such as the
+ * connection limiter, the worker pool or the slow log), in a local map of the instance.
+ *
+ * The verticles are deployed concurrently, and each asks for the components it uses with its
+ * own configuration: whichever asks first creates a component, from its configuration, and
+ * the configuration of the others is ignored. All the verticles are deployed with the same
+ * configuration (see MainVerticle), so this only matters to tests deploying them one by one.
+ */
+public final class Shared {
+  private static final String SHARED_MAP = "memcached.shared";   // Local map holding the components
+  private static final Object LOCK = new Object();                // Makes sure a component is only created once
+
+  private Shared() {}
+
+  /***
+   * Returns a component shared by the verticles of a Vert.x instance, creating it if needed.
+   * @param vertx is the vertx instance
+   * @param name is the name of the component
+   * @param factory creates the component, once per Vert.x instance
+   * @return the shared component
+   */
+  public static <T extends Shareable> T get(Vertx vertx, String name, Supplier<T> factory) {
+    LocalMap<String, T> components = vertx.sharedData().getLocalMap(SHARED_MAP);
+    T component = components.get(name);
+    if (component != null) {
+      return component;
+    }
+    synchronized (LOCK) {
+      component = components.get(name);
+      if (component == null) {
+        component = factory.get();
+        components.put(name, component);
+      }
+      return component;
+    }
+  }
+}
@@ -0,0 +1,54 @@
+package memcached;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import memcached.stats.SlowLog;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+@ExtendWith(VertxExtension.class)
+public class AdminShellTest {
+
+  @Test
+  void tuneOverTheShell(Vertx vertx, VertxTestContext testContext) {
+    JsonObject config = new JsonObject().put("tcp.port", 11227).put("shell.port", 11228);
+    vertx.deployVerticle(MainVerticle.class.getName(), new DeploymentOptions().setConfig(config), testContext.succeeding(id ->
+      vertx.createNetClient().connect(11228, "localhost", testContext.succeeding(socket -> {
+        Buffer received = Buffer.buffer();
+        socket.handler(buffer -> {
+          received.appendBuffer(buffer);
+          // The shell echoes the command, then prints the new value on its own line
+          if (received.toString().contains("\nslowlog.sample.rate 0.5")) {
+            testContext.verify(() -> {
+              assert SlowLog.shared(vertx, config).getSampleRate() == 0.5;
+              testContext.completeNow();
+            });
+          }
+        });
+        socket.write("cache-tune slowlog.sample.rate 0.5\r\n");
+      }))));
+  }
+
+  @Test
+  void rejectInvalidValue(Vertx vertx, VertxTestContext testContext) {
+    JsonObject config = new JsonObject().put("tcp.port", 11229).put("shell.port", 11230);
+    vertx.deployVerticle(MainVerticle.class.getName(), new DeploymentOptions().setConfig(config), testContext.succeeding(id ->
+      vertx.createNetClient().connect(11230, "localhost", testContext.succeeding(socket -> {
+        Buffer received = Buffer.buffer();
+        socket.handler(buffer -> {
+          received.appendBuffer(buffer);
+          if (received.toString().contains("Invalid value")) {
+            testContext.verify(() -> {
+              assert SlowLog.shared(vertx, config).getSampleRate() == 0.001;
+              testContext.completeNow();
+            });
+          }
+        });
+        socket.write("cache-tune slowlog.sample.rate 2\r\n");
+      }))));
+  }
+}
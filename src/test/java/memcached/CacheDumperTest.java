@@ -0,0 +1,143 @@
+package memcached;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import memcached.common.MemcacheMessage;
+import memcached.common.MemcacheMessage.CommandType;
+import memcached.dump.DumpFormat;
+import memcached.dump.DumpReader;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static memcached.util.Constants.ADDRESS;
+
+@ExtendWith(VertxExtension.class)
+public class CacheDumperTest {
+
+  private ByteBuf buffer(String s) {
+    return Unpooled.copiedBuffer(s, Charset.defaultCharset());
+  }
+
+  @Test
+  void readDumpByteByByte(Vertx vertx, VertxTestContext testContext) {
+    ByteBuf dump = Unpooled.buffer();
+    DumpFormat.writeHeader(dump);
+    DumpFormat.writeRecord(dump, buffer("abc"), 3, 0, buffer("hello"));
+    DumpFormat.writeRecord(dump, buffer("empty"), 0, 1234, Unpooled.EMPTY_BUFFER);
+    DumpFormat.writeEnd(dump);
+
+    List<String> items = new ArrayList<>();
+    DumpReader reader = new DumpReader(UnpooledByteBufAllocator.DEFAULT, 1024, (key, flags, exptime, value) -> {
+      items.add(new String(key, Charset.defaultCharset()) + " " + flags + " " + exptime + " " + value.toString(Charset.defaultCharset()));
+      value.release();
+    });
+    DumpReader.State state = DumpReader.State.INCOMPLETE;
+    while (dump.isReadable()) {
+      state = reader.read(dump.readSlice(1));
+    }
+    assert state == DumpReader.State.COMPLETE;
+    assert items.size() == 2;
+    assert items.get(0).equals("abc 3 0 hello");
+    assert items.get(1).equals("empty 0 1234 ");
+    testContext.completeNow();
+  }
+
+  @Test
+  void rejectInvalidDump(Vertx vertx, VertxTestContext testContext) {
+    DumpReader reader = new DumpReader(UnpooledByteBufAllocator.DEFAULT, 1024, (key, flags, exptime, value) -> value.release());
+    DumpReader.State state = reader.read(buffer("set abc 0 0 5\r\n"));
+    assert state == DumpReader.State.ERROR;
+    testContext.completeNow();
+  }
+
+  @Test
+  void rejectOversizedValue(Vertx vertx, VertxTestContext testContext) {
+    List<String> items = new ArrayList<>();
+    ByteBuf dump = Unpooled.buffer();
+    DumpFormat.writeHeader(dump);
+    DumpFormat.writeRecord(dump, buffer("abc"), 0, 0, buffer("hello"));
+    DumpFormat.writeRecord(dump, buffer("big"), 0, 0, Unpooled.wrappedBuffer(new byte[5]));
+    // A corrupt length field, asking for about 2 GB
+    dump.setInt(dump.writerIndex() - 5 - 3 - 4, Integer.MAX_VALUE);
+    DumpReader reader = new DumpReader(UnpooledByteBufAllocator.DEFAULT, 5, (key, flags, exptime, value) -> {
+      items.add(new String(key, Charset.defaultCharset()));
+      value.release();
+    });
+    DumpReader.State state = reader.read(dump);
+    assert state == DumpReader.State.ERROR;
+    assert items.equals(Collections.singletonList("abc"));
+
+    // Values up to the limit are accepted, larger ones are not
+    ByteBuf larger = Unpooled.buffer();
+    DumpFormat.writeHeader(larger);
+    DumpFormat.writeRecord(larger, buffer("abc"), 0, 0, buffer("hello!"));
+    reader = new DumpReader(UnpooledByteBufAllocator.DEFAULT, 5, (key, flags, exptime, value) -> value.release());
+    state = reader.read(larger);
+    assert state == DumpReader.State.ERROR;
+    testContext.completeNow();
+  }
+
+  @Test
+  void dumpAndBulkLoad(Vertx vertx, VertxTestContext testContext) throws IOException {
+    // Export the cache to a file, then send the file to the bulk load port
+    int port = 11215;
+    int loadPort = 11216;
+    File dir = Files.createTempDirectory("dump").toFile();
+    JsonObject config = new JsonObject()
+      .put("tcp.port", port)
+      .put("load.port", loadPort)
+      .put("dump.dir", dir.getPath())
+      .put("dump.batch.size", 1);
+    vertx.deployVerticle(MainVerticle.class.getName(), new DeploymentOptions().setConfig(config), testContext.succeeding(id ->
+      vertx.createNetClient().connect(port, "localhost", testContext.succeeding(socket -> {
+        Buffer received = Buffer.buffer();
+        socket.handler(buffer -> {
+          received.appendBuffer(buffer);
+          if (!received.toString().equals("STORED \r\nSTORED \r\nOK\r\n")) {
+            return;
+          }
+          // Wait for the export to complete
+          boolean[] exported = {false};
+          vertx.setPeriodic(10, timer -> {
+            MemcacheMessage stats = new MemcacheMessage(CommandType.STATS, "dump".getBytes(), null, 0);
+            vertx.eventBus().send(ADDRESS, JsonObject.mapFrom(stats), testContext.succeeding(reply -> {
+              MemcacheMessage response = Json.decodeValue(reply.body().toString(), MemcacheMessage.class);
+              if (exported[0] || !response.getStats().get("dump_state").equals("done")) {
+                return;
+              }
+              exported[0] = true;
+              vertx.cancelTimer(timer);
+              assert response.getStats().get("dump_items").equals("2");
+              Buffer dump = vertx.fileSystem().readFileBlocking(new File(dir, "test.dump").getPath());
+              vertx.createNetClient().connect(loadPort, "localhost", testContext.succeeding(loader -> {
+                Buffer loaded = Buffer.buffer();
+                loader.handler(loaded::appendBuffer);
+                loader.closeHandler(v -> testContext.verify(() -> {
+                  assert loaded.toString().equals("LOADED 2\r\n");
+                  testContext.completeNow();
+                }));
+                loader.write(dump);
+              }));
+            }));
+          });
+        });
+        socket.write("set abc 0 0 5\r\nhello\r\nset def 7 0 3\r\nxyz\r\ndump test.dump\r\n");
+      }))));
+  }
+}
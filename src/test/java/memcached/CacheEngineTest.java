@@ -0,0 +1,259 @@
+package memcached;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.Json;
+import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import memcached.cache.CacheEngine;
+import memcached.command.Decoder;
+import memcached.common.MemcacheMessage;
+import memcached.common.MemcacheMessage.CommandType;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import static memcached.util.Constants.ADDRESS;
+
+@ExtendWith(VertxExtension.class)
+public class CacheEngineTest {
+
+  @Test
+  void handleSetAndGet(Vertx vertx, VertxTestContext testContext) {
+    CacheEngine engine = new CacheEngine(new JsonObject());
+    engine.process(new MemcacheMessage(CommandType.SET, "abc".getBytes(), "hello".getBytes(), 5));
+    MemcacheMessage response = engine.process(new MemcacheMessage(CommandType.GET, "abc".getBytes(), null, 0));
+    assert Arrays.equals(response.getValue(), "hello".getBytes());
+
+    MemcacheMessage stats = engine.process(new MemcacheMessage(CommandType.STATS, new byte[0], null, 0));
+    assert stats.getStats().get("get_hits").equals("1");
+    assert stats.getStats().get("cmd_set").equals("1");
+    testContext.completeNow();
+  }
+
+  @Test
+  void expireItems(Vertx vertx, VertxTestContext testContext) {
+    CacheEngine engine = new CacheEngine(new JsonObject());
+    Decoder decoder = new Decoder();
+    // Negative expiration times have already expired, large ones are Unix times (here in 1970)
+    for (String command : new String[]{"set abc 0 -1 5\r\n", "set def 0 2592001 5\r\n", "set ghi 0 3600 5\r\n"}) {
+      MemcacheMessage set = decoder.decode(Unpooled.copiedBuffer(command, Charset.defaultCharset()));
+      set.setValue("hello".getBytes());
+      engine.process(set);
+    }
+    assert engine.process(new MemcacheMessage(CommandType.GET, "abc".getBytes(), null, 0)).getValue() == null;
+    assert engine.process(new MemcacheMessage(CommandType.GET, "def".getBytes(), null, 0)).getValue() == null;
+    assert Arrays.equals(engine.process(new MemcacheMessage(CommandType.GET, "ghi".getBytes(), null, 0)).getValue(), "hello".getBytes());
+    testContext.completeNow();
+  }
+
+  @Test
+  void touchItems(Vertx vertx, VertxTestContext testContext) {
+    CacheEngine engine = new CacheEngine(new JsonObject());
+    Decoder decoder = new Decoder();
+    translate(engine, decoder, "set abc 3 3600 5\r\n", "hello");
+    translate(engine, decoder, "set def 0 3600 5\r\n", "world");
+
+    // Touching with a negative expiration time expires the item right away
+    MemcacheMessage touch = engine.process(decoder.decode(buffer("touch abc -1\r\n")));
+    assert decoder.translate(touch).toString(Charset.defaultCharset()).equals("TOUCHED\r\n");
+    assert engine.process(new MemcacheMessage(CommandType.GET, "abc".getBytes(), null, 0)).getValue() == null;
+    touch = engine.process(decoder.decode(buffer("touch abc 60 noreply\r\n")));
+    assert decoder.translate(touch).toString(Charset.defaultCharset()).equals("NOT_FOUND\r\n");
+
+    // GAT returns the value, and replaces the expiration time of the item in place
+    ByteBuf stored = engine.iterator().next().getValue().getData();
+    MemcacheMessage gat = engine.process(decoder.decode(buffer("gat 0 def\r\n")));
+    assert decoder.translate(gat).toString(Charset.defaultCharset()).equals("VALUE def 0 5\r\nworld\r\nEND\r\n");
+    assert engine.iterator().next().getValue().getData() == stored;
+    assert engine.iterator().next().getValue().getExpiry() == 0;
+    MemcacheMessage gats = engine.process(decoder.decode(buffer("gats -1 def\r\n")));
+    assert decoder.translate(gats).toString(Charset.defaultCharset()).equals("VALUE def 0 5 0\r\nworld\r\nEND\r\n");
+    assert engine.process(new MemcacheMessage(CommandType.GET, "def".getBytes(), null, 0)).getValue() == null;
+
+    MemcacheMessage stats = engine.process(new MemcacheMessage(CommandType.STATS, new byte[0], null, 0));
+    assert stats.getStats().get("cmd_touch").equals("2");
+    assert stats.getStats().get("touch_hits").equals("1");
+    testContext.completeNow();
+  }
+
+  @Test
+  void flushItems(Vertx vertx, VertxTestContext testContext) {
+    CacheEngine engine = new CacheEngine(new JsonObject());
+    Decoder decoder = new Decoder();
+    engine.process(new MemcacheMessage(CommandType.SET, "abc".getBytes(), "hello".getBytes(), 5));
+    MemcacheMessage flush = engine.process(decoder.decode(Unpooled.copiedBuffer("flush_all\r\n", Charset.defaultCharset())));
+    assert decoder.translate(flush).toString(Charset.defaultCharset()).equals("OK\r\n");
+    assert engine.process(new MemcacheMessage(CommandType.GET, "abc".getBytes(), null, 0)).getValue() == null;
+
+    // Items stored after the flush are kept, until a delayed flush takes effect. Those stored
+    // during the millisecond of the flush are flushed too.
+    long flushed = System.currentTimeMillis();
+    while (System.currentTimeMillis() <= flushed) {
+      Thread.yield();
+    }
+    engine.process(new MemcacheMessage(CommandType.SET, "abc".getBytes(), "world".getBytes(), 5));
+    engine.process(decoder.decode(Unpooled.copiedBuffer("flush_all 60\r\n", Charset.defaultCharset())));
+    assert Arrays.equals(engine.process(new MemcacheMessage(CommandType.GET, "abc".getBytes(), null, 0)).getValue(), "world".getBytes());
+    MemcacheMessage stats = engine.process(new MemcacheMessage(CommandType.STATS, new byte[0], null, 0));
+    assert stats.getStats().get("cmd_flush").equals("2");
+    testContext.completeNow();
+  }
+
+  @Test
+  void flushItemsStoredDuringTheFlushMillisecond(Vertx vertx, VertxTestContext testContext) {
+    CacheEngine engine = new CacheEngine(new JsonObject());
+    Decoder decoder = new Decoder();
+    // Set then flush right away, many times so that most happen within one millisecond
+    for (int i = 0; i < 1000; i++) {
+      byte[] key = ("key" + i).getBytes();
+      engine.process(new MemcacheMessage(CommandType.SET, key, "hello".getBytes(), 5));
+      engine.process(decoder.decode(Unpooled.copiedBuffer("flush_all\r\n", Charset.defaultCharset())));
+      MemcacheMessage get = engine.process(new MemcacheMessage(CommandType.GET, key, null, 0));
+      assert get.getValue() == null;
+    }
+    testContext.completeNow();
+  }
+
+  @Test
+  void leaseOnMiss(Vertx vertx, VertxTestContext testContext) {
+    CacheEngine engine = new CacheEngine(new JsonObject());
+    Decoder decoder = new Decoder();
+
+    // The first client to miss gets the lease, the others are told to retry
+    MemcacheMessage first = engine.process(decoder.decode(buffer("lget abc\r\n")));
+    long token = first.getToken();
+    assert token != 0;
+    assert decoder.translate(first).toString(Charset.defaultCharset()).equals("LEASE abc " + token + "\r\nEND\r\n");
+    MemcacheMessage second = engine.process(decoder.decode(buffer("lget abc\r\n")));
+    assert decoder.translate(second).toString(Charset.defaultCharset()).equals("HOT_MISS abc\r\nEND\r\n");
+
+    // Only the lease holder fills the key
+    assert translate(engine, decoder, "lset abc 0 0 5 " + (token + 1) + "\r\n", "hello").equals("NOT_STORED\r\n");
+    assert translate(engine, decoder, "lset abc 0 0 5 " + token + "\r\n", "hello").equals("STORED \r\n");
+    assert Arrays.equals(engine.process(new MemcacheMessage(CommandType.LGET, "abc".getBytes(), null, 0)).getValue(), "hello".getBytes());
+
+    // A SET made while the lease is held makes the holder's value stale
+    long other = engine.process(decoder.decode(buffer("lget def\r\n"))).getToken();
+    translate(engine, decoder, "set def 0 0 5\r\n", "fresh");
+    assert translate(engine, decoder, "lset def 0 0 5 " + other + "\r\n", "stale").equals("NOT_STORED\r\n");
+    assert Arrays.equals(engine.process(new MemcacheMessage(CommandType.GET, "def".getBytes(), null, 0)).getValue(), "fresh".getBytes());
+
+    MemcacheMessage stats = engine.process(new MemcacheMessage(CommandType.STATS, new byte[0], null, 0));
+    assert stats.getStats().get("lease_grants").equals("2");
+    assert stats.getStats().get("lease_hot_misses").equals("1");
+    assert stats.getStats().get("lease_stale_sets").equals("2");
+    testContext.completeNow();
+  }
+
+  @Test
+  void serveStaleValueUnderLease(Vertx vertx, VertxTestContext testContext) {
+    CacheEngine engine = new CacheEngine(new JsonObject());
+    Decoder decoder = new Decoder();
+    translate(engine, decoder, "set abc 3 -1 5\r\n", "hello");
+
+    // The expired value is kept by the lease, and served to the other clients
+    assert engine.process(decoder.decode(buffer("lget abc\r\n"))).getToken() != 0;
+    MemcacheMessage stale = engine.process(decoder.decode(buffer("lget abc\r\n")));
+    assert stale.isStale();
+    assert decoder.translate(stale).toString(Charset.defaultCharset()).equals("STALE abc 3 5\r\nhello\r\nEND\r\n");
+    testContext.completeNow();
+  }
+
+  private ByteBuf buffer(String s) {
+    return Unpooled.copiedBuffer(s, Charset.defaultCharset());
+  }
+
+  /***
+   * Process a SET or LSET command, and return the response sent to the client.
+   */
+  private String translate(CacheEngine engine, Decoder decoder, String line, String value) {
+    MemcacheMessage set = decoder.decode(buffer(line));
+    set.setValue(value.getBytes());
+    return decoder.translate(engine.process(set)).toString(Charset.defaultCharset());
+  }
+
+  @Test
+  void sendSerializedResponse(Vertx vertx, VertxTestContext testContext) {
+    CacheEngine engine = new CacheEngine(new JsonObject());
+    Decoder decoder = new Decoder();
+    String response = "VALUE abc 3 5\r\nhello\r\nEND\r\n";
+
+    // Store the value within its GET response, as the command verticle does with "item.wire"
+    MemcacheMessage set = decoder.decode(Unpooled.copiedBuffer("set abc 3 0 5\r\n", Charset.defaultCharset()));
+    ByteBuf data = Unpooled.copiedBuffer(response, Charset.defaultCharset());
+    set.setResponseBuf(data);
+    set.setValueBuf(data.slice(15, 5));
+    engine.process(set).release();
+
+    MemcacheMessage get = engine.process(new MemcacheMessage(CommandType.GET, "abc".getBytes(), null, 0));
+    assert Arrays.equals(get.getValue(), "hello".getBytes());
+    ByteBuf b = decoder.translate(get);
+    assert b.toString(Charset.defaultCharset()).equals(response);
+    get.release();
+    b.release();
+    assert data.refCnt() == 1;    // Only held by the cache
+    testContext.completeNow();
+  }
+
+  @Test
+  void shareEngine(Vertx vertx, VertxTestContext testContext) {
+    JsonObject config = new JsonObject().put("cache.direct", true);
+    assert CacheEngine.shared(vertx, config) == CacheEngine.shared(vertx, config);
+    testContext.completeNow();
+  }
+
+  @Test
+  void rejectConfinedCache(Vertx vertx, VertxTestContext testContext) {
+    JsonObject config = new JsonObject().put("cache.direct", true).put("cache.impl", "confined");
+    try {
+      new CacheEngine(config);
+      testContext.failNow(new Throwable("Confined cache accepted in direct mode"));
+    } catch (IllegalArgumentException e) {
+      testContext.completeNow();
+    }
+  }
+
+  @Test
+  void countEvictions(Vertx vertx, VertxTestContext testContext) {
+    CacheEngine engine = new CacheEngine(new JsonObject().put("cache.memory.max", 1000));
+    byte[] value = new byte[100];
+    for (int i = 0; i < 100; i++) {
+      engine.process(new MemcacheMessage(CommandType.SET, ("key" + i).getBytes(), value, value.length));
+    }
+    MemcacheMessage stats = engine.process(new MemcacheMessage(CommandType.STATS, new byte[0], null, 0));
+    long items = Long.parseLong(stats.getStats().get("curr_items"));
+    assert Long.parseLong(stats.getStats().get("bytes")) <= 1000;
+    assert Long.parseLong(stats.getStats().get("evictions")) == 100 - items;
+    testContext.completeNow();
+  }
+
+  @Test
+  void serveDirectly(Vertx vertx, VertxTestContext testContext) {
+    // Commands are served by the command verticle itself, but the cache verticle sees the same data
+    int port = 11213;
+    JsonObject config = new JsonObject().put("tcp.port", port).put("cache.direct", true);
+    vertx.deployVerticle(MainVerticle.class.getName(), new DeploymentOptions().setConfig(config), testContext.succeeding(id ->
+      vertx.createNetClient().connect(port, "localhost", testContext.succeeding(socket -> {
+        Buffer received = Buffer.buffer();
+        socket.handler(buffer -> {
+          received.appendBuffer(buffer);
+          if (received.toString().equals("STORED \r\nVALUE abc 0 5\r\nhello\r\nEND\r\n")) {
+            MemcacheMessage get = new MemcacheMessage(CommandType.GET, "abc".getBytes(), null, 0);
+            vertx.eventBus().send(ADDRESS, JsonObject.mapFrom(get), testContext.succeeding(reply -> {
+              MemcacheMessage response = Json.decodeValue(reply.body().toString(), MemcacheMessage.class);
+              assert Arrays.equals(response.getValue(), "hello".getBytes());
+              testContext.completeNow();
+            }));
+          }
+        });
+        socket.write("set abc 0 0 5\r\nhello\r\nget abc\r\n");
+      }))));
+  }
+}
@@ -6,6 +6,7 @@ import io.vertx.core.json.Json;
 import io.vertx.core.json.JsonObject;
 import io.vertx.junit5.VertxExtension;
 import io.vertx.junit5.VertxTestContext;
+import memcached.common.MemcacheBatch;
 import memcached.common.MemcacheMessage;
 import org.junit.jupiter.api.*;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -86,4 +87,20 @@ public class CacheVerticleTest {
     validateMessage(eventBus, putCommand, testContext);
     validateMessage(eventBus, getCommand, testContext);
   }
+
+  @Test
+  @DisplayName("Answer a batch with the responses in order")
+  void cacheVerticleBatch(Vertx vertx, VertxTestContext testContext) {
+    MemcacheBatch batch = new MemcacheBatch(Arrays.asList(
+      new MemcacheMessage(MemcacheMessage.CommandType.SET, "batch".getBytes(), "hello".getBytes(), 5),
+      new MemcacheMessage(MemcacheMessage.CommandType.GET, "batch".getBytes(), null, 0),
+      new MemcacheMessage(MemcacheMessage.CommandType.GET, "missing".getBytes(), null, 0)));
+    vertx.eventBus().send(ADDRESS, batch, testContext.succeeding(reply -> testContext.verify(() -> {
+      MemcacheBatch responses = (MemcacheBatch) reply.body();
+      assert responses.getMessages().size() == 3;
+      assert Arrays.equals(responses.getMessages().get(1).getValue(), "hello".getBytes());
+      assert responses.getMessages().get(2).getValue() == null;
+      testContext.completeNow();
+    })));
+  }
 }
@@ -0,0 +1,129 @@
+package memcached;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PoolArenaMetric;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.Vertx;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import memcached.command.ChunkedValueReader;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.nio.charset.Charset;
+
+@ExtendWith(VertxExtension.class)
+public class ChunkedValueReaderTest {
+
+  private ByteBuf buffer(String s) {
+    return Unpooled.copiedBuffer(s, Charset.defaultCharset());
+  }
+
+  @Test
+  void readValueInOneChunk(Vertx vertx, VertxTestContext testContext) {
+    ChunkedValueReader reader = new ChunkedValueReader(16);
+    ByteBuf in = buffer("hel\r\nlo\r\nget abc\r\n");
+    reader.start(7);
+
+    ChunkedValueReader.State state = reader.read(in);
+    ByteBuf value = reader.value();
+
+    assert state == ChunkedValueReader.State.COMPLETE;
+    assert value.toString(Charset.defaultCharset()).equals("hel\r\nlo");
+    // The bytes following the data block are left for the next command
+    assert in.toString(Charset.defaultCharset()).equals("get abc\r\n");
+    testContext.completeNow();
+  }
+
+  @Test
+  void readValueOverManyReads(Vertx vertx, VertxTestContext testContext) {
+    ChunkedValueReader reader = new ChunkedValueReader(4);
+    reader.start(10);
+
+    ChunkedValueReader.State first = reader.read(buffer("012"));
+    ChunkedValueReader.State second = reader.read(buffer("34567"));
+    ChunkedValueReader.State third = reader.read(buffer("89\r"));
+    ChunkedValueReader.State last = reader.read(buffer("\n"));
+    ByteBuf value = reader.value();
+
+    assert first == ChunkedValueReader.State.INCOMPLETE;
+    assert second == ChunkedValueReader.State.INCOMPLETE;
+    assert third == ChunkedValueReader.State.INCOMPLETE;
+    assert last == ChunkedValueReader.State.COMPLETE;
+    assert value.readableBytes() == 10;
+    assert value.toString(Charset.defaultCharset()).equals("0123456789");
+    testContext.completeNow();
+  }
+
+  @Test
+  void rejectValueWithoutCrlf(Vertx vertx, VertxTestContext testContext) {
+    ChunkedValueReader reader = new ChunkedValueReader(16);
+    reader.start(6);
+    ChunkedValueReader.State state = reader.read(buffer("hello\r\n"));
+    assert state == ChunkedValueReader.State.ERROR;
+    testContext.completeNow();
+  }
+
+  @Test
+  void releasePooledChunks(Vertx vertx, VertxTestContext testContext) {
+    // No thread caches, so that released chunks go straight back to the arena
+    PooledByteBufAllocator allocator = new PooledByteBufAllocator(false, 1, 0, 8192, 11, 0, 0, 0);
+    ChunkedValueReader reader = new ChunkedValueReader(4, allocator);
+
+    // A complete value is owned by the caller
+    reader.start(6);
+    ChunkedValueReader.State state = reader.read(buffer("012345\r\n"));
+    ByteBuf value = reader.value();
+    assert state == ChunkedValueReader.State.COMPLETE;
+    assert activeAllocations(allocator) == 2;
+    value.release();
+    assert activeAllocations(allocator) == 0;
+
+    // An abandoned value is released by the reader
+    reader.start(10);
+    state = reader.read(buffer("012345"));
+    reader.release();
+    assert state == ChunkedValueReader.State.INCOMPLETE;
+    assert activeAllocations(allocator) == 0;
+    testContext.completeNow();
+  }
+
+  private long activeAllocations(PooledByteBufAllocator allocator) {
+    long count = 0;
+    for (PoolArenaMetric arena : allocator.metric().heapArenas()) {
+      count += arena.numActiveAllocations();
+    }
+    return count;
+  }
+
+  @Test
+  void readFramedValue(Vertx vertx, VertxTestContext testContext) {
+    ChunkedValueReader reader = new ChunkedValueReader(4);
+    reader.start(10, buffer("<<"), buffer(">>"));
+    ChunkedValueReader.State first = reader.read(buffer("01234"));
+    ChunkedValueReader.State second = reader.read(buffer("56789\r\n"));
+    ByteBuf framed = reader.value();
+    assert first == ChunkedValueReader.State.INCOMPLETE;
+    assert second == ChunkedValueReader.State.COMPLETE;
+    assert framed.toString(Charset.defaultCharset()).equals("<<0123456789>>");
+
+    reader.start(0, buffer("<<"), buffer(">>"));
+    ChunkedValueReader.State empty = reader.read(buffer("\r\n"));
+    ByteBuf frame = reader.value();
+    assert empty == ChunkedValueReader.State.COMPLETE;
+    assert frame.toString(Charset.defaultCharset()).equals("<<>>");
+    testContext.completeNow();
+  }
+
+  @Test
+  void readEmptyValue(Vertx vertx, VertxTestContext testContext) {
+    ChunkedValueReader reader = new ChunkedValueReader(16);
+    reader.start(0);
+    ChunkedValueReader.State state = reader.read(buffer("\r\n"));
+    ByteBuf value = reader.value();
+    assert state == ChunkedValueReader.State.COMPLETE;
+    assert value.readableBytes() == 0;
+    testContext.completeNow();
+  }
+}
@@ -295,21 +295,52 @@ public class CommandVerticleTest {
   }
 
   /***
-   * Handle set request with unsupported key or value size.
+   * Handle set request with unsupported value size: the value is rejected, its data block
+   * (split over two writes) is skipped, and the next command is served.
    * @param vertx
    * @param testContext
    */
   @Test
-  @DisplayName("Handle set with unsupported key or value size")
+  @DisplayName("Handle set with unsupported value size")
   void verticleHandleSetWithUnsupportedSize(Vertx vertx, VertxTestContext testContext) {
     assert socket != null;
-    socket.write("set abc 0 0 1025\r\nhell\ro\r\n"); // max value size supported is 1k
+    char[] value = new char[1025];    // max value size supported is 1k
+    Arrays.fill(value, 'x');
+    String expected = "SERVER_ERROR object too large for cache\r\n" + prepareSetResponse();
+    Buffer received = Buffer.buffer();
     socket.handler(buffer -> {
-      if (isClientError(buffer)) {
+      received.appendBuffer(buffer);
+      if (received.length() >= expected.length()) {
+        if (received.toString().equals(expected)) {
+          testContext.completeNow();
+        } else {
+          testContext.failNow(new Throwable("Unexpected response"));
+        }
+      }
+    });
+    String data = new String(value);
+    socket.write("set abc 0 0 1025\r\n" + data.substring(0, 500));
+    socket.write(data.substring(500) + "\r\nset def 0 0 2\r\nhi\r\n");
+  }
+
+  /***
+   * Handle set request with a value of exactly the maximum size
+   * @param vertx
+   * @param testContext
+   */
+  @Test
+  @DisplayName("Handle set with the maximum value size")
+  void verticleHandleSetWithMaximumSize(Vertx vertx, VertxTestContext testContext) {
+    assert socket != null;
+    char[] value = new char[1024];
+    Arrays.fill(value, 'x');
+    socket.handler(buffer -> {
+      if (buffer.toString().equals(prepareSetResponse())) {
         testContext.completeNow();
       } else {
         testContext.failNow(new Throwable("Unexpected response"));
       }
     });
+    socket.write("set abc 0 0 1024\r\n" + new String(value) + "\r\n");
   }
 }
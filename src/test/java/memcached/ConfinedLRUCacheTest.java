@@ -0,0 +1,159 @@
+package memcached;
+
+import io.vertx.core.Vertx;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import memcached.cache.ConfinedLRUCache;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+
+@ExtendWith(VertxExtension.class)
+public class ConfinedLRUCacheTest {
+
+  @Test
+  void handleSetAndGet(Vertx vertx, VertxTestContext testContext) {
+    ConfinedLRUCache<String, String> cache = new ConfinedLRUCache<>(10);
+    cache.set("abc", "hello");
+    cache.set("abc", "hello2");
+    assert cache.get("abc").equals("hello2");
+    assert cache.size() == 1;
+    testContext.completeNow();
+  }
+
+  @Test
+  void checkEvictionPolicy(Vertx vertx, VertxTestContext testContext) {
+    int size = 10;
+    ConfinedLRUCache<String, String> cache = new ConfinedLRUCache<>(size);
+    cache.set("first", "hello");
+    cache.set("second", "hello");
+    for (int i = 0; i < size - 2; i++) {
+      cache.set("key-" + i, "value-" + i);
+    }
+    // Touch the first entry, so that the second one is the least recently used
+    cache.get("first");
+    cache.set("one-more", "value");
+
+    assert cache.containsKey("first");
+    assert !cache.containsKey("second");
+    assert cache.size() == size;
+    testContext.completeNow();
+  }
+
+  @Test
+  void checkWeightedEviction(Vertx vertx, VertxTestContext testContext) {
+    ConfinedLRUCache<String, String> cache = new ConfinedLRUCache<>(10, (k, v) -> v.length());
+    cache.set("a", "12345");
+    cache.set("b", "12345");
+    cache.set("c", "1");
+    assert !cache.containsKey("a");
+    assert cache.containsKey("b") && cache.containsKey("c");
+    testContext.completeNow();
+  }
+
+  @Test
+  void walkFromTail(Vertx vertx, VertxTestContext testContext) {
+    ConfinedLRUCache<String, String> cache = new ConfinedLRUCache<>(10);
+    cache.set("a", "1");
+    cache.set("b", "2");
+    cache.set("c", "3");
+    cache.get("a");
+
+    // Entries already returned may be removed during the walk
+    List<String> walked = new ArrayList<>();
+    Iterator<Map.Entry<String, String>> entries = cache.lruIterator();
+    while (entries.hasNext()) {
+      Map.Entry<String, String> entry = entries.next();
+      walked.add(entry.getKey());
+      boolean removed = cache.remove(entry.getKey(), entry.getValue());
+      assert removed;
+    }
+    boolean removedAgain = cache.remove("a", "1");
+    assert walked.equals(Arrays.asList("b", "c", "a"));
+    assert cache.size() == 0;
+    assert !removedAgain;
+    testContext.completeNow();
+  }
+
+  @Test
+  void resumeWalkAfterChanges(Vertx vertx, VertxTestContext testContext) {
+    ConfinedLRUCache<String, String> cache = new ConfinedLRUCache<>(10);
+    cache.set("a", "1");
+    cache.set("b", "2");
+    cache.set("c", "3");
+    cache.set("d", "4");
+
+    // The next entry is used: the walk goes on from the entry before it
+    List<String> walked = new ArrayList<>();
+    Iterator<Map.Entry<String, String>> entries = cache.lruIterator();
+    walked.add(entries.next().getKey());
+    cache.get("b");
+    entries.forEachRemaining(entry -> walked.add(entry.getKey()));
+    assert walked.equals(Arrays.asList("a", "b", "c", "d", "b"));
+
+    // The next entry is removed: the walk goes on from the entry before it
+    walked.clear();
+    entries = cache.lruIterator();
+    walked.add(entries.next().getKey());
+    boolean removed = cache.remove("c", "3");
+    entries.forEachRemaining(entry -> walked.add(entry.getKey()));
+    assert removed;
+    assert walked.equals(Arrays.asList("a", "d", "b"));
+    testContext.completeNow();
+  }
+
+  @Test
+  void resumeWalkAfterSeveralUses(Vertx vertx, VertxTestContext testContext) {
+    ConfinedLRUCache<String, String> cache = new ConfinedLRUCache<>(10);
+    cache.set("a", "1");
+    cache.set("b", "2");
+    cache.set("c", "3");
+    cache.set("d", "4");
+    cache.set("e", "5");
+
+    // The next entry is used, then another one: it is no longer the head
+    List<String> walked = new ArrayList<>();
+    Iterator<Map.Entry<String, String>> entries = cache.lruIterator();
+    walked.add(entries.next().getKey());
+    cache.get("b");
+    cache.get("d");
+    entries.forEachRemaining(entry -> walked.add(entry.getKey()));
+    assert walked.containsAll(Arrays.asList("a", "b", "c", "d", "e"));
+    assert walked.equals(Arrays.asList("a", "b", "c", "e", "b", "d"));
+    testContext.completeNow();
+  }
+
+  @Test
+  void matchLinkedHashMap(Vertx vertx, VertxTestContext testContext) {
+    // Compare against an access ordered LinkedHashMap, with few distinct keys so that
+    // entries are evicted, collide and are shifted back in the table all the time.
+    int capacity = 100;
+    ConfinedLRUCache<Integer, Integer> cache = new ConfinedLRUCache<>(capacity);
+    Map<Integer, Integer> reference = new LinkedHashMap<Integer, Integer>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Integer, Integer> eldest) {
+        return size() > capacity;
+      }
+    };
+    Random random = new Random(42);
+    for (int i = 0; i < 100000; i++) {
+      Integer key = random.nextInt(300);
+      if (random.nextBoolean()) {
+        cache.set(key, i);
+        reference.put(key, i);
+      } else {
+        assert Objects.equals(cache.get(key), reference.get(key));
+      }
+    }
+    assert cache.size() == reference.size();
+    testContext.completeNow();
+  }
+}
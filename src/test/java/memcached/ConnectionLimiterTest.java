@@ -0,0 +1,55 @@
+package memcached;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.net.NetClient;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import memcached.common.ConnectionLimiter;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@ExtendWith(VertxExtension.class)
+public class ConnectionLimiterTest {
+
+  @Test
+  void limitConnections(Vertx vertx, VertxTestContext testContext) {
+    ConnectionLimiter limiter = new ConnectionLimiter(2);
+    boolean first = limiter.open();
+    boolean second = limiter.open();
+    boolean third = limiter.open();
+    limiter.close();
+    boolean reopened = limiter.open();
+    limiter.pause();
+    assert first && second;
+    assert !third;
+    assert reopened;
+
+    Map<String, String> stats = new HashMap<>();
+    limiter.addStats(stats);
+    assert stats.get("curr_connections").equals("2");
+    assert stats.get("total_connections").equals("3");
+    assert stats.get("rejected_connections").equals("1");
+    assert stats.get("conn_paused").equals("1");
+    testContext.completeNow();
+  }
+
+  @Test
+  void rejectConnectionOverLimit(Vertx vertx, VertxTestContext testContext) {
+    int port = 11214;
+    JsonObject config = new JsonObject().put("tcp.port", port).put("conn.max", 1);
+    vertx.deployVerticle(MainVerticle.class.getName(), new DeploymentOptions().setConfig(config), testContext.succeeding(id -> {
+      NetClient client = vertx.createNetClient();
+      client.connect(port, "localhost", testContext.succeeding(first ->
+        client.connect(port, "localhost", testContext.succeeding(second ->
+          second.handler(buffer -> testContext.verify(() -> {
+            assert buffer.toString().startsWith("SERVER_ERROR");
+            testContext.completeNow();
+          }))))));
+    }));
+  }
+}
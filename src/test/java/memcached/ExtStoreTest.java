@@ -0,0 +1,147 @@
+package memcached;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import memcached.cache.CacheEngine;
+import memcached.cache.ExtStore;
+import memcached.cache.Item;
+import memcached.common.MemcacheMessage;
+import memcached.common.MemcacheMessage.CommandType;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@ExtendWith(VertxExtension.class)
+public class ExtStoreTest {
+
+  @Test
+  void serveEvictedValues(Vertx vertx, VertxTestContext testContext) throws IOException {
+    // Room for a few values in memory, and 4 batches per page in the file
+    JsonObject config = config().put("cache.memory.max", 256);
+    vertx.runOnContext(v -> {
+      CacheEngine engine = new CacheEngine(vertx, config, null);
+      for (int i = 0; i < 40; i++) {
+        engine.process(new MemcacheMessage(CommandType.SET, ("key:" + i).getBytes(), value(i).getBytes(), 100));
+      }
+      Map<String, String> stats = engine.process(new MemcacheMessage(CommandType.STATS, new byte[0], null, 0)).getStats();
+      assert Integer.parseInt(stats.get("ext_spilled")) > 30;
+
+      // Once the first batches have been written, read the values back from the file
+      vertx.setTimer(200, timer -> {
+        AtomicInteger pending = new AtomicInteger(40);
+        for (int i = 0; i < 40; i++) {
+          int index = i;
+          engine.process(new MemcacheMessage(CommandType.GET, ("key:" + i).getBytes(), null, 0), response -> {
+            testContext.verify(() -> {
+              assert Arrays.equals(response.getValue(), value(index).getBytes());
+            });
+            response.release();
+            if (pending.decrementAndGet() == 0) {
+              Map<String, String> after = engine.process(new MemcacheMessage(CommandType.STATS, new byte[0], null, 0)).getStats();
+              testContext.verify(() -> {
+                assert after.get("get_hits").equals("40");
+                assert !after.get("ext_reads").equals("0");
+              });
+              engine.close();
+              testContext.completeNow();
+            }
+          });
+        }
+      });
+    });
+  }
+
+  @Test
+  void compactPage(Vertx vertx, VertxTestContext testContext) throws IOException {
+    JsonObject config = config();
+    vertx.runOnContext(v -> {
+      ExtStore ext = new ExtStore(vertx, config);
+      // 10 values per batch: the first 40 fill the first page, the next ones go to the second page
+      for (int i = 0; i < 50; i++) {
+        ext.spill(key(i), new Item(Unpooled.copiedBuffer(value(i), Charset.defaultCharset()), 0));
+      }
+      // Most of the first page is garbage once its first 30 values are dropped
+      for (int i = 0; i < 30; i++) {
+        ext.remove(key(i));
+      }
+      ext.compact();
+
+      vertx.setPeriodic(10, timer -> {
+        Map<String, String> stats = new HashMap<>();
+        ext.addStats(stats);
+        if (stats.get("ext_pages_compacted").equals("0")) {
+          return;
+        }
+        vertx.cancelTimer(timer);
+        testContext.verify(() -> {
+          assert stats.get("ext_relocated").equals("10");
+          assert stats.get("ext_pages_free").equals("3");
+          assert ext.get(key(10)) == null;
+          // The live values of the page were moved
+          for (int i = 30; i < 50; i++) {
+            assert new String(ext.readBlocking(ext.get(key(i)))).equals(value(i));
+          }
+        });
+        ext.close();
+        testContext.completeNow();
+      });
+    });
+  }
+
+  @Test
+  void dropKeysOfReusedPages(Vertx vertx, VertxTestContext testContext) throws IOException {
+    JsonObject config = config();
+    vertx.runOnContext(v -> {
+      ExtStore ext = new ExtStore(vertx, config);
+      // The 4 pages hold 160 values: the pages are reused several times, and no value is read
+      for (int i = 0; i < 1000; i++) {
+        ext.spill(key(i), new Item(Unpooled.copiedBuffer(value(i), Charset.defaultCharset()), 0));
+      }
+      Map<String, String> stats = new HashMap<>();
+      ext.addStats(stats);
+      long items = Long.parseLong(stats.get("ext_items"));
+      testContext.verify(() -> {
+        assert items <= 160;
+        assert ext.get(key(999)) != null;
+      });
+      ext.close();
+      testContext.completeNow();
+    });
+  }
+
+  private JsonObject config() throws IOException {
+    File file = File.createTempFile("extstore", ".data");
+    file.deleteOnExit();
+    return new JsonObject()
+      .put("ext.path", file.getPath())
+      .put("ext.page.size", 4096)
+      .put("ext.batch.size", 1000)
+      .put("ext.pages", 4)
+      .put("ext.compact.interval.ms", 0);
+  }
+
+  private static ByteBuf key(int i) {
+    return Unpooled.copiedBuffer("key:" + i, Charset.defaultCharset());
+  }
+
+  /***
+   * Returns a value of 100 bytes.
+   */
+  private static String value(int i) {
+    String prefix = "value:" + i + ":";
+    char[] padding = new char[100 - prefix.length()];
+    Arrays.fill(padding, 'x');
+    return prefix + new String(padding);
+  }
+}
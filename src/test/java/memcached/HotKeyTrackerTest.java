@@ -0,0 +1,51 @@
+package memcached;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.Vertx;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import memcached.stats.HotKeyTracker;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.nio.charset.Charset;
+import java.util.List;
+
+@ExtendWith(VertxExtension.class)
+public class HotKeyTrackerTest {
+
+  private ByteBuf key(String key) {
+    return Unpooled.copiedBuffer(key, Charset.defaultCharset());
+  }
+
+  @Test
+  void findHottestKeys(Vertx vertx, VertxTestContext testContext) {
+    HotKeyTracker tracker = new HotKeyTracker(2, 1.0, 60000);
+
+    // A long tail of cold keys, interleaved with two hot keys
+    for (int i = 0; i < 1000; i++) {
+      tracker.record(key("cold-" + i));
+      tracker.record(key("hot"));
+      if (i % 2 == 0) {
+        tracker.record(key("warm"));
+      }
+    }
+
+    List<HotKeyTracker.HotKey> hotKeys = tracker.getHotKeys();
+    assert hotKeys.size() == 2;
+    assert hotKeys.get(0).getKey().equals("hot");
+    assert hotKeys.get(1).getKey().equals("warm");
+    assert hotKeys.get(0).getCount() >= 1000;
+    assert hotKeys.get(0).getQps() > 0;
+    testContext.completeNow();
+  }
+
+  @Test
+  void disabledWithZeroSampleRate(Vertx vertx, VertxTestContext testContext) {
+    HotKeyTracker tracker = new HotKeyTracker(10, 0, 60000);
+    tracker.record(key("abc"));
+    assert tracker.getHotKeys().isEmpty();
+    testContext.completeNow();
+  }
+}
@@ -0,0 +1,60 @@
+package memcached;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.net.NetClient;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+@ExtendWith(VertxExtension.class)
+public class InvalidationTrackerTest {
+
+  @Test
+  void pushChangesOfKeysRead(Vertx vertx, VertxTestContext testContext) {
+    int port = 11218;
+    JsonObject config = new JsonObject().put("tcp.port", port);
+    vertx.deployVerticle(MainVerticle.class.getName(), new DeploymentOptions().setConfig(config), testContext.succeeding(id -> {
+      NetClient client = vertx.createNetClient();
+      client.connect(port, "localhost", testContext.succeeding(tracking -> {
+        Buffer received = Buffer.buffer();
+        tracking.handler(buffer -> {
+          received.appendBuffer(buffer);
+          if (received.toString().equals("OK\r\n\r")) {
+            // The key was read (a miss): another client now sets it
+            client.connect(port, "localhost", testContext.succeeding(writer ->
+              writer.write("set abc 0 0 5\r\nhello\r\nset def 0 0 5\r\nhello\r\n")));
+          } else if (received.toString().equals("OK\r\n\rINVALIDATE abc\r\n")) {
+            testContext.completeNow();
+          }
+        });
+        tracking.write("tracking on\r\nget abc\r\n");
+      }));
+    }));
+  }
+
+  @Test
+  void broadcastChangesOfPrefix(Vertx vertx, VertxTestContext testContext) {
+    int port = 11219;
+    JsonObject config = new JsonObject().put("tcp.port", port).put("cache.direct", true);
+    vertx.deployVerticle(MainVerticle.class.getName(), new DeploymentOptions().setConfig(config), testContext.succeeding(id -> {
+      NetClient client = vertx.createNetClient();
+      client.connect(port, "localhost", testContext.succeeding(tracking -> {
+        Buffer received = Buffer.buffer();
+        tracking.handler(buffer -> {
+          received.appendBuffer(buffer);
+          if (received.toString().equals("OK\r\n")) {
+            client.connect(port, "localhost", testContext.succeeding(writer ->
+              writer.write("set other 0 0 5\r\nhello\r\nset user:1 0 0 5\r\nhello\r\n")));
+          } else if (received.toString().equals("OK\r\nINVALIDATE user:1\r\n")) {
+            testContext.completeNow();
+          }
+        });
+        tracking.write("tracking on bcast prefix user:\r\n");
+      }));
+    }));
+  }
+}
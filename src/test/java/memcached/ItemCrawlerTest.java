@@ -0,0 +1,67 @@
+package memcached;
+
+import io.netty.buffer.Unpooled;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import memcached.cache.CacheEngine;
+import memcached.cache.ItemCrawler;
+import memcached.command.Decoder;
+import memcached.common.MemcacheMessage;
+import memcached.common.MemcacheMessage.CommandType;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.nio.charset.Charset;
+import java.util.Map;
+
+@ExtendWith(VertxExtension.class)
+public class ItemCrawlerTest {
+
+  @Test
+  void reclaimExpiredItems(Vertx vertx, VertxTestContext testContext) {
+    crawl("lru", vertx, testContext);
+  }
+
+  @Test
+  void reclaimExpiredItemsFromTail(Vertx vertx, VertxTestContext testContext) {
+    crawl("confined", vertx, testContext);
+  }
+
+  private void crawl(String impl, Vertx vertx, VertxTestContext testContext) {
+    JsonObject config = new JsonObject()
+      .put("cache.impl", impl)
+      .put("crawler.interval.ms", 10)
+      .put("crawler.step.items", 1);
+    vertx.runOnContext(v -> {
+      CacheEngine engine = new CacheEngine(config);
+      Decoder decoder = new Decoder();
+      for (int i = 0; i < 10; i++) {
+        // One item in two has already expired
+        String command = "set key:" + i + " 0 " + (i % 2 == 0 ? -1 : 0) + " 5\r\n";
+        MemcacheMessage set = decoder.decode(Unpooled.copiedBuffer(command, Charset.defaultCharset()));
+        set.setValue("hello".getBytes());
+        engine.process(set);
+      }
+      ItemCrawler crawler = new ItemCrawler(vertx, engine, config);
+      engine.addStats("crawler", crawler::addStats);
+      crawler.start();
+
+      vertx.setPeriodic(10, timer -> {
+        Map<String, String> stats = engine.process(new MemcacheMessage(CommandType.STATS, "crawler".getBytes(), null, 0)).getStats();
+        if (stats.get("crawler_passes").equals("0")) {
+          return;
+        }
+        vertx.cancelTimer(timer);
+        testContext.verify(() -> {
+          assert stats.get("crawler_reclaimed").equals("5");
+          assert !stats.get("crawler_reclaimed_bytes").equals("0");
+          Map<String, String> general = engine.process(new MemcacheMessage(CommandType.STATS, new byte[0], null, 0)).getStats();
+          assert general.get("curr_items").equals("5");
+          testContext.completeNow();
+        });
+      });
+    });
+  }
+}
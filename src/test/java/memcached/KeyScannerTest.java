@@ -0,0 +1,79 @@
+package memcached;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import memcached.cache.CacheEngine;
+import memcached.cache.KeyScanner;
+import memcached.command.Decoder;
+import memcached.common.MemcacheMessage;
+import memcached.common.MemcacheMessage.CommandType;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.nio.charset.Charset;
+import java.util.HashSet;
+import java.util.Set;
+
+@ExtendWith(VertxExtension.class)
+public class KeyScannerTest {
+
+  @Test
+  void scanKeysWithPrefix(Vertx vertx, VertxTestContext testContext) {
+    CacheEngine engine = new CacheEngine(new JsonObject());
+    KeyScanner scanner = new KeyScanner(engine, new JsonObject());
+    engine.addHandler(CommandType.SCAN, scanner::scan);
+    Decoder decoder = new Decoder();
+    for (int i = 0; i < 10; i++) {
+      engine.process(new MemcacheMessage(CommandType.SET, ("user:" + i).getBytes(), "hello".getBytes(), 5));
+      engine.process(new MemcacheMessage(CommandType.SET, ("other:" + i).getBytes(), "hello".getBytes(), 5));
+    }
+
+    // Batches of at most 4 keys examined, resumed until the cursor is 0
+    Set<String> keys = new HashSet<>();
+    long cursor = 0;
+    int batches = 0;
+    do {
+      MemcacheMessage batch = engine.process(decoder.decode(buffer("scan " + cursor + " match user:* count 4\r\n")));
+      assert batch.getKeys().size() <= 4;
+      for (byte[] key : batch.getKeys()) {
+        boolean added = keys.add(new String(key));
+        assert added;
+      }
+      cursor = batch.getToken();
+      batches++;
+    } while (cursor != 0);
+    assert keys.size() == 10 && keys.contains("user:0") && keys.contains("user:9");
+    assert batches == 5;
+
+    MemcacheMessage stats = engine.process(new MemcacheMessage(CommandType.STATS, "scan".getBytes(), null, 0));
+    assert stats.getStats().get("scan_completed").equals("1");
+    assert stats.getStats().get("scan_keys_examined").equals("20");
+    testContext.completeNow();
+  }
+
+  @Test
+  void answerScan(Vertx vertx, VertxTestContext testContext) {
+    CacheEngine engine = new CacheEngine(new JsonObject());
+    KeyScanner scanner = new KeyScanner(engine, new JsonObject());
+    engine.addHandler(CommandType.SCAN, scanner::scan);
+    Decoder decoder = new Decoder();
+    engine.process(new MemcacheMessage(CommandType.SET, "abc".getBytes(), "hello".getBytes(), 5));
+
+    MemcacheMessage all = engine.process(decoder.decode(buffer("scan 0\r\n")));
+    assert decoder.translate(all).toString(Charset.defaultCharset()).equals("KEY abc\r\nCURSOR 0\r\nEND\r\n");
+    MemcacheMessage none = engine.process(decoder.decode(buffer("scan 0 match a?d\r\n")));
+    assert decoder.translate(none).toString(Charset.defaultCharset()).equals("CURSOR 0\r\nEND\r\n");
+    MemcacheMessage unknown = engine.process(decoder.decode(buffer("scan 42\r\n")));
+    assert decoder.translate(unknown).toString(Charset.defaultCharset()).equals("CLIENT_ERROR unknown cursor\r\n");
+    assert decoder.decode(buffer("scan 0 limit 4\r\n")) == null;
+    testContext.completeNow();
+  }
+
+  private ByteBuf buffer(String s) {
+    return Unpooled.copiedBuffer(s, Charset.defaultCharset());
+  }
+}
@@ -0,0 +1,62 @@
+package memcached;
+
+import io.vertx.core.Vertx;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import memcached.stats.Histogram;
+import memcached.stats.LoopMonitor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@ExtendWith(VertxExtension.class)
+public class LoopMonitorTest {
+
+  @Test
+  void countValuesInBuckets(Vertx vertx, VertxTestContext testContext) {
+    Histogram histogram = new Histogram(4);   // Up to 1, 2, 4, and beyond
+    for (long value : new long[]{0, 1, 3, 4, 5, 1000}) {
+      histogram.record(value);
+    }
+    Map<String, String> stats = new HashMap<>();
+    histogram.addStats(stats, "h");
+    assert stats.get("h_count").equals("6");
+    assert stats.get("h_sum").equals("1013");
+    assert stats.get("h_max").equals("1000");
+    assert stats.get("h_le_1").equals("2");
+    assert stats.get("h_le_2").equals("2");
+    assert stats.get("h_le_4").equals("4");
+    assert stats.get("h_le_inf").equals("6");
+    testContext.completeNow();
+  }
+
+  @Test
+  void detectStall(Vertx vertx, VertxTestContext testContext) {
+    LoopMonitor monitor = new LoopMonitor(10, 50);
+    vertx.runOnContext(v -> {
+      monitor.probe(vertx);
+      // Block the event loop for longer than the stall threshold
+      vertx.setTimer(20, timer -> sleep(200));
+      vertx.setTimer(500, timer -> {
+        Map<String, String> stats = new HashMap<>();
+        monitor.addStats(stats);
+        testContext.verify(() -> {
+          assert stats.get("loop_probed").equals("1");
+          assert !stats.get("loop_stalls").equals("0");
+          assert Long.parseLong(stats.get("loop_stall_ms_max")) >= 100;
+        });
+        testContext.completeNow();
+      });
+    });
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
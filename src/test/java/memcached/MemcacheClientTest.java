@@ -0,0 +1,99 @@
+package memcached;
+
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.net.SocketAddress;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import memcached.client.MemcacheClient;
+import memcached.client.MemcacheClientOptions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@ExtendWith(VertxExtension.class)
+public class MemcacheClientTest {
+
+  private static MemcacheClient client(Vertx vertx, int port) {
+    return MemcacheClient.create(vertx, new MemcacheClientOptions()
+      .setAddress(SocketAddress.inetSocketAddress(port, "localhost"))
+      .setConnections(2));
+  }
+
+  @Test
+  void pipelineRequests(Vertx vertx, VertxTestContext testContext) {
+    JsonObject config = new JsonObject().put("tcp.port", 11224);
+    vertx.deployVerticle(MainVerticle.class.getName(), new DeploymentOptions().setConfig(config), testContext.succeeding(id -> {
+      MemcacheClient client = client(vertx, 11224);
+      List<Future> stored = new ArrayList<>();
+      for (int i = 0; i < 100; i++) {
+        stored.add(client.set("key" + i, Buffer.buffer("value" + i)));
+      }
+      CompositeFuture.all(stored).compose(all -> {
+        List<Future> values = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+          values.add(client.get("key" + i));
+        }
+        values.add(client.get("missing"));
+        return CompositeFuture.all(values);
+      }).onComplete(testContext.succeeding(values -> testContext.verify(() -> {
+        for (int i = 0; i < 100; i++) {
+          assert values.<Buffer>resultAt(i).toString().equals("value" + i);
+        }
+        assert values.resultAt(100) == null;
+        client.close();
+        testContext.completeNow();
+      })));
+    }));
+  }
+
+  @Test
+  void shareConcurrentGets(Vertx vertx, VertxTestContext testContext) {
+    JsonObject config = new JsonObject().put("tcp.port", 11225);
+    vertx.deployVerticle(MainVerticle.class.getName(), new DeploymentOptions().setConfig(config), testContext.succeeding(id -> {
+      MemcacheClient client = client(vertx, 11225);
+      client.set("shared", Buffer.buffer("value")).compose(stored -> {
+        // Sent during the same turn of the event loop: the gets share one request
+        List<Future> values = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+          values.add(client.get("shared"));
+        }
+        return CompositeFuture.all(values);
+      }).compose(values -> {
+        for (int i = 0; i < 10; i++) {
+          assert values.<Buffer>resultAt(i).toString().equals("value");
+        }
+        return client.stats(null);
+      }).onComplete(testContext.succeeding(stats -> testContext.verify(() -> {
+        assert stats.get("get_hits").equals("1");
+        client.close();
+        testContext.completeNow();
+      })));
+    }));
+  }
+
+  @Test
+  void touchAndRejectKeys(Vertx vertx, VertxTestContext testContext) {
+    JsonObject config = new JsonObject().put("tcp.port", 11226);
+    vertx.deployVerticle(MainVerticle.class.getName(), new DeploymentOptions().setConfig(config), testContext.succeeding(id -> {
+      MemcacheClient client = client(vertx, 11226);
+      client.set("touched", Buffer.buffer("value"))
+        .compose(stored -> CompositeFuture.all(client.touch("touched", 100), client.touch("missing", 100)))
+        .onComplete(testContext.succeeding(touched -> testContext.verify(() -> {
+          assert touched.<Boolean>resultAt(0);
+          assert !touched.<Boolean>resultAt(1);
+          client.get("a key").onComplete(testContext.failing(e -> testContext.verify(() -> {
+            assert e instanceof IllegalArgumentException;
+            client.close();
+            testContext.completeNow();
+          })));
+        })));
+    }));
+  }
+}
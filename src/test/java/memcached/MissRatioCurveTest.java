@@ -0,0 +1,66 @@
+package memcached;
+
+import io.netty.buffer.Unpooled;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import memcached.cache.CacheEngine;
+import memcached.common.MemcacheMessage;
+import memcached.common.MemcacheMessage.CommandType;
+import memcached.stats.MissRatioCurve;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+@ExtendWith(VertxExtension.class)
+public class MissRatioCurveTest {
+
+  @Test
+  void estimateLoopCurve(Vertx vertx, VertxTestContext testContext) {
+    // 10 passes over 100 keys: an LRU cache of 100 items or more only misses the first pass
+    MissRatioCurve mrc = new MissRatioCurve(1.0, 1000, 200, 4);
+    for (int pass = 0; pass < 10; pass++) {
+      for (int i = 0; i < 100; i++) {
+        mrc.record(Unpooled.copiedBuffer("key:" + i, Charset.defaultCharset()), 1, true);
+      }
+    }
+    Map<Long, Double> curve = mrc.curve();
+    assert curve.get(50L) == 1.0;
+    assert Math.abs(curve.get(100L) - 0.1) < 1e-9;
+    assert Math.abs(curve.get(200L) - 0.1) < 1e-9;
+    testContext.completeNow();
+  }
+
+  @Test
+  void lowerSampleRateToFixedSize(Vertx vertx, VertxTestContext testContext) {
+    MissRatioCurve mrc = new MissRatioCurve(1.0, 64, 20000, 4);
+    for (int pass = 0; pass < 5; pass++) {
+      for (int i = 0; i < 10000; i++) {
+        mrc.record(Unpooled.copiedBuffer("key:" + i, Charset.defaultCharset()), 1, true);
+      }
+    }
+    Map<String, String> stats = new HashMap<>();
+    mrc.addStats(stats);
+    assert Integer.parseInt(stats.get("mrc_samples")) <= 64;
+    assert Double.parseDouble(stats.get("mrc_sample_rate")) < 0.1;
+    // The estimate is coarse with so few samples, but tells the two ends of the curve apart
+    assert Double.parseDouble(stats.get("mrc_5000")) > 0.9;
+    assert Double.parseDouble(stats.get("mrc_20000")) < 0.5;
+    testContext.completeNow();
+  }
+
+  @Test
+  void reportCurveInStats(Vertx vertx, VertxTestContext testContext) {
+    CacheEngine engine = new CacheEngine(new JsonObject().put("mrc.sample.rate", 1.0));
+    engine.process(new MemcacheMessage(CommandType.SET, "abc".getBytes(), "hello".getBytes(), 5));
+    engine.process(new MemcacheMessage(CommandType.GET, "abc".getBytes(), null, 0));
+    MemcacheMessage stats = engine.process(new MemcacheMessage(CommandType.STATS, "mrc".getBytes(), null, 0));
+    assert stats.getStats().get("mrc_references").equals("1");
+    assert stats.getStats().get("mrc_1000").equals("0.0000");
+    testContext.completeNow();
+  }
+}
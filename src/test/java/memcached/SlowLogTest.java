@@ -0,0 +1,84 @@
+package memcached;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import memcached.common.MemcacheMessage;
+import memcached.common.MemcacheMessage.CommandType;
+import memcached.stats.SlowLog;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@ExtendWith(VertxExtension.class)
+public class SlowLogTest {
+
+  @Test
+  void keepSlowRequests(Vertx vertx, VertxTestContext testContext) {
+    // Slow from 1 ms, nothing sampled, 2 entries per ring
+    SlowLog log = new SlowLog(2, 1000, 0, 4);
+    SlowLog.Ring ring = log.ring();
+    ring.record(request("fast", 0, 10_000, 20_000, 30_000), 1, 5, 40_000);
+    ring.record(request("user:1", 0, 100_000, 1_100_000, 3_100_000), 7, 42, 3_200_000);
+    Map<String, String> stats = new LinkedHashMap<>();
+    log.addStats(stats);
+    assert stats.get("slowlog_slow").equals("1");
+    assert stats.get("slowlog_sampled").equals("0");
+    assert stats.get("slowlog_0").endsWith(" conn=7 cmd=get key=user size=42 decode_us=100 bus_us=1000 " +
+      "cache_us=2000 write_us=100 total_us=3200 slow");
+    assert !stats.containsKey("slowlog_1");
+
+    // The oldest entries are overwritten
+    for (int i = 0; i < 3; i++) {
+      ring.record(request("k" + i, 0, 0, 0, 0), i, 0, 2_000_000);
+    }
+    stats.clear();
+    log.addStats(stats);
+    assert stats.containsKey("slowlog_1") && !stats.containsKey("slowlog_2");
+    assert !stats.get("slowlog_0").contains("key=user") && !stats.get("slowlog_1").contains("key=user");
+    testContext.completeNow();
+  }
+
+  @Test
+  void disableLog(Vertx vertx, VertxTestContext testContext) {
+    assert new SlowLog(0, 1000, 1.0, 16).ring() == null;
+    testContext.completeNow();
+  }
+
+  private MemcacheMessage request(String key, long received, long dispatched, long processing, long processed) {
+    MemcacheMessage request = new MemcacheMessage(CommandType.GET, key.getBytes(), null, 0);
+    request.setReceived(received);
+    request.setDispatched(dispatched);
+    request.setProcessing(processing);
+    request.setProcessed(processed);
+    return request;
+  }
+
+  @Test
+  void reportSlowRequests(Vertx vertx, VertxTestContext testContext) {
+    // Every request is slow from 0 us
+    int port = 11220;
+    JsonObject config = new JsonObject().put("tcp.port", port).put("slowlog.threshold.us", 0);
+    vertx.deployVerticle(MainVerticle.class.getName(), new DeploymentOptions().setConfig(config), testContext.succeeding(id ->
+      vertx.createNetClient().connect(port, "localhost", testContext.succeeding(socket -> {
+        Buffer received = Buffer.buffer();
+        socket.handler(buffer -> {
+          received.appendBuffer(buffer);
+          String response = received.toString();
+          if (response.equals("STORED \r\nVALUE abc 0 5\r\nhello\r\nEND\r\n")) {
+            socket.write("stats slowlog\r\n");
+          } else if (response.endsWith("END\r\n") && response.contains("STAT slowlog_")) {
+            assert response.contains(" cmd=set key=abc size=5 ");
+            assert response.contains(" cmd=get key=abc size=5 ");
+            testContext.completeNow();
+          }
+        });
+        socket.write("set abc 0 0 5\r\nhello\r\nget abc\r\n");
+      }))));
+  }
+}
@@ -0,0 +1,118 @@
+package memcached;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import memcached.cache.CacheEngine;
+import memcached.cache.ConfinedLRUCache;
+import memcached.cache.TenantCache;
+import memcached.common.MemcacheMessage;
+import memcached.common.MemcacheMessage.CommandType;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@ExtendWith(VertxExtension.class)
+public class TenantCacheTest {
+
+  private static ByteBuf key(String s) {
+    return Unpooled.copiedBuffer(s, Charset.defaultCharset());
+  }
+
+  private static TenantCache<Integer> create(boolean borrow) {
+    Map<String, Long> quotas = new LinkedHashMap<>();
+    quotas.put("a", 10L);
+    quotas.put("b", 10L);
+    return new TenantCache<>((byte) ':', quotas, 30, borrow,
+      (capacity, listener) -> new ConfinedLRUCache<>(capacity, (k, v) -> 1, listener), (k, v) -> {});
+  }
+
+  @Test
+  void isolateTenants(Vertx vertx, VertxTestContext testContext) {
+    TenantCache<Integer> cache = create(false);
+    for (int i = 0; i < 5; i++) {
+      cache.set(key("b:" + i), i);
+    }
+    // A bulk load of tenant a only evicts its own entries
+    for (int i = 0; i < 100; i++) {
+      cache.set(key("a:" + i), i);
+    }
+    for (int i = 0; i < 5; i++) {
+      assert cache.get(key("b:" + i)) == i;
+    }
+    cache.set(key("other"), 0);
+    assert cache.size() == 16;
+
+    Map<String, String> stats = new HashMap<>();
+    cache.addStats(stats);
+    assert stats.get("tenant_a_items").equals("10");
+    assert stats.get("tenant_a_evictions").equals("90");
+    assert stats.get("tenant_b_get_hits").equals("5");
+    assert stats.get("tenant_default_quota").equals("10");
+    testContext.completeNow();
+  }
+
+  @Test
+  void rescaleQuotas(Vertx vertx, VertxTestContext testContext) {
+    TenantCache<Integer> cache = create(false);
+    for (int i = 0; i < 10; i++) {
+      cache.set(key("a:" + i), i);
+      cache.set(key("b:" + i), i);
+    }
+    cache.setCapacity(15);
+    Map<String, String> stats = new HashMap<>();
+    cache.addStats(stats);
+    assert stats.get("tenant_a_quota").equals("5");
+    assert stats.get("tenant_a_items").equals("5");
+    assert stats.get("tenant_b_items").equals("5");
+    assert cache.weightedSize() <= 15;
+
+    cache.setCapacity(60);
+    for (int i = 0; i < 20; i++) {
+      cache.set(key("a:" + i), i);
+    }
+    assert cache.size() == 25;
+    testContext.completeNow();
+  }
+
+  @Test
+  void borrowUnusedMemory(Vertx vertx, VertxTestContext testContext) {
+    TenantCache<Integer> cache = create(true);
+    for (int i = 0; i < 25; i++) {
+      cache.set(key("a:" + i), i);
+    }
+    assert cache.weightedSize() == 25;
+
+    // Once the memory is needed, the borrower gives it back
+    for (int i = 0; i < 10; i++) {
+      cache.set(key("b:" + i), i);
+    }
+    Map<String, String> stats = new HashMap<>();
+    cache.addStats(stats);
+    assert stats.get("tenant_a_used").equals("20");
+    assert stats.get("tenant_a_evictions").equals("5");
+    assert stats.get("tenant_b_used").equals("10");
+    assert cache.get(key("a:24")) == 24;
+    testContext.completeNow();
+  }
+
+  @Test
+  void reportTenantStats(Vertx vertx, VertxTestContext testContext) {
+    CacheEngine engine = new CacheEngine(new JsonObject().put("tenants", new JsonObject().put("app1", 100)));
+    engine.process(new MemcacheMessage(CommandType.SET, "app1:abc".getBytes(), "hello".getBytes(), 5));
+    engine.process(new MemcacheMessage(CommandType.GET, "app1:abc".getBytes(), null, 0));
+    engine.process(new MemcacheMessage(CommandType.GET, "app2:abc".getBytes(), null, 0));
+    MemcacheMessage stats = engine.process(new MemcacheMessage(CommandType.STATS, "tenants".getBytes(), null, 0));
+    assert stats.getStats().get("tenant_app1_get_hits").equals("1");
+    assert stats.getStats().get("tenant_default_get_misses").equals("1");
+    assert stats.getStats().get("tenant_default_quota").equals("9900");
+    testContext.completeNow();
+  }
+}
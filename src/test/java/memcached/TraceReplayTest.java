@@ -0,0 +1,101 @@
+package memcached;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import memcached.trace.ReplayResult;
+import memcached.trace.ServerReplayer;
+import memcached.trace.TraceReader;
+import memcached.trace.TraceReader.Format;
+import memcached.trace.TraceRecord;
+import memcached.trace.TraceReplayer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+@ExtendWith(VertxExtension.class)
+public class TraceReplayTest {
+  private static final String TRACE = "# timestamp,op,key,size\n"
+    + "1,get,abc,10\n"
+    + "2,get,abc,10\n"
+    + "3,set,def,30\n"
+    + "4,get,def,30\n"
+    + "5,delete,def,0\n"
+    + "6,get,def,30\n";
+
+  private static InputStream stream(String s) {
+    return new ByteArrayInputStream(s.getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  void replayAgainstCache(Vertx vertx, VertxTestContext testContext) throws IOException {
+    for (String impl : new String[]{"lru", "confined"}) {
+      ReplayResult result = TraceReplayer.replay(TraceReader.open(stream(TRACE), Format.CSV), impl, 1 << 20);
+      assert result.getRequests() == 6;
+      assert result.getGets() == 4;
+      assert result.getHits() == 2;
+      assert result.byteHitRatio() == 40.0 / 80;
+    }
+    testContext.completeNow();
+  }
+
+  @Test
+  void readBinaryFormats(Vertx vertx, VertxTestContext testContext) throws IOException {
+    ByteArrayOutputStream bin = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bin);
+    out.writeLong(7);
+    out.writeByte(1);
+    out.writeShort(3);
+    out.write("abc".getBytes(StandardCharsets.UTF_8));
+    out.writeInt(100);
+    TraceReader reader = TraceReader.open(new ByteArrayInputStream(bin.toByteArray()), Format.BIN);
+    TraceRecord record = reader.next();
+    assert record.getTimestamp() == 7 && record.getOp() == TraceRecord.Op.SET && record.getSize() == 100;
+    assert new String(record.getKey(), StandardCharsets.UTF_8).equals("abc");
+    assert reader.next() == null;
+
+    ByteBuffer oracle = ByteBuffer.allocate(24).order(ByteOrder.LITTLE_ENDIAN);
+    oracle.putInt(9).putLong(42).putInt(512).putLong(-1);
+    reader = TraceReader.open(new ByteArrayInputStream(oracle.array()), Format.ORACLE);
+    record = reader.next();
+    assert record.getTimestamp() == 9 && record.getOp() == TraceRecord.Op.GET && record.getSize() == 512;
+    assert new String(record.getKey(), StandardCharsets.UTF_8).equals("42");
+    assert reader.next() == null;
+
+    // Operations without a value to replay are skipped
+    reader = TraceReader.open(stream("0,k1,2,64,1,incr,0\n1,k1,2,64,1,get,0\n"), Format.TWITTER);
+    assert reader.next().getTimestamp() == 1;
+    assert reader.next() == null;
+    testContext.completeNow();
+  }
+
+  @Test
+  void replayAgainstServer(Vertx vertx, VertxTestContext testContext) {
+    int port = 11217;
+    JsonObject config = new JsonObject().put("tcp.port", port);
+    vertx.deployVerticle(MainVerticle.class.getName(), new DeploymentOptions().setConfig(config), testContext.succeeding(id ->
+      vertx.<ReplayResult>executeBlocking(promise -> {
+        try {
+          promise.complete(new ServerReplayer("localhost", port, 1023).replay(TraceReader.open(stream(TRACE), Format.CSV)));
+        } catch (IOException e) {
+          promise.fail(e);
+        }
+      }, testContext.succeeding(result -> testContext.verify(() -> {
+        // The server has no delete: the last GET hits
+        assert result.getSkipped() == 1;
+        assert result.getGets() == 4;
+        assert result.getHits() == 3;
+        testContext.completeNow();
+      })))));
+  }
+}
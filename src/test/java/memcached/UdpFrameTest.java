@@ -0,0 +1,82 @@
+package memcached;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.datagram.DatagramSocket;
+import io.vertx.core.json.JsonObject;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import memcached.command.UdpFrame;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.nio.charset.Charset;
+import java.util.List;
+
+@ExtendWith(VertxExtension.class)
+public class UdpFrameTest {
+
+  @Test
+  void parseRequest(Vertx vertx, VertxTestContext testContext) {
+    ByteBuf request = frame(7, 0, 1, "get abc\r\n");
+    assert UdpFrame.requestId(request) == 7;
+    assert UdpFrame.request(request).toString(Charset.defaultCharset()).equals("get abc\r\n");
+    assert UdpFrame.request(frame(7, 0, 2, "get abc\r\n")) == null;      // Several datagrams
+    assert UdpFrame.request(frame(7, 0, 1, "get abc")) == null;          // No CRLF
+    assert UdpFrame.request(frame(7, 0, 1, "get a\r\nget b\r\n")) == null;  // Several lines
+    assert UdpFrame.request(Unpooled.buffer().writeShort(7)) == null;
+    testContext.completeNow();
+  }
+
+  @Test
+  void splitResponse(Vertx vertx, VertxTestContext testContext) {
+    ByteBuf response = Unpooled.buffer().writeZero(25);
+    List<Buffer> datagrams = UdpFrame.split(9, response, UdpFrame.HEADER_SIZE + 10);
+    assert datagrams.size() == 3;
+    for (int i = 0; i < 3; i++) {
+      ByteBuf d = datagrams.get(i).getByteBuf();
+      assert d.getUnsignedShort(0) == 9 && d.getUnsignedShort(2) == i && d.getUnsignedShort(4) == 3 && d.getUnsignedShort(6) == 0;
+    }
+    assert datagrams.get(2).length() == UdpFrame.HEADER_SIZE + 5;
+    assert response.readableBytes() == 25;
+    testContext.completeNow();
+  }
+
+  @Test
+  void serveGetOverUdp(Vertx vertx, VertxTestContext testContext) {
+    int port = 11223;
+    JsonObject config = new JsonObject().put("tcp.port", port).put("udp.port", port).put("udp.datagram.size", 20);
+    vertx.deployVerticle(MainVerticle.class.getName(), new DeploymentOptions().setConfig(config), testContext.succeeding(id ->
+      vertx.createNetClient().connect(port, "localhost", testContext.succeeding(tcp -> {
+        tcp.handler(stored -> {
+          // The response is split in datagrams of 12 bytes of payload, reassembled in order
+          DatagramSocket udp = vertx.createDatagramSocket();
+          byte[][] parts = new byte[3][];
+          udp.handler(packet -> {
+            ByteBuf d = packet.data().getByteBuf();
+            assert d.getUnsignedShort(0) == 42 && d.getUnsignedShort(4) == 3;
+            parts[d.getUnsignedShort(2)] = packet.data().getBytes(UdpFrame.HEADER_SIZE, packet.data().length());
+            if (parts[0] != null && parts[1] != null && parts[2] != null) {
+              String response = new String(parts[0]) + new String(parts[1]) + new String(parts[2]);
+              assert response.equals("VALUE abc 0 5\r\nhello\r\nEND\r\n");
+              testContext.completeNow();
+            }
+          });
+          udp.send(Buffer.buffer(frame(42, 0, 1, "get abc\r\n")), port, "localhost", testContext.succeeding(sent -> {}));
+        });
+        tcp.write("set abc 0 0 5\r\nhello\r\n");
+      }))));
+  }
+
+  private static ByteBuf frame(int requestId, int sequence, int total, String payload) {
+    return Unpooled.buffer()
+      .writeShort(requestId)
+      .writeShort(sequence)
+      .writeShort(total)
+      .writeShort(0)
+      .writeBytes(payload.getBytes(Charset.defaultCharset()));
+  }
+}
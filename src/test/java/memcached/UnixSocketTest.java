@@ -0,0 +1,52 @@
+package memcached;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.VertxOptions;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.net.SocketAddress;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.io.File;
+
+@ExtendWith(VertxExtension.class)
+public class UnixSocketTest {
+
+  @Test
+  void rejectWithoutNativeTransport(Vertx vertx, VertxTestContext testContext) {
+    JsonObject config = new JsonObject().put("tcp.port", 11221).put("uds.path", socketPath("rejected"));
+    vertx.deployVerticle(MainVerticle.class.getName(), new DeploymentOptions().setConfig(config),
+      testContext.failing(e -> testContext.completeNow()));
+  }
+
+  @Test
+  void serveUnixDomainSocket(Vertx unused, VertxTestContext testContext) {
+    Vertx vertx = Vertx.vertx(new VertxOptions().setPreferNativeTransport(true));
+    if (!vertx.isNativeTransportEnabled()) {
+      // The native transport is not available on this platform
+      vertx.close(testContext.succeeding(v -> testContext.completeNow()));
+      return;
+    }
+    String path = socketPath("served");
+    JsonObject config = new JsonObject().put("tcp.port", 11222).put("uds.path", path);
+    vertx.deployVerticle(MainVerticle.class.getName(), new DeploymentOptions().setConfig(config), testContext.succeeding(id ->
+      vertx.createNetClient().connect(SocketAddress.domainSocketAddress(path), testContext.succeeding(socket -> {
+        Buffer received = Buffer.buffer();
+        socket.handler(buffer -> {
+          received.appendBuffer(buffer);
+          if (received.toString().equals("STORED \r\nVALUE abc 0 5\r\nhello\r\nEND\r\n")) {
+            vertx.close(testContext.succeeding(v -> testContext.completeNow()));
+          }
+        });
+        socket.write("set abc 0 0 5\r\nhello\r\nget abc\r\n");
+      }))));
+  }
+
+  private static String socketPath(String name) {
+    return new File(System.getProperty("java.io.tmpdir"), "memcached-" + name + ".sock").getAbsolutePath();
+  }
+}
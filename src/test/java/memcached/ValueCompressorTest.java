@@ -0,0 +1,59 @@
+package memcached;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.Vertx;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import memcached.cache.Item;
+import memcached.cache.ValueCompressor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.nio.charset.Charset;
+
+@ExtendWith(VertxExtension.class)
+public class ValueCompressorTest {
+  private static final int FLAG = 0x8000;
+
+  private ByteBuf json(int repeat) {
+    StringBuilder sb = new StringBuilder("[");
+    for (int i = 0; i < repeat; i++) {
+      sb.append("{\"name\":\"memcached\",\"value\":").append(i % 10).append("},");
+    }
+    return Unpooled.copiedBuffer(sb.append("{}]").toString(), Charset.defaultCharset());
+  }
+
+  @Test
+  void compressAndDecompress(Vertx vertx, VertxTestContext testContext) {
+    ValueCompressor compressor = new ValueCompressor(64, false, FLAG);
+    ByteBuf value = json(100);
+    Item item = compressor.compress(value.duplicate(), 3);
+
+    assert item.isCompressed();
+    assert item.size() < value.readableBytes();
+    assert item.getLength() == value.readableBytes();
+    assert compressor.value(item).equals(value);
+    assert compressor.flags(item) == 3;
+    testContext.completeNow();
+  }
+
+  @Test
+  void passThroughCompressedValue(Vertx vertx, VertxTestContext testContext) {
+    ValueCompressor compressor = new ValueCompressor(64, true, FLAG);
+    Item item = compressor.compress(json(100), 3);
+
+    assert item.isCompressed();
+    assert compressor.value(item).equals(item.getData());
+    assert compressor.flags(item) == (3 | FLAG);
+    testContext.completeNow();
+  }
+
+  @Test
+  void keepSmallOrClientCompressedValues(Vertx vertx, VertxTestContext testContext) {
+    ValueCompressor compressor = new ValueCompressor(64, false, FLAG);
+    assert !compressor.compress(Unpooled.copiedBuffer("hello", Charset.defaultCharset()), 0).isCompressed();
+    assert !compressor.compress(json(100), FLAG).isCompressed();
+    testContext.completeNow();
+  }
+}
@@ -0,0 +1,52 @@
+package memcached;
+
+import io.vertx.core.Vertx;
+import io.vertx.junit5.VertxExtension;
+import io.vertx.junit5.VertxTestContext;
+import memcached.common.Workers;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+@ExtendWith(VertxExtension.class)
+public class WorkersTest {
+
+  @Test
+  void rejectTasksBeyondQueue(Vertx vertx, VertxTestContext testContext) {
+    Workers workers = new Workers(vertx, 1, 1);
+    CountDownLatch blocked = new CountDownLatch(1);
+    vertx.runOnContext(v -> {
+      // The first task holds the only place in the queue until it is released
+      boolean accepted = workers.<String>execute(promise -> {
+        await(blocked);
+        promise.complete("done");
+      }, done -> {
+        Map<String, String> stats = new HashMap<>();
+        workers.addStats(stats);
+        testContext.verify(() -> {
+          assert done.result().equals("done");
+          assert stats.get("worker_completed").equals("1");
+          assert stats.get("worker_rejected").equals("1");
+        });
+        testContext.completeNow();
+      });
+      boolean rejected = !workers.execute(promise -> promise.complete(), done -> testContext.failNow(new Throwable("Task not rejected")));
+      blocked.countDown();
+      testContext.verify(() -> {
+        assert accepted;
+        assert rejected;
+      });
+    });
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}